@@ -0,0 +1,122 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.benchmark;
+
+import io.niowire.NiowireException;
+import io.niowire.entities.NioObjectCreationException;
+import io.niowire.entities.NioObjectFactory;
+import io.niowire.server.NioConnection;
+import io.niowire.server.NioSocketServer.ActiveServer;
+import io.niowire.serversource.NioServerDefinition;
+import io.niowire.service.NioService;
+import io.niowire.service.NioServiceFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * This class builds a real {@link NioConnection} over a loopback socket so
+ * that benchmarks can create serializers with a real
+ * {@link NioConnection.Context} (rather than a mock which would dominate the
+ * measurements).
+ *
+ * @author Trent Houliston
+ */
+public class BenchmarkContext implements Closeable
+{
+
+	private final ServerSocketChannel server;
+	private final SocketChannel client;
+	private final Selector selector;
+	private final NioConnection connection;
+
+	/**
+	 * Opens a loopback connection and builds a NioConnection around it using
+	 * the default serializer and inspector with no services
+	 *
+	 * @throws IOException      if the loopback connection could not be made
+	 * @throws NiowireException if the connection could not be built
+	 */
+	public BenchmarkContext() throws IOException, NiowireException
+	{
+		//Open a loopback connection
+		server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		client = SocketChannel.open(server.getLocalAddress());
+		client.configureBlocking(false);
+
+		//Register it so we get a real selection key
+		selector = Selector.open();
+		SelectionKey key = client.register(selector, SelectionKey.OP_READ);
+
+		//Build a server with the default serializer and inspector
+		NioServerDefinition def = new NioServerDefinition();
+		def.setId("BENCHMARK");
+		def.setName("Benchmark");
+		def.setServiceFactories(Collections.<NioServiceFactory<? extends NioService>>emptyList());
+
+		connection = new NioConnection(key, new ActiveServer(def));
+	}
+
+	/**
+	 * Gets the context of our connection
+	 *
+	 * @return the context
+	 */
+	public NioConnection.Context getContext()
+	{
+		return connection.getContext();
+	}
+
+	/**
+	 * Creates an object from the passed class and configuration, injecting our
+	 * context into it
+	 *
+	 * @param <T>           the type of object to create
+	 * @param clazz         the class of the object
+	 * @param configuration the configuration for the object
+	 *
+	 * @return the created object
+	 *
+	 * @throws NioObjectCreationException if the object could not be created
+	 */
+	public <T> T create(Class<T> clazz, Map<String, ? extends Object> configuration) throws NioObjectCreationException
+	{
+		return new NioObjectFactory<T>(clazz, configuration).create(Collections.singletonMap("context", getContext()));
+	}
+
+	/**
+	 * Closes the connection and the loopback sockets
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		connection.close();
+		client.close();
+		server.close();
+		selector.close();
+	}
+}
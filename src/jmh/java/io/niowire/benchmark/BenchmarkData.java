@@ -0,0 +1,114 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+
+/**
+ * Generates the input data used by the benchmarks. The data is generated from
+ * a fixed seed so that every run of a benchmark processes the same bytes.
+ *
+ * @author Trent Houliston
+ */
+public final class BenchmarkData
+{
+
+	/**
+	 * The charset used by all of the benchmarks
+	 */
+	public static final Charset UTF8 = Charset.forName("utf-8");
+
+	/**
+	 * Builds a block of newline delimited lines of a-z characters. The block
+	 * always ends with a newline (the last line is shortened to fit).
+	 *
+	 * @param size       the total size of the block in bytes
+	 * @param lineLength the length of each line including its newline
+	 *
+	 * @return the block of lines
+	 */
+	public static byte[] lines(int size, int lineLength)
+	{
+		Random r = new Random(size * 31L + lineLength);
+		byte[] data = new byte[size];
+
+		for (int i = 0; i < size; i++)
+		{
+			//Every lineLength bytes (and the very last byte) is a newline
+			if ((i + 1) % lineLength == 0 || i == size - 1)
+			{
+				data[i] = '\n';
+			}
+			else
+			{
+				data[i] = (byte) ('a' + r.nextInt(26));
+			}
+		}
+
+		return data;
+	}
+
+	/**
+	 * Builds a block of newline delimited JSON objects
+	 *
+	 * @param count the number of objects in the block
+	 *
+	 * @return the block of JSON lines
+	 */
+	public static byte[] jsonLines(int count)
+	{
+		StringBuilder str = new StringBuilder();
+		for (int i = 0; i < count; i++)
+		{
+			str.append(json(i)).append('\n');
+		}
+		return str.toString().getBytes(UTF8);
+	}
+
+	/**
+	 * Builds a single JSON object which matches {@link Reading}
+	 *
+	 * @param i the index of the object (used to vary the values)
+	 *
+	 * @return the JSON string
+	 */
+	public static String json(int i)
+	{
+		return "{\"sensor\":\"sensor-" + (i % 16) + "\",\"time\":" + (1356998400000L + i)
+			   + ",\"value\":" + (i * 0.25) + ",\"ok\":" + (i % 2 == 0) + "}";
+	}
+
+	/**
+	 * Private constructor as we are a utility class
+	 */
+	private BenchmarkData()
+	{
+	}
+
+	/**
+	 * A simple POJO used for the pojoClass JSON benchmarks
+	 */
+	public static class Reading
+	{
+
+		public String sensor;
+		public long time;
+		public double value;
+		public boolean ok;
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * This is a JMH auxiliary counter which benchmarks add the number of bytes
+ * they processed to. JMH reports it as a rate alongside the operations, which
+ * gives us a bytes per second figure for each benchmark.
+ *
+ * @author Trent Houliston
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ByteCounter
+{
+
+	/**
+	 * The number of bytes processed
+	 */
+	public long bytes;
+
+	/**
+	 * Resets the counter before each iteration
+	 */
+	@Setup(Level.Iteration)
+	public void reset()
+	{
+		bytes = 0;
+	}
+}
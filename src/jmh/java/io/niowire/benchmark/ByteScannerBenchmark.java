@@ -0,0 +1,139 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.benchmark;
+
+import io.niowire.serializer.ByteScanner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares searching a direct buffer for newlines one byte at a time against
+ * searching it a word at a time with the {@link ByteScanner}. Short lines have
+ * a delimiter in almost every word so they show the overhead of the word
+ * search, while long lines show how much it gains when delimiters are rare.
+ *
+ * @author Trent Houliston
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteScannerBenchmark
+{
+
+	/**
+	 * The length of each line in the buffer
+	 */
+	@Param(
+	{
+		"8", "64", "1024", "8192"
+	})
+	public int lineLength;
+	/**
+	 * The byte order of the buffer being searched
+	 */
+	@Param(
+	{
+		"BIG_ENDIAN", "LITTLE_ENDIAN"
+	})
+	public String order;
+	private ByteBuffer buffer;
+
+	/**
+	 * Builds the buffer to search
+	 */
+	@Setup
+	public void setup()
+	{
+		byte[] data = BenchmarkData.lines(32768, lineLength);
+		buffer = ByteBuffer.allocateDirect(data.length);
+		buffer.order("LITTLE_ENDIAN".equals(order) ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+		buffer.put(data);
+		buffer.flip();
+	}
+
+	/**
+	 * Counts the newlines by comparing each byte
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the number of newlines found
+	 */
+	@Benchmark
+	public int byteAtATime(ByteCounter counter)
+	{
+		int lines = 0;
+		int limit = buffer.limit();
+		int i = 0;
+		while ((i = indexOf(buffer, (byte) '\n', i, limit)) >= 0)
+		{
+			lines++;
+			i++;
+		}
+		counter.bytes += limit;
+		return lines;
+	}
+
+	/**
+	 * Counts the newlines by searching a word at a time
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the number of newlines found
+	 */
+	@Benchmark
+	public int wordAtATime(ByteCounter counter)
+	{
+		int lines = 0;
+		int limit = buffer.limit();
+		int i = 0;
+		while ((i = ByteScanner.indexOf(buffer, (byte) '\n', i, limit)) >= 0)
+		{
+			lines++;
+			i++;
+		}
+		counter.bytes += limit;
+		return lines;
+	}
+
+	/**
+	 * Finds the next byte by comparing one byte at a time (the way the
+	 * serializers searched before the {@link ByteScanner})
+	 *
+	 * @param buffer the buffer to search
+	 * @param b      the byte to search for
+	 * @param from   the index to start searching from
+	 * @param to     the index to stop searching at
+	 *
+	 * @return the index of the byte or -1 if it was not found
+	 */
+	private static int indexOf(ByteBuffer buffer, byte b, int from, int to)
+	{
+		for (int i = from; i < to; i++)
+		{
+			if (buffer.get(i) == b)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
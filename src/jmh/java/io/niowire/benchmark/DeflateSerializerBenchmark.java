@@ -0,0 +1,142 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.benchmark;
+
+import io.niowire.data.NioPacket;
+import io.niowire.entities.NioObjectFactory;
+import io.niowire.serializer.DeflateSerializer;
+import io.niowire.serializer.LineSerializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the {@link DeflateSerializer} wrapping a {@link LineSerializer}
+ * in both directions at different compression levels.
+ *
+ * @author Trent Houliston
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeflateSerializerBenchmark
+{
+
+	/**
+	 * The compression level used
+	 */
+	@Param(
+	{
+		"1", "6", "9"
+	})
+	public int level;
+	private BenchmarkContext context;
+	private DeflateSerializer serializer;
+	private ByteBuffer input;
+	private ByteBuffer output;
+	private NioPacket packet;
+	private int uncompressedSize;
+
+	/**
+	 * Builds our serializer and data
+	 *
+	 * @throws Exception
+	 */
+	@Setup
+	public void setup() throws Exception
+	{
+		context = new BenchmarkContext();
+
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put("compressionLevel", level);
+		config.put("serializer", new NioObjectFactory<LineSerializer>(LineSerializer.class, Collections.singletonMap("charset", "utf-8")));
+		serializer = context.create(DeflateSerializer.class, config);
+
+		//Compress an 8k block of lines with a full flush, each compressed block
+		//is independent so it can be fed to the inflater over and over again
+		byte[] lines = BenchmarkData.lines(8192, 64);
+		uncompressedSize = lines.length;
+		Deflater deflater = new Deflater(level, true);
+		deflater.setInput(lines);
+		byte[] compressed = new byte[lines.length * 2];
+		int length = deflater.deflate(compressed, 0, compressed.length, Deflater.FULL_FLUSH);
+		deflater.end();
+		input = ByteBuffer.wrap(Arrays.copyOf(compressed, length));
+
+		//A single line to serialize
+		packet = new NioPacket("BENCHMARK", new String(lines, 0, 63, BenchmarkData.UTF8));
+		output = ByteBuffer.allocate(1024);
+	}
+
+	/**
+	 * Closes our context
+	 *
+	 * @throws IOException
+	 */
+	@TearDown
+	public void teardown() throws IOException
+	{
+		context.close();
+	}
+
+	/**
+	 * Inflates and deserializes a compressed block of lines, the byte counter
+	 * counts the uncompressed bytes
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the packets
+	 *
+	 * @throws IOException
+	 */
+	@Benchmark
+	public List<NioPacket> deserialize(ByteCounter counter) throws IOException
+	{
+		input.rewind();
+		counter.bytes += uncompressedSize;
+		return serializer.deserialize(input);
+	}
+
+	/**
+	 * Serializes a line and reads the compressed bytes out of the serializer
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the number of bytes read
+	 *
+	 * @throws IOException
+	 */
+	@Benchmark
+	public int serialize(ByteCounter counter) throws IOException
+	{
+		output.clear();
+		serializer.serialize(packet);
+		int read = serializer.read(output);
+		counter.bytes += read;
+		return read;
+	}
+}
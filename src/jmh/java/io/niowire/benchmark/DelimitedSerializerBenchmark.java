@@ -0,0 +1,163 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.benchmark;
+
+import io.niowire.data.NioPacket;
+import io.niowire.serializer.DelimitedSerializer;
+import io.niowire.serializer.NioInvalidDataException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the delimiter scanning of the {@link DelimitedSerializer}. The
+ * serializer used does no work per frame so that only the scanning and the
+ * buffering of residual data is measured. Each operation first feeds a partial
+ * frame of residual bytes and then a chunk which completes it.
+ *
+ * @author Trent Houliston
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DelimitedSerializerBenchmark
+{
+
+	/**
+	 * The size of each chunk read from the "socket"
+	 */
+	@Param(
+	{
+		"64", "1024", "8192"
+	})
+	public int chunkSize;
+	/**
+	 * The number of bytes of a partial frame carried between reads
+	 */
+	@Param(
+	{
+		"0", "64", "4096"
+	})
+	public int residual;
+	/**
+	 * The length of each line in the chunk
+	 */
+	@Param(
+	{
+		"16", "256"
+	})
+	public int lineLength;
+	private ScanSerializer serializer;
+	private ByteBuffer partial;
+	private ByteBuffer chunk;
+	private ByteBuffer output;
+	private NioPacket packet;
+
+	/**
+	 * Builds our serializer and data
+	 */
+	@Setup
+	public void setup()
+	{
+		serializer = new ScanSerializer();
+
+		//The partial frame has no delimiters in it
+		byte[] p = BenchmarkData.lines(residual + 1, residual + 2);
+		partial = ByteBuffer.wrap(p, 0, residual).slice();
+
+		//The chunk ends with a delimiter so no residual is carried into the next operation
+		chunk = ByteBuffer.wrap(BenchmarkData.lines(chunkSize, lineLength));
+
+		//Data for the serialize direction
+		packet = new NioPacket("BENCHMARK", new String(BenchmarkData.lines(lineLength, lineLength + 1), 0, lineLength - 1, BenchmarkData.UTF8));
+		output = ByteBuffer.allocate(lineLength * 2);
+	}
+
+	/**
+	 * Deserializes a partial frame and then a chunk which completes it
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the packets found
+	 *
+	 * @throws IOException
+	 */
+	@Benchmark
+	public List<NioPacket> deserialize(ByteCounter counter) throws IOException
+	{
+		partial.rewind();
+		chunk.rewind();
+		serializer.deserialize(partial);
+		counter.bytes += residual + chunkSize;
+		return serializer.deserialize(chunk);
+	}
+
+	/**
+	 * Serializes a line and reads it back out of the serializer
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the number of bytes read
+	 *
+	 * @throws IOException
+	 */
+	@Benchmark
+	public int serialize(ByteCounter counter) throws IOException
+	{
+		output.clear();
+		serializer.serialize(packet);
+		int read = serializer.read(output);
+		counter.bytes += read;
+		return read;
+	}
+
+	/**
+	 * A delimited serializer which does no work on its frames
+	 */
+	public static class ScanSerializer extends DelimitedSerializer
+	{
+
+		private static final byte[] DELIMITER =
+		{
+			'\n'
+		};
+
+		@Override
+		protected List<NioPacket> deserializeBlob(ByteBuffer blob) throws NioInvalidDataException
+		{
+			return Collections.emptyList();
+		}
+
+		@Override
+		protected ByteBuffer serializeBlob(NioPacket packet) throws NioInvalidDataException
+		{
+			return ByteBuffer.wrap(((String) packet.getData()).getBytes(BenchmarkData.UTF8));
+		}
+
+		@Override
+		protected byte[] getDelimiter()
+		{
+			return DELIMITER;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.benchmark;
+
+import io.niowire.benchmark.BenchmarkData.Reading;
+import io.niowire.data.NioPacket;
+import io.niowire.serializer.JsonSerializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the {@link JsonSerializer} in both directions, with and without a
+ * pojoClass to bind to
+ *
+ * @author Trent Houliston
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializerBenchmark
+{
+
+	/**
+	 * If the JSON should be bound to a POJO rather than a map
+	 */
+	@Param(
+	{
+		"false", "true"
+	})
+	public boolean pojo;
+	private BenchmarkContext context;
+	private JsonSerializer serializer;
+	private ByteBuffer input;
+	private ByteBuffer output;
+	private NioPacket packet;
+
+	/**
+	 * Builds our serializer and data
+	 *
+	 * @throws Exception
+	 */
+	@Setup
+	public void setup() throws Exception
+	{
+		context = new BenchmarkContext();
+
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put("charset", "utf-8");
+		if (pojo)
+		{
+			config.put("pojoClass", Reading.class.getName());
+		}
+		serializer = context.create(JsonSerializer.class, config);
+
+		//A block of 64 JSON objects
+		input = ByteBuffer.wrap(BenchmarkData.jsonLines(64));
+
+		//Deserialize an object to get the data to serialize
+		packet = serializer.deserialize(ByteBuffer.wrap(BenchmarkData.jsonLines(1))).get(0);
+		output = ByteBuffer.allocate(1024);
+	}
+
+	/**
+	 * Closes our context
+	 *
+	 * @throws IOException
+	 */
+	@TearDown
+	public void teardown() throws IOException
+	{
+		context.close();
+	}
+
+	/**
+	 * Deserializes a block of JSON objects
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the packets
+	 *
+	 * @throws IOException
+	 */
+	@Benchmark
+	public List<NioPacket> deserialize(ByteCounter counter) throws IOException
+	{
+		input.rewind();
+		counter.bytes += input.remaining();
+		return serializer.deserialize(input);
+	}
+
+	/**
+	 * Serializes an object and reads it back out of the serializer
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the number of bytes read
+	 *
+	 * @throws IOException
+	 */
+	@Benchmark
+	public int serialize(ByteCounter counter) throws IOException
+	{
+		output.clear();
+		serializer.serialize(packet);
+		int read = serializer.read(output);
+		counter.bytes += read;
+		return read;
+	}
+}
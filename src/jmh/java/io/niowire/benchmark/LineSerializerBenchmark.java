@@ -0,0 +1,133 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.benchmark;
+
+import io.niowire.data.NioPacket;
+import io.niowire.serializer.LineSerializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the {@link LineSerializer} in both directions
+ *
+ * @author Trent Houliston
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineSerializerBenchmark
+{
+
+	/**
+	 * The length of each line
+	 */
+	@Param(
+	{
+		"16", "256"
+	})
+	public int lineLength;
+	/**
+	 * If raw data should be attached to the packets
+	 */
+	@Param(
+	{
+		"false", "true"
+	})
+	public boolean raw;
+	private BenchmarkContext context;
+	private LineSerializer serializer;
+	private ByteBuffer input;
+	private ByteBuffer output;
+	private NioPacket packet;
+
+	/**
+	 * Builds our serializer and data
+	 *
+	 * @throws Exception
+	 */
+	@Setup
+	public void setup() throws Exception
+	{
+		context = new BenchmarkContext();
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put("charset", "utf-8");
+		config.put("raw", raw);
+		serializer = context.create(LineSerializer.class, config);
+
+		//An 8k read full of lines
+		input = ByteBuffer.wrap(BenchmarkData.lines(8192, lineLength));
+
+		//A single line to serialize
+		packet = new NioPacket("BENCHMARK", new String(BenchmarkData.lines(lineLength, lineLength + 1), 0, lineLength - 1, BenchmarkData.UTF8));
+		output = ByteBuffer.allocate(lineLength * 2);
+	}
+
+	/**
+	 * Closes our context
+	 *
+	 * @throws IOException
+	 */
+	@TearDown
+	public void teardown() throws IOException
+	{
+		context.close();
+	}
+
+	/**
+	 * Deserializes an 8k read of lines
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the packets
+	 *
+	 * @throws IOException
+	 */
+	@Benchmark
+	public List<NioPacket> deserialize(ByteCounter counter) throws IOException
+	{
+		input.rewind();
+		counter.bytes += input.remaining();
+		return serializer.deserialize(input);
+	}
+
+	/**
+	 * Serializes a line and reads it back out of the serializer
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the number of bytes read
+	 *
+	 * @throws IOException
+	 */
+	@Benchmark
+	public int serialize(ByteCounter counter) throws IOException
+	{
+		output.clear();
+		serializer.serialize(packet);
+		int read = serializer.read(output);
+		counter.bytes += read;
+		return read;
+	}
+}
@@ -0,0 +1,489 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.benchmark;
+
+import io.niowire.entities.NioObjectFactory;
+import io.niowire.serializer.JsonSerializer;
+import io.niowire.serializer.LineSerializer;
+import io.niowire.serializer.NioSerializer;
+import io.niowire.server.NioSocketServer;
+import io.niowire.serversource.NioServerDefinition;
+import io.niowire.service.EchoService;
+import io.niowire.service.NioService;
+import io.niowire.service.NioServiceFactory;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+
+/**
+ * This is a load generator for measuring how many connections and messages a
+ * {@link NioSocketServer} running an {@link EchoService} can sustain and what
+ * latency it sustains them at.
+ *
+ * It opens N non blocking loopback clients and sends line or JSON messages at
+ * a fixed total rate. Every message has an intended start time on a fixed
+ * schedule, and that time is carried in the message. The round trip latency is
+ * measured from the intended start time rather than from when the message was
+ * actually sent. This means that if the server (or the generator) stalls, the
+ * messages which should have been sent during the stall are charged for the
+ * time they spent waiting, which corrects for coordinated omission.
+ *
+ * By default an embedded server is started on a random loopback port, use
+ * --port to test an already running server instead.
+ *
+ * @author Trent Houliston
+ */
+public class LoadGenerator
+{
+
+	//The highest latency we can record (one hour in nanoseconds)
+	private static final long HIGHEST_LATENCY = TimeUnit.HOURS.toNanos(1);
+	//How long we wait for outstanding replies once we have finished sending
+	private static final long DRAIN_TIME = TimeUnit.SECONDS.toNanos(5);
+	//Our configuration
+	private int connections = 100;
+	private int rate = 10000;
+	private int duration = 10;
+	private int warmup = 2;
+	private int size = 64;
+	private String format = "line";
+	private String host = null;
+	private int port = 0;
+	//Our clients
+	private Selector selector;
+	private Client[] clients;
+	//The latencies we have recorded
+	private final Histogram histogram = new Histogram(HIGHEST_LATENCY, 3);
+	//Our statistics
+	private long sent = 0;
+	private long received = 0;
+	//The time (in nanoseconds) the schedule started at and when recording started
+	private long start;
+	private long recordFrom;
+	//The padding added to each message to reach the configured size
+	private String padding;
+
+	/**
+	 * Runs the load generator
+	 *
+	 * @param args the command line arguments
+	 *
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		LoadGenerator generator = new LoadGenerator();
+		generator.parse(args);
+		generator.run(System.out);
+	}
+
+	/**
+	 * Parses the command line arguments
+	 *
+	 * @param args the command line arguments
+	 */
+	private void parse(String[] args)
+	{
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			String value = i + 1 < args.length ? args[i + 1] : null;
+
+			if ("--connections".equals(arg))
+			{
+				connections = Integer.parseInt(value);
+			}
+			else if ("--rate".equals(arg))
+			{
+				rate = Integer.parseInt(value);
+			}
+			else if ("--duration".equals(arg))
+			{
+				duration = Integer.parseInt(value);
+			}
+			else if ("--warmup".equals(arg))
+			{
+				warmup = Integer.parseInt(value);
+			}
+			else if ("--size".equals(arg))
+			{
+				size = Integer.parseInt(value);
+			}
+			else if ("--format".equals(arg))
+			{
+				format = value;
+			}
+			else if ("--host".equals(arg))
+			{
+				host = value;
+			}
+			else if ("--port".equals(arg))
+			{
+				port = Integer.parseInt(value);
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unknown argument " + arg
+												   + " (expected --connections, --rate, --duration, --warmup, --size, --format line|json, --host, --port)");
+			}
+			i++;
+		}
+
+		if (!"line".equals(format) && !"json".equals(format))
+		{
+			throw new IllegalArgumentException("The format must be either line or json");
+		}
+	}
+
+	/**
+	 * Runs the load test and prints the results
+	 *
+	 * @param out where to print the results
+	 *
+	 * @throws Exception
+	 */
+	private void run(PrintStream out) throws Exception
+	{
+		NioSocketServer server = null;
+
+		//Start our own server if we were not given one
+		if (port == 0)
+		{
+			server = startServer();
+		}
+		InetSocketAddress address = new InetSocketAddress(host == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host), port);
+
+		//Work out our padding (the timestamp and framing take roughly 24 bytes)
+		char[] pad = new char[Math.max(0, size - 24)];
+		Arrays.fill(pad, 'x');
+		padding = new String(pad);
+
+		//Connect all of our clients
+		selector = Selector.open();
+		clients = new Client[connections];
+		for (int i = 0; i < connections; i++)
+		{
+			SocketChannel channel = SocketChannel.open(address);
+			channel.configureBlocking(false);
+			clients[i] = new Client(channel);
+			clients[i].key = channel.register(selector, SelectionKey.OP_READ, clients[i]);
+		}
+
+		//Send on our schedule
+		long period = TimeUnit.SECONDS.toNanos(1) / rate;
+		long total = (long) rate * (warmup + duration);
+		long warmupMessages = (long) rate * warmup;
+		start = System.nanoTime();
+		recordFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+		long end = start + TimeUnit.SECONDS.toNanos(warmup + duration);
+		long next = 0;
+
+		while (next < total)
+		{
+			long now = System.nanoTime();
+
+			//Send every message which is due (even if we are behind)
+			while (next < total && start + next * period <= now)
+			{
+				clients[(int) (next % connections)].send(start + next * period);
+				next++;
+			}
+
+			//Handle any replies and wait until our next message is due
+			long wait = next < total ? start + next * period - System.nanoTime() : 0;
+			poll(wait);
+		}
+
+		//Wait for the outstanding replies
+		long drainUntil = System.nanoTime() + DRAIN_TIME;
+		while (received < sent - warmupSent(warmupMessages) && System.nanoTime() < drainUntil)
+		{
+			poll(TimeUnit.MILLISECONDS.toNanos(10));
+		}
+		long finish = Math.max(end, System.nanoTime());
+
+		//Print our results
+		long measured = sent - warmupSent(warmupMessages);
+		double seconds = (finish - recordFrom) / 1e9;
+		out.println("Format:      " + format + " (" + size + " bytes)");
+		out.println("Connections: " + connections);
+		out.println("Target rate: " + rate + " msg/s");
+		out.println("Sent:        " + measured);
+		out.println("Received:    " + received);
+		out.println("Lost:        " + Math.max(0, measured - received));
+		out.printf("Throughput:  %.1f msg/s%n", received / seconds);
+		out.printf("Latency (us): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f p99.99=%.1f max=%.1f%n",
+				   histogram.getValueAtPercentile(50) / 1000.0,
+				   histogram.getValueAtPercentile(90) / 1000.0,
+				   histogram.getValueAtPercentile(99) / 1000.0,
+				   histogram.getValueAtPercentile(99.9) / 1000.0,
+				   histogram.getValueAtPercentile(99.99) / 1000.0,
+				   histogram.getMaxValue() / 1000.0);
+		out.println();
+		out.println("Latency histogram (us):");
+		histogram.outputPercentileDistribution(out, 1000.0);
+
+		//Clean up
+		for (Client c : clients)
+		{
+			c.channel.close();
+		}
+		selector.close();
+		if (server != null)
+		{
+			server.shutdown();
+		}
+	}
+
+	/**
+	 * Gets how many of the sent messages were sent during the warmup
+	 *
+	 * @param warmupMessages the number of messages in the warmup
+	 *
+	 * @return the number of warmup messages which were sent
+	 */
+	private long warmupSent(long warmupMessages)
+	{
+		return Math.min(sent, warmupMessages);
+	}
+
+	/**
+	 * Handles any reads and writes which are ready, waiting up to the passed
+	 * number of nanoseconds for something to happen
+	 *
+	 * @param wait the maximum time to wait in nanoseconds
+	 *
+	 * @throws IOException
+	 */
+	private void poll(long wait) throws IOException
+	{
+		int ready;
+
+		//Only block in the selector for waits over a millisecond, otherwise park briefly
+		if (wait >= TimeUnit.MILLISECONDS.toNanos(1))
+		{
+			ready = selector.select(TimeUnit.NANOSECONDS.toMillis(wait));
+		}
+		else
+		{
+			ready = selector.selectNow();
+			if (ready == 0 && wait > 0)
+			{
+				LockSupport.parkNanos(Math.min(wait, TimeUnit.MICROSECONDS.toNanos(50)));
+			}
+		}
+
+		if (ready > 0)
+		{
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext())
+			{
+				SelectionKey key = keys.next();
+				keys.remove();
+				Client client = (Client) key.attachment();
+
+				if (key.isValid() && key.isReadable())
+				{
+					client.read();
+				}
+				if (key.isValid() && key.isWritable())
+				{
+					client.flush();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records the latency of a reply which was intended to be sent at the
+	 * passed time
+	 *
+	 * @param intended the intended send time of the message in nanoseconds
+	 *                    since the start of the schedule
+	 */
+	private void record(long intended)
+	{
+		long now = System.nanoTime();
+		intended += start;
+
+		//Only record messages which were scheduled after the warmup
+		if (intended >= recordFrom)
+		{
+			histogram.recordValue(Math.min(HIGHEST_LATENCY, Math.max(0, now - intended)));
+			received++;
+		}
+	}
+
+	/**
+	 * Starts an embedded server running the EchoService
+	 *
+	 * @return the server
+	 *
+	 * @throws Exception
+	 */
+	private NioSocketServer startServer() throws Exception
+	{
+		NioSocketServer server = new NioSocketServer();
+		server.setDaemon(true);
+		server.start();
+
+		//Use the serializer for our format
+		Map<String, String> configuration = Collections.singletonMap("charset", "utf-8");
+		NioObjectFactory<? extends NioSerializer> serializer = "json".equals(format)
+															   ? new NioObjectFactory<JsonSerializer>(JsonSerializer.class, configuration)
+															   : new NioObjectFactory<LineSerializer>(LineSerializer.class, configuration);
+
+		NioServerDefinition def = new NioServerDefinition();
+		def.setId("LOAD");
+		def.setName("Load Generator");
+		def.setSerializerFactory(serializer);
+		def.setServiceFactories(Collections.<NioServiceFactory<? extends NioService>>singletonList(new NioServiceFactory<EchoService>(EchoService.class)));
+
+		port = server.addServer(def);
+		return server;
+	}
+
+	/**
+	 * A single client connection to the server
+	 */
+	private class Client
+	{
+
+		private final SocketChannel channel;
+		private final ByteBuffer input = ByteBuffer.allocate(65536);
+		private final Queue<ByteBuffer> output = new LinkedList<ByteBuffer>();
+		private SelectionKey key;
+
+		/**
+		 * Creates a client for the passed channel
+		 *
+		 * @param channel the channel of the client
+		 */
+		private Client(SocketChannel channel)
+		{
+			this.channel = channel;
+		}
+
+		/**
+		 * Sends a message which was intended to be sent at the passed time
+		 *
+		 * @param intended the time the message was meant to be sent
+		 *
+		 * @throws IOException
+		 */
+		private void send(long intended) throws IOException
+		{
+			//The intended time is relative to the start so it is exact as a JSON double
+			long t = intended - start;
+			String message = "json".equals(format)
+							 ? "{\"t\":" + t + ",\"p\":\"" + padding + "\"}\n"
+							 : t + " " + padding + "\n";
+
+			output.add(ByteBuffer.wrap(message.getBytes(BenchmarkData.UTF8)));
+			sent++;
+			flush();
+		}
+
+		/**
+		 * Writes as much of our pending output as the socket will take, if it
+		 * will not take it all we wait for the socket to become writable
+		 *
+		 * @throws IOException
+		 */
+		private void flush() throws IOException
+		{
+			while (!output.isEmpty())
+			{
+				ByteBuffer head = output.peek();
+				channel.write(head);
+				if (head.hasRemaining())
+				{
+					break;
+				}
+				output.poll();
+			}
+
+			key.interestOps(SelectionKey.OP_READ | (output.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+		}
+
+		/**
+		 * Reads the replies from the server and records their latencies
+		 *
+		 * @throws IOException
+		 */
+		private void read() throws IOException
+		{
+			if (channel.read(input) == -1)
+			{
+				throw new IOException("The server closed the connection");
+			}
+			input.flip();
+
+			//Find each full line
+			int lineStart = input.position();
+			for (int i = input.position(); i < input.limit(); i++)
+			{
+				if (input.get(i) == '\n')
+				{
+					record(parseTime(input, lineStart, i));
+					lineStart = i + 1;
+				}
+			}
+
+			//Keep any partial line for next time
+			input.position(lineStart);
+			input.compact();
+		}
+
+		/**
+		 * Parses the intended time out of a reply line
+		 *
+		 * @param buffer the buffer containing the line
+		 * @param from   the start of the line
+		 * @param to     the end of the line
+		 *
+		 * @return the intended time of the message relative to the start
+		 */
+		private long parseTime(ByteBuffer buffer, int from, int to)
+		{
+			//Skip to the first digit
+			int i = from;
+			while (i < to && (buffer.get(i) < '0' || buffer.get(i) > '9'))
+			{
+				i++;
+			}
+
+			//Read the number (JSON may echo it back as a double such as 1.2345E7)
+			StringBuilder number = new StringBuilder();
+			while (i < to && buffer.get(i) != ' ' && buffer.get(i) != ',' && buffer.get(i) != '}')
+			{
+				number.append((char) buffer.get(i));
+				i++;
+			}
+			return (long) Double.parseDouble(number.toString());
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.benchmark;
+
+import io.niowire.benchmark.BenchmarkData.Reading;
+import io.niowire.data.NioPacket;
+import io.niowire.entities.NioObjectFactory;
+import io.niowire.serializer.JsonSerializer;
+import io.niowire.serializer.LengthPrefixedSerializer;
+import io.niowire.serializer.MessagePackCodec;
+import io.niowire.serializer.NioSerializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks MessagePack frames (a {@link LengthPrefixedSerializer} with a
+ * {@link MessagePackCodec}) against JSON lines (a {@link JsonSerializer}) in
+ * both directions on the same readings, with and without a pojoClass to bind
+ * to. The byte counter counts the encoded bytes so the sizes can be compared
+ * as well as the speed.
+ *
+ * @author Trent Houliston
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessagePackBenchmark
+{
+
+	/**
+	 * The format to use (json or msgpack)
+	 */
+	@Param(
+	{
+		"json", "msgpack"
+	})
+	public String format;
+	/**
+	 * If the data should be bound to a POJO rather than a map
+	 */
+	@Param(
+	{
+		"false", "true"
+	})
+	public boolean pojo;
+	private BenchmarkContext context;
+	private NioSerializer serializer;
+	private ByteBuffer input;
+	private ByteBuffer output;
+	private NioPacket packet;
+
+	/**
+	 * Builds our serializer and data
+	 *
+	 * @throws Exception
+	 */
+	@Setup
+	public void setup() throws Exception
+	{
+		context = new BenchmarkContext();
+
+		//Build our serializer for the format
+		Map<String, Object> config = new HashMap<String, Object>();
+		if ("json".equals(format))
+		{
+			config.put("charset", "utf-8");
+			if (pojo)
+			{
+				config.put("pojoClass", Reading.class.getName());
+			}
+			serializer = context.create(JsonSerializer.class, config);
+		}
+		else
+		{
+			Map<String, Object> codec = new HashMap<String, Object>();
+			if (pojo)
+			{
+				codec.put("pojoClass", Reading.class.getName());
+			}
+			config.put("codec", new NioObjectFactory<MessagePackCodec>(MessagePackCodec.class, codec));
+			serializer = context.create(LengthPrefixedSerializer.class, config);
+		}
+
+		//Get the same 64 readings from JSON then write them in our format
+		Map<String, Object> readingConfig = new HashMap<String, Object>();
+		readingConfig.put("charset", "utf-8");
+		readingConfig.put("pojoClass", Reading.class.getName());
+		NioSerializer json = context.create(JsonSerializer.class, readingConfig);
+		List<NioPacket> readings = json.deserialize(ByteBuffer.wrap(BenchmarkData.jsonLines(64)));
+		ByteBuffer block = ByteBuffer.allocate(65536);
+		for (NioPacket reading : readings)
+		{
+			serializer.serialize(new NioPacket("BENCHMARK", reading.getData()));
+		}
+		serializer.read(block);
+		block.flip();
+		input = block.slice();
+
+		//Deserialize a reading to get the data to serialize
+		ByteBuffer first = input.duplicate();
+		packet = new NioPacket("BENCHMARK", serializer.deserialize(first).get(0).getData());
+		output = ByteBuffer.allocate(1024);
+	}
+
+	/**
+	 * Closes our context
+	 *
+	 * @throws IOException
+	 */
+	@TearDown
+	public void teardown() throws IOException
+	{
+		context.close();
+	}
+
+	/**
+	 * Deserializes a block of 64 readings
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the packets
+	 *
+	 * @throws IOException
+	 */
+	@Benchmark
+	public List<NioPacket> deserialize(ByteCounter counter) throws IOException
+	{
+		input.rewind();
+		counter.bytes += input.remaining();
+		return serializer.deserialize(input);
+	}
+
+	/**
+	 * Serializes a reading and reads it back out of the serializer
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the number of bytes read
+	 *
+	 * @throws IOException
+	 */
+	@Benchmark
+	public int serialize(ByteCounter counter) throws IOException
+	{
+		output.clear();
+		serializer.serialize(packet);
+		int read = serializer.read(output);
+		counter.bytes += read;
+		return read;
+	}
+}
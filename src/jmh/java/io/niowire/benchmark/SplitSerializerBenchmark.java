@@ -0,0 +1,123 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.benchmark;
+
+import io.niowire.data.NioPacket;
+import io.niowire.entities.NioObjectFactory;
+import io.niowire.serializer.JsonSerializer;
+import io.niowire.serializer.LineSerializer;
+import io.niowire.serializer.SplitSerializer;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks the {@link SplitSerializer} reading JSON and writing lines in
+ * both directions, this shows the overhead of the delegation.
+ *
+ * @author Trent Houliston
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplitSerializerBenchmark
+{
+
+	private BenchmarkContext context;
+	private SplitSerializer serializer;
+	private ByteBuffer input;
+	private ByteBuffer output;
+	private NioPacket packet;
+
+	/**
+	 * Builds our serializer and data
+	 *
+	 * @throws Exception
+	 */
+	@Setup
+	public void setup() throws Exception
+	{
+		context = new BenchmarkContext();
+
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put("inputSerializer", new NioObjectFactory<JsonSerializer>(JsonSerializer.class, Collections.singletonMap("charset", "utf-8")));
+		config.put("outputSerializer", new NioObjectFactory<LineSerializer>(LineSerializer.class, Collections.singletonMap("charset", "utf-8")));
+		serializer = context.create(SplitSerializer.class, config);
+
+		//A block of 64 JSON objects
+		input = ByteBuffer.wrap(BenchmarkData.jsonLines(64));
+
+		//A single line to serialize
+		packet = new NioPacket("BENCHMARK", BenchmarkData.json(0));
+		output = ByteBuffer.allocate(1024);
+	}
+
+	/**
+	 * Closes our context
+	 *
+	 * @throws IOException
+	 */
+	@TearDown
+	public void teardown() throws IOException
+	{
+		context.close();
+	}
+
+	/**
+	 * Deserializes a block of JSON objects through the input serializer
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the packets
+	 *
+	 * @throws IOException
+	 */
+	@Benchmark
+	public List<NioPacket> deserialize(ByteCounter counter) throws IOException
+	{
+		input.rewind();
+		counter.bytes += input.remaining();
+		return serializer.deserialize(input);
+	}
+
+	/**
+	 * Serializes a line through the output serializer and reads it back out
+	 *
+	 * @param counter the byte counter
+	 *
+	 * @return the number of bytes read
+	 *
+	 * @throws IOException
+	 */
+	@Benchmark
+	public int serialize(ByteCounter counter) throws IOException
+	{
+		output.clear();
+		serializer.serialize(packet);
+		int read = serializer.read(output);
+		counter.bytes += read;
+		return read;
+	}
+}
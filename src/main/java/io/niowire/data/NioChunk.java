@@ -0,0 +1,89 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.data;
+
+/**
+ * This class is the data of a packet which holds one chunk of a frame that was
+ * too large to be buffered whole. The bytes of the chunk are the raw data of
+ * the packet (see {@link NioPacket#getRawBuffer()}) and this object describes
+ * where in the frame they came from. The chunks of a frame are sent in order
+ * with nothing from the same connection between them.
+ *
+ * @author Trent Houliston
+ */
+public final class NioChunk
+{
+
+	//The number of bytes of the frame before this chunk
+	private final long offset;
+	//If this is the first and/or the last chunk of its frame
+	private final boolean first;
+	private final boolean last;
+
+	/**
+	 * Creates a new chunk description
+	 *
+	 * @param offset the number of bytes of the frame before this chunk
+	 * @param first  if this is the first chunk of its frame
+	 * @param last   if this is the last chunk of its frame
+	 */
+	public NioChunk(long offset, boolean first, boolean last)
+	{
+		this.offset = offset;
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * Gets the number of bytes of the frame which came before this chunk
+	 *
+	 * @return the offset of this chunk in its frame
+	 */
+	public long getOffset()
+	{
+		return offset;
+	}
+
+	/**
+	 * Gets if this is the first chunk of its frame
+	 *
+	 * @return true if this chunk starts a frame
+	 */
+	public boolean isFirst()
+	{
+		return first;
+	}
+
+	/**
+	 * Gets if this is the last chunk of its frame
+	 *
+	 * @return true if this chunk ends a frame
+	 */
+	public boolean isLast()
+	{
+		return last;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString()
+	{
+		return "NioChunk{" + "offset=" + offset + ", first=" + first + ", last=" + last + '}';
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.data;
+
+/**
+ * This enum describes the primitive type of a field in a
+ * {@link NioRecordSchema}.
+ *
+ * @author Trent Houliston
+ */
+public enum NioFieldType
+{
+
+	/**
+	 * A signed byte
+	 */
+	INT8(1, false),
+	/**
+	 * An unsigned byte
+	 */
+	UINT8(1, false),
+	/**
+	 * A signed two byte integer
+	 */
+	INT16(2, false),
+	/**
+	 * An unsigned two byte integer
+	 */
+	UINT16(2, false),
+	/**
+	 * A signed four byte integer
+	 */
+	INT32(4, false),
+	/**
+	 * An unsigned four byte integer
+	 */
+	UINT32(4, false),
+	/**
+	 * A signed eight byte integer
+	 */
+	INT64(8, false),
+	/**
+	 * A four byte IEEE 754 floating point number
+	 */
+	FLOAT32(4, true),
+	/**
+	 * An eight byte IEEE 754 floating point number
+	 */
+	FLOAT64(8, true);
+	//The number of bytes in this field and if it holds a floating point number
+	private final int size;
+	private final boolean floating;
+
+	/**
+	 * Creates a new field type
+	 *
+	 * @param size     the number of bytes in the field
+	 * @param floating if the field holds a floating point number
+	 */
+	private NioFieldType(int size, boolean floating)
+	{
+		this.size = size;
+		this.floating = floating;
+	}
+
+	/**
+	 * Gets the number of bytes in a field of this type
+	 *
+	 * @return the size of the field
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets if this type holds a floating point number
+	 *
+	 * @return true for FLOAT32 and FLOAT64
+	 */
+	public boolean isFloatingPoint()
+	{
+		return floating;
+	}
+}
@@ -0,0 +1,38 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.data;
+
+/**
+ * This interface is implemented by packet data which is a view over a buffer
+ * that is reused once the packet has been dispatched (such as a
+ * {@link NioRecord} over the receive buffer). When a packet is copied with
+ * {@link NioPacket#copy()} its flyweight data is detached so the copy can be
+ * kept.
+ *
+ * @author Trent Houliston
+ */
+public interface NioFlyweight
+{
+
+	/**
+	 * Makes a copy of this data which no longer refers to the buffer it is a
+	 * view of, so it is safe to keep.
+	 *
+	 * @return a copy of this data that can be kept
+	 */
+	public Object detach();
+}
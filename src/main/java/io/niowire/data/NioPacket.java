@@ -16,6 +16,8 @@
  */
 package io.niowire.data;
 
+import java.nio.ByteBuffer;
+
 /**
  * This class represents a packet containing an object. They are used as the
  * internal communication objects between the various services. They are created
@@ -29,7 +31,7 @@ public class NioPacket implements Comparable<NioPacket>
 	/**
 	 * The time this packet was created
 	 */
-	private final long timestamp = System.currentTimeMillis();
+	private final long timestamp;
 	/**
 	 * The ID of the source of this packet (the ID given by NIO connection)
 	 */
@@ -47,6 +49,17 @@ public class NioPacket implements Comparable<NioPacket>
 	 * The raw data (or null if there isn't any)
 	 */
 	private byte[] rawData;
+	/**
+	 * The raw data as a read only slice of the receive buffer (or null if the
+	 * raw data is not a slice), it is only valid while the packet is being
+	 * dispatched to the services
+	 */
+	private final ByteBuffer rawBuffer;
+	/**
+	 * If this packet has been released after being dispatched, once it has
+	 * been its raw buffer may have been overwritten
+	 */
+	private boolean released = false;
 
 	/**
 	 * This constructs a new packet which can have raw data (and optionally use
@@ -60,11 +73,52 @@ public class NioPacket implements Comparable<NioPacket>
 	 * @param rawData the raw data bytes in this packet
 	 */
 	public NioPacket(String uid, Object data, boolean raw, byte[] rawData)
+	{
+		this(uid, data, raw, rawData, System.currentTimeMillis());
+	}
+
+	/**
+	 * This constructs a new packet which can have raw data (and optionally use
+	 * it) with the passed timestamp (rather than reading the system clock)
+	 *
+	 * @param uid       the unique identifier for the NioConnection which made
+	 *                     this object
+	 * @param data      the serialized object
+	 * @param raw       if the packet should have its raw data used instead of
+	 *                     its object in serialization
+	 * @param rawData   the raw data bytes in this packet
+	 * @param timestamp the time this packet was created in milliseconds
+	 */
+	public NioPacket(String uid, Object data, boolean raw, byte[] rawData, long timestamp)
 	{
 		this.data = data;
 		this.source = uid;
 		this.raw = raw;
 		this.rawData = rawData;
+		this.rawBuffer = null;
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * This constructs a new raw packet whose raw data is a slice of the buffer
+	 * it was received in rather than a copy. The slice is only valid while the
+	 * packet is being dispatched to the services, so the packet must be copied
+	 * if it is kept.
+	 *
+	 * @param uid       the unique identifier for the NioConnection which made
+	 *                     this object
+	 * @param data      the serialized object
+	 * @param rawBuffer a read only slice holding the raw data of this packet
+	 * @param timestamp the time this packet was created in milliseconds
+	 */
+	public NioPacket(String uid, Object data, ByteBuffer rawBuffer, long timestamp)
+	{
+		this.data = data;
+		this.source = uid;
+		this.raw = true;
+		this.rawData = null;
+		this.rawBuffer = rawBuffer;
+		this.timestamp = timestamp;
 	}
 
 	/**
@@ -77,9 +131,22 @@ public class NioPacket implements Comparable<NioPacket>
 	 */
 	public NioPacket(String uid, Object data)
 	{
-		this.data = data;
-		this.source = uid;
-		this.raw = false;
+		this(uid, data, System.currentTimeMillis());
+	}
+
+	/**
+	 * Construct a new NioPacket containing this data from the source (the UID
+	 * of the connection) with the passed timestamp (rather than reading the
+	 * system clock)
+	 *
+	 * @param uid       the unique identifier for the NioConnection which made
+	 *                     this object
+	 * @param data      the Object which this packet contains
+	 * @param timestamp the time this packet was created in milliseconds
+	 */
+	public NioPacket(String uid, Object data, long timestamp)
+	{
+		this(uid, data, false, null, timestamp);
 	}
 
 	/**
@@ -141,15 +208,115 @@ public class NioPacket implements Comparable<NioPacket>
 	}
 
 	/**
-	 * The raw data attached to this packet (or null if there is no raw data)
+	 * The raw data attached to this packet (or null if there is no raw data).
+	 * If the raw data is a slice of the receive buffer it is copied the first
+	 * time this is called, which must be while the packet is being dispatched.
 	 *
 	 * @return the raw data attached to this packet (or null if there is none)
+	 *
+	 * @throws IllegalStateException if the raw data is a slice which has not
+	 *                               been copied and the packet has finished
+	 *                               being dispatched
 	 */
 	public byte[] getRawData()
 	{
+		//Copy our slice out the first time our raw data is needed as an array
+		if (rawData == null && rawBuffer != null)
+		{
+			checkSlice();
+			rawData = new byte[rawBuffer.remaining()];
+			rawBuffer.duplicate().get(rawData);
+		}
 		return rawData;
 	}
 
+	/**
+	 * The raw data attached to this packet as a read only buffer (or null if
+	 * there is no raw data). If the raw data is a slice of the receive buffer
+	 * then it is returned without copying, and is only valid while the packet
+	 * is being dispatched.
+	 *
+	 * @return a read only buffer of the raw data (or null if there is none)
+	 *
+	 * @throws IllegalStateException if the raw data is a slice and the packet
+	 *                               has finished being dispatched
+	 */
+	public ByteBuffer getRawBuffer()
+	{
+		if (rawBuffer != null)
+		{
+			checkSlice();
+			return rawBuffer.duplicate();
+		}
+		else
+		{
+			return rawData == null ? null : ByteBuffer.wrap(rawData).asReadOnlyBuffer();
+		}
+	}
+
+	/**
+	 * Gets if the raw data of this packet is a slice of the receive buffer,
+	 * such packets are only valid while they are being dispatched and must be
+	 * copied if they are kept.
+	 *
+	 * @return if the raw data is a slice of the receive buffer
+	 */
+	public boolean hasRawBuffer()
+	{
+		return rawBuffer != null;
+	}
+
+	/**
+	 * Gets a copy of this packet which can be kept after the service it was
+	 * sent to returns. Normal packets can never change so they are their own
+	 * copy, but pooled packets are reused once they are released and raw
+	 * buffers and {@link NioFlyweight} data are overwritten by the next read,
+	 * so services which keep a packet (or pass it to another thread) must keep
+	 * a copy.
+	 *
+	 * @return a packet which is safe to keep
+	 */
+	public NioPacket copy()
+	{
+		return rawBuffer == null && !(data instanceof NioFlyweight) ? this : new NioPacket(getSource(), detach(getData()), isRaw(), getRawData(), getTimestamp());
+	}
+
+	/**
+	 * Detaches the passed data from its buffer if it is a flyweight
+	 *
+	 * @param data the data of a packet
+	 *
+	 * @return the data, or a detached copy of it if it was a flyweight
+	 */
+	static Object detach(Object data)
+	{
+		return data instanceof NioFlyweight ? ((NioFlyweight) data).detach() : data;
+	}
+
+	/**
+	 * Releases this packet once every service has seen it, if it came from a
+	 * {@link NioPacketPool} it is returned to the pool to be reused. Normal
+	 * packets keep their data, but a slice of the receive buffer can no
+	 * longer be used as it may be overwritten by the next read.
+	 */
+	public void release()
+	{
+		released = true;
+	}
+
+	/**
+	 * Checks that our raw buffer slice can still be read
+	 *
+	 * @throws IllegalStateException if we have been released
+	 */
+	private void checkSlice()
+	{
+		if (released)
+		{
+			throw new IllegalStateException("The raw data of a packet was used after it was dispatched, it was a slice of the receive buffer so copy() the packet to keep it");
+		}
+	}
+
 	/**
 	 * Generates a HashCode for this object based on the data contained in it.
 	 *
@@ -160,9 +327,9 @@ public class NioPacket implements Comparable<NioPacket>
 	{
 		//Build our hashcode
 		int hash = 7;
-		hash = 97 * hash + (int) (this.timestamp ^ (this.timestamp >>> 32));
-		hash = 97 * hash + (this.source != null ? this.source.hashCode() : 0);
-		hash = 97 * hash + (this.data != null ? this.data.hashCode() : 0);
+		hash = 97 * hash + (int) (this.getTimestamp() ^ (this.getTimestamp() >>> 32));
+		hash = 97 * hash + (this.getSource() != null ? this.getSource().hashCode() : 0);
+		hash = 97 * hash + (this.getData() != null ? this.getData().hashCode() : 0);
 
 		//Return our hashcode
 		return hash;
@@ -192,15 +359,15 @@ public class NioPacket implements Comparable<NioPacket>
 		final NioPacket other = (NioPacket) obj;
 
 		//Check the member variables
-		if (this.timestamp != other.timestamp)
+		if (this.getTimestamp() != other.getTimestamp())
 		{
 			return false;
 		}
-		if ((this.source == null) ? (other.source != null) : !this.source.equals(other.source))
+		if ((this.getSource() == null) ? (other.getSource() != null) : !this.getSource().equals(other.getSource()))
 		{
 			return false;
 		}
-		if (this.data != other.data && (this.data == null || !this.data.equals(other.data)))
+		if (this.getData() != other.getData() && (this.getData() == null || !this.getData().equals(other.getData())))
 		{
 			return false;
 		}
@@ -218,6 +385,6 @@ public class NioPacket implements Comparable<NioPacket>
 	public String toString()
 	{
 		//Build our string
-		return "NioPacket{" + "timestamp=" + timestamp + ", source=" + source + ", data=" + data + '}';
+		return "NioPacket{" + "timestamp=" + getTimestamp() + ", source=" + getSource() + ", data=" + getData() + '}';
 	}
 }
@@ -0,0 +1,346 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is a pool of reusable packets. It is used by serializers which
+ * are configured to be pooled so that deserializing a message does not need to
+ * allocate a new packet, the connection releases each packet back into the
+ * pool once every service has seen it. Pools are not thread safe, each
+ * connection has its own which is only used from its selector thread.
+ *
+ * In debug mode (set with the {@value #DEBUG_PROPERTY} system property)
+ * released packets are never reused, and any use of a packet after it has been
+ * released throws an IllegalStateException.
+ *
+ * @author Trent Houliston
+ */
+public final class NioPacketPool
+{
+
+	/**
+	 * The system property which turns on debug mode for new pools
+	 */
+	public static final String DEBUG_PROPERTY = "niowire.packets.debug";
+	/**
+	 * The default number of released packets a pool will hold
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+	//The released packets ready to be reused
+	private final PooledPacket[] free;
+	private int size = 0;
+	//If we are guarding against packets being used after release
+	private final boolean debug;
+
+	/**
+	 * Creates a new pool with the default capacity, which is in debug mode if
+	 * the {@value #DEBUG_PROPERTY} system property is true
+	 */
+	public NioPacketPool()
+	{
+		this(DEFAULT_CAPACITY, Boolean.getBoolean(DEBUG_PROPERTY));
+	}
+
+	/**
+	 * Creates a new pool
+	 *
+	 * @param capacity the maximum number of released packets to keep
+	 * @param debug    if released packets should be guarded against reuse
+	 */
+	public NioPacketPool(int capacity, boolean debug)
+	{
+		this.free = new PooledPacket[capacity];
+		this.debug = debug;
+	}
+
+	/**
+	 * Gets a packet from the pool (or a new one if the pool is empty) holding
+	 * the passed values. It must be released once it has been used.
+	 *
+	 * @param uid       the unique identifier for the NioConnection which made
+	 *                     this object
+	 * @param data      the Object which this packet contains
+	 * @param raw       if the packet should have its raw data used instead of
+	 *                     its object in serialization
+	 * @param rawData   the raw data bytes in this packet
+	 * @param timestamp the time this packet was created in milliseconds
+	 *
+	 * @return a packet holding the passed values
+	 */
+	public NioPacket acquire(String uid, Object data, boolean raw, byte[] rawData, long timestamp)
+	{
+		//Fill a packet with our values
+		PooledPacket packet = take();
+		packet.source = uid;
+		packet.data = data;
+		packet.raw = raw;
+		packet.rawData = rawData;
+		packet.timestamp = timestamp;
+		return packet;
+	}
+
+	/**
+	 * Gets a raw packet from the pool (or a new one if the pool is empty)
+	 * whose raw data is a slice of the buffer it was received in. It must be
+	 * released once it has been used.
+	 *
+	 * @param uid       the unique identifier for the NioConnection which made
+	 *                     this object
+	 * @param data      the Object which this packet contains
+	 * @param rawBuffer a read only slice holding the raw data of this packet
+	 * @param timestamp the time this packet was created in milliseconds
+	 *
+	 * @return a packet holding the passed values
+	 */
+	public NioPacket acquire(String uid, Object data, ByteBuffer rawBuffer, long timestamp)
+	{
+		//Fill a packet with our values
+		PooledPacket packet = take();
+		packet.source = uid;
+		packet.data = data;
+		packet.raw = true;
+		packet.rawBuffer = rawBuffer;
+		packet.timestamp = timestamp;
+		return packet;
+	}
+
+	/**
+	 * Takes a released packet from the pool, or makes a new one if the pool is
+	 * empty
+	 *
+	 * @return an empty packet which is no longer released
+	 */
+	private PooledPacket take()
+	{
+		//Reuse a released packet if we have one
+		PooledPacket packet;
+		if (size > 0)
+		{
+			packet = free[--size];
+			free[size] = null;
+		}
+		else
+		{
+			packet = new PooledPacket(this);
+		}
+		packet.released = false;
+		return packet;
+	}
+
+	/**
+	 * Gets if this pool guards against packets being used after release
+	 *
+	 * @return if this pool is in debug mode
+	 */
+	public boolean isDebug()
+	{
+		return debug;
+	}
+
+	/**
+	 * Gets the number of released packets waiting to be reused
+	 *
+	 * @return the number of packets in the pool
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Takes a released packet back into the pool
+	 *
+	 * @param packet the packet which was released
+	 */
+	private void recycle(PooledPacket packet)
+	{
+		//In debug mode we never reuse packets so stale references always fail
+		if (!debug && size < free.length)
+		{
+			free[size++] = packet;
+		}
+	}
+
+	/**
+	 * This is a packet which is reused by its pool once it is released
+	 */
+	private static final class PooledPacket extends NioPacket
+	{
+
+		private final NioPacketPool pool;
+		private String source;
+		private Object data;
+		private boolean raw;
+		private byte[] rawData;
+		private ByteBuffer rawBuffer;
+		private long timestamp;
+		private boolean released = true;
+
+		/**
+		 * Creates a new empty pooled packet
+		 *
+		 * @param pool the pool it belongs to
+		 */
+		private PooledPacket(NioPacketPool pool)
+		{
+			super(null, null, false, null, 0);
+			this.pool = pool;
+		}
+
+		/**
+		 * Checks that this packet has not been released (in debug mode)
+		 */
+		private void check()
+		{
+			if (released && pool.debug)
+			{
+				throw new IllegalStateException("A pooled packet was used after it had been released");
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String getSource()
+		{
+			check();
+			return source;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Object getData()
+		{
+			check();
+			return data;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long getTimestamp()
+		{
+			check();
+			return timestamp;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean isRaw()
+		{
+			check();
+			return raw;
+		}
+
+		/**
+		 * Checks that this packet has not been released before its raw data
+		 * is used, its slice of the receive buffer may have been overwritten
+		 * so this is checked even when not in debug mode
+		 */
+		private void checkRaw()
+		{
+			if (released)
+			{
+				throw new IllegalStateException("The raw data of a pooled packet was used after it had been released, copy() the packet to keep it");
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public byte[] getRawData()
+		{
+			checkRaw();
+
+			//Copy our slice out the first time our raw data is needed as an array
+			if (rawData == null && rawBuffer != null)
+			{
+				rawData = new byte[rawBuffer.remaining()];
+				rawBuffer.duplicate().get(rawData);
+			}
+			return rawData;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ByteBuffer getRawBuffer()
+		{
+			checkRaw();
+			if (rawBuffer != null)
+			{
+				return rawBuffer.duplicate();
+			}
+			else
+			{
+				return rawData == null ? null : ByteBuffer.wrap(rawData).asReadOnlyBuffer();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean hasRawBuffer()
+		{
+			check();
+			return rawBuffer != null;
+		}
+
+		/**
+		 * Copies this packet into a normal packet which is not pooled
+		 *
+		 * @return a copy of this packet
+		 */
+		@Override
+		public NioPacket copy()
+		{
+			check();
+			return new NioPacket(source, NioPacket.detach(data), raw, getRawData(), timestamp);
+		}
+
+		/**
+		 * Clears this packet and returns it to its pool
+		 */
+		@Override
+		public void release()
+		{
+			check();
+
+			//Only release once, and don't hold on to the data while we wait
+			if (!released)
+			{
+				released = true;
+				source = null;
+				data = null;
+				rawData = null;
+				rawBuffer = null;
+				pool.recycle(this);
+			}
+		}
+	}
+}
@@ -0,0 +1,350 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.data;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class is a flyweight view of one fixed size record described by a
+ * {@link NioRecordSchema}. It reads its fields straight out of the buffer it
+ * wraps at their offsets, so reading a record does not copy it or allocate
+ * anything. Fields can be accessed by name, or faster by their index in the
+ * schema (see {@link NioRecordSchema#indexOf(String)}).
+ *
+ * Records handed to a service by a serializer are views over its receive
+ * buffer and are only valid until the service returns, records that need to
+ * be kept must be {@link #detach() detached} (which
+ * {@link NioPacket#copy()} does).
+ *
+ * @author Trent Houliston
+ */
+public final class NioRecord implements NioFlyweight
+{
+
+	//Our schema
+	private final NioRecordSchema schema;
+	//The buffer we are a view of and where in it our record starts
+	private ByteBuffer buffer;
+	private int base;
+
+	/**
+	 * Creates a new record view for the passed schema, it must be wrapped
+	 * around a buffer before it is used.
+	 *
+	 * @param schema the schema of the record
+	 */
+	public NioRecord(NioRecordSchema schema)
+	{
+		this.schema = schema;
+	}
+
+	/**
+	 * Points this view at a record in a buffer, the buffer must be in the byte
+	 * order of the schema.
+	 *
+	 * @param buffer the buffer holding the record
+	 * @param offset the absolute index in the buffer where the record starts
+	 *
+	 * @return this record
+	 *
+	 * @throws IllegalArgumentException if the buffer is in the wrong byte
+	 *                                     order
+	 */
+	public NioRecord wrap(ByteBuffer buffer, int offset) throws IllegalArgumentException
+	{
+		if (buffer.order() != schema.getByteOrder())
+		{
+			throw new IllegalArgumentException("The buffer is not in the byte order of the schema");
+		}
+		this.buffer = buffer;
+		this.base = offset;
+		return this;
+	}
+
+	/**
+	 * Gets the schema of this record
+	 *
+	 * @return the schema
+	 */
+	public NioRecordSchema getSchema()
+	{
+		return schema;
+	}
+
+	/**
+	 * Reads a field as a long, floating point fields are truncated
+	 *
+	 * @param field the index of the field
+	 *
+	 * @return the value of the field
+	 */
+	public long getLong(int field)
+	{
+		int at = base + schema.getOffset(field);
+		switch (schema.getType(field))
+		{
+			case INT8:
+				return buffer.get(at);
+			case UINT8:
+				return buffer.get(at) & 0xFF;
+			case INT16:
+				return buffer.getShort(at);
+			case UINT16:
+				return buffer.getShort(at) & 0xFFFF;
+			case INT32:
+				return buffer.getInt(at);
+			case UINT32:
+				return buffer.getInt(at) & 0xFFFFFFFFL;
+			case INT64:
+				return buffer.getLong(at);
+			case FLOAT32:
+				return (long) buffer.getFloat(at);
+			default:
+				return (long) buffer.getDouble(at);
+		}
+	}
+
+	/**
+	 * Reads a field as a long, floating point fields are truncated
+	 *
+	 * @param name the name of the field
+	 *
+	 * @return the value of the field
+	 */
+	public long getLong(String name)
+	{
+		return getLong(field(name));
+	}
+
+	/**
+	 * Reads a field as an int, fields wider than an int are truncated
+	 *
+	 * @param field the index of the field
+	 *
+	 * @return the value of the field
+	 */
+	public int getInt(int field)
+	{
+		return (int) getLong(field);
+	}
+
+	/**
+	 * Reads a field as an int, fields wider than an int are truncated
+	 *
+	 * @param name the name of the field
+	 *
+	 * @return the value of the field
+	 */
+	public int getInt(String name)
+	{
+		return getInt(field(name));
+	}
+
+	/**
+	 * Reads a field as a double
+	 *
+	 * @param field the index of the field
+	 *
+	 * @return the value of the field
+	 */
+	public double getDouble(int field)
+	{
+		switch (schema.getType(field))
+		{
+			case FLOAT32:
+				return buffer.getFloat(base + schema.getOffset(field));
+			case FLOAT64:
+				return buffer.getDouble(base + schema.getOffset(field));
+			default:
+				return getLong(field);
+		}
+	}
+
+	/**
+	 * Reads a field as a double
+	 *
+	 * @param name the name of the field
+	 *
+	 * @return the value of the field
+	 */
+	public double getDouble(String name)
+	{
+		return getDouble(field(name));
+	}
+
+	/**
+	 * Writes a field from a long, values wider than the field are truncated
+	 *
+	 * @param field the index of the field
+	 * @param value the value to write
+	 *
+	 * @return this record
+	 */
+	public NioRecord setLong(int field, long value)
+	{
+		int at = base + schema.getOffset(field);
+		switch (schema.getType(field))
+		{
+			case INT8:
+			case UINT8:
+				buffer.put(at, (byte) value);
+				break;
+			case INT16:
+			case UINT16:
+				buffer.putShort(at, (short) value);
+				break;
+			case INT32:
+			case UINT32:
+				buffer.putInt(at, (int) value);
+				break;
+			case INT64:
+				buffer.putLong(at, value);
+				break;
+			case FLOAT32:
+				buffer.putFloat(at, value);
+				break;
+			default:
+				buffer.putDouble(at, value);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes a field from a long, values wider than the field are truncated
+	 *
+	 * @param name  the name of the field
+	 * @param value the value to write
+	 *
+	 * @return this record
+	 */
+	public NioRecord setLong(String name, long value)
+	{
+		return setLong(field(name), value);
+	}
+
+	/**
+	 * Writes a field from a double, integer fields are given the truncated
+	 * value
+	 *
+	 * @param field the index of the field
+	 * @param value the value to write
+	 *
+	 * @return this record
+	 */
+	public NioRecord setDouble(int field, double value)
+	{
+		switch (schema.getType(field))
+		{
+			case FLOAT32:
+				buffer.putFloat(base + schema.getOffset(field), (float) value);
+				break;
+			case FLOAT64:
+				buffer.putDouble(base + schema.getOffset(field), value);
+				break;
+			default:
+				setLong(field, (long) value);
+		}
+		return this;
+	}
+
+	/**
+	 * Writes a field from a double, integer fields are given the truncated
+	 * value
+	 *
+	 * @param name  the name of the field
+	 * @param value the value to write
+	 *
+	 * @return this record
+	 */
+	public NioRecord setDouble(String name, double value)
+	{
+		return setDouble(field(name), value);
+	}
+
+	/**
+	 * Copies the bytes of this record into the passed buffer at its position
+	 *
+	 * @param target the buffer to copy into
+	 */
+	public void copyTo(ByteBuffer target)
+	{
+		int size = schema.getSize();
+		for (int i = 0; i < size; i++)
+		{
+			target.put(buffer.get(base + i));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * The detached record has its own copy of the bytes.
+	 */
+	@Override
+	public NioRecord detach()
+	{
+		NioRecord copy = schema.newRecord();
+		copyTo(copy.buffer);
+		copy.buffer.clear();
+		return copy;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder("{");
+		for (int i = 0; i < schema.getFieldCount(); i++)
+		{
+			if (i > 0)
+			{
+				sb.append(", ");
+			}
+			sb.append(schema.getName(i)).append('=');
+			if (schema.getType(i).isFloatingPoint())
+			{
+				sb.append(getDouble(i));
+			}
+			else
+			{
+				sb.append(getLong(i));
+			}
+		}
+		return sb.append('}').toString();
+	}
+
+	/**
+	 * Gets the index of a named field
+	 *
+	 * @param name the name of the field
+	 *
+	 * @return the index of the field
+	 *
+	 * @throws IllegalArgumentException if there is no such field
+	 */
+	private int field(String name) throws IllegalArgumentException
+	{
+		int index = schema.indexOf(name);
+		if (index < 0)
+		{
+			throw new IllegalArgumentException("The record has no field " + name);
+		}
+		return index;
+	}
+}
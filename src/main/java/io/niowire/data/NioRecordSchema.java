@@ -0,0 +1,206 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This class describes the layout of a fixed size binary record, the name,
+ * {@link NioFieldType} and offset of each of its fields, its total size and
+ * its byte order. Records are read and written through {@link NioRecord}
+ * views.
+ *
+ * A schema is built from a list of field definitions (as they appear in a
+ * server definition), each of which is a map with a "name", a "type" (the name
+ * of a {@link NioFieldType}) and optionally an "offset". Fields without an
+ * offset start straight after the field before them.
+ *
+ * @author Trent Houliston
+ */
+public final class NioRecordSchema
+{
+
+	//Our fields
+	private final String[] names;
+	private final NioFieldType[] types;
+	private final int[] offsets;
+	private final Map<String, Integer> indexes;
+	//The size of each record and its byte order
+	private final int size;
+	private final ByteOrder order;
+
+	/**
+	 * Builds a schema from a list of field definitions.
+	 *
+	 * @param fields     the field definitions
+	 * @param recordSize the size of each record, or null for it to end after
+	 *                      its last field
+	 * @param order      the byte order of the record
+	 *
+	 * @throws IllegalArgumentException if the fields are invalid or do not fit
+	 *                                     in the record size
+	 */
+	public NioRecordSchema(List<? extends Map<String, ?>> fields, Integer recordSize, ByteOrder order) throws IllegalArgumentException
+	{
+		int count = fields.size();
+		this.names = new String[count];
+		this.types = new NioFieldType[count];
+		this.offsets = new int[count];
+		this.indexes = new HashMap<String, Integer>(count * 2);
+		this.order = order;
+
+		//Read each of our fields, placing them after the last one unless they have an offset
+		int end = 0;
+		for (int i = 0; i < count; i++)
+		{
+			Map<String, ?> field = fields.get(i);
+			Object name = field.get("name");
+			Object type = field.get("type");
+			Object offset = field.get("offset");
+
+			if (name == null || type == null)
+			{
+				throw new IllegalArgumentException("Record fields must have a name and a type");
+			}
+			if (indexes.put(name.toString(), i) != null)
+			{
+				throw new IllegalArgumentException("The record field " + name + " was declared twice");
+			}
+			names[i] = name.toString();
+			types[i] = NioFieldType.valueOf(type.toString().toUpperCase(Locale.ENGLISH));
+			offsets[i] = offset == null ? end : ((Number) offset).intValue();
+
+			if (offsets[i] < 0)
+			{
+				throw new IllegalArgumentException("The record field " + name + " has a negative offset");
+			}
+			end = offsets[i] + types[i].getSize();
+		}
+
+		//Our size must hold every field
+		int needed = 0;
+		for (int i = 0; i < count; i++)
+		{
+			needed = Math.max(needed, offsets[i] + types[i].getSize());
+		}
+		if (recordSize != null && recordSize < needed)
+		{
+			throw new IllegalArgumentException("The record size " + recordSize + " is too small for its fields which need " + needed);
+		}
+		this.size = recordSize == null ? needed : recordSize;
+		if (size == 0)
+		{
+			throw new IllegalArgumentException("Records must not be empty");
+		}
+	}
+
+	/**
+	 * Gets the size of each record in bytes
+	 *
+	 * @return the size of a record
+	 */
+	public int getSize()
+	{
+		return size;
+	}
+
+	/**
+	 * Gets the byte order of the fields
+	 *
+	 * @return the byte order
+	 */
+	public ByteOrder getByteOrder()
+	{
+		return order;
+	}
+
+	/**
+	 * Gets the number of fields in each record
+	 *
+	 * @return the number of fields
+	 */
+	public int getFieldCount()
+	{
+		return names.length;
+	}
+
+	/**
+	 * Gets the index of the named field, which can be used to read it without
+	 * looking up its name
+	 *
+	 * @param name the name of the field
+	 *
+	 * @return the index of the field, or -1 if there is no such field
+	 */
+	public int indexOf(String name)
+	{
+		Integer index = indexes.get(name);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Gets the name of a field
+	 *
+	 * @param field the index of the field
+	 *
+	 * @return the name of the field
+	 */
+	public String getName(int field)
+	{
+		return names[field];
+	}
+
+	/**
+	 * Gets the type of a field
+	 *
+	 * @param field the index of the field
+	 *
+	 * @return the type of the field
+	 */
+	public NioFieldType getType(int field)
+	{
+		return types[field];
+	}
+
+	/**
+	 * Gets the offset of a field from the start of the record
+	 *
+	 * @param field the index of the field
+	 *
+	 * @return the offset of the field in bytes
+	 */
+	public int getOffset(int field)
+	{
+		return offsets[field];
+	}
+
+	/**
+	 * Makes a new empty record of this schema over its own buffer, it can be
+	 * filled in and sent as the data of a packet.
+	 *
+	 * @return a new record
+	 */
+	public NioRecord newRecord()
+	{
+		return new NioRecord(this).wrap(ByteBuffer.allocate(size).order(order), 0);
+	}
+}
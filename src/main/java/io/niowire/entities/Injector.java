@@ -139,6 +139,23 @@ public class Injector<T>
 		}
 	}
 
+	/**
+	 * Gets the values this injector injects from its configuration, by the
+	 * name they were configured with and converted to the type of their field
+	 *
+	 * @return the configured values by name
+	 */
+	public Map<String, Object> getValues()
+	{
+		Map<String, Object> values = new HashMap<String, Object>(fields.size() * 2);
+		for (Entry<Field, ? extends Object> entry : fields.entrySet())
+		{
+			Named name = entry.getKey().getAnnotation(Named.class);
+			values.put((name == null || name.value().isEmpty()) ? entry.getKey().getName() : name.value(), entry.getValue());
+		}
+		return values;
+	}
+
 	/**
 	 * Checks if the passed object has all of it's injectable fields equal to
 	 * this injector
@@ -17,14 +17,25 @@
 package io.niowire.entities;
 
 import com.google.gson.annotations.SerializedName;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * This class is used to create NioObjects using reflection from a Class Name
  * and a configuration. It will use these to construct and configure the class
  * before returning it.
  *
+ * Each factory also holds a map of objects which are shared between everything
+ * it creates (such as caches which are expensive to build). This is injected
+ * into the created objects as "shared", objects which want it can use an
+ * {@link javax.inject.Inject} field with that name.
+ *
  * @param <T> the type of object that this factory returns
  *
  * @author Trent Houliston
@@ -37,6 +48,16 @@ public class NioObjectFactory<T>
 	private Map<String, Object> configuration;
 	private Class<T> clazz;
 	private Injector<T> injector;
+	//The objects shared between everything this factory creates
+	private transient ConcurrentMap<String, Object> shared;
+
+	/**
+	 * This constructs an empty factory, it is used by subclasses which make
+	 * their objects some other way
+	 */
+	protected NioObjectFactory()
+	{
+	}
 
 	/**
 	 * This constructs a new Object Factory using the passed className
@@ -144,8 +165,12 @@ public class NioObjectFactory<T>
 			//Create a class object from our class name
 			T obj = clazz.newInstance();
 
+			//Add our shared objects to the injections
+			Map<String, Object> all = new HashMap<String, Object>(injections);
+			all.put("shared", getShared());
+
 			//Inject
-			injector.inject(obj, injections);
+			injector.inject(obj, all);
 
 			//Return the object
 			return obj;
@@ -161,6 +186,78 @@ public class NioObjectFactory<T>
 		}
 	}
 
+	/**
+	 * This method warms up this factory by running the static {@link Warm}
+	 * methods of its class (and superclasses) with the values it injects and
+	 * its shared objects, which build anything the objects it creates share.
+	 * It is used so that the first real object created does not have to pay
+	 * for this. No object is created, so a class without a warm method is not
+	 * touched.
+	 *
+	 * @throws NioObjectCreationException if a warm method failed
+	 */
+	public void warm() throws NioObjectCreationException
+	{
+		try
+		{
+			//If we were made via gson then we need to set ourselves up
+			if (clazz == null)
+			{
+				@SuppressWarnings("unchecked")
+				Class<T> newClass = (Class<T>) Class.forName(className);
+				clazz = newClass;
+				injector = new Injector<T>(clazz, configuration);
+			}
+
+			//Run each of the static warm methods in our class chain
+			for (Class<?> c = clazz; c != null; c = c.getSuperclass())
+			{
+				for (Method m : c.getDeclaredMethods())
+				{
+					if (m.getAnnotation(Warm.class) != null)
+					{
+						if (!Modifier.isStatic(m.getModifiers()) || m.getParameterTypes().length != 2)
+						{
+							throw new UnsupportedOperationException("Warm methods must be static and take the configured values and shared objects");
+						}
+						m.setAccessible(true);
+						m.invoke(null, injector.getValues(), getShared());
+					}
+				}
+			}
+		}
+		//If it was an invocation exception use its cause (probably more useful)
+		catch (InvocationTargetException ex)
+		{
+			throw new NioObjectCreationException(ex.getCause());
+		}
+		//Explicitly catch the runtime exception, we want to catch everything
+		catch (RuntimeException ex)
+		{
+			throw new NioObjectCreationException(ex);
+		}
+		catch (Exception ex)
+		{
+			throw new NioObjectCreationException(ex);
+		}
+	}
+
+	/**
+	 * Gets the map of objects which are shared between everything this
+	 * factory creates. It is safe to use from multiple threads.
+	 *
+	 * @return the shared objects
+	 */
+	public synchronized ConcurrentMap<String, Object> getShared()
+	{
+		//We may have been made by gson without running our constructor
+		if (shared == null)
+		{
+			shared = new ConcurrentHashMap<String, Object>();
+		}
+		return shared;
+	}
+
 	/**
 	 * Checks if the passed object is an instance which would be created by this
 	 * factory (both the type and the configuration)
@@ -174,4 +271,5 @@ public class NioObjectFactory<T>
 	{
 		return injector.isSame(obj);
 	}
+
 }
@@ -0,0 +1,133 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.inspection;
+
+import io.niowire.data.NioPacket;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This adapter allows a per packet {@link NioInspector} to be used where a
+ * {@link NioBatchInspector} is expected. Each packet of the batch is inspected
+ * individually in order, packets which the inspector filters (returns null for)
+ * are removed from the batch.
+ *
+ * @author Trent Houliston
+ */
+public class BatchInspectorAdapter implements NioBatchInspector
+{
+
+	//The inspector we are adapting
+	private final NioInspector inspector;
+
+	/**
+	 * Creates a new adapter for the passed inspector
+	 *
+	 * @param inspector the inspector to adapt
+	 */
+	public BatchInspectorAdapter(NioInspector inspector)
+	{
+		this.inspector = inspector;
+	}
+
+	/**
+	 * Inspects each of the packets in the batch using the wrapped inspector. If
+	 * the inspector does not change or filter any packets then the passed list
+	 * is returned, otherwise a new list is built.
+	 *
+	 * @param packets the packets to inspect
+	 *
+	 * @return the inspected packets
+	 *
+	 * @throws IOException                if the channel is closed
+	 * @throws NioAuthenticationException if any packet failed authentication
+	 */
+	@Override
+	public List<NioPacket> inspect(List<NioPacket> packets) throws IOException, NioAuthenticationException
+	{
+		List<NioPacket> result = packets;
+		int i = 0;
+
+		for (NioPacket packet : packets)
+		{
+			NioPacket p = inspector.inspect(packet);
+
+			//If this packet was changed then start our own list (containing the unchanged packets so far)
+			if (p != packet && result == packets)
+			{
+				result = new ArrayList<NioPacket>(packets.size());
+				result.addAll(packets.subList(0, i));
+			}
+
+			//Add the packet if we have our own list and it was not filtered
+			if (result != packets && p != null)
+			{
+				result.add(p);
+			}
+			i++;
+		}
+
+		return result;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public NioPacket inspect(NioPacket packet) throws IOException, NioAuthenticationException
+	{
+		return inspector.inspect(packet);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getUid()
+	{
+		return inspector.getUid();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean timeout()
+	{
+		return inspector.timeout();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		inspector.close();
+	}
+
+	/**
+	 * Gets the inspector that this adapter is wrapping
+	 *
+	 * @return the wrapped inspector
+	 */
+	public NioInspector getInspector()
+	{
+		return inspector;
+	}
+}
@@ -0,0 +1,186 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.inspection;
+
+import io.niowire.data.NioPacket;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This inspector runs an ordered chain of inspectors (such as authentication,
+ * rate limiting and validation) so that they do not need to be written as one
+ * monolithic inspector. Each packet is passed through the stages in order, a
+ * stage can replace the packet (the replacement is passed to the next stage),
+ * drop it by returning null (the rest of the chain is skipped) or close the
+ * connection by throwing a {@link NioAuthenticationException}.
+ *
+ * The chain is built once per connection, per packet stages are adapted to
+ * batch stages when the chain is made so each batch is only passed through an
+ * array of stages.
+ *
+ * The chain times out when any of its stages times out, and its UID is the
+ * first UID provided by its stages (in order).
+ *
+ * @author Trent Houliston
+ */
+public class InspectorChain implements NioBatchInspector
+{
+
+	//Our stages, and the batch view of them
+	private final NioInspector[] stages;
+	private final NioBatchInspector[] batchStages;
+
+	/**
+	 * Creates a new chain from the passed stages
+	 *
+	 * @param stages the inspectors to run in order
+	 */
+	public InspectorChain(List<? extends NioInspector> stages)
+	{
+		this.stages = stages.toArray(new NioInspector[stages.size()]);
+		this.batchStages = new NioBatchInspector[this.stages.length];
+
+		//Adapt any per packet stages once
+		for (int i = 0; i < this.stages.length; i++)
+		{
+			NioInspector stage = this.stages[i];
+			batchStages[i] = stage instanceof NioBatchInspector ? (NioBatchInspector) stage : new BatchInspectorAdapter(stage);
+		}
+	}
+
+	/**
+	 * Passes the packet through each stage in order, stopping as soon as a
+	 * stage drops it.
+	 *
+	 * @param packet the packet to inspect
+	 *
+	 * @return the packet from the last stage, or null if a stage dropped it
+	 *
+	 * @throws IOException                if the channel is closed
+	 * @throws NioAuthenticationException if a stage failed the packet
+	 */
+	@Override
+	public NioPacket inspect(NioPacket packet) throws IOException, NioAuthenticationException
+	{
+		for (int i = 0; i < stages.length && packet != null; i++)
+		{
+			packet = stages[i].inspect(packet);
+		}
+		return packet;
+	}
+
+	/**
+	 * Passes the batch through each stage in order, stopping as soon as every
+	 * packet has been dropped.
+	 *
+	 * @param packets the packets to inspect
+	 *
+	 * @return the packets from the last stage
+	 *
+	 * @throws IOException                if the channel is closed
+	 * @throws NioAuthenticationException if a stage failed the batch
+	 */
+	@Override
+	public List<NioPacket> inspect(List<NioPacket> packets) throws IOException, NioAuthenticationException
+	{
+		for (int i = 0; i < batchStages.length && !packets.isEmpty(); i++)
+		{
+			packets = batchStages[i].inspect(packets);
+		}
+		return packets;
+	}
+
+	/**
+	 * Gets the first UID provided by the stages
+	 *
+	 * @return the UID of the connection (or null if no stage provided one)
+	 */
+	@Override
+	public String getUid()
+	{
+		for (NioInspector stage : stages)
+		{
+			String uid = stage.getUid();
+			if (uid != null)
+			{
+				return uid;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checks the timeout of every stage
+	 *
+	 * @return true if any stage has timed out
+	 */
+	@Override
+	public boolean timeout()
+	{
+		for (NioInspector stage : stages)
+		{
+			if (stage.timeout())
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Closes every stage (even if an earlier stage throws)
+	 *
+	 * @throws IOException the first exception thrown by a stage
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		IOException first = null;
+
+		for (NioInspector stage : stages)
+		{
+			try
+			{
+				stage.close();
+			}
+			catch (IOException ex)
+			{
+				if (first == null)
+				{
+					first = ex;
+				}
+			}
+		}
+
+		if (first != null)
+		{
+			throw first;
+		}
+	}
+
+	/**
+	 * Gets the stages of this chain in order
+	 *
+	 * @return the stages
+	 */
+	public List<NioInspector> getStages()
+	{
+		return Collections.unmodifiableList(Arrays.asList(stages));
+	}
+}
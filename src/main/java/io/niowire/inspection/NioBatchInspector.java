@@ -0,0 +1,60 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.inspection;
+
+import io.niowire.data.NioPacket;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * The NioBatchInspector interface is an optional extension of the
+ * {@link NioInspector} for inspectors which can inspect every packet from a
+ * single read of the socket at once. It has the same responsibilities as a
+ * NioInspector (authentication, filtering and modification of packets) but
+ * performs them on the whole batch.
+ *
+ * Inspectors which only implement {@link NioInspector} are still supported,
+ * they are wrapped in a {@link BatchInspectorAdapter} which inspects each
+ * packet of the batch in turn.
+ *
+ * @author Trent Houliston
+ */
+public interface NioBatchInspector extends NioInspector
+{
+
+	/**
+	 * This method is run on every batch of packets before they are sent to the
+	 * services. It should check the packets for authentication, remove any
+	 * packets that should not be sent to the services, and alter any packets
+	 * which need to be altered before sending.
+	 *
+	 * If authentication fails for any packet in the batch then none of the
+	 * packets in the batch are sent to the services and the connection is
+	 * closed.
+	 *
+	 * @param packets the packets to be inspected
+	 *
+	 * @return the packets to give to the services in order (this may be the
+	 *            passed list if nothing was changed, and may be empty if every
+	 *            packet was filtered)
+	 *
+	 * @throws IOException                If the channel is closed
+	 * @throws NioAuthenticationException if the batch made the connection fail
+	 *                                       authentication
+	 */
+	public List<NioPacket> inspect(List<NioPacket> packets) throws IOException, NioAuthenticationException;
+}
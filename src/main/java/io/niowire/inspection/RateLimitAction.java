@@ -0,0 +1,41 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.inspection;
+
+/**
+ * This enum describes what a {@link RateLimitInspector} does with packets
+ * which arrive faster than its configured limits allow.
+ *
+ * @author Trent Houliston
+ */
+public enum RateLimitAction
+{
+
+	/**
+	 * Packets over the limit are dropped and not sent to the services
+	 */
+	DROP,
+	/**
+	 * Packets over the limit are still delivered, but the connection stops
+	 * reading from its socket until the client is back within its limit
+	 */
+	DELAY,
+	/**
+	 * The connection is closed when a packet is over the limit
+	 */
+	DISCONNECT
+}
@@ -0,0 +1,481 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.inspection;
+
+import io.niowire.data.NioPacket;
+import io.niowire.entities.Initialize;
+import io.niowire.server.NioClock;
+import io.niowire.server.NioConnection.Context;
+import io.niowire.server.SystemClock;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.inject.Inject;
+
+/**
+ * This inspector limits how fast a client can send data. It can limit the
+ * packets per second and bytes per second of each connection, as well as the
+ * packets per second and bytes per second of all the connections from one
+ * remote address to the same server. Each limit is a {@link TokenBucket} which
+ * can hold up to {@code burst} seconds worth of tokens, and a limit of 0 (the
+ * default) is unlimited.
+ *
+ * When a packet is over the limit the configured {@link RateLimitAction} is
+ * taken, it can be dropped, the connection can stop reading until the client
+ * is within its limits again, or the connection can be closed.
+ *
+ * Byte limits charge each packet of a read an even share of the bytes in the
+ * read. A packet which is larger than {@code burst} seconds worth of bytes can
+ * never fit in its bucket, so it is always over the limit.
+ *
+ * @author Trent Houliston
+ */
+public class RateLimitInspector implements NioBatchInspector
+{
+
+	//The buckets shared between the connections from each address to each server
+	private static final ConcurrentMap<String, SharedBuckets> ADDRESSES = new ConcurrentHashMap<String, SharedBuckets>();
+	//Our context
+	@Inject
+	protected Context context = null;
+	//Our limits
+	@Inject
+	private double packetsPerSecond = 0;
+	@Inject
+	private double bytesPerSecond = 0;
+	@Inject
+	private double addressPacketsPerSecond = 0;
+	@Inject
+	private double addressBytesPerSecond = 0;
+	//How many seconds worth of tokens each bucket can hold
+	@Inject
+	private double burst = 1;
+	//What we do when a packet is over the limit
+	@Inject
+	private String action = "DROP";
+	//Our buckets and if they are counting bytes (rather than packets)
+	private TokenBucket[] buckets = new TokenBucket[0];
+	private boolean[] bytes = new boolean[0];
+	private RateLimitAction limitAction = RateLimitAction.DROP;
+	private NioClock clock = SystemClock.INSTANCE;
+	private SharedBuckets shared = null;
+	//The number of bytes which had been received when we last inspected
+	private long lastReceived = 0;
+	private long dropped = 0;
+	private boolean open = true;
+	//Our UID (the remote address never changes so we only build it once)
+	private String uid = null;
+
+	/**
+	 * Builds our buckets from our configuration, and joins the buckets which
+	 * are shared by the other connections from our remote address.
+	 */
+	@Initialize
+	protected void setup()
+	{
+		//Parse our action
+		this.limitAction = RateLimitAction.valueOf(action.toUpperCase(Locale.ENGLISH));
+
+		//Use our connection's clock if it has one
+		if (context != null && context.getClock() != null)
+		{
+			this.clock = context.getClock();
+		}
+
+		//Join the buckets for our address if we are limiting it
+		InetSocketAddress address = context == null ? null : context.getRemoteAddress();
+		if (address != null && (addressPacketsPerSecond > 0 || addressBytesPerSecond > 0))
+		{
+			this.shared = acquire(context.getServerId() + "/" + address.getAddress().getHostAddress(), addressPacketsPerSecond, addressBytesPerSecond, burst);
+		}
+
+		//Work out how many buckets we have
+		TokenBucket[] all =
+		{
+			packetsPerSecond > 0 ? new TokenBucket(packetsPerSecond, packetsPerSecond * burst) : null,
+			bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond, bytesPerSecond * burst) : null,
+			shared == null ? null : shared.packets,
+			shared == null ? null : shared.bytes
+		};
+		boolean[] counting =
+		{
+			false, true, false, true
+		};
+
+		//Keep only the buckets which are limited
+		int count = 0;
+		for (TokenBucket bucket : all)
+		{
+			count += bucket == null ? 0 : 1;
+		}
+		this.buckets = new TokenBucket[count];
+		this.bytes = new boolean[count];
+		for (int i = 0, j = 0; i < all.length; i++)
+		{
+			if (all[i] != null)
+			{
+				buckets[j] = all[i];
+				bytes[j++] = counting[i];
+			}
+		}
+	}
+
+	/**
+	 * We use the UID generator to generate our UID based on the remoteAddress
+	 * socket, it is built the first time it is needed and then reused
+	 *
+	 * @return the UID
+	 */
+	@Override
+	public String getUid()
+	{
+		if (uid == null)
+		{
+			uid = UidGenerator.addressToUid(context.getRemoteAddress());
+		}
+		return uid;
+	}
+
+	/**
+	 * Charges the packet (and any bytes which have been received since the
+	 * last packet) to each of our buckets, and takes our action if any of them
+	 * are over their limit. Packets from a read are charged their share of the
+	 * read when they are inspected as a batch.
+	 *
+	 * @param packet the packet we are inspecting
+	 *
+	 * @return the packet, or null if it was dropped
+	 *
+	 * @throws NioAuthenticationException if the packet was over the limit and
+	 *                                       we are disconnecting
+	 * @throws IOException                if the inspector has been closed
+	 */
+	@Override
+	public NioPacket inspect(NioPacket packet) throws NioAuthenticationException, IOException
+	{
+		if (!open)
+		{
+			throw new ClosedChannelException();
+		}
+
+		//Charge the packet for everything received since we last inspected
+		long now = clock.nanoTime();
+		long size = received();
+		long delay = charge(size, now);
+
+		//Pause if we are delaying, otherwise return the packet if it was allowed
+		if (limitAction == RateLimitAction.DELAY)
+		{
+			pause(delay);
+			return packet;
+		}
+		return delay == 0 ? packet : null;
+	}
+
+	/**
+	 * Charges each packet of the read its own share of the bytes received
+	 * since the last batch, so one packet is not charged for the whole read
+	 * (and the packets after it for nothing). Packets which are refused are not
+	 * charged, and when delaying reading is paused once for the whole batch.
+	 *
+	 * @param packets the packets from one read
+	 *
+	 * @return the packets which were allowed (the passed list if none were
+	 *            dropped)
+	 *
+	 * @throws NioAuthenticationException if a packet was over the limit and we
+	 *                                       are disconnecting
+	 * @throws IOException                if the inspector has been closed
+	 */
+	@Override
+	public List<NioPacket> inspect(List<NioPacket> packets) throws NioAuthenticationException, IOException
+	{
+		if (!open)
+		{
+			throw new ClosedChannelException();
+		}
+
+		//Split the bytes of the read across its packets (the first ones get the remainder)
+		long now = clock.nanoTime();
+		long size = received();
+		int count = packets.size();
+		long share = count == 0 ? 0 : size / count;
+		long remainder = count == 0 ? 0 : size % count;
+
+		List<NioPacket> result = packets;
+		long longest = 0;
+		for (int i = 0; i < count; i++)
+		{
+			long delay = charge(share + (i < remainder ? 1 : 0), now);
+			longest = Math.max(longest, delay);
+
+			//If this packet was dropped start our own list (containing the packets so far)
+			if (delay != 0 && limitAction != RateLimitAction.DELAY && result == packets)
+			{
+				result = new ArrayList<NioPacket>(count);
+				result.addAll(packets.subList(0, i));
+			}
+			else if (delay == 0 && result != packets)
+			{
+				result.add(packets.get(i));
+			}
+		}
+
+		//When delaying we deliver everything, but stop reading until we are within our limit
+		if (limitAction == RateLimitAction.DELAY)
+		{
+			pause(longest);
+		}
+		return result;
+	}
+
+	/**
+	 * Gets the number of bytes which have been received since we last
+	 * inspected, and moves past them
+	 *
+	 * @return the number of new bytes
+	 */
+	private long received()
+	{
+		long received = context == null ? 0 : context.getBytesReceived();
+		long size = received - lastReceived;
+		lastReceived = received;
+		return size;
+	}
+
+	/**
+	 * Charges a packet of the passed size to each of our buckets. When
+	 * delaying the packet is always charged and the time until we are within
+	 * our limits is returned, otherwise the packet is only charged if every
+	 * bucket has room for it (and is refused if not).
+	 *
+	 * @param size the number of bytes in the packet
+	 * @param now  the current time in nanoseconds
+	 *
+	 * @return 0 if the packet is allowed, otherwise the delay in nanoseconds
+	 *            (or 1 if it was refused)
+	 *
+	 * @throws NioAuthenticationException if the packet was refused and we are
+	 *                                       disconnecting
+	 */
+	private long charge(long size, long now) throws NioAuthenticationException
+	{
+		//When delaying we always take, but work out how long until we are within our limit
+		if (limitAction == RateLimitAction.DELAY)
+		{
+			long delay = 0;
+			for (int i = 0; i < buckets.length; i++)
+			{
+				delay = Math.max(delay, buckets[i].take(bytes[i] ? size : 1, now));
+			}
+			return delay;
+		}
+
+		//Otherwise every bucket must have room for the packet
+		for (int i = 0; i < buckets.length; i++)
+		{
+			if (!buckets[i].tryTake(bytes[i] ? size : 1, now))
+			{
+				//Give back what we took from the buckets before this one
+				for (int j = 0; j < i; j++)
+				{
+					buckets[j].refund(bytes[j] ? size : 1);
+				}
+
+				//Either close the connection or drop the packet
+				if (limitAction == RateLimitAction.DISCONNECT)
+				{
+					throw new NioAuthenticationException("The client has exceeded its rate limit");
+				}
+				dropped++;
+				return 1;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Stops our connection reading for the passed time (if it is not 0)
+	 *
+	 * @param delay the time to pause for in nanoseconds
+	 *
+	 * @throws IOException if the connection could not be paused
+	 */
+	private void pause(long delay) throws IOException
+	{
+		if (delay > 0 && context != null)
+		{
+			context.pauseReading(delay);
+		}
+	}
+
+	/**
+	 * We never time out a connection (use a {@link TimeoutInspector} in the
+	 * chain for that)
+	 *
+	 * @return false
+	 */
+	@Override
+	public boolean timeout()
+	{
+		return false;
+	}
+
+	/**
+	 * Gets the number of packets which have been dropped for being over the
+	 * limit
+	 *
+	 * @return the number of dropped packets
+	 */
+	public long getDropped()
+	{
+		return dropped;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		//Leave our shared buckets (only once)
+		if (open)
+		{
+			open = false;
+			if (shared != null)
+			{
+				shared.release();
+				shared = null;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of remote addresses which currently have shared buckets
+	 *
+	 * @return the number of addresses being tracked
+	 */
+	static int getTrackedAddresses()
+	{
+		return ADDRESSES.size();
+	}
+
+	/**
+	 * Gets the shared buckets for the passed key, creating them if no other
+	 * connection is using them.
+	 *
+	 * @param key     the key for the server and address
+	 * @param packets the packets per second for the address
+	 * @param size    the bytes per second for the address
+	 * @param burst   the number of seconds of tokens the buckets hold
+	 *
+	 * @return the shared buckets which we now hold a reference to
+	 */
+	private static SharedBuckets acquire(String key, double packets, double size, double burst)
+	{
+		while (true)
+		{
+			//Add new buckets if there are none
+			SharedBuckets existing = ADDRESSES.get(key);
+			if (existing == null)
+			{
+				SharedBuckets created = new SharedBuckets(key, packets, size, burst);
+				existing = ADDRESSES.putIfAbsent(key, created);
+				if (existing == null)
+				{
+					return created;
+				}
+			}
+
+			//Join the existing buckets unless they are being released (then help remove them and retry)
+			if (existing.retain())
+			{
+				return existing;
+			}
+			ADDRESSES.remove(key, existing);
+		}
+	}
+
+	/**
+	 * This class holds the buckets which are shared by all of the connections
+	 * from one address, it is reference counted so that it is removed from the
+	 * map when the last connection closes.
+	 */
+	private static final class SharedBuckets
+	{
+
+		private final String key;
+		private final TokenBucket packets;
+		private final TokenBucket bytes;
+		private final AtomicInteger references = new AtomicInteger(1);
+
+		/**
+		 * Creates new shared buckets with a single reference
+		 *
+		 * @param key     the key these buckets are stored under
+		 * @param packets the packets per second (0 for unlimited)
+		 * @param bytes   the bytes per second (0 for unlimited)
+		 * @param burst   the number of seconds of tokens the buckets hold
+		 */
+		private SharedBuckets(String key, double packets, double bytes, double burst)
+		{
+			this.key = key;
+			this.packets = packets > 0 ? new TokenBucket(packets, packets * burst) : null;
+			this.bytes = bytes > 0 ? new TokenBucket(bytes, bytes * burst) : null;
+		}
+
+		/**
+		 * Adds a reference to these buckets
+		 *
+		 * @return true if we were referenced, false if these buckets have been
+		 *            released and must not be used
+		 */
+		private boolean retain()
+		{
+			while (true)
+			{
+				int current = references.get();
+				if (current == 0)
+				{
+					return false;
+				}
+				else if (references.compareAndSet(current, current + 1))
+				{
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * Removes a reference to these buckets, removing them from the map when
+		 * the last reference is gone
+		 */
+		private void release()
+		{
+			if (references.decrementAndGet() == 0)
+			{
+				ADDRESSES.remove(key, this);
+			}
+		}
+	}
+}
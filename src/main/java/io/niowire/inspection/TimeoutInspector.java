@@ -17,7 +17,10 @@
 package io.niowire.inspection;
 
 import io.niowire.data.NioPacket;
+import io.niowire.entities.Initialize;
+import io.niowire.server.NioClock;
 import io.niowire.server.NioConnection.Context;
+import io.niowire.server.SystemClock;
 import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
 import javax.inject.Inject;
@@ -34,21 +37,42 @@ public class TimeoutInspector implements NioInspector
 	//Our context
 	@Inject
 	protected Context context = null;
+	//The clock we measure our timeout with
+	private NioClock clock = SystemClock.INSTANCE;
 	private long lastMessage = System.currentTimeMillis();
 	@Inject
 	private long timeout;
 	private boolean open = true;
+	//Our UID (the remote address never changes so we only build it once)
+	private String uid = null;
+
+	/**
+	 * Uses our connection's clock (if it has one) to measure the timeout
+	 */
+	@Initialize
+	protected void setup()
+	{
+		if (context != null && context.getClock() != null)
+		{
+			clock = context.getClock();
+			lastMessage = clock.currentTimeMillis();
+		}
+	}
 
 	/**
 	 * We use the UID generator to generate our UID based on the remoteAddress
-	 * socket
+	 * socket, it is built the first time it is needed and then reused
 	 *
 	 * @return the UID
 	 */
 	@Override
 	public String getUid()
 	{
-		return UidGenerator.addressToUid(context.getRemoteAddress());
+		if (uid == null)
+		{
+			uid = UidGenerator.addressToUid(context.getRemoteAddress());
+		}
+		return uid;
 	}
 
 	/**
@@ -67,7 +91,7 @@ public class TimeoutInspector implements NioInspector
 		{
 			throw new ClosedChannelException();
 		}
-		lastMessage = System.currentTimeMillis();
+		lastMessage = clock.currentTimeMillis();
 		return line;
 	}
 
@@ -80,7 +104,7 @@ public class TimeoutInspector implements NioInspector
 	public boolean timeout()
 	{
 		//Timeout when the inspector is closed
-		return !open || ((timeout > 0) && (System.currentTimeMillis() - lastMessage > timeout));
+		return !open || ((timeout > 0) && (clock.currentTimeMillis() - lastMessage > timeout));
 	}
 
 	/**
@@ -0,0 +1,146 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.inspection;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is a lock free token bucket. Rather than storing a count of
+ * tokens which is refilled over time, it stores the theoretical arrival time of
+ * the next token (the generic cell rate algorithm), which means that the whole
+ * state of the bucket is a single long which can be updated with a compare and
+ * set. Taking tokens from the bucket never allocates, so it is safe to use on
+ * every packet and to share between threads.
+ *
+ * @author Trent Houliston
+ */
+public final class TokenBucket
+{
+
+	//The number of nanoseconds it takes to earn one token
+	private final double nanosPerToken;
+	//How far ahead of now the theoretical arrival time can get (the burst)
+	private final long burstNanos;
+	//The theoretical arrival time of the next token
+	private final AtomicLong tat = new AtomicLong(Long.MIN_VALUE);
+
+	/**
+	 * Creates a new token bucket which is refilled at the passed rate and can
+	 * hold up to the passed number of tokens.
+	 *
+	 * @param rate  the number of tokens added to the bucket every second
+	 * @param burst the maximum number of tokens the bucket can hold
+	 */
+	public TokenBucket(double rate, double burst)
+	{
+		//Check our arguments are sane
+		if (!(rate > 0) || burst < 0)
+		{
+			throw new IllegalArgumentException("The rate must be positive and the burst must not be negative");
+		}
+
+		this.nanosPerToken = 1000000000D / rate;
+		this.burstNanos = (long) (burst * nanosPerToken);
+	}
+
+	/**
+	 * Attempts to take the passed number of tokens from the bucket. If there
+	 * are not enough tokens then none are taken.
+	 *
+	 * @param tokens the number of tokens to take
+	 * @param now    the current monotonic time in nanoseconds
+	 *
+	 * @return true if the tokens were taken, false if the bucket did not have
+	 *            enough
+	 */
+	public boolean tryTake(long tokens, long now)
+	{
+		//Work out how much time these tokens cost
+		long cost = cost(tokens);
+
+		while (true)
+		{
+			//Our next arrival time is after now or after our last one
+			long current = tat.get();
+			long next = Math.max(current, now) + cost;
+
+			//If this would take us past our burst then refuse
+			if (next - now > burstNanos)
+			{
+				return false;
+			}
+			//Otherwise try to take the tokens
+			else if (tat.compareAndSet(current, next))
+			{
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Takes the passed number of tokens from the bucket even if it does not
+	 * have enough (leaving it in debt), and returns how long the caller must
+	 * wait before the bucket is back within its limits.
+	 *
+	 * @param tokens the number of tokens to take
+	 * @param now    the current monotonic time in nanoseconds
+	 *
+	 * @return the time in nanoseconds until the bucket is within its limit (0
+	 *            if it already is)
+	 */
+	public long take(long tokens, long now)
+	{
+		//Work out how much time these tokens cost
+		long cost = cost(tokens);
+
+		while (true)
+		{
+			//Our next arrival time is after now or after our last one
+			long current = tat.get();
+			long next = Math.max(current, now) + cost;
+
+			//Take the tokens and work out how far over our burst we are
+			if (tat.compareAndSet(current, next))
+			{
+				return Math.max(0, next - now - burstNanos);
+			}
+		}
+	}
+
+	/**
+	 * Returns tokens which were taken by {@link #tryTake(long, long)} but were
+	 * not used (for example when another limit refused the packet).
+	 *
+	 * @param tokens the number of tokens to return
+	 */
+	public void refund(long tokens)
+	{
+		tat.addAndGet(-cost(tokens));
+	}
+
+	/**
+	 * Works out how many nanoseconds the passed number of tokens takes to earn
+	 *
+	 * @param tokens the number of tokens
+	 *
+	 * @return the time in nanoseconds
+	 */
+	private long cost(long tokens)
+	{
+		return (long) (tokens * nanosPerToken);
+	}
+}
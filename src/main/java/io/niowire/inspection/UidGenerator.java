@@ -3,7 +3,6 @@ package io.niowire.inspection;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.util.Locale;
 
 /**
  * This class generates a Uid from an IP/Port combination
@@ -13,6 +12,9 @@ import java.util.Locale;
 public class UidGenerator
 {
 
+	//The upper case hex digits
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
 	/**
 	 * This method builds a UID from a InetSocketAddress
 	 *
@@ -68,21 +70,26 @@ public class UidGenerator
 	 */
 	public static String addressToUid(byte[] address, int port)
 	{
-		//Get a new string builder
-		StringBuilder str = new StringBuilder();
+		//Two hex digits for each byte of the address and four for the port
+		char[] uid = new char[address.length * 2 + 4];
+		int i = 0;
 
 		//Loop through our bytes (will be a differnt number for IPv4 vs IPV6
 		for (byte b : address)
 		{
 			//Append each byte as hex
-			str.append(String.format("%02x", b));
+			uid[i++] = HEX[(b >> 4) & 0xF];
+			uid[i++] = HEX[b & 0xF];
 		}
 
 		//Append the port as hex
-		str.append(String.format("%04x", port));
+		uid[i++] = HEX[(port >> 12) & 0xF];
+		uid[i++] = HEX[(port >> 8) & 0xF];
+		uid[i++] = HEX[(port >> 4) & 0xF];
+		uid[i] = HEX[port & 0xF];
 
 		//Return the value
-		return str.toString().toUpperCase(Locale.ENGLISH);
+		return new String(uid);
 	}
 
 	/**
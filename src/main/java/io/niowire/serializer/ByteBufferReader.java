@@ -0,0 +1,188 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * This is a reusable reader which decodes the bytes of a buffer as they are
+ * read, so that a line can be parsed without first being decoded into a
+ * String. Carriage returns are removed from the characters that are read (as
+ * the {@link LineSerializer} does). If the charset is UTF-8 or US-ASCII then
+ * ASCII bytes are read directly, and the decoder is only used from the first
+ * byte which is not ASCII. Invalid bytes are replaced.
+ *
+ * @author Trent Houliston
+ */
+final class ByteBufferReader extends Reader
+{
+
+	//Our decoder and if we can read ASCII bytes directly
+	private final CharsetDecoder decoder;
+	private final boolean ascii;
+	//The buffer we are reading and where we are up to with it
+	private ByteBuffer buffer = null;
+	private boolean decoding = false;
+	private boolean flushed = false;
+	//Characters we decoded which did not fit in the last read (such as the low half of a surrogate pair)
+	private final CharBuffer pending = CharBuffer.allocate(16);
+
+	/**
+	 * Creates a new reader for the passed charset
+	 *
+	 * @param charset the charset of the bytes
+	 */
+	ByteBufferReader(Charset charset)
+	{
+		decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ascii = "UTF-8".equals(charset.name()) || "US-ASCII".equals(charset.name());
+		pending.flip();
+	}
+
+	/**
+	 * Starts reading a new buffer, the reader reads from the buffer's position
+	 * to its limit (moving its position as it goes).
+	 *
+	 * @param buffer the buffer to read
+	 */
+	void reset(ByteBuffer buffer)
+	{
+		this.buffer = buffer;
+		decoding = !ascii;
+		flushed = false;
+		decoder.reset();
+		pending.clear().flip();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException
+	{
+		if (len == 0)
+		{
+			return 0;
+		}
+
+		int read = 0;
+		while (read == 0)
+		{
+			//Hand out the characters left over from our last read first
+			if (pending.hasRemaining())
+			{
+				while (read < len && pending.hasRemaining())
+				{
+					char c = pending.get();
+					if (c != '\r')
+					{
+						cbuf[off + read++] = c;
+					}
+				}
+			}
+			//Read ASCII bytes directly until we find one that isn't
+			else if (!decoding)
+			{
+				int position = buffer.position();
+				int limit = buffer.limit();
+				while (read < len && position < limit)
+				{
+					byte b = buffer.get(position);
+					if (b < 0)
+					{
+						decoding = true;
+						break;
+					}
+					position++;
+					if (b != '\r')
+					{
+						cbuf[off + read++] = (char) b;
+					}
+				}
+				buffer.position(position);
+
+				//If we have read everything we are done
+				if (!decoding && position == limit)
+				{
+					return read == 0 ? -1 : read;
+				}
+			}
+			//If we have decoded everything we are done
+			else if (flushed)
+			{
+				return read == 0 ? -1 : read;
+			}
+			//Otherwise decode as much as we have room for
+			else
+			{
+				CharBuffer out = CharBuffer.wrap(cbuf, off + read, len - read);
+				CoderResult result = decoder.decode(buffer, out, true);
+				if (result.isUnderflow())
+				{
+					flushed = decoder.flush(out).isUnderflow();
+				}
+
+				//If there was no room for the next character (a surrogate pair in a read of one) decode it to the side
+				if (result.isOverflow() && out.position() == off + read)
+				{
+					pending.clear();
+					result = decoder.decode(buffer, pending, true);
+					if (result.isUnderflow())
+					{
+						flushed = decoder.flush(pending).isUnderflow();
+					}
+					pending.flip();
+
+					//We must have made progress or we would never return
+					if (!pending.hasRemaining() && result.isOverflow())
+					{
+						throw new IOException("A character could not be decoded into " + pending.capacity() + " chars");
+					}
+				}
+
+				//Remove any carriage returns from what we decoded
+				int end = out.position();
+				int to = off + read;
+				for (int i = off + read; i < end; i++)
+				{
+					if (cbuf[i] != '\r')
+					{
+						cbuf[to++] = cbuf[i];
+					}
+				}
+				read = to - off;
+			}
+		}
+		return read;
+	}
+
+	/**
+	 * Forgets the buffer we were reading
+	 */
+	@Override
+	public void close()
+	{
+		buffer = null;
+	}
+}
@@ -0,0 +1,275 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * This is a reusable writer which encodes the characters written to it
+ * straight into a chunk of bytes as UTF-8 or US-ASCII, so that a message can
+ * be written without first being built as a String. Each message is returned
+ * as a slice of the chunk, and the next message is written after it. When the
+ * chunk is full a new one is started (the old one is kept by the slices still
+ * using it), and once every slice has been sent the chunk can be written over
+ * from the start again.
+ *
+ * Characters which cannot be encoded (and unpaired surrogates) are replaced
+ * with '?' as {@link String#getBytes(Charset)} does.
+ *
+ * @author Trent Houliston
+ */
+final class ByteBufferWriter extends Writer
+{
+
+	//If we are writing US-ASCII rather than UTF-8
+	private final boolean ascii;
+	//The smallest chunk we will allocate
+	private final int chunkSize;
+	//Our chunk and where our current message started in it
+	private ByteBuffer chunk = null;
+	private int start = 0;
+	//A high surrogate waiting for its low surrogate
+	private char high = 0;
+
+	/**
+	 * Creates a new writer for the passed charset
+	 *
+	 * @param charset   the charset to encode into (UTF-8 or US-ASCII)
+	 * @param chunkSize the smallest size of chunk to allocate
+	 *
+	 * @throws IllegalArgumentException if the charset is not supported
+	 */
+	ByteBufferWriter(Charset charset, int chunkSize) throws IllegalArgumentException
+	{
+		if (!supports(charset))
+		{
+			throw new IllegalArgumentException("Only UTF-8 and US-ASCII can be written directly");
+		}
+		this.ascii = "US-ASCII".equals(charset.name());
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Checks if a charset can be written by this writer
+	 *
+	 * @param charset the charset
+	 *
+	 * @return true if the charset is UTF-8 or US-ASCII
+	 */
+	static boolean supports(Charset charset)
+	{
+		return "UTF-8".equals(charset.name()) || "US-ASCII".equals(charset.name());
+	}
+
+	/**
+	 * Starts a new message, throwing away anything written since the last
+	 * message was finished.
+	 *
+	 * @param reuse if none of the slices we have returned are still in use, so
+	 *              we can write over our chunk from the start
+	 */
+	void begin(boolean reuse)
+	{
+		if (chunk == null)
+		{
+			chunk = ByteBuffer.allocate(chunkSize);
+		}
+		else if (reuse)
+		{
+			chunk.clear();
+		}
+		else
+		{
+			chunk.position(start);
+		}
+		start = chunk.position();
+		high = 0;
+	}
+
+	/**
+	 * Finishes the current message
+	 *
+	 * @return a slice of our chunk holding the message
+	 */
+	ByteBuffer finish()
+	{
+		//A high surrogate on its own can't be encoded
+		if (high != 0)
+		{
+			put((byte) '?');
+			high = 0;
+		}
+
+		ByteBuffer message = chunk.duplicate();
+		message.limit(chunk.position());
+		message.position(start);
+		start = chunk.position();
+		return message.slice();
+	}
+
+	/**
+	 * Writes bytes straight into the current message
+	 *
+	 * @param bytes the bytes to write
+	 */
+	void writeBytes(byte[] bytes)
+	{
+		ensure(bytes.length);
+		chunk.put(bytes);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(int c)
+	{
+		encode((char) c);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(char[] cbuf, int off, int len)
+	{
+		for (int i = off; i < off + len; i++)
+		{
+			encode(cbuf[i]);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(String str, int off, int len)
+	{
+		for (int i = off; i < off + len; i++)
+		{
+			encode(str.charAt(i));
+		}
+	}
+
+	/**
+	 * Encodes a single character into our chunk
+	 *
+	 * @param c the character
+	 */
+	private void encode(char c)
+	{
+		//If we have a high surrogate it must be followed by a low one
+		if (high != 0)
+		{
+			char h = high;
+			high = 0;
+			if (Character.isLowSurrogate(c))
+			{
+				int cp = Character.toCodePoint(h, c);
+				if (ascii)
+				{
+					put((byte) '?');
+				}
+				else
+				{
+					ensure(4);
+					chunk.put((byte) (0xF0 | (cp >> 18)));
+					chunk.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+					chunk.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+					chunk.put((byte) (0x80 | (cp & 0x3F)));
+				}
+				return;
+			}
+			put((byte) '?');
+		}
+
+		if (c < 0x80)
+		{
+			put((byte) c);
+		}
+		else if (Character.isHighSurrogate(c))
+		{
+			high = c;
+		}
+		else if (ascii || Character.isLowSurrogate(c))
+		{
+			put((byte) '?');
+		}
+		else if (c < 0x800)
+		{
+			ensure(2);
+			chunk.put((byte) (0xC0 | (c >> 6)));
+			chunk.put((byte) (0x80 | (c & 0x3F)));
+		}
+		else
+		{
+			ensure(3);
+			chunk.put((byte) (0xE0 | (c >> 12)));
+			chunk.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+			chunk.put((byte) (0x80 | (c & 0x3F)));
+		}
+	}
+
+	/**
+	 * Puts a single byte into our chunk
+	 *
+	 * @param b the byte
+	 */
+	private void put(byte b)
+	{
+		ensure(1);
+		chunk.put(b);
+	}
+
+	/**
+	 * Makes sure there is room in our chunk, if there isn't a new chunk is
+	 * started and the current message is moved into it.
+	 *
+	 * @param bytes the number of bytes we need room for
+	 */
+	private void ensure(int bytes)
+	{
+		if (chunk.remaining() < bytes)
+		{
+			int length = chunk.position() - start;
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(chunkSize, (length + bytes) * 2));
+			chunk.flip();
+			chunk.position(start);
+			grown.put(chunk);
+			chunk = grown;
+			start = 0;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush()
+	{
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close()
+	{
+	}
+}
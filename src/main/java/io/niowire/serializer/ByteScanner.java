@@ -0,0 +1,101 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Searches byte buffers for delimiters a word at a time. Rather than comparing
+ * each byte on its own, eight bytes are read with a single {@code getLong} and
+ * every byte in the word which matches is found at once using SWAR (SIMD
+ * within a register) arithmetic. Any bytes at the end which do not fill a
+ * whole word are compared one at a time.
+ *
+ * @author Trent Houliston
+ */
+public final class ByteScanner
+{
+
+	/**
+	 * The number of bytes searched at once
+	 */
+	private static final int WORD = 8;
+	/**
+	 * A word with each of its bytes set to 0x7F
+	 */
+	private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+	/**
+	 * A word with each of its bytes set to 0x01
+	 */
+	private static final long ONES = 0x0101010101010101L;
+
+	/**
+	 * This is a utility class, it should not be constructed
+	 */
+	private ByteScanner()
+	{
+	}
+
+	/**
+	 * Finds the first occurrence of a byte in a buffer between two absolute
+	 * indexes. The position and limit of the buffer are not changed.
+	 *
+	 * @param buffer the buffer to search
+	 * @param b      the byte to search for
+	 * @param from   the index to start searching from (inclusive)
+	 * @param to     the index to stop searching at (exclusive)
+	 *
+	 * @return the index of the byte, or -1 if it was not found
+	 */
+	public static int indexOf(ByteBuffer buffer, byte b, int from, int to)
+	{
+		//Fill every byte of a word with the byte we are looking for
+		long pattern = ONES * (b & 0xFF);
+		boolean little = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+
+		int i = from;
+
+		//Search a whole word at a time
+		for (; i + WORD <= to; i += WORD)
+		{
+			//Any byte which matches will now be zero
+			long word = buffer.getLong(i) ^ pattern;
+
+			//Set the high bit of each zero byte (and only the zero bytes)
+			long found = ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+
+			if (found != 0)
+			{
+				//The first byte in memory is the lowest byte of a little endian word and the highest of a big endian one
+				return i + ((little ? Long.numberOfTrailingZeros(found) : Long.numberOfLeadingZeros(found)) >>> 3);
+			}
+		}
+
+		//Search the last few bytes one at a time
+		for (; i < to; i++)
+		{
+			if (buffer.get(i) == b)
+			{
+				return i;
+			}
+		}
+
+		//We didn't find it
+		return -1;
+	}
+}
@@ -20,12 +20,15 @@ import io.niowire.data.NioPacket;
 import io.niowire.entities.Initialize;
 import io.niowire.entities.NioObjectCreationException;
 import io.niowire.entities.NioObjectFactory;
+import io.niowire.entities.Warm;
 import io.niowire.server.NioConnection;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import java.util.zip.*;
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -62,6 +65,27 @@ public class DeflateSerializer implements NioSerializer
 	private ByteBuffer compressed = null;
 	private ByteBuffer uncompressed = null;
 	private ByteBuffer work = null;
+	private byte[] input = null;
+	private boolean flushing = false;
+
+	/**
+	 * Warms the factory of the serializer we wrap so that anything its
+	 * serializers share is built before the first connection is made
+	 *
+	 * @param values the values our factory injects
+	 * @param shared the objects shared by our factory
+	 *
+	 * @throws NioObjectCreationException if the factory could not be warmed
+	 */
+	@Warm
+	static void warm(Map<String, Object> values, ConcurrentMap<String, Object> shared) throws NioObjectCreationException
+	{
+		NioObjectFactory<?> factory = (NioObjectFactory<?>) values.get("serializer");
+		if (factory != null)
+		{
+			factory.warm();
+		}
+	}
 
 	/**
 	 * Builds our internal serializer as well as our inflater/deflater
@@ -80,7 +104,7 @@ public class DeflateSerializer implements NioSerializer
 		this.inflater = new Inflater(true);
 		this.deflater = new Deflater(compressionLevel, true);
 
-		//Allocate our input and output buffers also flip them so they are readable as empty
+		//Allocate our reused input, output and work buffers also flip them so they are readable as empty
 		this.compressed = ByteBuffer.allocate(bufferSize);
 		this.compressed.flip();
 		this.uncompressed = ByteBuffer.allocate(bufferSize);
@@ -91,7 +115,9 @@ public class DeflateSerializer implements NioSerializer
 
 	/**
 	 * Decompress the passed buffer before sending the data onward to the
-	 * internal serializer.
+	 * internal serializer. The data is inflated into our reused work buffer, a
+	 * new one is only made if the data inflates to more than one work buffer
+	 * and the packets from the first still refer to it.
 	 *
 	 * @param buffer the buffer to decompress
 	 *
@@ -104,23 +130,65 @@ public class DeflateSerializer implements NioSerializer
 	{
 		try
 		{
-			//Get the data
-			byte[] input = new byte[buffer.remaining()];
-			//Get somewhere to put the decompressed data
-			byte[] output = new byte[2048];
-			buffer.get(input);
-
-			//Inflate it
-			inflater.setInput(input);
-			LinkedList<NioPacket> packets = new LinkedList<NioPacket>();
-
-			//Inflate all our data and send it to our internal serializer
-			while (!inflater.needsInput() && !inflater.finished())
+			//Give the inflater our data, straight from the buffer's array if we can reach it
+			int length = buffer.remaining();
+			if (buffer.hasArray())
+			{
+				inflater.setInput(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+				buffer.position(buffer.limit());
+			}
+			else
+			{
+				if (input == null || input.length < length)
+				{
+					input = new byte[Math.max(length, bufferSize)];
+				}
+				buffer.get(input, 0, length);
+				inflater.setInput(input, 0, length);
+			}
+
+			List<NioPacket> packets = Collections.emptyList();
+			boolean held = false;
+			boolean merged = false;
+			int inflated;
+
+			//Inflate until the inflater has neither input left nor output waiting (it holds output back when our buffer fills)
+			do
 			{
-				int inflated = inflater.inflate(output);
-				ByteBuffer decompressed = ByteBuffer.wrap(output, 0, inflated);
-				packets.addAll(serializer.deserialize(decompressed));
+				//If the last round gave us packets they refer to our work buffer and the internal serializer's list
+				if (held)
+				{
+					work = ByteBuffer.allocate(bufferSize);
+					if (!merged)
+					{
+						packets = new ArrayList<NioPacket>(packets);
+						merged = true;
+					}
+					held = false;
+				}
+
+				//Inflate into our work buffer and send it to our internal serializer
+				inflated = inflater.inflate(work.array());
+				if (inflated > 0)
+				{
+					work.clear();
+					work.limit(inflated);
+					List<NioPacket> found = serializer.deserialize(work);
+					if (!found.isEmpty())
+					{
+						held = true;
+						if (merged)
+						{
+							packets.addAll(found);
+						}
+						else
+						{
+							packets = found;
+						}
+					}
+				}
 			}
+			while (inflated == work.capacity() || (!inflater.needsInput() && !inflater.finished() && !inflater.needsDictionary()));
 
 			return packets;
 		}
@@ -149,10 +217,9 @@ public class DeflateSerializer implements NioSerializer
 		int pos = buffer.position();
 
 		//Put in our rebuffer data if we have any
-		if (rebuffer != null)
+		if (rebuffer != null && rebuffer.hasRemaining())
 		{
 			buffer.put(rebuffer);
-			rebuffer = null;
 		}
 
 		//While we can write more data, and there is more data to write
@@ -162,21 +229,17 @@ public class DeflateSerializer implements NioSerializer
 			if (compressed.hasRemaining())
 			{
 				transferMax(compressed, buffer);
-				compressed.compact().flip();
 			}
-			//If our deflater does not need input
-			else if (!deflater.needsInput())
+			//If our deflater has input, or is still flushing after filling our buffer
+			else if (flushing || !deflater.needsInput())
 			{
-				//Get the array we are writing out too and the offset and length we are interested in
-				byte[] output = compressed.array();
-				int offset = compressed.limit();
-				int length = compressed.capacity() - offset;
-
-				//Compress and write our data out now
-				int bytes = deflater.deflate(output, offset, length, Deflater.SYNC_FLUSH);
+				//Compress into the start of our emptied buffer
+				int bytes = deflater.deflate(compressed.array(), 0, compressed.capacity(), Deflater.SYNC_FLUSH);
+				compressed.clear();
+				compressed.limit(bytes);
 
-				//Advance our limit based on how many bytes we just wrote
-				compressed.limit(offset + bytes);
+				//If we filled the buffer the deflater may have more of its flush waiting
+				flushing = bytes == compressed.capacity();
 			}
 			//Otherwise we need to get more data from our internal serializer
 			else
@@ -201,7 +264,7 @@ public class DeflateSerializer implements NioSerializer
 	@Override
 	public boolean hasData() throws IOException
 	{
-		return compressed.hasRemaining() || serializer.hasData() || (!deflater.needsInput() && !deflater.finished());
+		return compressed.hasRemaining() || serializer.hasData() || flushing || (!deflater.needsInput() && !deflater.finished());
 	}
 
 	/**
@@ -210,7 +273,12 @@ public class DeflateSerializer implements NioSerializer
 	@Override
 	public void rebuffer(ByteBuffer data) throws IOException
 	{
-		rebuffer = ByteBuffer.allocate(data.remaining());
+		//Copy the data as the buffer will be reused (reusing our last rebuffer if it is large enough)
+		if (rebuffer == null || rebuffer.capacity() < data.remaining())
+		{
+			rebuffer = ByteBuffer.allocate(data.remaining());
+		}
+		rebuffer.clear();
 		rebuffer.put(data);
 		rebuffer.flip();
 	}
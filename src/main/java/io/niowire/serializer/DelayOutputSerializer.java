@@ -20,11 +20,14 @@ import io.niowire.data.NioPacket;
 import io.niowire.entities.Initialize;
 import io.niowire.entities.NioObjectCreationException;
 import io.niowire.entities.NioObjectFactory;
+import io.niowire.entities.Warm;
 import io.niowire.server.NioConnection;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.DelayQueue;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
@@ -63,6 +66,25 @@ public class DelayOutputSerializer implements NioSerializer
 		new DelayThread().start();
 	}
 
+	/**
+	 * Warms the factory of the serializer we wrap so that anything its
+	 * serializers share is built before the first connection is made
+	 *
+	 * @param values the values our factory injects
+	 * @param shared the objects shared by our factory
+	 *
+	 * @throws NioObjectCreationException if the factory could not be warmed
+	 */
+	@Warm
+	static void warm(Map<String, Object> values, ConcurrentMap<String, Object> shared) throws NioObjectCreationException
+	{
+		NioObjectFactory<?> factory = (NioObjectFactory<?>) values.get("serializer");
+		if (factory != null)
+		{
+			factory.warm();
+		}
+	}
+
 	/**
 	 * Builds our internal serializer
 	 *
@@ -93,7 +115,8 @@ public class DelayOutputSerializer implements NioSerializer
 	@Override
 	public void serialize(NioPacket packet) throws IOException
 	{
-		queue.add(new DelayedNioPacket(delay, packet));
+		//Keep a copy as we hold on to the packet after this returns
+		queue.add(new DelayedNioPacket(delay, packet.copy()));
 	}
 
 	/**
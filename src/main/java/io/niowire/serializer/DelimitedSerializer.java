@@ -16,14 +16,19 @@
  */
 package io.niowire.serializer;
 
+import io.niowire.data.NioChunk;
 import io.niowire.data.NioPacket;
+import io.niowire.server.NioClock;
 import io.niowire.server.NioConnection.Context;
+import io.niowire.server.SystemClock;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
+import java.util.ListIterator;
 import javax.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,11 +40,23 @@ import org.slf4j.LoggerFactory;
  * the serializeBlob() method can be used to take the delimited output to be
  * further processed.
  *
- * Note that this class as it uses a static byte buffer for its operations, is
- * not thread safe across instances. Only one instance of this class can be
- * performing operations at any one time. In the context of Niowire as there is
- * one main thread doing all of the IO this should not be a problem. But if it
- * is going to be used elsewhere this must be considered.
+ * Each instance keeps its own receive buffer which grows (up to the maximum
+ * frame size) to hold a partial frame. Data is only appended to this buffer,
+ * and the search for the next delimiter resumes where the last one stopped, so
+ * the bytes of a partial frame are not copied or searched again on each read.
+ * Frames which are larger than the maximum frame size are skipped, unless the
+ * serializer is streaming. When streaming the receive buffer does not grow,
+ * instead frames which do not fit in it are sent as they arrive as chunks (raw
+ * packets whose data is a {@link NioChunk}), see
+ * {@link io.niowire.service.NioStreamingService}.
+ *
+ * Raw data is copied out of the receive buffer unless the serializer is
+ * configured with {@code rawSlices}, in which case it is a read only slice of
+ * the receive buffer that can only be used while the packet is being
+ * dispatched (using it afterwards throws an IllegalStateException).
+ *
+ * Frames can be ended by any of several delimiters (see
+ * {@link #getDelimiters()}), these are found using a {@link DelimiterMatcher}.
  *
  * @author Trent Houliston
  */
@@ -48,18 +65,75 @@ public abstract class DelimitedSerializer implements NioSerializer
 
 	private static final Logger LOG = LoggerFactory.getLogger(DelimitedSerializer.class.getName());
 	/**
-	 * This is the static byte buffer shared between all instances of the
-	 * serializer for operations.
+	 * The serializers on this thread which have raw slices of a receive buffer
+	 * waiting to be sent, these must be copied before any receive buffer on
+	 * this thread is reused (the slices are sent while the packets they came
+	 * from are being dispatched, which happens on the deserializing thread).
+	 */
+	private static final ThreadLocal<List<DelimitedSerializer>> BORROWERS = new ThreadLocal<List<DelimitedSerializer>>()
+	{
+		@Override
+		protected List<DelimitedSerializer> initialValue()
+		{
+			return new ArrayList<DelimitedSerializer>();
+		}
+	};
+	/**
+	 * Our receive buffer, it holds our partial frame from start to end and we
+	 * will next search for a delimiter from search. It uses the native byte
+	 * order so that the words read while searching do not need their bytes
+	 * swapped.
 	 */
-	private static final ByteBuffer tb = ByteBuffer.allocateDirect(32768);
-	//This buffer is allocated as needed if there is any leftover data (split packets)
-	private ByteBuffer residual = null;
+	private ByteBuffer receive = null;
+	private DelimiterMatcher matcher = null;
+	private int start = 0;
+	private int end = 0;
+	private int search = 0;
+	//How much of the frame we are streaming has been sent (or -1 if we are not streaming one)
+	private long streamed = -1;
+	//If we are throwing away the rest of a frame which was too large
+	private boolean skipping = false;
+	private long skipped = 0;
 	private boolean open = true;
 	@Inject
 	protected Context context = null;
 	@Inject
 	protected boolean raw = false;
-	private Queue<ByteBuffer> sendQueue = new LinkedList<ByteBuffer>();
+	/**
+	 * If raw packets hold a read only slice of the receive buffer (the exact
+	 * bytes of the frame, as they were received) rather than their own copy.
+	 * Slices are only valid while the packet is being dispatched.
+	 */
+	@Inject
+	protected boolean rawSlices = false;
+	/**
+	 * If our packets come from the connection's packet pool (the packets and
+	 * the list they are returned in are then only valid until the next call
+	 * to deserialize)
+	 */
+	@Inject
+	protected boolean pooled = false;
+	/**
+	 * The size our receive buffer starts at
+	 */
+	@Inject
+	protected int bufferSize = 8192;
+	/**
+	 * The largest our receive buffer can grow to, frames (including their
+	 * delimiter) which are larger than this are skipped
+	 */
+	@Inject
+	protected int maxFrameSize = 1048576;
+	/**
+	 * If frames which are larger than our buffer size are sent in chunks as
+	 * they arrive rather than being buffered whole
+	 */
+	@Inject
+	protected boolean streaming = false;
+	private final ArrayList<NioPacket> pooledPackets = new ArrayList<NioPacket>();
+	private LinkedList<ByteBuffer> sendQueue = new LinkedList<ByteBuffer>();
+	//The raw slices in our send queue which have not been copied yet
+	private final List<ByteBuffer> borrowed = new ArrayList<ByteBuffer>(1);
 	private ByteBuffer rebuffer = null;
 
 	/**
@@ -74,117 +148,277 @@ public abstract class DelimitedSerializer implements NioSerializer
 			throw new ClosedChannelException();
 		}
 
-		//Our start point is initially 0
-		int startPoint = 0;
-
-		//Create a new list to hold the packets we find
-		LinkedList<NioPacket> packets = new LinkedList<NioPacket>();
+		//Get a list to hold the packets we find (reusing ours if we are pooled)
+		List<NioPacket> packets;
+		if (pooled)
+		{
+			pooledPackets.clear();
+			packets = pooledPackets;
+		}
+		else
+		{
+			packets = new LinkedList<NioPacket>();
+		}
 
-		//The delimiter is removed from the stream and used to break up packets
-		byte[] delimiter = getDelimiter();
+		//The delimiters are removed from the stream and used to break up packets (compile them the first time)
+		if (matcher == null)
+		{
+			matcher = new DelimiterMatcher(getDelimiters());
+		}
 
-		//This is how far seraching the delimiter we are
-		int depth = 0;
+		//Copy any raw slices which are still waiting to be sent before we overwrite them
+		List<DelimitedSerializer> borrowers = BORROWERS.get();
+		if (!borrowers.isEmpty())
+		{
+			for (DelimitedSerializer borrower : borrowers)
+			{
+				borrower.detach();
+			}
+			borrowers.clear();
+		}
 
-		//Clear the buffer ready for putting data into
-		tb.clear();
+		//Our buffer can only be reused in place until we have given out slices of it
+		boolean inPlace = true;
 
-		//If we have residual from the last run then add it to the transient buffer
-		if (residual != null && residual.hasRemaining())
+		//Add our data in as many pieces as it takes to fit it into our buffer
+		while (buffer.hasRemaining())
 		{
-			//Our start point is initially
-			startPoint = residual.remaining();
-			tb.put(residual);
-			residual.clear();
+			//Make sure we have room for (some of) the data
+			makeRoom(buffer.remaining(), inPlace);
+
+			//Append as much of the data as we can
+			int count = Math.min(buffer.remaining(), receive.capacity() - end);
+			int limit = buffer.limit();
+			buffer.limit(buffer.position() + count);
+			receive.position(end);
+			receive.put(buffer);
+			buffer.limit(limit);
+			end += count;
+
+			//Find the delimiters in the new data
+			inPlace &= !scan(packets);
+
+			//If we are streaming and our buffer is full of one frame, send what we have (except a partial delimiter) as a chunk
+			if (streaming && start == 0 && end == receive.capacity())
+			{
+				packets.add(chunk(end - matcher.getMaxLength() + 1, false));
+				inPlace = false;
+			}
+
+			//If our buffer is as large as it can get and it is full of one frame, that frame is too large
+			if (!streaming && !skipping && start == 0 && end == receive.capacity() && end >= maxFrameSize)
+			{
+				LOG.warn("Skipping a frame as it is larger than the maximum of {} bytes", maxFrameSize);
+				skipping = true;
+				skipped++;
+			}
+
+			//While we are skipping a frame we don't need to keep anything (our matcher remembers partial delimiters)
+			if (skipping)
+			{
+				start = search;
+			}
 		}
 
-		//Add our data into the buffer as well and get it ready for reading
-		tb.put(buffer);
-		tb.flip();
+		//If we used all of our data, start from the beginning of our buffer next time
+		if (start == end)
+		{
+			start = 0;
+			end = 0;
+			search = 0;
+		}
 
-		//We will start searching after our residual from last time (we didn't find it there)
-		//We will go back far enough to ensure that we will catch partial delimiters
-		tb.position(startPoint - delimiter.length < 0 ? 0 : startPoint - delimiter.length);
+		//Return the packets that we got from this
+		return packets;
+	}
 
-		//This is our last delimiter we found
-		int lastDelimiter = 0;
+	/**
+	 * Makes room in our receive buffer for incoming data by moving our partial
+	 * frame to the front of the buffer and growing it (up to the maximum frame
+	 * size) if needed.
+	 *
+	 * @param incoming the number of bytes we want to add
+	 * @param inPlace  if our partial frame can be moved within our current
+	 *                 buffer (rather than into a new one)
+	 */
+	private void makeRoom(int incoming, boolean inPlace)
+	{
+		//If it already fits after our data there is nothing to do
+		if (receive != null && end + incoming <= receive.capacity())
+		{
+			return;
+		}
 
-		//While we have data
-		while (tb.hasRemaining())
+		//Work out how large we need to be, doubling so a large frame is only copied a few times
+		long needed = (long) end - start + incoming;
+		long size = receive == null ? bufferSize : receive.capacity();
+		long max = streaming ? bufferSize : maxFrameSize;
+		while (size < needed && size < max)
 		{
-			//Get a byte
-			byte b = tb.get();
+			size = Math.min(size * 2, max);
+		}
 
-			//If this is the start of a delimiter
-			if (delimiter[depth] == b)
+		//If we need a new buffer (or there are slices of our old one) move our partial frame into a new one
+		if (receive == null || size != receive.capacity() || !inPlace)
+		{
+			ByteBuffer grown = ByteBuffer.allocate((int) size).order(ByteOrder.nativeOrder());
+			if (receive != null)
 			{
-				//Start searching the next byte next time
-				depth++;
+				receive.limit(end);
+				receive.position(start);
+				grown.put(receive);
+			}
+			receive = grown;
+		}
+		//Otherwise move it to the front of our buffer
+		else
+		{
+			receive.limit(end);
+			receive.position(start);
+			receive.compact();
+		}
 
-				//If we have found the full delimiter
-				if (depth == delimiter.length)
-				{
-					//Get another view of this buffer
-					ByteBuffer data = tb.duplicate();
+		//Our buffer is always readable up to its capacity
+		receive.limit(receive.capacity());
+		search -= start;
+		end -= start;
+		start = 0;
+	}
 
-					//Set its start to where we left off
-					data.position(lastDelimiter);
+	/**
+	 * Searches our receive buffer for delimiters (resuming where we last
+	 * stopped) and deserializes each frame that we find.
+	 *
+	 * @param packets the list to add our packets to
+	 *
+	 * @return true if any frames were deserialized (and so slices of our
+	 *               buffer may have been given out)
+	 */
+	private boolean scan(List<NioPacket> packets)
+	{
+		boolean found = false;
 
-					//Set its limit to before the delimiter
-					data.limit(tb.position() - delimiter.length);
+		//Find the end of each delimiter
+		int index;
+		while ((index = matcher.find(receive, search, end)) >= 0)
+		{
+			//If this is the end of a frame that was too large, throw it away
+			if (skipping)
+			{
+				skipping = false;
+			}
+			//If this is the end of a frame we are streaming, send the last chunk of it
+			else if (streamed >= 0)
+			{
+				packets.add(chunk(index - matcher.getMatchedLength(), true));
+				found = true;
+			}
+			else
+			{
+				//Get another view of our buffer from where we left off to before the delimiter
+				ByteBuffer data = receive.duplicate();
+				data.limit(index - matcher.getMatchedLength());
+				data.position(start);
 
-					//Deserialize this section
-					try
-					{
-						List<NioPacket> pkts = deserializeBlob(data);
-						packets.addAll(pkts);
-					}
-					catch (NioInvalidDataException ex)
+				//Deserialize this section
+				try
+				{
+					List<NioPacket> pkts = deserializeBlob(data);
+					for (int i = 0; i < pkts.size(); i++)
 					{
-						LOG.warn("There was a packet of invalid data sent to the deserializer");
+						packets.add(pkts.get(i));
 					}
-
-					//Set our delimiter for next time we go through
-					lastDelimiter = tb.position();
-					depth = 0;
 				}
+				catch (NioInvalidDataException ex)
+				{
+					LOG.warn("There was a packet of invalid data sent to the deserializer");
+				}
+				found = true;
 			}
-			//If this isn't what we are looking for, reset our search
-			else
-			{
-				depth = 0;
-			}
-		}
 
-		//If after our whole search, we still have some data left over
-		if (tb.limit() > lastDelimiter)
-		{
-			//Set the buffers position to the position of the last delimiter
-			tb.position(lastDelimiter);
+			//Set our start for the next frame
+			start = index;
+			search = index;
+		}
 
-			//Work out how much data we need
-			int requiredSize = tb.remaining();
+		//Our matcher has searched everything we have
+		search = end;
 
-			//If we don't have enough
-			if (residual == null || residual.capacity() < requiredSize)
-			{
-				//Get enough to hold it
-				residual = ByteBuffer.allocate(requiredSize);
-			}
+		return found;
+	}
 
-			//Store it for next time
-			residual.clear();
-			residual.put(tb);
-			residual.flip();
+	/**
+	 * Makes a packet holding the next chunk of the frame we are streaming, from
+	 * the start of our partial frame up to the passed index.
+	 *
+	 * @param to   the index the chunk ends at (exclusive)
+	 * @param last if this is the last chunk of the frame
+	 *
+	 * @return a raw packet holding the chunk (as a slice if we give out
+	 *            slices)
+	 */
+	private NioPacket chunk(int to, boolean last)
+	{
+		//Get a view of the chunk
+		ByteBuffer data = receive.duplicate();
+		data.limit(to);
+		data.position(start);
+
+		//Work out where it is in the frame
+		NioChunk chunk = new NioChunk(streamed < 0 ? 0 : streamed, streamed < 0, last);
+		streamed = last ? -1 : chunk.getOffset() + (to - start);
+		start = to;
+
+		//Stamp it with the connection's details
+		NioClock clock = context == null || context.getClock() == null ? SystemClock.INSTANCE : context.getClock();
+		String uid = context == null ? null : context.getUid();
+
+		//Give out a read only slice if we have been asked to, otherwise a copy
+		if (rawSlices)
+		{
+			return new NioPacket(uid, chunk, data.slice().asReadOnlyBuffer(), clock.currentTimeMillis());
 		}
-		//If we didn't have any data left over, get rid of our residual buffer
 		else
 		{
-			residual = null;
+			byte[] bytes = new byte[data.remaining()];
+			data.get(bytes);
+			return new NioPacket(uid, chunk, true, bytes, clock.currentTimeMillis());
 		}
+	}
 
-		//Return the packets that we got from this
-		return packets;
+	/**
+	 * Gets which of our delimiters (by its index in {@link #getDelimiters()})
+	 * ended the frame which is being deserialized. This is only valid while
+	 * {@link #deserializeBlob(ByteBuffer)} is being called.
+	 *
+	 * @return the index of the delimiter that ended the frame
+	 */
+	protected int getFrameDelimiter()
+	{
+		return matcher == null ? -1 : matcher.getMatched();
+	}
+
+	/**
+	 * Gets the length of the delimiter which ended the frame which is being
+	 * deserialized. This is only valid while
+	 * {@link #deserializeBlob(ByteBuffer)} is being called.
+	 *
+	 * @return the length of the delimiter in bytes
+	 */
+	protected int getFrameDelimiterLength()
+	{
+		return matcher == null ? 0 : matcher.getMatchedLength();
+	}
+
+	/**
+	 * Gets the number of frames which have been skipped for being larger than
+	 * the maximum frame size
+	 *
+	 * @return the number of skipped frames
+	 */
+	public long getSkipped()
+	{
+		return skipped;
 	}
 
 	/**
@@ -198,8 +432,31 @@ public abstract class DelimitedSerializer implements NioSerializer
 		{
 			throw new ClosedChannelException();
 		}
+		//Send raw slices (which hold their delimiter) straight through without copying them
+		if (raw && packet.isRaw() && packet.hasRawBuffer())
+		{
+			ByteBuffer slice = packet.getRawBuffer();
+			sendQueue.add(slice);
+
+			//Remember the slice so we can copy it if it is still here when the receive buffer is reused
+			if (borrowed.isEmpty())
+			{
+				BORROWERS.get().add(this);
+			}
+			borrowed.add(slice);
+			return;
+		}
+
 		try
 		{
+			//Let our subclass write the whole frame if it can
+			ByteBuffer frame = serializeFrame(packet);
+			if (frame != null)
+			{
+				sendQueue.add(frame);
+				return;
+			}
+
 			//Serialize our packets into byte buffers
 			ByteBuffer buff = serializeBlob(packet);
 
@@ -218,6 +475,37 @@ public abstract class DelimitedSerializer implements NioSerializer
 		}
 	}
 
+	/**
+	 * Replaces any raw slices which are still in our send queue with copies so
+	 * that the receive buffer they came from can be reused.
+	 */
+	private void detach()
+	{
+		//If we are closed there is nothing to send
+		if (sendQueue != null)
+		{
+			for (ListIterator<ByteBuffer> it = sendQueue.listIterator(); it.hasNext();)
+			{
+				ByteBuffer buffer = it.next();
+
+				//Check if this is one of our slices (by identity)
+				for (ByteBuffer slice : borrowed)
+				{
+					if (buffer == slice)
+					{
+						//Copy what is left of it
+						ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+						copy.put(buffer);
+						copy.flip();
+						it.set(copy);
+						break;
+					}
+				}
+			}
+		}
+		borrowed.clear();
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -226,7 +514,7 @@ public abstract class DelimitedSerializer implements NioSerializer
 	{
 		//Clear our variables
 		sendQueue = null;
-		residual = null;
+		receive = null;
 		open = false;
 	}
 
@@ -386,6 +674,37 @@ public abstract class DelimitedSerializer implements NioSerializer
 	 */
 	protected abstract ByteBuffer serializeBlob(NioPacket packet) throws NioInvalidDataException;
 
+	/**
+	 * This method can be overridden to serialize a packet into a single
+	 * ByteBuffer which already ends with the delimiter, so that the delimiter
+	 * does not need to be queued on its own. If it returns null (which it does
+	 * by default) the packet is serialized using
+	 * {@link #serializeBlob(NioPacket)} instead.
+	 *
+	 * @param packet the packet to be serialized
+	 *
+	 * @return a {@link ByteBuffer} that contains the data and its delimiter, or
+	 *         null to use {@link #serializeBlob(NioPacket)}
+	 *
+	 * @throws NioInvalidDataException if the given data was invalid
+	 */
+	protected ByteBuffer serializeFrame(NioPacket packet) throws NioInvalidDataException
+	{
+		return null;
+	}
+
+	/**
+	 * Checks if everything which has been serialized has been read out of
+	 * this serializer. When it has, none of the buffers returned from earlier
+	 * serializations are still in use and their memory may be written over.
+	 *
+	 * @return true if our send queue is empty
+	 */
+	protected boolean isSent()
+	{
+		return sendQueue == null || sendQueue.isEmpty();
+	}
+
 	/**
 	 * This method should return the multi byte delimiter to use when delimiting
 	 * the incoming data. It should not change as it may miss packets in this
@@ -395,4 +714,22 @@ public abstract class DelimitedSerializer implements NioSerializer
 	 *         data stream
 	 */
 	protected abstract byte[] getDelimiter();
+
+	/**
+	 * This method returns all of the delimiters which can end a frame in the
+	 * incoming data, it is called once before the first data is deserialized.
+	 * By default this is only the delimiter from {@link #getDelimiter()}, which
+	 * is always the one used to end outgoing frames. Subclasses which accept
+	 * several delimiters (such as \n, \r\n or \0) can override it and use
+	 * {@link #getFrameDelimiter()} to find out which one ended each frame.
+	 *
+	 * @return the delimiters to search for
+	 */
+	protected byte[][] getDelimiters()
+	{
+		return new byte[][]
+		{
+			getDelimiter()
+		};
+	}
 }
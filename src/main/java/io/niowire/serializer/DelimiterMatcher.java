@@ -0,0 +1,263 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+/**
+ * Finds the ends of frames in a stream which can be ended by any one of
+ * several delimiters. The delimiters are compiled into an Aho-Corasick
+ * automaton (for a single delimiter this is the same as the
+ * Knuth-Morris-Pratt automaton) so each byte costs one state transition, and
+ * overlapping delimiters such as {@code \r\n\r\n} are never missed after a
+ * partial match. The current state is kept between calls so a delimiter which
+ * is split between two reads is still found without searching any bytes
+ * twice.
+ *
+ * While no delimiter has been partly matched, if every delimiter starts with
+ * the same byte the stream is skipped through a word at a time using the
+ * {@link ByteScanner}.
+ *
+ * When several delimiters end on the same byte the longest is reported. Note
+ * that instances of this class are not thread safe as they hold the state of
+ * the stream they are searching.
+ *
+ * @author Trent Houliston
+ */
+public final class DelimiterMatcher
+{
+
+	/**
+	 * The transitions of our automaton, the next state is found at
+	 * (state * 256 + byte)
+	 */
+	private final int[] next;
+	/**
+	 * The delimiter which is matched in each state (or -1)
+	 */
+	private final int[] output;
+	/**
+	 * The lengths of each of our delimiters
+	 */
+	private final int[] lengths;
+	/**
+	 * The length of our longest delimiter
+	 */
+	private final int maxLength;
+	/**
+	 * The byte every delimiter starts with (or -1 if they differ)
+	 */
+	private final int first;
+	//The state of the stream we are searching and the last delimiter we found
+	private int state = 0;
+	private int matched = -1;
+
+	/**
+	 * Compiles a new matcher for the passed delimiters
+	 *
+	 * @param delimiters the delimiters which can end a frame
+	 *
+	 * @throws IllegalArgumentException if there are no delimiters or one of
+	 *                                  them is empty
+	 */
+	public DelimiterMatcher(byte[]... delimiters) throws IllegalArgumentException
+	{
+		if (delimiters.length == 0)
+		{
+			throw new IllegalArgumentException("At least one delimiter is required");
+		}
+
+		//Work out how many states we could need and what our delimiters start with
+		int states = 1;
+		int longest = 0;
+		int start = delimiters[0].length == 0 ? -1 : delimiters[0][0] & 0xFF;
+		lengths = new int[delimiters.length];
+		for (int i = 0; i < delimiters.length; i++)
+		{
+			if (delimiters[i].length == 0)
+			{
+				throw new IllegalArgumentException("Delimiters cannot be empty");
+			}
+			lengths[i] = delimiters[i].length;
+			states += delimiters[i].length;
+			longest = Math.max(longest, delimiters[i].length);
+			start = (delimiters[i][0] & 0xFF) == start ? start : -1;
+		}
+		first = start;
+		maxLength = longest;
+
+		int[] trie = new int[states * 256];
+		int[] out = new int[states];
+		Arrays.fill(trie, -1);
+		Arrays.fill(out, -1);
+
+		//Build a trie of our delimiters
+		int used = 1;
+		for (int i = 0; i < delimiters.length; i++)
+		{
+			int s = 0;
+			for (byte b : delimiters[i])
+			{
+				int t = (s << 8) | (b & 0xFF);
+				if (trie[t] < 0)
+				{
+					trie[t] = used++;
+				}
+				s = trie[t];
+			}
+
+			//If a delimiter is given twice the first one is reported
+			if (out[s] < 0)
+			{
+				out[s] = i;
+			}
+		}
+
+		//Turn the trie into an automaton by following failure links breadth first
+		int[] fail = new int[used];
+		LinkedList<Integer> queue = new LinkedList<Integer>();
+		for (int c = 0; c < 256; c++)
+		{
+			if (trie[c] < 0)
+			{
+				trie[c] = 0;
+			}
+			else
+			{
+				fail[trie[c]] = 0;
+				queue.add(trie[c]);
+			}
+		}
+		while (!queue.isEmpty())
+		{
+			int s = queue.poll();
+
+			//If no delimiter ends here, the longest one ending in our failure state does
+			if (out[s] < 0)
+			{
+				out[s] = out[fail[s]];
+			}
+
+			for (int c = 0; c < 256; c++)
+			{
+				int t = trie[(s << 8) | c];
+				if (t < 0)
+				{
+					trie[(s << 8) | c] = trie[(fail[s] << 8) | c];
+				}
+				else
+				{
+					fail[t] = trie[(fail[s] << 8) | c];
+					queue.add(t);
+				}
+			}
+		}
+
+		next = Arrays.copyOf(trie, used * 256);
+		output = Arrays.copyOf(out, used);
+	}
+
+	/**
+	 * Searches the buffer between two absolute indexes for the end of the next
+	 * delimiter, carrying on from any delimiter that was partly matched by the
+	 * last call. The position and limit of the buffer are not changed.
+	 *
+	 * @param buffer the buffer to search
+	 * @param from   the index to start searching from (inclusive)
+	 * @param to     the index to stop searching at (exclusive)
+	 *
+	 * @return the index just after the end of the delimiter that was found, or
+	 *               -1 if none were (in which case every byte up to the end
+	 *               has been searched)
+	 */
+	public int find(ByteBuffer buffer, int from, int to)
+	{
+		int s = state;
+		int i = from;
+
+		while (i < to)
+		{
+			//If we are not part way through a delimiter skip ahead to where one could start
+			if (s == 0 && first >= 0)
+			{
+				i = ByteScanner.indexOf(buffer, (byte) first, i, to);
+				if (i < 0)
+				{
+					break;
+				}
+			}
+
+			//Move to our next state
+			s = next[(s << 8) | (buffer.get(i++) & 0xFF)];
+
+			//If we have found a delimiter start again for the next one
+			if (output[s] >= 0)
+			{
+				matched = output[s];
+				state = 0;
+				return i;
+			}
+		}
+
+		state = s;
+		return -1;
+	}
+
+	/**
+	 * Gets which of the delimiters (by the order they were given in) ended the
+	 * last frame that was found
+	 *
+	 * @return the index of the delimiter, or -1 if none have been found
+	 */
+	public int getMatched()
+	{
+		return matched;
+	}
+
+	/**
+	 * Gets the length of the delimiter which ended the last frame that was
+	 * found
+	 *
+	 * @return the length of the delimiter in bytes, or 0 if none have been
+	 *               found
+	 */
+	public int getMatchedLength()
+	{
+		return matched < 0 ? 0 : lengths[matched];
+	}
+
+	/**
+	 * Gets the length of the longest of our delimiters, this is one more than
+	 * the most bytes that can be part of a partly matched delimiter
+	 *
+	 * @return the length of the longest delimiter in bytes
+	 */
+	public int getMaxLength()
+	{
+		return maxLength;
+	}
+
+	/**
+	 * Forgets any delimiter which was partly matched
+	 */
+	public void reset()
+	{
+		state = 0;
+	}
+}
@@ -18,9 +18,22 @@ package io.niowire.serializer;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import io.niowire.data.NioPacket;
+import io.niowire.entities.Initialize;
+import io.niowire.entities.Warm;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import javax.inject.Inject;
 
 /**
@@ -28,15 +41,304 @@ import javax.inject.Inject;
  * deserialize into a Map. We are using google Gson to serialize/deserialize
  * objects.
  *
+ * Lines are parsed straight from their bytes (through a reused reader which
+ * decodes them as they are read), so invalid lines are rejected as soon as the
+ * parser finds the problem without the whole line becoming a String. In the
+ * same way objects are written straight into the bytes which are sent (along
+ * with their newline) when the charset is UTF-8 or US-ASCII.
+ *
+ * Gson is thread safe and builds its adapters lazily, so one Gson (and its
+ * adapters) is shared between all the JsonSerializers made by the same
+ * {@link io.niowire.entities.NioObjectFactory}. Extra Gson
+ * {@link TypeAdapterFactory}s can be registered by listing their class names
+ * in typeAdapterFactories.
+ *
  * @author Trent Houliston
  */
 public class JsonSerializer extends LineSerializer
 {
 
+	//The key our gson is shared under
+	private static final String SHARED_GSON = JsonSerializer.class.getName() + ".gson";
 	//Our gson instance
-	Gson g = new GsonBuilder().disableHtmlEscaping().serializeNulls().create();
+	Gson g = null;
 	@Inject
 	private Class<?> pojoClass = null;
+	//The class names of extra type adapter factories to register with gson
+	@Inject
+	private List<String> typeAdapterFactories = null;
+	//The objects shared by everything made by our factory (if we were made by one)
+	@Inject
+	private ConcurrentMap<String, Object> shared = null;
+	//The reader we parse each line through
+	private ByteBufferReader reader = null;
+	//Our adapters for our pojo class (if we have one), arrays and objects
+	private TypeAdapter<?> pojoAdapter = null;
+	private TypeAdapter<?> listAdapter = null;
+	private TypeAdapter<?> mapAdapter = null;
+	//The smallest chunk of bytes we write our output into
+	private static final int CHUNK_SIZE = 1024;
+	//The writer we write our output through (if our charset allows it)
+	private ByteBufferWriter writer = null;
+	//The JSON writer over it, which is lenient so it can write one top level value after another
+	private JsonWriter json = null;
+	//The adapter we last wrote with and the class it was for
+	private Class<?> writeClass = null;
+	private TypeAdapter<Object> writeAdapter = null;
+
+	/**
+	 * Makes our reader and looks up the adapters we parse with once rather
+	 * than for each line
+	 */
+	@Initialize
+	public void resolveAdapters() throws ClassNotFoundException, InstantiationException, IllegalAccessException
+	{
+		//Use the gson shared by our factory, or make it if we are the first
+		g = sharedGson(shared, typeAdapterFactories);
+
+		reader = new ByteBufferReader(charset);
+		pojoAdapter = pojoClass == null ? null : g.getAdapter(pojoClass);
+		listAdapter = g.getAdapter(ArrayList.class);
+		mapAdapter = g.getAdapter(LinkedHashMap.class);
+		writer = ByteBufferWriter.supports(charset) ? new ByteBufferWriter(charset, CHUNK_SIZE) : null;
+	}
+
+	/**
+	 * Builds the Gson shared by the serializers made by a factory (and the
+	 * adapters they parse with) before the first one is made
+	 *
+	 * @param values the values our factory injects
+	 * @param shared the objects shared by our factory
+	 *
+	 * @throws Exception if the Gson could not be made
+	 */
+	@Warm
+	@SuppressWarnings("unchecked")
+	static void warm(Map<String, Object> values, ConcurrentMap<String, Object> shared) throws Exception
+	{
+		Gson gson = sharedGson(shared, (List<String>) values.get("typeAdapterFactories"));
+
+		//Gson caches its adapters, so look up the ones we will use
+		Class<?> pojo = (Class<?>) values.get("pojoClass");
+		if (pojo != null)
+		{
+			gson.getAdapter(pojo);
+		}
+		gson.getAdapter(ArrayList.class);
+		gson.getAdapter(LinkedHashMap.class);
+	}
+
+	/**
+	 * Gets the Gson shared in the passed objects, or builds it if this is the
+	 * first serializer to want it
+	 *
+	 * @param shared    the objects shared by our factory (or null if we were
+	 *                     not made by one)
+	 * @param factories the class names of the type adapter factories to
+	 *                     register
+	 *
+	 * @return the Gson to use
+	 *
+	 * @throws ClassNotFoundException if a type adapter factory does not exist
+	 * @throws InstantiationException if a type adapter factory could not be
+	 *                                   made
+	 * @throws IllegalAccessException if a type adapter factory could not be
+	 *                                   made
+	 */
+	private static Gson sharedGson(ConcurrentMap<String, Object> shared, List<String> factories) throws ClassNotFoundException, InstantiationException, IllegalAccessException
+	{
+		if (shared == null)
+		{
+			return buildGson(factories);
+		}
+		Gson gson = (Gson) shared.get(SHARED_GSON);
+		if (gson == null)
+		{
+			//If another serializer beat us to it use theirs
+			Gson built = buildGson(factories);
+			Gson existing = (Gson) shared.putIfAbsent(SHARED_GSON, built);
+			gson = existing == null ? built : existing;
+		}
+		return gson;
+	}
+
+	/**
+	 * Builds a new Gson with our settings and type adapter factories
+	 *
+	 * @param factories the class names of the type adapter factories to
+	 *                     register
+	 *
+	 * @return the new Gson
+	 *
+	 * @throws ClassNotFoundException if a type adapter factory does not exist
+	 * @throws InstantiationException if a type adapter factory could not be
+	 *                                   made
+	 * @throws IllegalAccessException if a type adapter factory could not be
+	 *                                   made
+	 */
+	private static Gson buildGson(List<String> factories) throws ClassNotFoundException, InstantiationException, IllegalAccessException
+	{
+		GsonBuilder builder = new GsonBuilder().disableHtmlEscaping().serializeNulls();
+
+		//Register each of our type adapter factories
+		if (factories != null)
+		{
+			for (String name : factories)
+			{
+				builder.registerTypeAdapterFactory((TypeAdapterFactory) Class.forName(name).newInstance());
+			}
+		}
+
+		return builder.create();
+	}
+
+	/**
+	 * Writes the packets data as JSON followed by our delimiter straight into
+	 * a reused chunk of bytes through one reused JSON writer. The output is
+	 * the same as {@link Gson#toJson(Object)} would give.
+	 *
+	 * @param packet the packet to serialize
+	 *
+	 * @return a buffer holding the JSON and delimiter, or null if the packet
+	 *         is raw or our charset can't be written directly
+	 *
+	 * @throws NioInvalidDataException if the data could not be written as JSON
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	protected ByteBuffer serializeFrame(NioPacket packet) throws NioInvalidDataException
+	{
+		//Raw packets and other charsets are serialized the normal way
+		if (writer == null || (raw && packet.isRaw()))
+		{
+			return null;
+		}
+
+		//If everything we wrote has been sent we can write over it
+		writer.begin(isSent());
+
+		//Make our JSON writer if we don't have one
+		if (json == null)
+		{
+			json = new JsonWriter(writer);
+			json.setLenient(true);
+			json.setHtmlSafe(false);
+			json.setSerializeNulls(true);
+		}
+
+		try
+		{
+			Object data = packet.getData();
+			if (data == null)
+			{
+				json.nullValue();
+			}
+			else
+			{
+				//Look up our adapter if this is a different class to last time
+				if (data.getClass() != writeClass)
+				{
+					writeAdapter = (TypeAdapter<Object>) g.getAdapter(data.getClass());
+					writeClass = data.getClass();
+				}
+				writeAdapter.write(json, data);
+			}
+
+			//Add our delimiter to the same buffer
+			writer.writeBytes(getDelimiter());
+			return writer.finish();
+		}
+		//If we failed part way through a value our JSON writer can't be used again
+		catch (IOException ex)
+		{
+			json = null;
+			throw new NioInvalidDataException(ex);
+		}
+		catch (RuntimeException ex)
+		{
+			json = null;
+			throw new NioInvalidDataException(ex);
+		}
+	}
+
+	/**
+	 * Parses the bytes of a line into either a Pojo class if one is provided,
+	 * or into a LinkedHashMap or ArrayList depending on the first token. The
+	 * line must contain exactly one JSON value, whitespace before it is
+	 * skipped and anything Gson fails on is an invalid line.
+	 *
+	 * A new JsonReader is made for each line (about 4KB for its buffer and
+	 * string pool) as Gson's can't be reset. Once it has seen the end of a line
+	 * it reports the end of the document for good, and a failed parse leaves
+	 * it part way through a value.
+	 *
+	 * @param blob the bytes of the line
+	 *
+	 * @return the object the line held
+	 *
+	 * @throws NioInvalidDataException if the line was not valid JSON
+	 */
+	@Override
+	protected Object deserializeBytes(ByteBuffer blob) throws NioInvalidDataException
+	{
+		//Read the line through a lenient JSON reader (as Gson does)
+		reader.reset(blob);
+		JsonReader json = new JsonReader(reader);
+		json.setLenient(true);
+
+		try
+		{
+			//Work out what we are reading from its first token
+			TypeAdapter<?> adapter;
+			JsonToken token;
+			try
+			{
+				token = json.peek();
+			}
+			catch (EOFException ex)
+			{
+				//An empty line is null for a pojo (as Gson gives) and invalid otherwise
+				if (pojoAdapter != null)
+				{
+					return null;
+				}
+				throw new NioInvalidDataException(ex);
+			}
+
+			if (pojoAdapter != null)
+			{
+				adapter = pojoAdapter;
+			}
+			else if (token == JsonToken.BEGIN_ARRAY)
+			{
+				adapter = listAdapter;
+			}
+			else if (token == JsonToken.BEGIN_OBJECT)
+			{
+				adapter = mapAdapter;
+			}
+			else
+			{
+				throw new NioInvalidDataException();
+			}
+
+			//Read the value and make sure there is nothing after it
+			Object result = adapter.read(json);
+			if (json.peek() != JsonToken.END_DOCUMENT)
+			{
+				throw new NioInvalidDataException();
+			}
+			return result;
+		}
+		catch (IOException ex)
+		{
+			throw new NioInvalidDataException(ex);
+		}
+		catch (RuntimeException ex)
+		{
+			throw new NioInvalidDataException(ex);
+		}
+	}
 
 	/**
 	 * Deserializes the passed string into a either a Pojo class if one is
@@ -0,0 +1,204 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This enum describes the length field at the start of each frame read and
+ * written by the {@link LengthPrefixedSerializer}. The length is the number of
+ * bytes in the body of the frame (not including the length field).
+ *
+ * @author Trent Houliston
+ */
+public enum LengthPrefix
+{
+
+	/**
+	 * A single unsigned byte
+	 */
+	UINT8(1, 0xFFL),
+	/**
+	 * An unsigned two byte big endian integer
+	 */
+	UINT16_BE(2, 0xFFFFL),
+	/**
+	 * An unsigned two byte little endian integer
+	 */
+	UINT16_LE(2, 0xFFFFL),
+	/**
+	 * An unsigned four byte big endian integer
+	 */
+	UINT32_BE(4, 0xFFFFFFFFL),
+	/**
+	 * An unsigned four byte little endian integer
+	 */
+	UINT32_LE(4, 0xFFFFFFFFL),
+	/**
+	 * An unsigned variable length integer (7 bits per byte, least significant
+	 * group first, with the high bit set on every byte but the last) of up to
+	 * five bytes
+	 */
+	VARINT(5, 0xFFFFFFFFL);
+	//The largest number of bytes in this field and the largest length it can hold
+	private final int maxSize;
+	private final long maxLength;
+
+	/**
+	 * Creates a new length prefix
+	 *
+	 * @param maxSize   the largest number of bytes in the field
+	 * @param maxLength the largest length the field can hold
+	 */
+	private LengthPrefix(int maxSize, long maxLength)
+	{
+		this.maxSize = maxSize;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Gets the largest number of bytes this length field can take up
+	 *
+	 * @return the largest size of the field in bytes
+	 */
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * Gets the largest frame length this field can hold
+	 *
+	 * @return the largest length
+	 */
+	public long getMaxLength()
+	{
+		return maxLength;
+	}
+
+	/**
+	 * Gets the number of bytes this field takes up to hold the passed length
+	 *
+	 * @param length the length to hold
+	 *
+	 * @return the size of the field in bytes
+	 */
+	public int sizeOf(long length)
+	{
+		if (this != VARINT)
+		{
+			return maxSize;
+		}
+
+		//Count the groups of seven bits
+		int size = 1;
+		while ((length >>>= 7) != 0)
+		{
+			size++;
+		}
+		return size;
+	}
+
+	/**
+	 * Gets if the passed bytes hold a complete length field
+	 *
+	 * @param header the bytes of the field read so far
+	 * @param count  the number of bytes read so far
+	 *
+	 * @return true if the field is complete
+	 */
+	public boolean isComplete(byte[] header, int count)
+	{
+		if (this != VARINT)
+		{
+			return count == maxSize;
+		}
+
+		//A varint finishes with a byte without its high bit set
+		return count > 0 && (header[count - 1] & 0x80) == 0;
+	}
+
+	/**
+	 * Reads the length from a complete length field
+	 *
+	 * @param header the bytes of the field
+	 * @param count  the number of bytes in the field
+	 *
+	 * @return the length held in the field
+	 */
+	public long read(byte[] header, int count)
+	{
+		switch (this)
+		{
+			case UINT8:
+				return header[0] & 0xFFL;
+			case UINT16_BE:
+				return ((header[0] & 0xFFL) << 8) | (header[1] & 0xFFL);
+			case UINT16_LE:
+				return ((header[1] & 0xFFL) << 8) | (header[0] & 0xFFL);
+			case UINT32_BE:
+				return ((header[0] & 0xFFL) << 24) | ((header[1] & 0xFFL) << 16) | ((header[2] & 0xFFL) << 8) | (header[3] & 0xFFL);
+			case UINT32_LE:
+				return ((header[3] & 0xFFL) << 24) | ((header[2] & 0xFFL) << 16) | ((header[1] & 0xFFL) << 8) | (header[0] & 0xFFL);
+			default:
+				//Add each group of seven bits
+				long length = 0;
+				for (int i = 0; i < count; i++)
+				{
+					length |= (header[i] & 0x7FL) << (7 * i);
+				}
+				return length;
+		}
+	}
+
+	/**
+	 * Writes the length field for the passed length into the buffer
+	 *
+	 * @param length the length to write
+	 * @param buffer the buffer to write into
+	 */
+	public void write(long length, ByteBuffer buffer)
+	{
+		switch (this)
+		{
+			case UINT8:
+				buffer.put((byte) length);
+				break;
+			case UINT16_BE:
+				buffer.put((byte) (length >>> 8)).put((byte) length);
+				break;
+			case UINT16_LE:
+				buffer.put((byte) length).put((byte) (length >>> 8));
+				break;
+			case UINT32_BE:
+				buffer.put((byte) (length >>> 24)).put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length);
+				break;
+			case UINT32_LE:
+				buffer.put((byte) length).put((byte) (length >>> 8)).put((byte) (length >>> 16)).put((byte) (length >>> 24));
+				break;
+			default:
+				//Write groups of seven bits with the high bit set on all but the last
+				while ((length & ~0x7FL) != 0)
+				{
+					buffer.put((byte) ((length & 0x7F) | 0x80));
+					length >>>= 7;
+				}
+				buffer.put((byte) length);
+				break;
+		}
+	}
+}
@@ -0,0 +1,438 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import io.niowire.data.NioPacket;
+import io.niowire.entities.Initialize;
+import io.niowire.entities.NioObjectCreationException;
+import io.niowire.entities.NioObjectFactory;
+import io.niowire.entities.Warm;
+import io.niowire.server.NioClock;
+import io.niowire.server.NioConnection.Context;
+import io.niowire.server.SystemClock;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import javax.inject.Inject;
+import javax.inject.Named;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.niowire.serializer.DelimitedSerializer.transferMax;
+
+/**
+ * This serializer reads and writes frames which start with a length field
+ * followed by that many bytes of body, so any binary data can be carried and
+ * the body is never scanned. The length field is described by the
+ * {@link LengthPrefix} it is configured with.
+ *
+ * Each frame becomes a raw packet whose raw data is a copy of the frame. If
+ * the serializer is configured with {@code rawSlices} the raw data is instead
+ * a read only slice of the frame (taken directly from the receive buffer when
+ * the whole frame arrives in one read), which is only valid while the packet
+ * is being dispatched. If a {@link NioFrameCodec} is configured the packet's
+ * data is the decoded body, otherwise it is a read only view of the raw data.
+ *
+ * Frames which are larger than the maximum frame size are skipped as soon as
+ * their length field has been read, without buffering any of their body.
+ *
+ * @author Trent Houliston
+ */
+public class LengthPrefixedSerializer implements NioSerializer
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(LengthPrefixedSerializer.class);
+	//Injected Variables
+	@Inject
+	protected Context context = null;
+	@Inject
+	protected String prefix = "UINT32_BE";
+	@Inject
+	protected int maxFrameSize = 1048576;
+	@Inject
+	protected boolean rawSlices = false;
+	@Inject
+	@Named("codec")
+	protected NioObjectFactory<NioFrameCodec> codecFactory = null;
+	//Our configuration once it has been parsed
+	private LengthPrefix lengthPrefix = LengthPrefix.UINT32_BE;
+	private NioFrameCodec codec = null;
+	private NioClock clock = SystemClock.INSTANCE;
+	//The length field we are part way through reading
+	private final byte[] header = new byte[5];
+	private int headerCount = 0;
+	//The frame we are part way through reading (null if we are not)
+	private ByteBuffer frame = null;
+	private ByteBuffer assembly = null;
+	//How many bytes of an oversized frame we still have to skip
+	private long skip = 0;
+	private long skipped = 0;
+	//Our data waiting to be sent
+	private LinkedList<ByteBuffer> sendQueue = new LinkedList<ByteBuffer>();
+	private ByteBuffer rebuffer = null;
+	private boolean open = true;
+
+	/**
+	 * Warms the factory of our codec so that anything its codecs share is
+	 * built before the first connection is made
+	 *
+	 * @param values the values our factory injects
+	 * @param shared the objects shared by our factory
+	 *
+	 * @throws NioObjectCreationException if the factory could not be warmed
+	 */
+	@Warm
+	static void warm(Map<String, Object> values, ConcurrentMap<String, Object> shared) throws NioObjectCreationException
+	{
+		NioObjectFactory<?> factory = (NioObjectFactory<?>) values.get("codec");
+		if (factory != null)
+		{
+			factory.warm();
+		}
+	}
+
+	/**
+	 * Parses our length prefix and builds our codec
+	 *
+	 * @throws NioObjectCreationException if the codec could not be built
+	 */
+	@Initialize
+	protected void setup() throws NioObjectCreationException
+	{
+		//Parse our length prefix
+		lengthPrefix = LengthPrefix.valueOf(prefix.toUpperCase(Locale.ENGLISH));
+
+		//Build our codec if we have one
+		if (codecFactory != null)
+		{
+			codec = codecFactory.create(Collections.singletonMap("context", context));
+		}
+
+		//Use our connection's clock if it has one
+		if (context != null && context.getClock() != null)
+		{
+			clock = context.getClock();
+		}
+	}
+
+	/**
+	 * Reads as many frames as are complete from the buffer, keeping any
+	 * partial frame for next time.
+	 *
+	 * @param buffer the buffer containing the data to be deserialized
+	 *
+	 * @return the packets for each complete frame
+	 *
+	 * @throws IOException if the serializer is closed
+	 */
+	@Override
+	public List<NioPacket> deserialize(ByteBuffer buffer) throws IOException
+	{
+		//Check if the channel is closed
+		if (!open)
+		{
+			throw new ClosedChannelException();
+		}
+
+		List<NioPacket> packets = Collections.emptyList();
+		boolean assemblyUsed = false;
+
+		while (buffer.hasRemaining())
+		{
+			//Skip the body of an oversized frame
+			if (skip > 0)
+			{
+				int bytes = (int) Math.min(skip, buffer.remaining());
+				buffer.position(buffer.position() + bytes);
+				skip -= bytes;
+			}
+			//Continue filling a frame which was split between reads
+			else if (frame != null)
+			{
+				transferMax(buffer, frame);
+				if (!frame.hasRemaining())
+				{
+					frame.flip();
+					packets = add(packets, frame.asReadOnlyBuffer());
+					frame = null;
+					assemblyUsed = true;
+				}
+			}
+			//Read the length field of the next frame
+			else
+			{
+				header[headerCount++] = buffer.get();
+
+				if (lengthPrefix.isComplete(header, headerCount))
+				{
+					long length = lengthPrefix.read(header, headerCount);
+					headerCount = 0;
+
+					//Skip frames which are too large without buffering them
+					if (length > maxFrameSize)
+					{
+						LOG.warn("Skipping a frame of {} bytes as it is larger than the maximum of {}", length, maxFrameSize);
+						skip = length;
+						skipped++;
+					}
+					//If the whole frame is here hand out a slice of it
+					else if (buffer.remaining() >= length)
+					{
+						ByteBuffer slice = buffer.asReadOnlyBuffer();
+						slice.limit(buffer.position() + (int) length);
+						buffer.position(buffer.position() + (int) length);
+						packets = add(packets, slice.slice());
+					}
+					//Otherwise start assembling it (we can't reuse our buffer if it holds a frame from this read)
+					else
+					{
+						if (assemblyUsed || assembly == null || assembly.capacity() < length)
+						{
+							assembly = ByteBuffer.allocate((int) length);
+						}
+						assembly.clear();
+						assembly.limit((int) length);
+						frame = assembly;
+					}
+				}
+				//A varint which has not finished in five bytes is corrupt, drop what we have
+				else if (headerCount == header.length)
+				{
+					LOG.warn("The length field of a frame was invalid, discarding the received data");
+					headerCount = 0;
+					buffer.position(buffer.limit());
+				}
+			}
+		}
+
+		return packets;
+	}
+
+	/**
+	 * Builds a packet from a frame and adds it to the list
+	 *
+	 * @param packets the packets so far (an empty list if there are none)
+	 * @param body    a read only view of the body of the frame
+	 *
+	 * @return the list holding the new packet
+	 */
+	private List<NioPacket> add(List<NioPacket> packets, ByteBuffer body)
+	{
+		try
+		{
+			//Take our own copy of the body unless we have been asked for slices
+			byte[] copy = null;
+			if (!rawSlices)
+			{
+				copy = new byte[body.remaining()];
+				body.get(copy);
+				body = ByteBuffer.wrap(copy).asReadOnlyBuffer();
+			}
+
+			//Decode the body if we have a codec
+			Object data = codec == null ? body : codec.decode(body.duplicate());
+
+			//Make a list when we find our first packet
+			List<NioPacket> list = packets.isEmpty() ? new ArrayList<NioPacket>() : packets;
+			String uid = context == null ? null : context.getUid();
+			list.add(rawSlices ? new NioPacket(uid, data, body, clock.currentTimeMillis()) : new NioPacket(uid, data, true, copy, clock.currentTimeMillis()));
+			return list;
+		}
+		catch (NioInvalidDataException ex)
+		{
+			LOG.warn("There was a frame of invalid data sent to the deserializer");
+			return packets;
+		}
+	}
+
+	/**
+	 * Writes the packet as a frame. Raw packets are sent using their raw data,
+	 * otherwise the data is encoded with our codec (or sent directly if it is
+	 * a ByteBuffer or byte array).
+	 *
+	 * @param packet the packet to serialize
+	 *
+	 * @throws IOException if the serializer is closed
+	 */
+	@Override
+	public void serialize(NioPacket packet) throws IOException
+	{
+		//Check if the channel is closed
+		if (!open)
+		{
+			throw new ClosedChannelException();
+		}
+
+		try
+		{
+			//Work out the body of our frame
+			ByteBuffer body;
+			if (packet.isRaw() && packet.getRawBuffer() != null)
+			{
+				body = packet.getRawBuffer();
+			}
+			else if (codec != null)
+			{
+				body = codec.encode(packet.getData());
+			}
+			else if (packet.getData() instanceof ByteBuffer)
+			{
+				body = ((ByteBuffer) packet.getData()).duplicate();
+			}
+			else if (packet.getData() instanceof byte[])
+			{
+				body = ByteBuffer.wrap((byte[]) packet.getData());
+			}
+			else
+			{
+				throw new NioInvalidDataException("Packets must be raw or hold bytes unless a codec is configured");
+			}
+
+			//Check our frame is not too large
+			int length = body.remaining();
+			if (length > maxFrameSize || length > lengthPrefix.getMaxLength())
+			{
+				throw new NioInvalidDataException("The frame of " + length + " bytes is too large to send");
+			}
+
+			//Write the length and body into a single buffer
+			ByteBuffer out = ByteBuffer.allocate(lengthPrefix.sizeOf(length) + length);
+			lengthPrefix.write(length, out);
+			out.put(body);
+			out.flip();
+			sendQueue.add(out);
+		}
+		catch (NioInvalidDataException ex)
+		{
+			LOG.warn("There was a packet of invalid data sent to the serializer", ex);
+		}
+	}
+
+	/**
+	 * Gets the number of frames which have been skipped for being larger than
+	 * the maximum frame size
+	 *
+	 * @return the number of skipped frames
+	 */
+	public long getSkipped()
+	{
+		return skipped;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int read(ByteBuffer buffer) throws IOException
+	{
+		//Check if the channel is closed
+		if (!open)
+		{
+			throw new ClosedChannelException();
+		}
+
+		//This is to store how many bytes we have read
+		int read = 0;
+
+		//If we have a rebuffer then add it first
+		if (rebuffer != null)
+		{
+			read += rebuffer.remaining();
+			buffer.put(rebuffer);
+			rebuffer = null;
+		}
+
+		//Read as many of our buffers into the passed buffer as we can
+		while (!sendQueue.isEmpty() && buffer.remaining() >= sendQueue.peek().remaining())
+		{
+			ByteBuffer bb = sendQueue.poll();
+			read += bb.remaining();
+			buffer.put(bb);
+		}
+
+		//Read as much of our remaining buffer as we can
+		if (!sendQueue.isEmpty())
+		{
+			read += transferMax(sendQueue.peek(), buffer);
+		}
+
+		return read;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean hasData() throws IOException
+	{
+		//Check if the channel is closed
+		if (!open)
+		{
+			throw new ClosedChannelException();
+		}
+
+		return rebuffer != null || !sendQueue.isEmpty();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void rebuffer(ByteBuffer data) throws IOException
+	{
+		//Check if the channel is closed
+		if (!open)
+		{
+			throw new ClosedChannelException();
+		}
+
+		//Copy the data as the buffer will be reused
+		rebuffer = ByteBuffer.allocate(data.remaining());
+		rebuffer.put(data);
+		rebuffer.flip();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isOpen()
+	{
+		return open;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		//Clear our variables
+		sendQueue = null;
+		rebuffer = null;
+		frame = null;
+		assembly = null;
+		open = false;
+	}
+}
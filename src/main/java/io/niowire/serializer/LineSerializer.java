@@ -17,10 +17,15 @@
 package io.niowire.serializer;
 
 import io.niowire.data.NioPacket;
+import io.niowire.data.NioPacketPool;
 import io.niowire.entities.Initialize;
+import io.niowire.server.NioClock;
+import io.niowire.server.SystemClock;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import javax.inject.Inject;
@@ -37,6 +42,11 @@ import javax.inject.Inject;
 public class LineSerializer extends DelimitedSerializer
 {
 
+	/**
+	 * The charset used to make Strings from ASCII bytes (which are the same in
+	 * ISO-8859-1)
+	 */
+	private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
 	/**
 	 * Our charset that we are going to use
 	 */
@@ -50,6 +60,38 @@ public class LineSerializer extends DelimitedSerializer
 	 * Our decoder (note not thread safe)
 	 */
 	private CharsetEncoder ENCODER = null;
+	/**
+	 * The clock we timestamp our packets with
+	 */
+	private NioClock clock = SystemClock.INSTANCE;
+	/**
+	 * The pool our packets come from (if we are pooled) and the list we reuse
+	 * to return them
+	 */
+	private NioPacketPool pool = null;
+	private final ArrayList<NioPacket> single = new ArrayList<NioPacket>(1);
+	/**
+	 * Our newline in our charset
+	 */
+	private byte[] delimiter = null;
+	/**
+	 * If our charset encodes ASCII as single bytes which never appear in
+	 * other characters (UTF-8 and US-ASCII), in which case lines are decoded
+	 * and encoded directly rather than through the decoder and encoder
+	 */
+	private boolean direct = false;
+	/**
+	 * Our buffers which are reused for decoding and encoding, and for
+	 * stripping carriage returns (they grow to fit the longest line)
+	 */
+	private CharBuffer chars = CharBuffer.allocate(0);
+	private ByteBuffer bytes = ByteBuffer.allocate(0);
+	private byte[] stripped = new byte[0];
+	/**
+	 * The line endings we accept (as well as \n) if any
+	 */
+	@Inject
+	protected List<String> delimiters = null;
 
 	/**
 	 * This method overrides from the Delimited serializer and deserializes the
@@ -67,35 +109,64 @@ public class LineSerializer extends DelimitedSerializer
 	@Override
 	protected List<NioPacket> deserializeBlob(ByteBuffer blob) throws NioInvalidDataException
 	{
-		//Decode the string
-		String str;
-
-		try
+		//If we are raw take a read only slice of the line and its delimiter as they were received (before decoding moves the position)
+		ByteBuffer rawSlice = null;
+		byte[] rawData = null;
+		if (raw && rawSlices)
 		{
-			str = DECODER.decode(blob).toString();
+			rawSlice = blob.asReadOnlyBuffer();
+			rawSlice.limit(Math.min(blob.limit() + getFrameDelimiterLength(), blob.capacity()));
+			rawSlice = rawSlice.slice();
 		}
-		catch (CharacterCodingException ex)
+		//Otherwise our raw data is the line without carriage returns and ending with our delimiter
+		else if (raw)
 		{
-			throw new NioInvalidDataException(ex);
+			rawData = normalise(blob.duplicate());
 		}
 
-		//Remove any carriage returns
-		str = str.replaceAll("\r", "");
-
 		//Deserialize this
-		Object data = deserializeString(str);
+		Object data = deserializeBytes(blob);
 
-		//If we are adding the raw data
-		if (raw)
+		//If we are pooled reuse a packet and our list
+		if (pooled)
 		{
-			return Collections.singletonList(new NioPacket(context.getUid(), data, true, (str + new String(getDelimiter(), charset)).getBytes(charset)));
+			single.clear();
+			single.add(rawSlice != null ? pool.acquire(context.getUid(), data, rawSlice, clock.currentTimeMillis()) : pool.acquire(context.getUid(), data, raw, rawData, clock.currentTimeMillis()));
+			return single;
+		}
+		//If we are adding a slice of the raw data
+		else if (rawSlice != null)
+		{
+			return Collections.singletonList(new NioPacket(context.getUid(), data, rawSlice, clock.currentTimeMillis()));
 		}
 		else
 		{
-			return Collections.singletonList(new NioPacket(context.getUid(), data));
+			return Collections.singletonList(new NioPacket(context.getUid(), data, raw, rawData, clock.currentTimeMillis()));
 		}
 	}
 
+	/**
+	 * Builds the raw data of a line the same way it would be sent, the decoded
+	 * line (without any carriage returns) encoded in our charset followed by
+	 * our delimiter.
+	 *
+	 * @param line the bytes of the line
+	 *
+	 * @return the raw data for the line
+	 *
+	 * @throws NioInvalidDataException if the line could not be decoded
+	 */
+	private byte[] normalise(ByteBuffer line) throws NioInvalidDataException
+	{
+		byte[] encoded = (direct ? decodeDirect(line) : decode(line)).getBytes(charset);
+		byte[] newline = getDelimiter();
+
+		//Put the delimiter on the end
+		byte[] result = Arrays.copyOf(encoded, encoded.length + newline.length);
+		System.arraycopy(newline, 0, result, encoded.length, newline.length);
+		return result;
+	}
+
 	/**
 	 * This method is used to serialize a string into a ByteBuffer by using our
 	 * charset to convert it into its binary form
@@ -122,15 +193,251 @@ public class LineSerializer extends DelimitedSerializer
 		//Otherwise behave as normal
 		else
 		{
-			try
+			String str = serializeString(packet);
+
+			//Encode directly if we can
+			return direct ? ByteBuffer.wrap(str.getBytes(charset)) : encode(str);
+		}
+	}
+
+	/**
+	 * Deserializes the bytes of a line (without its newline) into the data for
+	 * its packet. By default the line is decoded (without any carriage
+	 * returns) and passed to deserializeString, subclasses which can parse the
+	 * bytes directly can override this instead.
+	 *
+	 * @param blob the bytes of the line
+	 *
+	 * @return the data for the line's packet
+	 *
+	 * @throws NioInvalidDataException if the line was invalid
+	 */
+	protected Object deserializeBytes(ByteBuffer blob) throws NioInvalidDataException
+	{
+		return deserializeString(direct ? decodeDirect(blob) : decode(blob));
+	}
+
+	/**
+	 * Decodes a line in a charset which is UTF-8 or US-ASCII directly from its
+	 * bytes. Lines which are pure ASCII (the common case) have their carriage
+	 * return bytes removed and become a String without being decoded, others
+	 * are decoded the same way as the decoder would (replacing invalid bytes)
+	 * and then have their carriage returns removed.
+	 *
+	 * @param blob the bytes of the line
+	 *
+	 * @return the decoded line without any carriage returns
+	 */
+	private String decodeDirect(ByteBuffer blob)
+	{
+		int length = blob.remaining();
+
+		//Get at the bytes of the line (copying them if they are not on the heap)
+		byte[] array;
+		int offset;
+		if (blob.hasArray())
+		{
+			array = blob.array();
+			offset = blob.arrayOffset() + blob.position();
+		}
+		else
+		{
+			array = scratch(length);
+			offset = 0;
+			blob.duplicate().get(array, 0, length);
+		}
+		blob.position(blob.limit());
+
+		//Check if this is pure ASCII and if it has any carriage returns
+		boolean ascii = true;
+		int returns = 0;
+		for (int i = offset; i < offset + length; i++)
+		{
+			byte b = array[i];
+			ascii &= b >= 0;
+			returns += b == '\r' ? 1 : 0;
+		}
+
+		//Decode it normally if it isn't ASCII (removing carriage returns from the characters)
+		if (!ascii)
+		{
+			String str = new String(array, offset, length, charset);
+			return returns == 0 ? str : stripReturns(str);
+		}
+		//If it is ASCII without carriage returns each byte is a character
+		else if (returns == 0)
+		{
+			return new String(array, offset, length, LATIN1);
+		}
+		//Otherwise remove the carriage return bytes first
+		else
+		{
+			byte[] line = array == stripped ? array : scratch(length);
+			int count = 0;
+			for (int i = offset; i < offset + length; i++)
+			{
+				if (array[i] != '\r')
+				{
+					line[count++] = array[i];
+				}
+			}
+			return new String(line, 0, count, LATIN1);
+		}
+	}
+
+	/**
+	 * Decodes a line using our decoder into our reused character buffer,
+	 * growing it if it is not large enough.
+	 *
+	 * @param blob the bytes of the line
+	 *
+	 * @return the decoded line without any carriage returns
+	 *
+	 * @throws NioInvalidDataException if the line could not be decoded
+	 */
+	private String decode(ByteBuffer blob) throws NioInvalidDataException
+	{
+		//Make sure our buffer can hold the whole line
+		int needed = (int) Math.ceil(blob.remaining() * (double) DECODER.maxCharsPerByte());
+		if (chars.capacity() < needed)
+		{
+			chars = CharBuffer.allocate(needed);
+		}
+
+		//Decode the line
+		chars.clear();
+		DECODER.reset();
+		CoderResult result = DECODER.decode(blob, chars, true);
+		if (!result.isUnderflow())
+		{
+			throwException(result);
+		}
+		result = DECODER.flush(chars);
+		if (!result.isUnderflow())
+		{
+			throwException(result);
+		}
+		chars.flip();
+
+		//Copy out the characters which aren't carriage returns
+		int count = 0;
+		char[] array = chars.array();
+		for (int i = 0; i < chars.limit(); i++)
+		{
+			if (array[i] != '\r')
 			{
-				return ENCODER.encode(CharBuffer.wrap(serializeString(packet)));
+				array[count++] = array[i];
 			}
-			catch (CharacterCodingException ex)
+		}
+		return new String(array, 0, count);
+	}
+
+	/**
+	 * Encodes a line using our encoder into our reused byte buffer, growing it
+	 * if it is not large enough, and copies the result into a new buffer.
+	 *
+	 * @param str the line to encode
+	 *
+	 * @return a buffer holding the encoded line
+	 *
+	 * @throws NioInvalidDataException if the line could not be encoded
+	 */
+	private ByteBuffer encode(String str) throws NioInvalidDataException
+	{
+		//Put the line in our character buffer
+		if (chars.capacity() < str.length())
+		{
+			chars = CharBuffer.allocate(str.length());
+		}
+		chars.clear();
+		chars.put(str);
+		chars.flip();
+
+		//Make sure our buffer can hold the whole line
+		int needed = (int) Math.ceil(str.length() * (double) ENCODER.maxBytesPerChar());
+		if (bytes.capacity() < needed)
+		{
+			bytes = ByteBuffer.allocate(needed);
+		}
+
+		//Encode the line
+		bytes.clear();
+		ENCODER.reset();
+		CoderResult result = ENCODER.encode(chars, bytes, true);
+		if (!result.isUnderflow())
+		{
+			throwException(result);
+		}
+		result = ENCODER.flush(bytes);
+		if (!result.isUnderflow())
+		{
+			throwException(result);
+		}
+		bytes.flip();
+
+		//Copy it out as the buffer will be queued
+		ByteBuffer out = ByteBuffer.allocate(bytes.remaining());
+		out.put(bytes);
+		out.flip();
+		return out;
+	}
+
+	/**
+	 * Throws the exception for a coder result which was not an underflow
+	 *
+	 * @param result the result
+	 *
+	 * @throws NioInvalidDataException always
+	 */
+	private static void throwException(CoderResult result) throws NioInvalidDataException
+	{
+		try
+		{
+			result.throwException();
+		}
+		catch (CharacterCodingException ex)
+		{
+			throw new NioInvalidDataException(ex);
+		}
+		throw new NioInvalidDataException();
+	}
+
+	/**
+	 * Removes the carriage returns from a decoded line
+	 *
+	 * @param str the line
+	 *
+	 * @return the line without carriage returns
+	 */
+	private static String stripReturns(String str)
+	{
+		StringBuilder builder = new StringBuilder(str.length());
+		for (int i = 0; i < str.length(); i++)
+		{
+			char c = str.charAt(i);
+			if (c != '\r')
 			{
-				throw new NioInvalidDataException(ex);
+				builder.append(c);
 			}
 		}
+		return builder.toString();
+	}
+
+	/**
+	 * Gets our scratch array for stripping carriage returns, growing it if it
+	 * is not large enough
+	 *
+	 * @param length the length needed
+	 *
+	 * @return the scratch array
+	 */
+	private byte[] scratch(int length)
+	{
+		if (stripped.length < length)
+		{
+			stripped = new byte[length];
+		}
+		return stripped;
 	}
 
 	/**
@@ -145,6 +452,23 @@ public class LineSerializer extends DelimitedSerializer
 		//Get an encoder and decoder from our charset
 		DECODER = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
 		ENCODER = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		//Cache our newline and see if we can skip the decoder and encoder
+		delimiter = "\n".getBytes(charset);
+		direct = "UTF-8".equals(charset.name()) || "US-ASCII".equals(charset.name());
+
+		//Use our connection's clock if it has one
+		if (context != null && context.getClock() != null)
+		{
+			clock = context.getClock();
+		}
+
+		//Use our connection's packet pool if we are pooled (or our own if it has none)
+		if (pooled)
+		{
+			pool = context == null ? null : context.getPacketPool();
+			pool = pool == null ? new NioPacketPool() : pool;
+		}
 	}
 
 	/**
@@ -158,7 +482,36 @@ public class LineSerializer extends DelimitedSerializer
 	@Override
 	protected byte[] getDelimiter()
 	{
-		return "\n".getBytes(charset);
+		//We cache our newline (though we may be asked for it before we are initialized)
+		if (delimiter == null)
+		{
+			delimiter = "\n".getBytes(charset);
+		}
+		return delimiter;
+	}
+
+	/**
+	 * Gets the line endings we accept, this is \n and any others we have been
+	 * configured with (such as \0).
+	 *
+	 * @return the bytes of each line ending in our charset
+	 */
+	@Override
+	protected byte[][] getDelimiters()
+	{
+		//If we only accept \n
+		if (delimiters == null || delimiters.isEmpty())
+		{
+			return super.getDelimiters();
+		}
+
+		byte[][] result = new byte[delimiters.size() + 1][];
+		result[0] = getDelimiter();
+		for (int i = 0; i < delimiters.size(); i++)
+		{
+			result[i + 1] = delimiters.get(i).getBytes(charset);
+		}
+		return result;
 	}
 
 	/**
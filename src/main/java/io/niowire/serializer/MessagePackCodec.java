@@ -0,0 +1,238 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import io.niowire.entities.Initialize;
+import io.niowire.entities.Warm;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import javax.inject.Inject;
+
+/**
+ * This codec treats the body of each frame as a single MessagePack value, it
+ * is used with the {@link LengthPrefixedSerializer} which does the framing.
+ * Values are decoded into the same shapes that the {@link JsonSerializer}
+ * gives for JSON (LinkedHashMaps, ArrayLists, Doubles, Strings, Booleans and
+ * null), or bound to the pojoClass if one is configured. Binary values are
+ * decoded as byte arrays, and byte arrays are encoded as binary values.
+ *
+ * As every number is decoded as a Double when there is no pojoClass, integers
+ * (int64 and uint64) larger than 2^53 lose precision in the same way as they
+ * would in JSON. When binding to a pojoClass integers are kept exactly, so
+ * long (or BigInteger for uint64 values of 2^63 and above) fields should be
+ * used for values which need every bit.
+ *
+ * Maps, collections, arrays and boxed primitives are encoded directly, other
+ * objects are encoded using Gson's adapter for them (as the JsonSerializer
+ * would write them). Like the JsonSerializer, the Gson is shared between all
+ * the codecs made by the same {@link io.niowire.entities.NioObjectFactory}.
+ *
+ * @author Trent Houliston
+ */
+public class MessagePackCodec implements NioFrameCodec
+{
+
+	//The key our gson is shared under
+	private static final String SHARED_GSON = MessagePackCodec.class.getName() + ".gson";
+	//The smallest chunk of bytes we write our output into
+	private static final int CHUNK_SIZE = 1024;
+	//Writes byte arrays in pojos as binary values (and reads them back from the arrays of bytes in a tree)
+	private static final TypeAdapter<byte[]> BINARY = new TypeAdapter<byte[]>()
+	{
+		@Override
+		public void write(JsonWriter out, byte[] value) throws IOException
+		{
+			if (out instanceof MessagePackWriter)
+			{
+				((MessagePackWriter) out).binaryValue(value);
+			}
+			else if (value == null)
+			{
+				out.nullValue();
+			}
+			else
+			{
+				out.beginArray();
+				for (byte b : value)
+				{
+					out.value(b);
+				}
+				out.endArray();
+			}
+		}
+
+		@Override
+		public byte[] read(JsonReader in) throws IOException
+		{
+			if (in.peek() == JsonToken.NULL)
+			{
+				in.nextNull();
+				return null;
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			in.beginArray();
+			while (in.hasNext())
+			{
+				bytes.write(in.nextInt());
+			}
+			in.endArray();
+			return bytes.toByteArray();
+		}
+	};
+	@Inject
+	private Class<?> pojoClass = null;
+	//The objects shared by everything made by our factory (if we were made by one)
+	@Inject
+	private ConcurrentMap<String, Object> shared = null;
+	//Our gson and the adapter for our pojo (if we have one)
+	private Gson gson = null;
+	private TypeAdapter<?> pojoAdapter = null;
+	//Our reader and writer
+	private final MessagePackReader reader = new MessagePackReader();
+	private MessagePackWriter writer = null;
+
+	/**
+	 * Gets our gson (shared if we were made by a factory) and looks up the
+	 * adapter for our pojo
+	 */
+	@Initialize
+	public void init()
+	{
+		gson = sharedGson(shared);
+		pojoAdapter = pojoClass == null ? null : gson.getAdapter(pojoClass);
+		writer = new MessagePackWriter(gson, CHUNK_SIZE);
+	}
+
+	/**
+	 * Builds the Gson shared by the codecs made by a factory (and the adapter
+	 * for their pojo) before the first one is made
+	 *
+	 * @param values the values our factory injects
+	 * @param shared the objects shared by our factory
+	 */
+	@Warm
+	static void warm(Map<String, Object> values, ConcurrentMap<String, Object> shared)
+	{
+		Gson gson = sharedGson(shared);
+
+		//Gson caches its adapters, so look up the one we will use
+		Class<?> pojo = (Class<?>) values.get("pojoClass");
+		if (pojo != null)
+		{
+			gson.getAdapter(pojo);
+		}
+	}
+
+	/**
+	 * Gets the Gson shared in the passed objects, or builds it if this is the
+	 * first codec to want it
+	 *
+	 * @param shared the objects shared by our factory (or null if we were not
+	 *                  made by one)
+	 *
+	 * @return the Gson to use
+	 */
+	private static Gson sharedGson(ConcurrentMap<String, Object> shared)
+	{
+		if (shared == null)
+		{
+			return buildGson();
+		}
+		Gson gson = (Gson) shared.get(SHARED_GSON);
+		if (gson == null)
+		{
+			//If another codec beat us to it use theirs
+			Gson built = buildGson();
+			Gson existing = (Gson) shared.putIfAbsent(SHARED_GSON, built);
+			gson = existing == null ? built : existing;
+		}
+		return gson;
+	}
+
+	/**
+	 * Builds a new Gson with the same settings as the JsonSerializer
+	 *
+	 * @return the new Gson
+	 */
+	private static Gson buildGson()
+	{
+		return new GsonBuilder().disableHtmlEscaping().serializeNulls().registerTypeAdapter(byte[].class, BINARY).create();
+	}
+
+	/**
+	 * Decodes the frame as a MessagePack value, binding it to our pojoClass
+	 * if we have one (by reading it as a Gson tree).
+	 *
+	 * @param frame the body of the frame
+	 *
+	 * @return the value held in the frame
+	 *
+	 * @throws NioInvalidDataException if the frame is not exactly one valid
+	 *                                    value
+	 */
+	@Override
+	public Object decode(ByteBuffer frame) throws NioInvalidDataException
+	{
+		if (pojoAdapter == null)
+		{
+			return reader.read(frame);
+		}
+		try
+		{
+			return pojoAdapter.fromJsonTree(reader.readTree(frame));
+		}
+		catch (RuntimeException ex)
+		{
+			throw new NioInvalidDataException(ex);
+		}
+	}
+
+	/**
+	 * Encodes the object as a MessagePack value
+	 *
+	 * @param data the object to encode
+	 *
+	 * @return a buffer holding the encoded value
+	 *
+	 * @throws NioInvalidDataException if the object could not be encoded
+	 */
+	@Override
+	public ByteBuffer encode(Object data) throws NioInvalidDataException
+	{
+		try
+		{
+			return writer.write(data);
+		}
+		catch (IOException ex)
+		{
+			throw new NioInvalidDataException(ex);
+		}
+		catch (RuntimeException ex)
+		{
+			throw new NioInvalidDataException(ex);
+		}
+	}
+}
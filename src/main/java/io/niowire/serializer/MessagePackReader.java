@@ -0,0 +1,549 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This reads a single MessagePack value from a buffer into the same shapes
+ * that the {@link JsonSerializer} gives for JSON. Maps become LinkedHashMaps
+ * with String keys, arrays become ArrayLists, every number becomes a Double
+ * and strings, booleans and nil become Strings, Booleans and null. As every
+ * number is a Double, integers larger than 2^53 lose precision. Binary values
+ * become byte arrays (so they are written back as binary), extension values
+ * are not supported.
+ *
+ * It can also read values as a Gson {@link JsonElement} tree, which is used
+ * to bind them to a class. In a tree whole numbers are kept exactly (as Longs,
+ * or BigIntegers for unsigned values which do not fit in a long) and binary
+ * values are arrays of their bytes (which Gson binds to a byte[]).
+ *
+ * Nothing is allocated apart from the objects which are returned (and the
+ * bytes of a string when the buffer's array can't be read directly).
+ *
+ * @author Trent Houliston
+ */
+final class MessagePackReader
+{
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	//How deeply maps and arrays may be nested
+	private static final int MAX_DEPTH = 256;
+	//The buffer we are reading and where we are up to in it
+	private ByteBuffer buffer = null;
+	private int position = 0;
+	//If we are reading a Gson tree rather than maps and lists
+	private boolean tree = false;
+	//Somewhere to copy strings to when we can't read the buffer's array
+	private byte[] scratch = new byte[0];
+
+	/**
+	 * Reads the single value held in the remaining bytes of the buffer.
+	 *
+	 * @param frame the buffer holding the value
+	 *
+	 * @return the value
+	 *
+	 * @throws NioInvalidDataException if the bytes are not exactly one valid
+	 *                                    value
+	 */
+	Object read(ByteBuffer frame) throws NioInvalidDataException
+	{
+		return read(frame, false);
+	}
+
+	/**
+	 * Reads the single value held in the remaining bytes of the buffer as a
+	 * Gson tree.
+	 *
+	 * @param frame the buffer holding the value
+	 *
+	 * @return the value as a tree
+	 *
+	 * @throws NioInvalidDataException if the bytes are not exactly one valid
+	 *                                    value
+	 */
+	JsonElement readTree(ByteBuffer frame) throws NioInvalidDataException
+	{
+		return (JsonElement) read(frame, true);
+	}
+
+	/**
+	 * Reads the single value held in the remaining bytes of the buffer.
+	 *
+	 * @param frame the buffer holding the value
+	 * @param tree  if the value should be read as a Gson tree
+	 *
+	 * @return the value
+	 *
+	 * @throws NioInvalidDataException if the bytes are not exactly one valid
+	 *                                    value
+	 */
+	private Object read(ByteBuffer frame, boolean tree) throws NioInvalidDataException
+	{
+		buffer = frame;
+		position = frame.position();
+		this.tree = tree;
+		try
+		{
+			Object value = readValue(0);
+
+			//There must be nothing after our value
+			if (position != frame.limit())
+			{
+				throw new NioInvalidDataException("There were bytes after the MessagePack value");
+			}
+			return value;
+		}
+		finally
+		{
+			buffer = null;
+		}
+	}
+
+	/**
+	 * Reads the next value
+	 *
+	 * @param depth how deeply nested this value is
+	 *
+	 * @return the value
+	 *
+	 * @throws NioInvalidDataException if the value is invalid
+	 */
+	private Object readValue(int depth) throws NioInvalidDataException
+	{
+		int type = readByte();
+
+		//Positive and negative fixints
+		if (type <= 0x7F || type >= 0xE0)
+		{
+			return integer((byte) type);
+		}
+		//Fixmaps, fixarrays and fixstrs
+		else if (type <= 0x8F)
+		{
+			return readMap(type & 0x0F, depth);
+		}
+		else if (type <= 0x9F)
+		{
+			return readArray(type & 0x0F, depth);
+		}
+		else if (type <= 0xBF)
+		{
+			return readString(type & 0x1F);
+		}
+
+		switch (type)
+		{
+			case 0xC0:
+				return tree ? JsonNull.INSTANCE : null;
+			case 0xC2:
+				return tree ? new JsonPrimitive(Boolean.FALSE) : Boolean.FALSE;
+			case 0xC3:
+				return tree ? new JsonPrimitive(Boolean.TRUE) : Boolean.TRUE;
+			//Binary
+			case 0xC4:
+				return readBinary(readByte());
+			case 0xC5:
+				return readBinary(readShort());
+			case 0xC6:
+				return readBinary(readLength());
+			//Strings
+			case 0xD9:
+				return readString(readByte());
+			case 0xDA:
+				return readString(readShort());
+			case 0xDB:
+				return readString(readLength());
+			//Floats
+			case 0xCA:
+				return number(Float.intBitsToFloat(readInt()));
+			case 0xCB:
+				return number(Double.longBitsToDouble(readLong()));
+			//Unsigned integers
+			case 0xCC:
+				return integer(readByte());
+			case 0xCD:
+				return integer(readShort());
+			case 0xCE:
+				return integer(readInt() & 0xFFFFFFFFL);
+			case 0xCF:
+			{
+				//The top bit is not a sign bit here so larger values are BigIntegers in a tree and (rounded) doubles otherwise
+				long value = readLong();
+				if (value >= 0)
+				{
+					return integer(value);
+				}
+				else if (tree)
+				{
+					return new JsonPrimitive(new BigInteger(Long.toUnsignedString(value)));
+				}
+				return number((double) (value >>> 1) * 2.0 + (value & 1));
+			}
+			//Signed integers
+			case 0xD0:
+				return integer((byte) readByte());
+			case 0xD1:
+				return integer((short) readShort());
+			case 0xD2:
+				return integer(readInt());
+			case 0xD3:
+				return integer(readLong());
+			//Maps and arrays
+			case 0xDC:
+				return readArray(readShort(), depth);
+			case 0xDD:
+				return readArray(readLength(), depth);
+			case 0xDE:
+				return readMap(readShort(), depth);
+			case 0xDF:
+				return readMap(readLength(), depth);
+			default:
+				throw new NioInvalidDataException("Unsupported MessagePack type 0x" + Integer.toHexString(type));
+		}
+	}
+
+	/**
+	 * Reads the entries of a map
+	 *
+	 * @param size  the number of entries
+	 * @param depth how deeply nested the map is
+	 *
+	 * @return the map
+	 *
+	 * @throws NioInvalidDataException if the map is invalid
+	 */
+	private Object readMap(int size, int depth) throws NioInvalidDataException
+	{
+		checkDepth(depth);
+
+		//Each entry takes at least two bytes so don't trust a size bigger than that
+		Map<String, Object> map = tree ? null : new LinkedHashMap<String, Object>(Math.min(size, remaining() / 2) * 4 / 3 + 1);
+		JsonObject object = tree ? new JsonObject() : null;
+		for (int i = 0; i < size; i++)
+		{
+			String key = readKey(depth + 1);
+			if (tree)
+			{
+				object.add(key, (JsonElement) readValue(depth + 1));
+			}
+			else
+			{
+				map.put(key, readValue(depth + 1));
+			}
+		}
+		return tree ? object : map;
+	}
+
+	/**
+	 * Reads the key of a map entry, which must be a string (or a number which
+	 * we give as a string as JSON would)
+	 *
+	 * @param depth how deeply nested the key is
+	 *
+	 * @return the key
+	 *
+	 * @throws NioInvalidDataException if the key is invalid
+	 */
+	private String readKey(int depth) throws NioInvalidDataException
+	{
+		boolean wasTree = tree;
+		tree = false;
+		Object key;
+		try
+		{
+			key = readValue(depth);
+		}
+		finally
+		{
+			tree = wasTree;
+		}
+
+		if (key instanceof String)
+		{
+			return (String) key;
+		}
+		//Binary keys are taken as UTF-8 (as older MessagePack used the same type for strings)
+		else if (key instanceof byte[])
+		{
+			return new String((byte[]) key, UTF8);
+		}
+		else if (key instanceof Double)
+		{
+			double d = (Double) key;
+			return d == (long) d ? Long.toString((long) d) : key.toString();
+		}
+		else
+		{
+			throw new NioInvalidDataException("MessagePack map keys must be strings or numbers");
+		}
+	}
+
+	/**
+	 * Reads the elements of an array
+	 *
+	 * @param size  the number of elements
+	 * @param depth how deeply nested the array is
+	 *
+	 * @return the array as a list
+	 *
+	 * @throws NioInvalidDataException if the array is invalid
+	 */
+	private Object readArray(int size, int depth) throws NioInvalidDataException
+	{
+		checkDepth(depth);
+
+		if (tree)
+		{
+			JsonArray array = new JsonArray();
+			for (int i = 0; i < size; i++)
+			{
+				array.add((JsonElement) readValue(depth + 1));
+			}
+			return array;
+		}
+		else
+		{
+			//Each element takes at least a byte so don't trust a size bigger than that
+			List<Object> list = new ArrayList<Object>(Math.min(size, remaining()));
+			for (int i = 0; i < size; i++)
+			{
+				list.add(readValue(depth + 1));
+			}
+			return list;
+		}
+	}
+
+	/**
+	 * Makes the value for a whole number
+	 *
+	 * @param value the number
+	 *
+	 * @return a Double (or a Long in a tree)
+	 */
+	private Object integer(long value)
+	{
+		return tree ? new JsonPrimitive(Long.valueOf(value)) : Double.valueOf(value);
+	}
+
+	/**
+	 * Makes the value for a floating point number
+	 *
+	 * @param value the number
+	 *
+	 * @return a Double (in a tree if we are reading one)
+	 */
+	private Object number(double value)
+	{
+		return tree ? new JsonPrimitive(Double.valueOf(value)) : Double.valueOf(value);
+	}
+
+	/**
+	 * Reads a UTF-8 string
+	 *
+	 * @param length the length of the string in bytes
+	 *
+	 * @return the string (in a tree if we are reading one)
+	 *
+	 * @throws NioInvalidDataException if there are not enough bytes
+	 */
+	private Object readString(int length) throws NioInvalidDataException
+	{
+		require(length);
+		String str;
+
+		//Read straight from the array if we can, otherwise copy the bytes out first
+		if (buffer.hasArray())
+		{
+			str = new String(buffer.array(), buffer.arrayOffset() + position, length, UTF8);
+		}
+		else
+		{
+			if (scratch.length < length)
+			{
+				scratch = new byte[Math.max(length, scratch.length * 2)];
+			}
+			ByteBuffer view = buffer.duplicate();
+			view.position(position);
+			view.get(scratch, 0, length);
+			str = new String(scratch, 0, length, UTF8);
+		}
+		position += length;
+		return tree ? new JsonPrimitive(str) : str;
+	}
+
+	/**
+	 * Reads a binary value into its own array
+	 *
+	 * @param length the length of the value in bytes
+	 *
+	 * @return the bytes (or an array of their values in a tree)
+	 *
+	 * @throws NioInvalidDataException if there are not enough bytes
+	 */
+	private Object readBinary(int length) throws NioInvalidDataException
+	{
+		require(length);
+		byte[] bytes = new byte[length];
+		ByteBuffer view = buffer.duplicate();
+		view.position(position);
+		view.get(bytes);
+		position += length;
+
+		//Gson binds a byte[] from an array of numbers
+		if (tree)
+		{
+			JsonArray array = new JsonArray();
+			for (byte b : bytes)
+			{
+				array.add(new JsonPrimitive(b));
+			}
+			return array;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Makes sure we have not nested too deeply
+	 *
+	 * @param depth the depth of the map or array
+	 *
+	 * @throws NioInvalidDataException if it is too deep
+	 */
+	private static void checkDepth(int depth) throws NioInvalidDataException
+	{
+		if (depth >= MAX_DEPTH)
+		{
+			throw new NioInvalidDataException("MessagePack values were nested too deeply");
+		}
+	}
+
+	/**
+	 * Gets how many bytes are left to read
+	 *
+	 * @return the number of bytes
+	 */
+	private int remaining()
+	{
+		return buffer.limit() - position;
+	}
+
+	/**
+	 * Makes sure there are enough bytes left to read
+	 *
+	 * @param bytes the number of bytes we need
+	 *
+	 * @throws NioInvalidDataException if there are not
+	 */
+	private void require(int bytes) throws NioInvalidDataException
+	{
+		if (bytes < 0 || remaining() < bytes)
+		{
+			throw new NioInvalidDataException("The MessagePack value was cut short");
+		}
+	}
+
+	/**
+	 * Reads an unsigned byte
+	 *
+	 * @return the byte
+	 *
+	 * @throws NioInvalidDataException if there are no bytes left
+	 */
+	private int readByte() throws NioInvalidDataException
+	{
+		require(1);
+		return buffer.get(position++) & 0xFF;
+	}
+
+	/**
+	 * Reads an unsigned big endian short
+	 *
+	 * @return the short
+	 *
+	 * @throws NioInvalidDataException if there are not enough bytes left
+	 */
+	private int readShort() throws NioInvalidDataException
+	{
+		require(2);
+		int value = ((buffer.get(position) & 0xFF) << 8) | (buffer.get(position + 1) & 0xFF);
+		position += 2;
+		return value;
+	}
+
+	/**
+	 * Reads a big endian int
+	 *
+	 * @return the int
+	 *
+	 * @throws NioInvalidDataException if there are not enough bytes left
+	 */
+	private int readInt() throws NioInvalidDataException
+	{
+		require(4);
+		int value = ((buffer.get(position) & 0xFF) << 24)
+					| ((buffer.get(position + 1) & 0xFF) << 16)
+					| ((buffer.get(position + 2) & 0xFF) << 8)
+					| (buffer.get(position + 3) & 0xFF);
+		position += 4;
+		return value;
+	}
+
+	/**
+	 * Reads a big endian long
+	 *
+	 * @return the long
+	 *
+	 * @throws NioInvalidDataException if there are not enough bytes left
+	 */
+	private long readLong() throws NioInvalidDataException
+	{
+		long high = readInt() & 0xFFFFFFFFL;
+		long low = readInt() & 0xFFFFFFFFL;
+		return (high << 32) | low;
+	}
+
+	/**
+	 * Reads a 32 bit length, which we can only handle up to the size of an int
+	 *
+	 * @return the length
+	 *
+	 * @throws NioInvalidDataException if the length is too big or there are
+	 *                                    not enough bytes left
+	 */
+	private int readLength() throws NioInvalidDataException
+	{
+		int length = readInt();
+		if (length < 0)
+		{
+			throw new NioInvalidDataException("The MessagePack length was too large");
+		}
+		return length;
+	}
+}
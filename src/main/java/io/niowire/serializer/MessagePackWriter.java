@@ -0,0 +1,717 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Array;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * This writes values as MessagePack into a reused chunk of bytes. Maps, collections,
+ * arrays, strings, numbers, booleans and null are written directly (byte
+ * arrays as binary values rather than arrays), anything
+ * else is written by its Gson {@link TypeAdapter} through this writer (which
+ * acts as a {@link JsonWriter} that writes MessagePack rather than JSON).
+ *
+ * Each value is written from the start of the chunk (which grows when it is
+ * too small) and returned as a slice of it which is only valid until the next
+ * value is written. So nothing is allocated when writing the values which
+ * are written directly.
+ *
+ * As MessagePack needs the size of maps and arrays before their contents, ones
+ * which are written through Gson have room left for the largest size which is
+ * then filled in (and the space closed up) when they end.
+ *
+ * @author Trent Houliston
+ */
+final class MessagePackWriter extends JsonWriter
+{
+
+	//A writer for our superclass which must never be used
+	private static final Writer UNWRITABLE = new Writer()
+	{
+		@Override
+		public void write(char[] cbuf, int off, int len)
+		{
+			throw new AssertionError();
+		}
+
+		@Override
+		public void flush()
+		{
+			throw new AssertionError();
+		}
+
+		@Override
+		public void close()
+		{
+			throw new AssertionError();
+		}
+	};
+	//The gson we use for objects we can't write directly
+	private final Gson gson;
+	//The smallest chunk we will allocate
+	private final int chunkSize;
+	//Our chunk and where we are up to in it
+	private byte[] chunk = new byte[0];
+	private int position = 0;
+	//For each map or array being written through gson, where it started and how many items it has
+	private int[] starts = new int[8];
+	private int[] counts = new int[8];
+	private int depth = 0;
+
+	/**
+	 * Creates a new MessagePack writer
+	 *
+	 * @param gson      the gson to write objects we don't know with
+	 * @param chunkSize the smallest chunk of bytes to allocate
+	 */
+	MessagePackWriter(Gson gson, int chunkSize)
+	{
+		super(UNWRITABLE);
+		this.gson = gson;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Writes a value and returns its bytes
+	 *
+	 * @param value the value to write
+	 *
+	 * @return a buffer over our chunk holding the value
+	 *
+	 * @throws IOException if the value could not be written
+	 */
+	ByteBuffer write(Object value) throws IOException
+	{
+		//Write over our last value
+		position = 0;
+		depth = 0;
+
+		writeValue(value);
+
+		return ByteBuffer.wrap(chunk, 0, position);
+	}
+
+	/**
+	 * Writes a value directly if we know its type, otherwise through its gson
+	 * adapter
+	 *
+	 * @param value the value to write
+	 *
+	 * @throws IOException if the value could not be written
+	 */
+	@SuppressWarnings("unchecked")
+	private void writeValue(Object value) throws IOException
+	{
+		if (value == null)
+		{
+			nullValue();
+		}
+		else if (value instanceof String)
+		{
+			value((String) value);
+		}
+		else if (value instanceof Number)
+		{
+			value((Number) value);
+		}
+		else if (value instanceof Boolean)
+		{
+			value(((Boolean) value).booleanValue());
+		}
+		else if (value instanceof Character)
+		{
+			value(value.toString());
+		}
+		else if (value instanceof byte[])
+		{
+			writeBinary((byte[]) value);
+		}
+		else if (value instanceof Map)
+		{
+			Map<?, ?> map = (Map<?, ?>) value;
+			writeHeader(map.size(), 0x80, 0xDE, 0xDF);
+			for (Map.Entry<?, ?> entry : map.entrySet())
+			{
+				writeString(String.valueOf(entry.getKey()));
+				writeValue(entry.getValue());
+			}
+			depth--;
+		}
+		else if (value instanceof Collection)
+		{
+			Collection<?> collection = (Collection<?>) value;
+			writeHeader(collection.size(), 0x90, 0xDC, 0xDD);
+			for (Object item : collection)
+			{
+				writeValue(item);
+			}
+			depth--;
+		}
+		else if (value.getClass().isArray())
+		{
+			int length = Array.getLength(value);
+			writeHeader(length, 0x90, 0xDC, 0xDD);
+			for (int i = 0; i < length; i++)
+			{
+				writeValue(Array.get(value, i));
+			}
+			depth--;
+		}
+		else
+		{
+			((TypeAdapter<Object>) gson.getAdapter(value.getClass())).write(this, value);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JsonWriter beginArray() throws IOException
+	{
+		return begin();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JsonWriter endArray() throws IOException
+	{
+		return end(0x90, 0xDC);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JsonWriter beginObject() throws IOException
+	{
+		return begin();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JsonWriter endObject() throws IOException
+	{
+		return end(0x80, 0xDE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JsonWriter name(String name) throws IOException
+	{
+		writeString(name);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JsonWriter value(String value) throws IOException
+	{
+		if (value == null)
+		{
+			return nullValue();
+		}
+		countItem();
+		writeString(value);
+		return this;
+	}
+
+	/**
+	 * Writes a byte array as a binary value (for gson adapters of byte arrays)
+	 *
+	 * @param value the bytes to write
+	 *
+	 * @return this writer
+	 *
+	 * @throws IOException if the value could not be written
+	 */
+	JsonWriter binaryValue(byte[] value) throws IOException
+	{
+		if (value == null)
+		{
+			return nullValue();
+		}
+		writeBinary(value);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JsonWriter nullValue() throws IOException
+	{
+		countItem();
+		ensure(1);
+		chunk[position++] = (byte) 0xC0;
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JsonWriter value(boolean value) throws IOException
+	{
+		countItem();
+		ensure(1);
+		chunk[position++] = (byte) (value ? 0xC3 : 0xC2);
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JsonWriter value(double value) throws IOException
+	{
+		countItem();
+		ensure(9);
+		chunk[position++] = (byte) 0xCB;
+		putLong(Double.doubleToLongBits(value));
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JsonWriter value(long value) throws IOException
+	{
+		countItem();
+		ensure(9);
+
+		//Use the smallest encoding that holds the value
+		if (value >= -32 && value <= 0x7F)
+		{
+			chunk[position++] = (byte) value;
+		}
+		else if (value >= 0)
+		{
+			if (value <= 0xFF)
+			{
+				chunk[position++] = (byte) 0xCC;
+				chunk[position++] = (byte) value;
+			}
+			else if (value <= 0xFFFF)
+			{
+				chunk[position++] = (byte) 0xCD;
+				putShort((int) value);
+			}
+			else if (value <= 0xFFFFFFFFL)
+			{
+				chunk[position++] = (byte) 0xCE;
+				putInt((int) value);
+			}
+			else
+			{
+				chunk[position++] = (byte) 0xCF;
+				putLong(value);
+			}
+		}
+		else if (value >= Byte.MIN_VALUE)
+		{
+			chunk[position++] = (byte) 0xD0;
+			chunk[position++] = (byte) value;
+		}
+		else if (value >= Short.MIN_VALUE)
+		{
+			chunk[position++] = (byte) 0xD1;
+			putShort((int) value);
+		}
+		else if (value >= Integer.MIN_VALUE)
+		{
+			chunk[position++] = (byte) 0xD2;
+			putInt((int) value);
+		}
+		else
+		{
+			chunk[position++] = (byte) 0xD3;
+			putLong(value);
+		}
+		return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public JsonWriter value(Number value) throws IOException
+	{
+		if (value == null)
+		{
+			return nullValue();
+		}
+		//Whole numbers are written as integers
+		else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+		{
+			return value(value.longValue());
+		}
+		else if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64)
+		{
+			return value(value.longValue());
+		}
+		//Unsigned values which do not fit in a long keep all their bits as a uint64
+		else if (value instanceof BigInteger && ((BigInteger) value).signum() > 0 && ((BigInteger) value).bitLength() == 64)
+		{
+			countItem();
+			ensure(9);
+			chunk[position++] = (byte) 0xCF;
+			putLong(value.longValue());
+			return this;
+		}
+		//Floats are written as 32 bit floats
+		else if (value instanceof Float)
+		{
+			countItem();
+			ensure(5);
+			chunk[position++] = (byte) 0xCA;
+			putInt(Float.floatToIntBits(value.floatValue()));
+			return this;
+		}
+		//Anything else which holds a whole number is written as one
+		else if (!(value instanceof Double) && !(value instanceof BigDecimal && ((BigDecimal) value).scale() > 0))
+		{
+			double d = value.doubleValue();
+			if (d == (long) d && d != Long.MAX_VALUE)
+			{
+				return value((long) d);
+			}
+		}
+		return value(value.doubleValue());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void flush()
+	{
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close()
+	{
+	}
+
+	/**
+	 * Starts a map or array being written through gson, leaving room for the
+	 * largest size header
+	 *
+	 * @return this writer
+	 */
+	private JsonWriter begin()
+	{
+		countItem();
+		ensure(5);
+		push(position);
+		position += 5;
+		return this;
+	}
+
+	/**
+	 * Starts a new level of nesting
+	 *
+	 * @param begin where the map or array starts (or -1 if its size is
+	 *              already written)
+	 */
+	private void push(int begin)
+	{
+		if (depth == starts.length)
+		{
+			starts = Arrays.copyOf(starts, depth * 2);
+			counts = Arrays.copyOf(counts, depth * 2);
+		}
+		starts[depth] = begin;
+		counts[depth] = 0;
+		depth++;
+	}
+
+	/**
+	 * Ends a map or array being written through gson, filling in its size and
+	 * closing up any of the room we left that it doesn't need
+	 *
+	 * @param fix the type of the small form
+	 * @param t16 the type of the 16 bit form
+	 *
+	 * @return this writer
+	 */
+	private JsonWriter end(int fix, int t16)
+	{
+		depth--;
+		int begin = starts[depth];
+		int count = counts[depth];
+		int header = count <= 15 ? 1 : count <= 0xFFFF ? 3 : 5;
+
+		//Move our contents back to just after the header we need
+		System.arraycopy(chunk, begin + 5, chunk, begin + header, position - begin - 5);
+		position -= 5 - header;
+
+		//Write our header
+		if (header == 1)
+		{
+			chunk[begin] = (byte) (fix | count);
+		}
+		else if (header == 3)
+		{
+			chunk[begin] = (byte) t16;
+			chunk[begin + 1] = (byte) (count >>> 8);
+			chunk[begin + 2] = (byte) count;
+		}
+		else
+		{
+			chunk[begin] = (byte) (t16 + 1);
+			chunk[begin + 1] = (byte) (count >>> 24);
+			chunk[begin + 2] = (byte) (count >>> 16);
+			chunk[begin + 3] = (byte) (count >>> 8);
+			chunk[begin + 4] = (byte) count;
+		}
+		return this;
+	}
+
+	/**
+	 * Counts an item in the map or array that is being written through gson
+	 * (if there is one). For maps only the values are counted.
+	 */
+	private void countItem()
+	{
+		if (depth > 0)
+		{
+			counts[depth - 1]++;
+		}
+	}
+
+	/**
+	 * Writes the header for a map or array whose size we know and starts a
+	 * level of nesting for it (so its items are not counted by gson's)
+	 *
+	 * @param size the number of entries or elements
+	 * @param fix  the type of the small form
+	 * @param t16  the type of the 16 bit form
+	 * @param t32  the type of the 32 bit form
+	 */
+	private void writeHeader(int size, int fix, int t16, int t32)
+	{
+		countItem();
+		ensure(5);
+		if (size <= 15)
+		{
+			chunk[position++] = (byte) (fix | size);
+		}
+		else if (size <= 0xFFFF)
+		{
+			chunk[position++] = (byte) t16;
+			putShort(size);
+		}
+		else
+		{
+			chunk[position++] = (byte) t32;
+			putInt(size);
+		}
+		push(-1);
+	}
+
+	/**
+	 * Writes a byte array as a binary value
+	 *
+	 * @param bytes the bytes to write
+	 */
+	private void writeBinary(byte[] bytes)
+	{
+		countItem();
+		ensure(5 + bytes.length);
+		if (bytes.length <= 0xFF)
+		{
+			chunk[position++] = (byte) 0xC4;
+			chunk[position++] = (byte) bytes.length;
+		}
+		else if (bytes.length <= 0xFFFF)
+		{
+			chunk[position++] = (byte) 0xC5;
+			putShort(bytes.length);
+		}
+		else
+		{
+			chunk[position++] = (byte) 0xC6;
+			putInt(bytes.length);
+		}
+		System.arraycopy(bytes, 0, chunk, position, bytes.length);
+		position += bytes.length;
+	}
+
+	/**
+	 * Writes a string as UTF-8, unpaired surrogates are written as '?' as
+	 * {@link String#getBytes(java.nio.charset.Charset)} does.
+	 *
+	 * @param str the string to write
+	 */
+	private void writeString(String str)
+	{
+		//Work out how long the string is in UTF-8
+		int length = 0;
+		for (int i = 0; i < str.length(); i++)
+		{
+			char c = str.charAt(i);
+			if (c < 0x80)
+			{
+				length++;
+			}
+			else if (c < 0x800)
+			{
+				length += 2;
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1)))
+			{
+				length += 4;
+				i++;
+			}
+			else if (Character.isSurrogate(c))
+			{
+				length++;
+			}
+			else
+			{
+				length += 3;
+			}
+		}
+
+		//Write our header
+		ensure(5 + length);
+		if (length <= 31)
+		{
+			chunk[position++] = (byte) (0xA0 | length);
+		}
+		else if (length <= 0xFF)
+		{
+			chunk[position++] = (byte) 0xD9;
+			chunk[position++] = (byte) length;
+		}
+		else if (length <= 0xFFFF)
+		{
+			chunk[position++] = (byte) 0xDA;
+			putShort(length);
+		}
+		else
+		{
+			chunk[position++] = (byte) 0xDB;
+			putInt(length);
+		}
+
+		//Write our characters
+		for (int i = 0; i < str.length(); i++)
+		{
+			char c = str.charAt(i);
+			if (c < 0x80)
+			{
+				chunk[position++] = (byte) c;
+			}
+			else if (c < 0x800)
+			{
+				chunk[position++] = (byte) (0xC0 | (c >> 6));
+				chunk[position++] = (byte) (0x80 | (c & 0x3F));
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < str.length() && Character.isLowSurrogate(str.charAt(i + 1)))
+			{
+				int cp = Character.toCodePoint(c, str.charAt(++i));
+				chunk[position++] = (byte) (0xF0 | (cp >> 18));
+				chunk[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+				chunk[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+				chunk[position++] = (byte) (0x80 | (cp & 0x3F));
+			}
+			else if (Character.isSurrogate(c))
+			{
+				chunk[position++] = (byte) '?';
+			}
+			else
+			{
+				chunk[position++] = (byte) (0xE0 | (c >> 12));
+				chunk[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				chunk[position++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	/**
+	 * Puts a big endian short
+	 *
+	 * @param value the short
+	 */
+	private void putShort(int value)
+	{
+		chunk[position++] = (byte) (value >>> 8);
+		chunk[position++] = (byte) value;
+	}
+
+	/**
+	 * Puts a big endian int
+	 *
+	 * @param value the int
+	 */
+	private void putInt(int value)
+	{
+		chunk[position++] = (byte) (value >>> 24);
+		chunk[position++] = (byte) (value >>> 16);
+		chunk[position++] = (byte) (value >>> 8);
+		chunk[position++] = (byte) value;
+	}
+
+	/**
+	 * Puts a big endian long
+	 *
+	 * @param value the long
+	 */
+	private void putLong(long value)
+	{
+		putInt((int) (value >>> 32));
+		putInt((int) value);
+	}
+
+	/**
+	 * Makes sure there is room in our chunk, growing it if there isn't
+	 *
+	 * @param bytes the number of bytes we need room for
+	 */
+	private void ensure(int bytes)
+	{
+		if (chunk.length - position < bytes)
+		{
+			chunk = Arrays.copyOf(chunk, Math.max(chunkSize, (position + bytes) * 2));
+		}
+	}
+}
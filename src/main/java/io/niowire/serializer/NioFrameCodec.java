@@ -0,0 +1,55 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This interface is used by the {@link LengthPrefixedSerializer} to convert
+ * the body of each frame to and from an object. It is given the frame and does
+ * not need to deal with any framing itself.
+ *
+ * @author Trent Houliston
+ */
+public interface NioFrameCodec
+{
+
+	/**
+	 * Converts the body of a frame into an object. The buffer is a read only
+	 * view of the frame which is only valid during this call.
+	 *
+	 * @param frame the body of the frame
+	 *
+	 * @return the object held in the frame
+	 *
+	 * @throws NioInvalidDataException if the frame could not be decoded
+	 */
+	public Object decode(ByteBuffer frame) throws NioInvalidDataException;
+
+	/**
+	 * Converts an object into the body of a frame to be sent to the client.
+	 * The returned buffer is copied into the frame before this is called again
+	 * so it may be reused for the next frame.
+	 *
+	 * @param data the object to convert
+	 *
+	 * @return a buffer holding the body of the frame
+	 *
+	 * @throws NioInvalidDataException if the object could not be encoded
+	 */
+	public ByteBuffer encode(Object data) throws NioInvalidDataException;
+}
@@ -0,0 +1,429 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import io.niowire.data.NioPacket;
+import io.niowire.data.NioPacketPool;
+import io.niowire.data.NioRecord;
+import io.niowire.data.NioRecordSchema;
+import io.niowire.entities.Initialize;
+import io.niowire.server.NioClock;
+import io.niowire.server.NioConnection.Context;
+import io.niowire.server.SystemClock;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import javax.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static io.niowire.serializer.DelimitedSerializer.transferMax;
+
+/**
+ * This serializer reads and writes a stream of fixed size binary records whose
+ * layout is declared in the server definition as a {@link NioRecordSchema}.
+ * Each record becomes a packet whose data is a {@link NioRecord} flyweight
+ * which reads its fields straight out of the receive buffer, so no record is
+ * copied or decoded. The flyweights (and the packets and list holding them if
+ * we are pooled) are reused for the next read, so records are only valid while
+ * they are being dispatched and must be kept using {@link NioPacket#copy()}.
+ *
+ * Outbound packets can hold a {@link NioRecord} of the same size (for example
+ * one made with {@link NioRecordSchema#newRecord()}) or a map of field names to
+ * numbers. They are written into a single reused send buffer.
+ *
+ * @author Trent Houliston
+ */
+public class RecordSerializer implements NioSerializer
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(RecordSerializer.class);
+	//Injected Variables
+	@Inject
+	protected Context context = null;
+	@Inject
+	protected List<Map<String, Object>> fields = null;
+	@Inject
+	protected int recordSize = 0;
+	@Inject
+	protected String byteOrder = "BIG_ENDIAN";
+	@Inject
+	protected boolean pooled = false;
+	//Our configuration once it has been parsed
+	private NioRecordSchema schema = null;
+	private NioClock clock = SystemClock.INSTANCE;
+	private NioPacketPool pool = null;
+	//A view of the receive buffer in our byte order, and the buffer it is a view of
+	private ByteBuffer view = null;
+	private ByteBuffer viewed = null;
+	//The record we are part way through reading, and a spare for when it is still in use
+	private ByteBuffer assembly = null;
+	private ByteBuffer spare = null;
+	//Our reused flyweights and packet list
+	private final ArrayList<NioRecord> records = new ArrayList<NioRecord>();
+	private final ArrayList<NioPacket> packets = new ArrayList<NioPacket>();
+	//Our records waiting to be sent
+	private ByteBuffer outbound = null;
+	private NioRecord writer = null;
+	private ByteBuffer rebuffer = null;
+	private boolean open = true;
+
+	/**
+	 * Builds our schema and our buffers
+	 *
+	 * @throws IllegalArgumentException if our schema is invalid
+	 */
+	@Initialize
+	protected void setup() throws IllegalArgumentException
+	{
+		//Parse our byte order
+		ByteOrder order;
+		String name = byteOrder.toUpperCase(Locale.ENGLISH);
+		if ("BIG_ENDIAN".equals(name))
+		{
+			order = ByteOrder.BIG_ENDIAN;
+		}
+		else if ("LITTLE_ENDIAN".equals(name))
+		{
+			order = ByteOrder.LITTLE_ENDIAN;
+		}
+		else
+		{
+			throw new IllegalArgumentException("The byte order " + byteOrder + " is not BIG_ENDIAN or LITTLE_ENDIAN");
+		}
+
+		//Build our schema
+		if (fields == null)
+		{
+			throw new IllegalArgumentException("The record serializer needs its fields");
+		}
+		schema = new NioRecordSchema(fields, recordSize > 0 ? recordSize : null, order);
+
+		//Build our buffers
+		assembly = ByteBuffer.allocate(schema.getSize()).order(order);
+		spare = ByteBuffer.allocate(schema.getSize()).order(order);
+		outbound = ByteBuffer.allocate(schema.getSize() * 16).order(order);
+		writer = new NioRecord(schema);
+
+		//Use our connection's clock if it has one
+		if (context != null && context.getClock() != null)
+		{
+			clock = context.getClock();
+		}
+
+		//Use our connection's packet pool if we are pooled (or our own if it has none)
+		if (pooled)
+		{
+			pool = context == null ? null : context.getPacketPool();
+			pool = pool == null ? new NioPacketPool() : pool;
+		}
+	}
+
+	/**
+	 * Gets the schema of our records
+	 *
+	 * @return our schema
+	 */
+	public NioRecordSchema getSchema()
+	{
+		return schema;
+	}
+
+	/**
+	 * Reads as many records as are complete from the buffer, keeping any
+	 * partial record for next time.
+	 *
+	 * @param buffer the buffer containing the data to be deserialized
+	 *
+	 * @return a packet for each complete record
+	 *
+	 * @throws IOException if the serializer is closed
+	 */
+	@Override
+	public List<NioPacket> deserialize(ByteBuffer buffer) throws IOException
+	{
+		//Check if the channel is closed
+		if (!open)
+		{
+			throw new ClosedChannelException();
+		}
+
+		//Our flyweights from the last read are no longer in use
+		List<NioPacket> found = pooled ? packets : Collections.<NioPacket>emptyList();
+		packets.clear();
+		int used = 0;
+		int size = schema.getSize();
+
+		//Finish the record we were assembling
+		if (assembly.position() > 0)
+		{
+			transferMax(buffer, assembly);
+			if (assembly.hasRemaining())
+			{
+				return found;
+			}
+			found = add(found, used++, assembly, 0);
+
+			//Assemble the next partial record in our spare as this one is now in use
+			ByteBuffer done = assembly;
+			assembly = spare;
+			spare = done;
+		}
+
+		//Keep a view of the receive buffer in our byte order (it is normally the same buffer each time)
+		if (buffer != viewed)
+		{
+			viewed = buffer;
+			view = buffer.asReadOnlyBuffer().order(schema.getByteOrder());
+		}
+		view.limit(buffer.limit());
+
+		//Read each whole record straight out of the buffer
+		while (buffer.remaining() >= size)
+		{
+			found = add(found, used++, view, buffer.position());
+			buffer.position(buffer.position() + size);
+		}
+
+		//Start assembling what is left
+		assembly.clear();
+		assembly.put(buffer);
+
+		return found;
+	}
+
+	/**
+	 * Builds a packet for a record and adds it to the list
+	 *
+	 * @param found  the packets so far (an empty list if there are none)
+	 * @param index  the index of the flyweight to use
+	 * @param buffer the buffer holding the record
+	 * @param offset where in the buffer the record starts
+	 *
+	 * @return the list holding the new packet
+	 */
+	private List<NioPacket> add(List<NioPacket> found, int index, ByteBuffer buffer, int offset)
+	{
+		//Reuse our flyweights, making more as we need them
+		if (index == records.size())
+		{
+			records.add(new NioRecord(schema));
+		}
+		NioRecord record = records.get(index).wrap(buffer, offset);
+
+		//Reuse our packets if we are pooled
+		String uid = context == null ? null : context.getUid();
+		if (pooled)
+		{
+			found.add(pool.acquire(uid, record, false, null, clock.currentTimeMillis()));
+			return found;
+		}
+		else
+		{
+			List<NioPacket> list = found.isEmpty() ? new ArrayList<NioPacket>() : found;
+			list.add(new NioPacket(uid, record, clock.currentTimeMillis()));
+			return list;
+		}
+	}
+
+	/**
+	 * Writes the packet's record into our send buffer, the packet must hold a
+	 * {@link NioRecord} of our size or a map of field names to numbers.
+	 *
+	 * @param packet the packet to serialize
+	 *
+	 * @throws IOException if the serializer is closed
+	 */
+	@Override
+	public void serialize(NioPacket packet) throws IOException
+	{
+		//Check if the channel is closed
+		if (!open)
+		{
+			throw new ClosedChannelException();
+		}
+
+		try
+		{
+			Object data = packet.getData();
+			int size = schema.getSize();
+
+			//Check the record is one we can write before we make room for it
+			if (data instanceof NioRecord && ((NioRecord) data).getSchema().getSize() != size)
+			{
+				throw new NioInvalidDataException("The record is " + ((NioRecord) data).getSchema().getSize() + " bytes rather than " + size);
+			}
+			else if (!(data instanceof NioRecord) && !(data instanceof Map))
+			{
+				throw new NioInvalidDataException("Packets must hold a record or a map of its fields");
+			}
+			ensure(size);
+
+			//Copy records directly
+			if (data instanceof NioRecord)
+			{
+				((NioRecord) data).copyTo(outbound);
+			}
+			//Write each field from our map, leaving any that are missing as zero
+			else
+			{
+				int start = outbound.position();
+				for (int i = 0; i < size; i++)
+				{
+					outbound.put((byte) 0);
+				}
+				writer.wrap(outbound, start);
+				for (Map.Entry<?, ?> e : ((Map<?, ?>) data).entrySet())
+				{
+					int field = schema.indexOf(String.valueOf(e.getKey()));
+					if (field >= 0 && e.getValue() instanceof Number)
+					{
+						Number value = (Number) e.getValue();
+						if (schema.getType(field).isFloatingPoint())
+						{
+							writer.setDouble(field, value.doubleValue());
+						}
+						else
+						{
+							writer.setLong(field, value.longValue());
+						}
+					}
+				}
+			}
+		}
+		catch (NioInvalidDataException ex)
+		{
+			LOG.warn("There was a packet of invalid data sent to the serializer", ex);
+		}
+	}
+
+	/**
+	 * Makes sure our send buffer has room for the passed number of bytes,
+	 * growing it if it does not
+	 *
+	 * @param bytes the number of bytes we need to write
+	 */
+	private void ensure(int bytes)
+	{
+		if (outbound.remaining() < bytes)
+		{
+			ByteBuffer grown = ByteBuffer.allocate(Math.max(outbound.capacity() * 2, outbound.position() + bytes)).order(schema.getByteOrder());
+			outbound.flip();
+			grown.put(outbound);
+			outbound = grown;
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int read(ByteBuffer buffer) throws IOException
+	{
+		//Check if the channel is closed
+		if (!open)
+		{
+			throw new ClosedChannelException();
+		}
+
+		//This is to store how many bytes we have read
+		int read = 0;
+
+		//If we have a rebuffer then add as much of it as we can first
+		if (rebuffer != null && rebuffer.hasRemaining())
+		{
+			read += transferMax(rebuffer, buffer);
+		}
+
+		//Then as much of our send buffer as will fit
+		if (rebuffer == null || !rebuffer.hasRemaining())
+		{
+			outbound.flip();
+			read += transferMax(outbound, buffer);
+			outbound.compact();
+		}
+
+		return read;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean hasData() throws IOException
+	{
+		//Check if the channel is closed
+		if (!open)
+		{
+			throw new ClosedChannelException();
+		}
+
+		return (rebuffer != null && rebuffer.hasRemaining()) || outbound.position() > 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void rebuffer(ByteBuffer data) throws IOException
+	{
+		//Check if the channel is closed
+		if (!open)
+		{
+			throw new ClosedChannelException();
+		}
+
+		//Copy the data as the buffer will be reused (reusing our last rebuffer if it is large enough)
+		if (rebuffer == null || rebuffer.capacity() < data.remaining())
+		{
+			rebuffer = ByteBuffer.allocate(data.remaining());
+		}
+		rebuffer.clear();
+		rebuffer.put(data);
+		rebuffer.flip();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isOpen()
+	{
+		return open;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		//Clear our variables
+		records.clear();
+		packets.clear();
+		view = null;
+		viewed = null;
+		rebuffer = null;
+		open = false;
+	}
+}
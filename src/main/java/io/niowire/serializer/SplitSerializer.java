@@ -20,11 +20,14 @@ import io.niowire.data.NioPacket;
 import io.niowire.entities.Initialize;
 import io.niowire.entities.NioObjectCreationException;
 import io.niowire.entities.NioObjectFactory;
+import io.niowire.entities.Warm;
 import io.niowire.server.NioConnection.Context;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -49,6 +52,32 @@ public class SplitSerializer implements NioSerializer
 	private NioSerializer input;
 	private NioSerializer output;
 
+	/**
+	 * Warms the factory of each of our input and output serializers so that
+	 * anything their serializers share is built before the first connection is
+	 * made
+	 *
+	 * @param values the values our factory injects
+	 * @param shared the objects shared by our factory
+	 *
+	 * @throws NioObjectCreationException if the factory could not be warmed
+	 */
+	@Warm
+	static void warm(Map<String, Object> values, ConcurrentMap<String, Object> shared) throws NioObjectCreationException
+	{
+		for (String name : new String[]
+		{
+			"inputSerializer", "outputSerializer"
+		})
+		{
+			NioObjectFactory<?> factory = (NioObjectFactory<?>) values.get(name);
+			if (factory != null)
+			{
+				factory.warm();
+			}
+		}
+	}
+
 	/**
 	 * Initializes the SplitSerializer, builds both our input and output
 	 * serializers
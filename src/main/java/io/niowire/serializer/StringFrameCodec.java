@@ -0,0 +1,102 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import io.niowire.entities.Initialize;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import javax.inject.Inject;
+
+/**
+ * This codec treats the body of each frame as a string in the configured
+ * charset (UTF-8 by default).
+ *
+ * @author Trent Houliston
+ */
+public class StringFrameCodec implements NioFrameCodec
+{
+
+	/**
+	 * The charset our strings are encoded in
+	 */
+	@Inject
+	public Charset charset = Charset.forName("UTF-8");
+	/**
+	 * Our decoder and encoder (note not thread safe)
+	 */
+	private CharsetDecoder decoder = null;
+	private CharsetEncoder encoder = null;
+
+	/**
+	 * Builds our encoder and decoder from our injected charset
+	 */
+	@Initialize
+	public void init()
+	{
+		decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Decodes the frame as a string
+	 *
+	 * @param frame the body of the frame
+	 *
+	 * @return the string held in the frame
+	 *
+	 * @throws NioInvalidDataException if the frame could not be decoded
+	 */
+	@Override
+	public Object decode(ByteBuffer frame) throws NioInvalidDataException
+	{
+		try
+		{
+			return decoder.decode(frame).toString();
+		}
+		catch (CharacterCodingException ex)
+		{
+			throw new NioInvalidDataException(ex);
+		}
+	}
+
+	/**
+	 * Encodes the string form of the object
+	 *
+	 * @param data the object to encode
+	 *
+	 * @return a buffer holding the encoded string
+	 *
+	 * @throws NioInvalidDataException if the object could not be encoded
+	 */
+	@Override
+	public ByteBuffer encode(Object data) throws NioInvalidDataException
+	{
+		try
+		{
+			return encoder.encode(CharBuffer.wrap(String.valueOf(data)));
+		}
+		catch (CharacterCodingException ex)
+		{
+			throw new NioInvalidDataException(ex);
+		}
+	}
+}
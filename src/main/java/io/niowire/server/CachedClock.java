@@ -0,0 +1,98 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+/**
+ * This clock caches the time when it is ticked, the event loop of the
+ * {@link NioSocketServer} ticks it once per iteration so every packet from an
+ * iteration shares the same timestamp without reading the system clock again.
+ * If precise nanosecond timing is needed (for example to measure latency)
+ * then the clock can be made precise, its {@link #nanoTime()} will then read
+ * the system clock on every call.
+ *
+ * @author Trent Houliston
+ */
+public final class CachedClock implements NioClock
+{
+
+	//The cached times
+	private volatile long millis;
+	private volatile long nanos;
+	//If our nano time is read from the system every time
+	private volatile boolean precise = false;
+
+	/**
+	 * Creates a new cached clock which holds the current time
+	 */
+	public CachedClock()
+	{
+		tick();
+	}
+
+	/**
+	 * Updates the cached time from the system clocks
+	 */
+	public void tick()
+	{
+		millis = System.currentTimeMillis();
+		nanos = System.nanoTime();
+	}
+
+	/**
+	 * Gets the time in milliseconds from when this clock was last ticked
+	 *
+	 * @return the cached time in milliseconds since the epoch
+	 */
+	@Override
+	public long currentTimeMillis()
+	{
+		return millis;
+	}
+
+	/**
+	 * Gets the monotonic time from when this clock was last ticked, or the
+	 * current monotonic time if this clock is precise
+	 *
+	 * @return the monotonic time in nanoseconds
+	 */
+	@Override
+	public long nanoTime()
+	{
+		return precise ? System.nanoTime() : nanos;
+	}
+
+	/**
+	 * Gets if the nanosecond time is read from the system on every call
+	 *
+	 * @return if this clock is precise
+	 */
+	public boolean isPrecise()
+	{
+		return precise;
+	}
+
+	/**
+	 * Sets if the nanosecond time is read from the system on every call
+	 * rather than when the clock is ticked
+	 *
+	 * @param precise if this clock should be precise
+	 */
+	public void setPrecise(boolean precise)
+	{
+		this.precise = precise;
+	}
+}
@@ -0,0 +1,344 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+import io.niowire.data.NioPacket;
+import io.niowire.service.BatchServiceAdapter;
+import io.niowire.service.NioBatchService;
+import io.niowire.service.NioService;
+import io.niowire.service.OverflowPolicy;
+import io.niowire.service.ServiceLane;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class runs a service in its {@link ServiceLane}. Batches sent to it are
+ * copied into a bounded queue and delivered to the service, in order, on the
+ * lane's executor (either the server's shared pool or the dedicated thread of
+ * the service's factory, which is shared by every connection). The dispatcher
+ * is only ever scheduled once at a time, so its batches stay in order even when
+ * the executor runs other connections' dispatchers too.
+ *
+ * When the queue is full the lane either drops the packets which do not fit,
+ * or (for backpressure) reports itself as blocking so the connection stops
+ * reading. Once a blocking lane has room again it runs its resume callback so
+ * the connection can start reading again. A backpressure lane never refuses a
+ * batch (the packets have already been read), so its queue size is a soft
+ * limit which the packets of the read that fills it can take it over.
+ *
+ * @author Trent Houliston
+ */
+final class LaneDispatcher implements NioBatchService, Runnable
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(LaneDispatcher.class);
+	//The number of batches we deliver before letting other dispatchers run
+	static final int BATCHES_PER_RUN = 16;
+	//The service we are running (and the batch view of it)
+	private final NioService target;
+	private final NioBatchService service;
+	//Our lane configuration
+	private final ServiceLane lane;
+	//The executor we deliver on
+	private final Executor executor;
+	//Run when we have room again after blocking
+	private final Runnable resume;
+	//The batches waiting to be delivered and the number of packets in them
+	private final ArrayDeque<List<NioPacket>> queue = new ArrayDeque<List<NioPacket>>();
+	private int queued = 0;
+	//Our state (guarded by this)
+	private boolean scheduled = false;
+	private boolean shutdown = false;
+	private boolean closeService = false;
+	private boolean full = false;
+	//The number of packets we have dropped
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * Creates a new dispatcher for the passed service
+	 *
+	 * @param service  the service to run
+	 * @param lane     the lane configuration
+	 * @param executor the executor to deliver on (the shared pool for pool
+	 *                    lanes, the factory's thread for dedicated lanes)
+	 * @param resume   run when a full backpressure lane has room again
+	 */
+	LaneDispatcher(NioService service, ServiceLane lane, Executor executor, Runnable resume)
+	{
+		this.target = service;
+		this.service = service instanceof NioBatchService ? (NioBatchService) service : new BatchServiceAdapter(service);
+		this.lane = lane;
+		this.executor = executor;
+		this.resume = resume;
+	}
+
+	/**
+	 * Queues a copy of the batch for the service, dropping any packets which
+	 * do not fit if this lane drops on overflow. A backpressure lane queues
+	 * the whole batch even if it goes over its queue size.
+	 *
+	 * @param packets the packets to queue
+	 */
+	@Override
+	public void send(List<NioPacket> packets)
+	{
+		boolean schedule = false;
+
+		synchronized (this)
+		{
+			if (shutdown)
+			{
+				return;
+			}
+
+			//Work out how many packets we can queue
+			int count = packets.size();
+			if (lane.getOverflow() == OverflowPolicy.DROP)
+			{
+				int space = Math.max(0, lane.getQueueSize() - queued);
+				if (count > space)
+				{
+					dropped.addAndGet(count - space);
+					LOG.debug("Dropped {} packets for the service {} as its lane was full", count - space, target);
+					count = space;
+				}
+			}
+
+			//Queue a copy (the batch and pooled packets are only valid during this call)
+			if (count > 0)
+			{
+				List<NioPacket> copy = new ArrayList<NioPacket>(count);
+				for (int i = 0; i < count; i++)
+				{
+					copy.add(packets.get(i).copy());
+				}
+				queue.add(copy);
+				queued += count;
+				full = queued >= lane.getQueueSize();
+
+				//Schedule ourselves if we are not already running
+				schedule = !scheduled;
+				scheduled = true;
+			}
+		}
+
+		if (schedule)
+		{
+			execute();
+		}
+	}
+
+	/**
+	 * Queues a single packet for the service
+	 *
+	 * @param packet the packet to queue
+	 */
+	@Override
+	public void send(NioPacket packet)
+	{
+		send(Collections.singletonList(packet));
+	}
+
+	/**
+	 * Delivers the queued batches to the service until the queue is empty. If
+	 * the lane has been shut down it then closes the service (if requested).
+	 * After {@value #BATCHES_PER_RUN} batches it schedules itself again rather
+	 * than continuing, so one busy connection does not hold a shared thread.
+	 */
+	@Override
+	public void run()
+	{
+		for (int delivered = 0;; delivered++)
+		{
+			List<NioPacket> batch;
+			boolean resumeNow = false;
+
+			//Give other dispatchers on our executor a turn
+			if (delivered == BATCHES_PER_RUN)
+			{
+				execute();
+				return;
+			}
+
+			synchronized (this)
+			{
+				batch = queue.poll();
+
+				//If we have run out then we are done
+				if (batch == null)
+				{
+					scheduled = false;
+					if (!shutdown)
+					{
+						return;
+					}
+				}
+				else
+				{
+					//Check if we have gone from full to having room
+					queued -= batch.size();
+					resumeNow = full && queued < lane.getQueueSize() && lane.getOverflow() == OverflowPolicy.BACKPRESSURE;
+					full = queued >= lane.getQueueSize();
+				}
+			}
+
+			//We have been shut down and have delivered everything
+			if (batch == null)
+			{
+				finish();
+				return;
+			}
+
+			//Tell the connection it can read again
+			if (resumeNow)
+			{
+				resume.run();
+			}
+
+			try
+			{
+				service.send(batch);
+			}
+			//We must keep delivering even if the service throws
+			catch (RuntimeException ex)
+			{
+				LOG.warn("The service {} threw an exception in its lane", target, ex);
+			}
+		}
+	}
+
+	/**
+	 * Checks if this lane is full and should stop the connection from reading
+	 *
+	 * @return true if this is a full backpressure lane
+	 */
+	synchronized boolean isBlocking()
+	{
+		return lane.getOverflow() == OverflowPolicy.BACKPRESSURE && queued >= lane.getQueueSize();
+	}
+
+	/**
+	 * Gets the number of packets this lane has dropped
+	 *
+	 * @return the number of dropped packets
+	 */
+	long getDropped()
+	{
+		return dropped.get();
+	}
+
+	/**
+	 * Gets the lane configuration of this dispatcher
+	 *
+	 * @return the lane
+	 */
+	ServiceLane getLane()
+	{
+		return lane;
+	}
+
+	/**
+	 * Gets the service this dispatcher is running
+	 *
+	 * @return the service
+	 */
+	NioService getService()
+	{
+		return target;
+	}
+
+	/**
+	 * Shuts down this lane once the packets already queued have been
+	 * delivered, any packets sent afterwards are ignored.
+	 *
+	 * @param closeService if the service should be closed once the queue is
+	 *                        empty
+	 */
+	void shutdown(boolean closeService)
+	{
+		synchronized (this)
+		{
+			if (shutdown)
+			{
+				return;
+			}
+			this.shutdown = true;
+			this.closeService = closeService;
+
+			//If we are running then we will finish when the queue is empty
+			if (scheduled)
+			{
+				return;
+			}
+			scheduled = true;
+		}
+		execute();
+	}
+
+	/**
+	 * Closes the service (if requested)
+	 */
+	private void finish()
+	{
+		if (closeService)
+		{
+			try
+			{
+				target.close();
+			}
+			catch (IOException ex)
+			{
+				LOG.warn("The service {} threw an exception while closing", target, ex);
+			}
+		}
+	}
+
+	/**
+	 * Runs this dispatcher on its executor (or on this thread if the executor
+	 * has been shut down)
+	 */
+	private void execute()
+	{
+		try
+		{
+			executor.execute(this);
+		}
+		catch (RejectedExecutionException ex)
+		{
+			run();
+		}
+	}
+
+	/**
+	 * This dispatcher only closes its service through shutdown
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		shutdown(true);
+	}
+}
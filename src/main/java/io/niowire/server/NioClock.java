@@ -0,0 +1,46 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+/**
+ * This interface is the source of time for the connections of a server. It
+ * allows the time to be read cheaply (for example a value cached once per
+ * event loop iteration) and allows tests to control the time.
+ *
+ * @author Trent Houliston
+ */
+public interface NioClock
+{
+
+	/**
+	 * Gets the current wall clock time in milliseconds (as per
+	 * {@link System#currentTimeMillis()}). This may be coarse, for example
+	 * only updated once per event loop iteration.
+	 *
+	 * @return the current time in milliseconds since the epoch
+	 */
+	public long currentTimeMillis();
+
+	/**
+	 * Gets the current value of a monotonic clock in nanoseconds (as per
+	 * {@link System#nanoTime()}). It is only meaningful for measuring elapsed
+	 * time, and may be coarse unless the clock is precise.
+	 *
+	 * @return the current monotonic time in nanoseconds
+	 */
+	public long nanoTime();
+}
@@ -17,17 +17,30 @@
 package io.niowire.server;
 
 import io.niowire.data.NioPacket;
+import io.niowire.data.NioPacketPool;
 import io.niowire.entities.NioObjectCreationException;
 import io.niowire.entities.NioObjectFactory;
+import io.niowire.inspection.BatchInspectorAdapter;
+import io.niowire.inspection.InspectorChain;
 import io.niowire.inspection.NioAuthenticationException;
+import io.niowire.inspection.NioBatchInspector;
 import io.niowire.inspection.NioInspector;
 import io.niowire.serializer.NioSerializer;
+import io.niowire.service.BatchServiceAdapter;
+import io.niowire.service.LaneType;
+import io.niowire.service.NioAsyncService;
+import io.niowire.service.NioBatchService;
 import io.niowire.service.NioService;
+import io.niowire.service.NioServiceFactory;
+import io.niowire.service.ServiceLane;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,6 +51,10 @@ import org.slf4j.LoggerFactory;
  * objects. It will read data in from the client, send it through the parser,
  * then through the inspector then to each of the services.
  *
+ * All of the packets from a single read are inspected and sent to the services
+ * as one batch (see {@link NioBatchInspector} and {@link NioBatchService}),
+ * inspectors and services which only handle single packets are adapted.
+ *
  * Data on the return trip will also be collected from the serializer.
  *
  * @author Trent Houliston
@@ -46,11 +63,19 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 {
 
 	private static final Logger LOG = LoggerFactory.getLogger(NioConnection.class);
+	//The source of our connection ids
+	private static final AtomicLong CONNECTION_IDS = new AtomicLong();
 	//Initial Configuration Objects
 	private SelectionKey SELECTION_KEY;
 	private NioSocketServer.ActiveServer SERVER_CONFIG;
 	//Shared context
 	private Context context;
+	//The id of this connection (unique within this JVM)
+	private final long connectionId = CONNECTION_IDS.incrementAndGet();
+	//The address of the other end of the connection (looked up once)
+	private InetSocketAddress remoteAddress = null;
+	//The pool of reusable packets for pooled serializers (created when first used)
+	private NioPacketPool packetPool = null;
 	//Parses the binary stream into objects
 	private NioSerializer serializer;
 	/**
@@ -59,10 +84,31 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 	 * packets, or authentication of packets
 	 */
 	private NioInspector inspect;
+	//The inspector as a batch inspector (either itself or an adapter around it)
+	private NioBatchInspector batchInspect;
 	//The services that this connection sends to
 	private List<NioService> services;
+	//The services as batch services (either themselves or adapters around them)
+	private List<NioBatchService> batchServices;
+	//The services which reply asynchronously
+	private List<NioAsyncService> asyncServices;
+	//The replies from our asynchronous services waiting to be written in order
+	private final ReorderBuffer replies = new ReorderBuffer();
+	//A list to drain our ready replies into
+	private final List<NioPacket> readyReplies = new ArrayList<NioPacket>();
+	//The lanes of the services which are not run inline
+	private final Map<NioService, LaneDispatcher> lanes = new IdentityHashMap<NioService, LaneDispatcher>();
+	private volatile List<LaneDispatcher> laneList = Collections.emptyList();
+	//If we have async services or lanes which can stop us reading
+	private boolean flowControlled = false;
+	//The number of bytes we have received from the client
+	private long bytesReceived = 0;
+	//The time (System.nanoTime) until which we should not read (0 if we are not paused)
+	private volatile long readPausedUntil = 0;
 	//If this connection is open
 	private boolean open = true;
+	//The stage of the pipeline this connection is executing (read by the StallDetector)
+	private volatile PipelineStage stage = PipelineStage.IDLE;
 
 	/**
 	 * This creates a new NioConnection for a particular server. it handles all
@@ -122,8 +168,46 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 			throw new ClosedChannelException();
 		}
 
-		//Start with the Read operation and add in the write operation if we need to
-		SELECTION_KEY.interestOps(SelectionKey.OP_READ | (serializer.hasData() ? SelectionKey.OP_WRITE : 0));
+		//Lock on our replies so that a reply completing on another thread can't be missed
+		synchronized (replies)
+		{
+			//Read unless we are being held back and write if we have data or replies ready
+			int ops = canRead() ? SelectionKey.OP_READ : 0;
+			SELECTION_KEY.interestOps(ops | (serializer.hasData() || replies.isReady() ? SelectionKey.OP_WRITE : 0));
+		}
+	}
+
+	/**
+	 * Checks if this connection should read from its socket. It should not if
+	 * it has too many asynchronous requests in flight or if one of its service
+	 * lanes is full and applying backpressure. This must be called while
+	 * holding the lock on our replies.
+	 *
+	 * @return true if we should read
+	 */
+	private boolean canRead()
+	{
+		//Check if reading has been paused
+		if (readPausedUntil != 0 && SERVER_CONFIG.getClock().nanoTime() - readPausedUntil < 0)
+		{
+			return false;
+		}
+
+		//Check our asynchronous requests
+		if (replies.size() >= SERVER_CONFIG.getMaxInFlight())
+		{
+			return false;
+		}
+
+		//Check our lanes
+		for (LaneDispatcher lane : laneList)
+		{
+			if (lane.isBlocking())
+			{
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -150,24 +234,46 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 
 		//Get the number of remaining bytes (that's how many we will read)
 		int bytes = src.remaining();
+		bytesReceived += bytes;
 
 		//Deserialize the data
+		stage = PipelineStage.DESERIALIZE;
 		List<NioPacket> packets = serializer.deserialize(src);
 
-		//Loop through all the packets
-		for (NioPacket packet : packets)
+		//Send all the packets from this read through as one batch
+		if (!packets.isEmpty())
 		{
 			try
 			{
-				NioPacket p = inspect.inspect(packet);
+				stage = PipelineStage.INSPECT;
+				List<NioPacket> batch = batchInspect.inspect(packets);
+
+				//Send the mangled batch to all of the services (unless everything was filtered)
+				stage = PipelineStage.SERVICE;
+				if (!batch.isEmpty())
+				{
+					for (NioBatchService service : batchServices)
+					{
+						service.send(batch);
+					}
+
+					//Send each packet to the asynchronous services reserving slots for their replies in packet order
+					for (NioPacket packet : batch)
+					{
+						for (NioAsyncService service : asyncServices)
+						{
+							sendAsync(service, packet);
+						}
+					}
+				}
 
-				//Loop through all the services sending the mangled packet
-				for (NioService service : services)
+				//Stop reading if we now have too many requests in flight or a full lane
+				if (flowControlled && open)
 				{
-					service.send(p);
+					updateInterestOps();
 				}
 			}
-			//This exception can be thrown by any of the services or the mangler
+			//This exception can be thrown by the inspector when the batch fails authentication
 			catch (NioAuthenticationException ex)
 			{
 				try
@@ -181,12 +287,45 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 					LOG.trace("The connection {} failed authentication", this);
 				}
 			}
+			finally
+			{
+				//Every service has seen the packets so pooled packets can be reused
+				for (NioPacket packet : packets)
+				{
+					packet.release();
+				}
+			}
 		}
+		stage = PipelineStage.IDLE;
 
 		//Return the number of bytes remaining as the serializer should have absorbed them all
 		return bytes;
 	}
 
+	/**
+	 * Sends a packet to an asynchronous service, reserving a slot in our
+	 * reorder buffer for its reply.
+	 *
+	 * @param service the service to send to
+	 * @param packet  the packet to send
+	 */
+	private void sendAsync(NioAsyncService service, NioPacket packet)
+	{
+		ReorderBuffer.Slot slot = replies.reserve();
+
+		try
+		{
+			//The request can outlive this read so send a copy (in case the packet is pooled)
+			service.sendAsync(packet.copy()).whenComplete(new Reply(slot));
+		}
+		//If the service failed to start the request then there will be no reply
+		catch (RuntimeException ex)
+		{
+			LOG.warn("The asynchronous service {} threw an exception", service, ex);
+			replies.complete(slot, null);
+		}
+	}
+
 	/**
 	 * This method is used to read as much of the data out of our serializer as
 	 * possible into the buffer. This buffer should then be used to send data to
@@ -208,6 +347,16 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 			throw new ClosedChannelException();
 		}
 
+		//Serialize any replies from our asynchronous services which are ready
+		if (replies.drainTo(readyReplies) > 0)
+		{
+			for (NioPacket reply : readyReplies)
+			{
+				serializer.serialize(reply);
+			}
+			readyReplies.clear();
+		}
+
 		//Read from the serializer into the destination buffer
 		int read = serializer.read(dst);
 
@@ -261,12 +410,15 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 		//Close our channel if it hasn't been closed already
 		SELECTION_KEY.channel().close();
 
+		//Forget any replies we were waiting on
+		replies.clear();
+
 		//Tell all our objects that we are using that they should close (clean up)
 		serializer.close();
 		inspect.close();
 		for (NioService service : services)
 		{
-			service.close();
+			closeService(service);
 		}
 
 		//Remove ourselves from our activeserver object
@@ -275,13 +427,79 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 		//Wipe out variables so they can be garbage collected
 		serializer = null;
 		inspect = null;
+		batchInspect = null;
 		services = null;
+		lanes.clear();
+		laneList = Collections.emptyList();
+		batchServices = null;
+		asyncServices = null;
 		context = null;
 
 		//We are closed
 		open = false;
 	}
 
+	/**
+	 * Closes a service, if it runs in a lane then it is closed once the lane
+	 * has delivered the packets it has queued.
+	 *
+	 * @param service the service to close
+	 *
+	 * @throws IOException if the service threw an exception while closing
+	 */
+	private void closeService(NioService service) throws IOException
+	{
+		LaneDispatcher lane = lanes.remove(service);
+		if (lane != null)
+		{
+			lane.shutdown(true);
+		}
+		else
+		{
+			service.close();
+		}
+	}
+
+	/**
+	 * Closes the underlying channel of this connection without cleaning up the
+	 * serializer, inspector and services. This is used to abort a connection
+	 * from another thread (such as the {@link StallDetector}), the rest of the
+	 * connection is cleaned up by the event loop once it notices the channel
+	 * has been closed.
+	 *
+	 * @throws IOException if there was an exception while closing the channel
+	 */
+	void abort() throws IOException
+	{
+		SELECTION_KEY.channel().close();
+	}
+
+	/**
+	 * Gets the stage of the pipeline that this connection is currently
+	 * executing.
+	 *
+	 * @return the current stage of this connection
+	 */
+	PipelineStage getStage()
+	{
+		return stage;
+	}
+
+	/**
+	 * Resumes reading from the socket if reading was paused and the pause is
+	 * over (if it was paused again for longer it stays paused).
+	 *
+	 * @throws IOException if the connection is closed
+	 */
+	void resumeReading() throws IOException
+	{
+		if (readPausedUntil != 0 && SERVER_CONFIG.getClock().nanoTime() - readPausedUntil >= 0)
+		{
+			readPausedUntil = 0;
+			updateInterestOps();
+		}
+	}
+
 	/**
 	 * This method is called periodically as a way to ask the NioConnection to
 	 * check if it should time out. This feature is handled by the inspect
@@ -292,6 +510,9 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 	 */
 	public void timeout() throws IOException
 	{
+		//Resume reading if we were paused and the pause is over (in case we are not run by an event loop)
+		resumeReading();
+
 		//Check the inspect for a timeout
 		if (inspect.timeout())
 		{
@@ -336,6 +557,7 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 		NioInspector newInspector = null;
 		LinkedList<NioService> servicesToAdd = new LinkedList<NioService>();
 		LinkedList<NioService> servicesToRemove;
+		IdentityHashMap<NioService, NioServiceFactory<? extends NioService>> factories = new IdentityHashMap<NioService, NioServiceFactory<? extends NioService>>();
 
 		//Check and update our serializer if we need to
 		if (!SERVER_CONFIG.getSerializerFactory().isInstance(serializer))
@@ -343,20 +565,20 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 			newSerializer = SERVER_CONFIG.getSerializerFactory().create(Collections.singletonMap("context", context));
 		}
 
-		//Check and update the inspector if we need to
-		if (!SERVER_CONFIG.getInspectorFactory().isInstance(inspect))
+		//Check and update the inspector (or inspector chain) if we need to
+		if (!isInspectorCurrent())
 		{
-			newInspector = SERVER_CONFIG.getInspectorFactory().create(Collections.singletonMap("context", context));
+			newInspector = createInspector();
 		}
 
 		//Make new lists we can manipulate that hold our objects
-		LinkedList<NioObjectFactory<? extends NioService>> newServices = new LinkedList<NioObjectFactory<? extends NioService>>(SERVER_CONFIG.getServiceFactories());
+		LinkedList<NioServiceFactory<? extends NioService>> newServices = new LinkedList<NioServiceFactory<? extends NioService>>(SERVER_CONFIG.getLanedServiceFactories());
 		servicesToRemove = new LinkedList<NioService>(services);
 
 		//Loop through the factories and the services and try to match them up
-		for (Iterator<NioObjectFactory<? extends NioService>> fit = newServices.iterator(); fit.hasNext();)
+		for (Iterator<NioServiceFactory<? extends NioService>> fit = newServices.iterator(); fit.hasNext();)
 		{
-			NioObjectFactory<? extends NioService> factory = fit.next();
+			NioServiceFactory<? extends NioService> factory = fit.next();
 
 			//Loop thorough the services
 			for (Iterator<NioService> sit = servicesToRemove.iterator(); sit.hasNext();)
@@ -365,6 +587,7 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 				if (factory.isInstance(service))
 				{
 					//Remove the factory and the service from the lists (we have a match)
+					factories.put(service, factory);
 					fit.remove();
 					sit.remove();
 					break;
@@ -373,9 +596,10 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 		}
 
 		//Add any new services
-		for (NioObjectFactory<? extends NioService> factory : newServices)
+		for (NioServiceFactory<? extends NioService> factory : newServices)
 		{
 			NioService service = factory.create(Collections.singletonMap("context", context));
+			factories.put(service, factory);
 			servicesToAdd.add(service);
 		}
 
@@ -384,7 +608,7 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 		{
 			try
 			{
-				service.close();
+				closeService(service);
 			}
 			catch (IOException ex)
 			{
@@ -423,8 +647,226 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 				}
 			}
 			this.inspect = newInspector;
+			this.batchInspect = newInspector instanceof NioBatchInspector ? (NioBatchInspector) newInspector : new BatchInspectorAdapter(newInspector);
+		}
+
+		//Rebuild our batch view of the services (adapting any per packet services)
+		List<NioBatchService> newBatchServices = new ArrayList<NioBatchService>(services.size());
+		List<NioAsyncService> newAsyncServices = new ArrayList<NioAsyncService>(0);
+		for (NioService service : services)
+		{
+			if (service instanceof NioAsyncService)
+			{
+				newAsyncServices.add((NioAsyncService) service);
+			}
+			else
+			{
+				newBatchServices.add(updateLane(service, factories.get(service)));
+			}
+		}
+		this.batchServices = newBatchServices;
+		this.asyncServices = newAsyncServices;
+		this.laneList = new ArrayList<LaneDispatcher>(lanes.values());
+		this.flowControlled = !newAsyncServices.isEmpty() || !lanes.isEmpty();
+	}
+
+	/**
+	 * Checks if our inspector was made from the current server definition. If
+	 * the server has a chain of inspectors then our inspector must be a chain
+	 * with every stage matching its factory.
+	 *
+	 * @return true if our inspector is up to date
+	 */
+	private boolean isInspectorCurrent()
+	{
+		List<NioObjectFactory<? extends NioInspector>> chain = SERVER_CONFIG.getInspectorFactories();
+
+		//Without a chain we just check the single inspector
+		if (chain.isEmpty())
+		{
+			return SERVER_CONFIG.getInspectorFactory().isInstance(inspect);
+		}
+		else if (!(inspect instanceof InspectorChain))
+		{
+			return false;
+		}
+
+		//Check the stages match (the inspector followed by the chain)
+		List<NioInspector> stages = ((InspectorChain) inspect).getStages();
+		if (stages.size() != chain.size() + 1 || !SERVER_CONFIG.getInspectorFactory().isInstance(stages.get(0)))
+		{
+			return false;
+		}
+		for (int i = 0; i < chain.size(); i++)
+		{
+			if (!chain.get(i).isInstance(stages.get(i + 1)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Creates the inspector for this connection from the server definition.
+	 * If the server has a chain of inspectors then an {@link InspectorChain}
+	 * is built (once for this connection) of the inspector followed by the
+	 * chain.
+	 *
+	 * @return the new inspector
+	 *
+	 * @throws NioObjectCreationException if an inspector could not be created
+	 */
+	private NioInspector createInspector() throws NioObjectCreationException
+	{
+		List<NioObjectFactory<? extends NioInspector>> chain = SERVER_CONFIG.getInspectorFactories();
+		NioInspector first = SERVER_CONFIG.getInspectorFactory().create(Collections.singletonMap("context", context));
+
+		//Without a chain we just use the single inspector
+		if (chain.isEmpty())
+		{
+			return first;
 		}
 
+		//Build our stages
+		List<NioInspector> stages = new ArrayList<NioInspector>(chain.size() + 1);
+		stages.add(first);
+		for (NioObjectFactory<? extends NioInspector> factory : chain)
+		{
+			stages.add(factory.create(Collections.singletonMap("context", context)));
+		}
+		return new InspectorChain(stages);
+	}
+
+	/**
+	 * Updates the lane that a service is run in, if the lane has changed then
+	 * the old lane is shut down (after delivering what it has queued) and a new
+	 * one is made. Dedicated lanes queue onto the one thread owned by the
+	 * service's factory, which is shared with every other connection.
+	 *
+	 * @param service the service
+	 * @param factory the factory the service was made by (which holds its
+	 *                   lane)
+	 *
+	 * @return the batch service to send packets to for this service
+	 */
+	private NioBatchService updateLane(NioService service, NioServiceFactory<? extends NioService> factory)
+	{
+		LaneDispatcher existing = lanes.get(service);
+		ServiceLane lane = factory.getLane();
+
+		//Inline services are called directly
+		if (lane == null || lane.getType() == LaneType.INLINE)
+		{
+			if (existing != null)
+			{
+				lanes.remove(service);
+				existing.shutdown(false);
+			}
+			return service instanceof NioBatchService ? (NioBatchService) service : new BatchServiceAdapter(service);
+		}
+
+		//Make a new lane if we don't have one or it has changed
+		if (existing == null || !existing.getLane().equals(lane))
+		{
+			if (existing != null)
+			{
+				existing.shutdown(false);
+			}
+			Executor executor = lane.getType() == LaneType.DEDICATED
+								? factory.getDedicatedExecutor("ServiceLane-" + service.getClass().getSimpleName())
+								: SERVER_CONFIG.getPool();
+			existing = new LaneDispatcher(service, lane, executor, new ResumeReading());
+			lanes.put(service, existing);
+		}
+		return existing;
+
+	}
+
+	/**
+	 * This class is run by a service lane which was full (and applying
+	 * backpressure) once it has room again. It starts the connection reading
+	 * again unless something else is still holding it back.
+	 */
+	private class ResumeReading implements Runnable
+	{
+
+		/**
+		 * Adds the read operation back to our interest operations
+		 */
+		@Override
+		public void run()
+		{
+			synchronized (replies)
+			{
+				if (SELECTION_KEY.isValid() && canRead())
+				{
+					try
+					{
+						SELECTION_KEY.interestOps(SELECTION_KEY.interestOps() | SelectionKey.OP_READ);
+						SELECTION_KEY.selector().wakeup();
+					}
+					catch (CancelledKeyException ex)
+					{
+						//The connection was closed, so there is nothing to read
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * This class receives the reply from an asynchronous service (on whichever
+	 * thread completed it) and stores it in our reorder buffer. If it is the
+	 * next reply to be written then the connection is woken up to write it.
+	 */
+	private class Reply implements BiConsumer<NioPacket, Throwable>
+	{
+
+		//The slot for this reply
+		private final ReorderBuffer.Slot slot;
+
+		/**
+		 * Creates a new reply handler for the passed slot
+		 *
+		 * @param slot the slot to store the reply in
+		 */
+		private Reply(ReorderBuffer.Slot slot)
+		{
+			this.slot = slot;
+		}
+
+		/**
+		 * Stores the reply and wakes the selector if it is ready to be written
+		 *
+		 * @param reply the reply from the service
+		 * @param error the exception if the service failed
+		 */
+		@Override
+		public void accept(NioPacket reply, Throwable error)
+		{
+			if (error != null)
+			{
+				LOG.warn("An asynchronous service failed on the connection {}", NioConnection.this, error);
+			}
+
+			synchronized (replies)
+			{
+				//If this reply is now ready to be written then we need to write
+				if (replies.complete(slot, error == null ? reply : null) && SELECTION_KEY.isValid())
+				{
+					try
+					{
+						SELECTION_KEY.interestOps(SELECTION_KEY.interestOps() | SelectionKey.OP_WRITE);
+						SELECTION_KEY.selector().wakeup();
+					}
+					catch (CancelledKeyException ex)
+					{
+						//The connection was closed, so there is nobody to reply to
+					}
+				}
+			}
+		}
 	}
 
 	/**
@@ -462,6 +904,69 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 			refreshInterestOps();
 		}
 
+		/**
+		 * Gets the clock that this connection should use for timestamps and for
+		 * measuring time, it is cheaper to read than the system clocks
+		 *
+		 * @return the clock for this connection
+		 */
+		public NioClock getClock()
+		{
+			return SERVER_CONFIG.getClock();
+		}
+
+		/**
+		 * Gets the pool of reusable packets for this connection, pooled
+		 * serializers take their packets from here and the connection releases
+		 * them back into it once every service has seen them.
+		 *
+		 * @return the packet pool for this connection
+		 */
+		public NioPacketPool getPacketPool()
+		{
+			if (packetPool == null)
+			{
+				packetPool = new NioPacketPool();
+			}
+			return packetPool;
+		}
+
+		/**
+		 * Gets the total number of bytes that have been received from the
+		 * client on this connection.
+		 *
+		 * @return the number of bytes received
+		 */
+		public long getBytesReceived()
+		{
+			return bytesReceived;
+		}
+
+		/**
+		 * Stops this connection reading from its socket for the passed amount
+		 * of time (for example to slow down a client which is sending too
+		 * fast). The event loop resumes reading as soon as the time has
+		 * passed.
+		 *
+		 * @param nanos the time to pause reading for in nanoseconds
+		 *
+		 * @throws IOException if the connection is closed
+		 */
+		public void pauseReading(long nanos) throws IOException
+		{
+			//Never store 0 as that means we are not paused
+			long until = SERVER_CONFIG.getClock().nanoTime() + nanos;
+			readPausedUntil = until == 0 ? 1 : until;
+			updateInterestOps();
+
+			//Have the event loop resume us when the pause is over
+			PausedReads paused = SERVER_CONFIG.getPausedReads();
+			if (paused != null)
+			{
+				paused.add(NioConnection.this, readPausedUntil);
+			}
+		}
+
 		/**
 		 * Gets the InetSocketAddress of the other end of the connection. This
 		 * is the IP/Port of the socket which we are connected to.
@@ -470,16 +975,34 @@ public final class NioConnection implements ReadableByteChannel, WritableByteCha
 		 */
 		public InetSocketAddress getRemoteAddress()
 		{
-			try
-			{
-				//Get the socket address
-				return (InetSocketAddress) ((SocketChannel) SELECTION_KEY.channel()).getRemoteAddress();
-			}
-			catch (IOException ex)
+			//The address never changes so we only need to ask the socket once
+			if (remoteAddress == null)
 			{
-				//Otherwise return null
-				return null;
+				try
+				{
+					//Get the socket address
+					remoteAddress = (InetSocketAddress) ((SocketChannel) SELECTION_KEY.channel()).getRemoteAddress();
+				}
+				catch (IOException ex)
+				{
+					//Otherwise return null
+					return null;
+				}
 			}
+			return remoteAddress;
+		}
+
+		/**
+		 * Gets a number which identifies this connection, unlike the UID it is
+		 * unique between every connection made to this JVM and does not change,
+		 * so it can be used to cheaply key maps by connection. (this will not
+		 * change during execution)
+		 *
+		 * @return the id of this connection
+		 */
+		public long getConnectionId()
+		{
+			return connectionId;
 		}
 
 		/**
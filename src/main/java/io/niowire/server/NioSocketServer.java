@@ -35,6 +35,8 @@ import java.nio.channels.*;
 import java.nio.charset.Charset;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -63,6 +65,8 @@ public class NioSocketServer extends Thread
 	static final NioObjectFactory<LineSerializer> DEFAULT_SERIALIZER = new NioObjectFactory<LineSerializer>(LineSerializer.class, Collections.singletonMap("charset", Charset.defaultCharset().name()));
 	//The default inspector
 	static final NioObjectFactory<TimeoutInspector> DEFAULT_INSPECTOR = new NioObjectFactory<TimeoutInspector>(TimeoutInspector.class, Collections.singletonMap("timeout", -1));
+	//The default number of asynchronous requests which can be in flight per connection
+	static final int DEFAULT_MAX_IN_FLIGHT = 64;
 	//Our threadpool
 	public final ThreadPoolExecutor POOL;
 	//Our thread group
@@ -83,6 +87,14 @@ public class NioSocketServer extends Thread
 	private boolean shutdownNow = false;
 	//Our lock so that we can add/remove servers as needed
 	private final Object lock = new Object();
+	//The watchdog which detects when our event loop has stalled
+	private final StallDetector stallDetector;
+	//The thread which runs our stall detector
+	private final Thread stallDetectorThread;
+	//The clock which is updated once per iteration of our event loop
+	private final CachedClock clock = new CachedClock();
+	//The connections whose reading is paused, in the order they resume
+	private final PausedReads pausedReads;
 
 	/**
 	 * This creates a new NioSocketServer instance which is managed manually
@@ -128,6 +140,9 @@ public class NioSocketServer extends Thread
 			throw new NiowireException("Was unable to setup the server due to an error", ex);
 		}
 
+		//Connections which pause reading are resumed by our event loop
+		this.pausedReads = new PausedReads(channels);
+
 		//Make the ThreadPool that is used
 		POOL = new ThreadPoolExecutor(Runtime.getRuntime().availableProcessors(),
 									  Runtime.getRuntime().availableProcessors() * 4,
@@ -135,6 +150,11 @@ public class NioSocketServer extends Thread
 									  new LinkedBlockingQueue<Runnable>());
 		POOL.setThreadFactory(new NiowireThreadFactory());
 
+		//Build the watchdog for our event loop
+		this.stallDetector = new StallDetector(getName(), this);
+		this.stallDetectorThread = new Thread(NIOTHREAD_GROUP, this.stallDetector, "StallDetector");
+		this.stallDetectorThread.setDaemon(true);
+
 		//If we got passed null as the source that means that they are going
 		//to manage the servers manually
 		if (source != null)
@@ -184,13 +204,30 @@ public class NioSocketServer extends Thread
 		//Register ourselves as an instance
 		instances.put(NIOTHREAD_GROUP, this);
 
+		//Start up our stall detector
+		this.stallDetectorThread.start();
+
 		while (true)
 		{
 			try
 			{
 				//Only block for one second so that we can check the timeouts
-				//and if any servers are to be added or removed
-				channels.select(1000);
+				//and if any servers are to be added or removed (or until the
+				//next paused connection should resume reading)
+				stallDetector.idle();
+				long timeout = pausedReads.getSelectTimeout(clock.nanoTime(), 1000);
+				if (timeout == 0)
+				{
+					channels.selectNow();
+				}
+				else
+				{
+					channels.select(timeout);
+				}
+
+				//Start timing this iteration of the loop
+				stallDetector.beat();
+				clock.tick();
 
 				synchronized (lock)
 				{
@@ -234,6 +271,9 @@ public class NioSocketServer extends Thread
 						throw new ThreadDeath();
 					}
 
+					//Resume reading on the connections whose pause has ended
+					pausedReads.resume(clock.nanoTime());
+
 					//Iterate through all the keys
 					Iterator<SelectionKey> keys = channels.selectedKeys().iterator();
 
@@ -264,6 +304,7 @@ public class NioSocketServer extends Thread
 
 								//Get the server definition which is attached
 								ActiveServer serverConfig = (ActiveServer) key.attachment();
+								stallDetector.enter(serverConfig, null, PipelineStage.ACCEPT);
 
 								//Accept the new connection and set it non blocking
 								SocketChannel client = server.accept();
@@ -305,6 +346,7 @@ public class NioSocketServer extends Thread
 								//Cast and get our attachments
 								SocketChannel chan = (SocketChannel) key.channel();
 								NioConnection connection = (NioConnection) key.attachment();
+								stallDetector.enter(null, connection, PipelineStage.READ);
 
 								//Clear our old data
 								buffer.clear();
@@ -338,6 +380,7 @@ public class NioSocketServer extends Thread
 								//Do our casting
 								SocketChannel chan = (SocketChannel) key.channel();
 								NioConnection connection = (NioConnection) key.attachment();
+								stallDetector.enter(null, connection, PipelineStage.WRITE);
 
 								//Clear our buffer
 								buffer.clear();
@@ -361,10 +404,10 @@ public class NioSocketServer extends Thread
 					}
 
 					//Check if enough time has passed that we should check the timeouts again
-					if (System.currentTimeMillis() - lastTimeout > 1000)
+					if (clock.currentTimeMillis() - lastTimeout > 1000)
 					{
 						//Set our last timeout check
-						lastTimeout = System.currentTimeMillis();
+						lastTimeout = clock.currentTimeMillis();
 
 						//Loop through all the keys
 						for (SelectionKey key : channels.keys())
@@ -374,6 +417,7 @@ public class NioSocketServer extends Thread
 							{
 								//Tell the connection to check it's timeout
 								NioConnection connection = (NioConnection) key.attachment();
+								stallDetector.enter(null, connection, PipelineStage.TIMEOUT);
 								connection.timeout();
 							}
 						}
@@ -426,6 +470,30 @@ public class NioSocketServer extends Thread
 		channels.wakeup();
 	}
 
+	/**
+	 * Gets the stall detector which is watching this server's event loop. It
+	 * can be used to configure the stall threshold and the action which is
+	 * taken when a stall is detected.
+	 *
+	 * @return the stall detector for this server
+	 */
+	public StallDetector getStallDetector()
+	{
+		return stallDetector;
+	}
+
+	/**
+	 * Gets the clock which the connections of this server use for their
+	 * timestamps. It is updated once per iteration of the event loop, and can
+	 * be made precise if the connections need accurate nanosecond timing.
+	 *
+	 * @return the clock for this server
+	 */
+	public CachedClock getClock()
+	{
+		return clock;
+	}
+
 	/**
 	 * This method adds a new server into the Socket Server.
 	 *
@@ -440,6 +508,9 @@ public class NioSocketServer extends Thread
 	{
 		//Create a server for us to use
 		ActiveServer server = new ActiveServer(serverDef);
+		server.pool = POOL;
+		server.clock = clock;
+		server.pausedReads = pausedReads;
 
 		//Get a new Socket Channel
 		ServerSocketChannel serv = setupServerSocketChannel(server.getPort());
@@ -717,6 +788,12 @@ public class NioSocketServer extends Thread
 		private Integer activePort;
 		//Connections made to this server
 		private transient List<NioConnection> connections = new LinkedList<NioConnection>();
+		//The shared pool that services in pool lanes are run on
+		private transient Executor pool;
+		//The clock that connections to this server use
+		private transient NioClock clock;
+		//The schedule that resumes paused connections to this server
+		private transient PausedReads pausedReads;
 
 		/**
 		 * Build a new active server from the passed definition
@@ -730,7 +807,31 @@ public class NioSocketServer extends Thread
 			this.port = def.getPort();
 			this.serializerFactory = def.getSerializerFactory() == null ? DEFAULT_SERIALIZER : def.getSerializerFactory();
 			this.inspectorFactory = def.getInspectorFactory() == null ? DEFAULT_INSPECTOR : def.getInspectorFactory();
-			this.serviceFactories = def.getServiceFactories();
+			this.inspectorFactories = def.getInspectorFactories();
+			this.serviceFactories = def.getLanedServiceFactories();
+			this.maxInFlight = def.getMaxInFlight() == null ? DEFAULT_MAX_IN_FLIGHT : def.getMaxInFlight();
+
+			//Get our serializers ready before the first connection
+			warmSerializer();
+		}
+
+		/**
+		 * Warms up our serializer factory so that anything its serializers
+		 * share (such as their Gson) is built now rather than when the first
+		 * connection is made. Only serializers with a
+		 * {@link io.niowire.entities.Warm} method do anything here, no serializer
+		 * is made.
+		 */
+		private void warmSerializer()
+		{
+			try
+			{
+				this.serializerFactory.warm();
+			}
+			catch (NioObjectCreationException ex)
+			{
+				LOG.warn("There was an exception while warming the serializer for server {}", this.id, ex);
+			}
 		}
 
 		/**
@@ -754,9 +855,14 @@ public class NioSocketServer extends Thread
 			this.name = def.getName();
 			this.serializerFactory = def.getSerializerFactory() == null ? DEFAULT_SERIALIZER : def.getSerializerFactory();
 			this.inspectorFactory = def.getInspectorFactory() == null ? DEFAULT_INSPECTOR : def.getInspectorFactory();
-			this.serviceFactories = def.getServiceFactories();
+			this.inspectorFactories = def.getInspectorFactories();
+			this.serviceFactories = def.getLanedServiceFactories();
+			this.maxInFlight = def.getMaxInFlight() == null ? DEFAULT_MAX_IN_FLIGHT : def.getMaxInFlight();
 			this.port = def.getPort();
 
+			//Get our new serializers ready
+			warmSerializer();
+
 			//Loop through our connections and tell them to update themselves
 			for (NioConnection con : connections)
 			{
@@ -829,6 +935,17 @@ public class NioSocketServer extends Thread
 			throw new UnsupportedOperationException("Cannot change a factory on an active server, Update instead");
 		}
 
+		/**
+		 * Disables setting of the InspectorFactories
+		 *
+		 * @param factory the inspectorFactories
+		 */
+		@Override
+		public void setInspectorFactories(List<? extends NioObjectFactory<? extends NioInspector>> factory)
+		{
+			throw new UnsupportedOperationException("Cannot change a factory on an active server, Update instead");
+		}
+
 		/**
 		 * Disables setting of the ServiceFactories
 		 *
@@ -840,6 +957,53 @@ public class NioSocketServer extends Thread
 			throw new UnsupportedOperationException("Cannot change a factory on an active server, Update instead");
 		}
 
+		/**
+		 * Gets the shared pool that services in pool lanes are run on. This is
+		 * the server's thread pool, or the common pool if this server has not
+		 * been added to a NioSocketServer.
+		 *
+		 * @return the pool
+		 */
+		Executor getPool()
+		{
+			return pool != null ? pool : ForkJoinPool.commonPool();
+		}
+
+		/**
+		 * Gets the clock that connections to this server use. This is the
+		 * server's cached clock, or the system clock if this server has not
+		 * been added to a NioSocketServer.
+		 *
+		 * @return the clock
+		 */
+		NioClock getClock()
+		{
+			return clock != null ? clock : SystemClock.INSTANCE;
+		}
+
+		/**
+		 * Gets the schedule that resumes connections to this server when their
+		 * reading has been paused.
+		 *
+		 * @return the paused reads, or null if this server has not been added
+		 *            to a NioSocketServer (connections are then resumed by
+		 *            their timeout check)
+		 */
+		PausedReads getPausedReads()
+		{
+			return pausedReads;
+		}
+
+		/**
+		 * Sets the clock that connections to this server use (for testing)
+		 *
+		 * @param clock the clock to use
+		 */
+		void setClock(NioClock clock)
+		{
+			this.clock = clock;
+		}
+
 		/**
 		 * Removes the passed connection from this server's list of active
 		 * connections (should only be accessed by a NioConnection
@@ -0,0 +1,187 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * This class keeps the connections whose reading has been paused (for example
+ * by a rate limit) in the order their pauses end, so the event loop can stop
+ * selecting as soon as the earliest pause ends and resume reading straight
+ * away rather than waiting for the next timeout check.
+ *
+ * A connection which pauses again before its earlier pause ends is simply
+ * added again, when its earlier entry comes up it sees the pause has not
+ * ended yet and keeps waiting for the later one.
+ *
+ * @author Trent Houliston
+ */
+final class PausedReads
+{
+
+	//The selector to wake up when a pause ends earlier than we are waiting for
+	private final Selector selector;
+	//The pauses in the order they end
+	private final PriorityQueue<Pause> pauses = new PriorityQueue<Pause>();
+
+	/**
+	 * Creates a new schedule of paused reads for the passed selector
+	 *
+	 * @param selector the selector of the event loop
+	 */
+	PausedReads(Selector selector)
+	{
+		this.selector = selector;
+	}
+
+	/**
+	 * Adds a connection whose reading is paused until the passed time
+	 *
+	 * @param connection the connection which paused
+	 * @param until      the time the pause ends in nanoseconds
+	 */
+	synchronized void add(NioConnection connection, long until)
+	{
+		Pause pause = new Pause(connection, until);
+		pauses.add(pause);
+
+		//If this is now the first pause to end the event loop may be waiting too long
+		if (pauses.peek() == pause)
+		{
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * Gets how long the event loop should select for so that it wakes up when
+	 * the earliest pause ends
+	 *
+	 * @param now     the current time in nanoseconds
+	 * @param timeout the longest the event loop would select for in
+	 *                milliseconds
+	 *
+	 * @return the milliseconds to select for, 0 if a pause has already ended
+	 */
+	synchronized long getSelectTimeout(long now, long timeout)
+	{
+		if (pauses.isEmpty())
+		{
+			return timeout;
+		}
+
+		//Round up so we do not wake just before the pause ends
+		long remaining = pauses.peek().until - now;
+		return remaining <= 0 ? 0 : Math.min(timeout, (remaining + 999999) / 1000000);
+	}
+
+	/**
+	 * Resumes reading on every connection whose pause has ended
+	 *
+	 * @param now the current time in nanoseconds
+	 *
+	 * @throws IOException if a connection could not resume reading
+	 */
+	void resume(long now) throws IOException
+	{
+		//Take the ended pauses out while we hold the lock
+		List<NioConnection> ended = null;
+		synchronized (this)
+		{
+			while (!pauses.isEmpty() && pauses.peek().until - now <= 0)
+			{
+				if (ended == null)
+				{
+					ended = new ArrayList<NioConnection>();
+				}
+				ended.add(pauses.poll().connection);
+			}
+		}
+
+		//Resume them outside the lock (connections which have closed are ignored)
+		if (ended != null)
+		{
+			for (NioConnection connection : ended)
+			{
+				try
+				{
+					connection.resumeReading();
+				}
+				catch (ClosedChannelException ex)
+				{
+					//The connection closed while it was paused
+				}
+				catch (CancelledKeyException ex)
+				{
+					//The connection closed while it was paused
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of pauses which have not ended yet
+	 *
+	 * @return the number of pauses
+	 */
+	synchronized int size()
+	{
+		return pauses.size();
+	}
+
+	/**
+	 * A connection and the time its pause ends
+	 */
+	private static final class Pause implements Comparable<Pause>
+	{
+
+		private final NioConnection connection;
+		private final long until;
+
+		/**
+		 * Creates a new pause
+		 *
+		 * @param connection the connection which paused
+		 * @param until      the time the pause ends in nanoseconds
+		 */
+		private Pause(NioConnection connection, long until)
+		{
+			this.connection = connection;
+			this.until = until;
+		}
+
+		/**
+		 * Orders pauses by when they end (comparing the difference so it works
+		 * if the nano time wraps)
+		 *
+		 * @param o the pause to compare to
+		 *
+		 * @return the order of the pauses
+		 */
+		@Override
+		public int compareTo(Pause o)
+		{
+			long difference = until - o.until;
+			return difference < 0 ? -1 : (difference > 0 ? 1 : 0);
+		}
+	}
+}
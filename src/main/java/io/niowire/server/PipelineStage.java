@@ -0,0 +1,69 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+/**
+ * This enum describes which part of the Niowire pipeline the event loop of a
+ * {@link NioSocketServer} is currently executing. It is used by the
+ * {@link StallDetector} to report where the loop was when it stopped making
+ * progress.
+ *
+ * @author Trent Houliston
+ */
+public enum PipelineStage
+{
+
+	/**
+	 * The loop is waiting in the selector for something to happen (this is not
+	 * considered a stall)
+	 */
+	SELECT,
+	/**
+	 * The loop is accepting a new connection and building its serializer,
+	 * inspector and services
+	 */
+	ACCEPT,
+	/**
+	 * The loop is reading data from a socket
+	 */
+	READ,
+	/**
+	 * A connection is deserializing data using its serializer
+	 */
+	DESERIALIZE,
+	/**
+	 * A connection is running packets through its inspector
+	 */
+	INSPECT,
+	/**
+	 * A connection is sending packets to its services
+	 */
+	SERVICE,
+	/**
+	 * The loop is reading serialized data out of a connection and writing it
+	 * to the socket
+	 */
+	WRITE,
+	/**
+	 * The loop is checking all of the connections for timeouts
+	 */
+	TIMEOUT,
+	/**
+	 * A connection is not doing anything
+	 */
+	IDLE
+}
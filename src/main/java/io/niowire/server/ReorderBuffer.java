@@ -0,0 +1,148 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+import io.niowire.data.NioPacket;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * This class holds the replies from asynchronous services for a connection so
+ * that they can be written back to the client in the order that the requests
+ * were received. A slot is reserved when the request is sent to the service,
+ * and the reply is stored in it when the service completes (which can happen
+ * on any thread and in any order). Replies are only released once every slot
+ * before them has also completed.
+ *
+ * All of the methods are synchronized on the buffer, the connection also uses
+ * the buffer as its lock when updating its interest operations.
+ *
+ * @author Trent Houliston
+ */
+public class ReorderBuffer
+{
+
+	//The slots in the order they were reserved
+	private final ArrayDeque<Slot> slots = new ArrayDeque<Slot>();
+
+	/**
+	 * Reserves a slot for a reply at the end of the buffer
+	 *
+	 * @return the reserved slot
+	 */
+	public synchronized Slot reserve()
+	{
+		Slot slot = new Slot();
+		slots.add(slot);
+		return slot;
+	}
+
+	/**
+	 * Completes the passed slot with its reply.
+	 *
+	 * @param slot  the slot to complete
+	 * @param reply the reply to store (or null if there is nothing to write)
+	 *
+	 * @return true if this slot was at the head of the buffer (there are now
+	 *            replies ready to be written)
+	 */
+	public synchronized boolean complete(Slot slot, NioPacket reply)
+	{
+		slot.reply = reply;
+		slot.done = true;
+
+		return slots.peek() == slot;
+	}
+
+	/**
+	 * Checks if the reply at the head of the buffer is ready to be written
+	 *
+	 * @return true if there is a reply ready
+	 */
+	public synchronized boolean isReady()
+	{
+		Slot head = slots.peek();
+		return head != null && head.done;
+	}
+
+	/**
+	 * Gets the number of requests which have not yet been written back (this
+	 * includes completed replies which are waiting on an earlier reply)
+	 *
+	 * @return the number of requests in flight
+	 */
+	public synchronized int size()
+	{
+		return slots.size();
+	}
+
+	/**
+	 * Removes every completed reply from the head of the buffer (stopping at
+	 * the first slot which has not completed) and adds them to the passed list
+	 * in order. Slots which completed without a reply are removed but not
+	 * added.
+	 *
+	 * @param replies the list to add the replies to
+	 *
+	 * @return the number of slots which were removed
+	 */
+	public synchronized int drainTo(List<NioPacket> replies)
+	{
+		int removed = 0;
+
+		//Remove slots while the head is done
+		while (!slots.isEmpty() && slots.peek().done)
+		{
+			Slot slot = slots.poll();
+			if (slot.reply != null)
+			{
+				replies.add(slot.reply);
+			}
+			removed++;
+		}
+
+		return removed;
+	}
+
+	/**
+	 * Removes all of the slots (used when the connection is closed), any
+	 * replies which complete afterwards are ignored
+	 */
+	public synchronized void clear()
+	{
+		slots.clear();
+	}
+
+	/**
+	 * A slot in the reorder buffer which holds the reply for a single request
+	 */
+	public static class Slot
+	{
+
+		//The reply for this slot
+		private NioPacket reply;
+		//If this slot has been completed
+		private boolean done = false;
+
+		/**
+		 * Slots are only created by the reorder buffer
+		 */
+		private Slot()
+		{
+		}
+	}
+}
@@ -0,0 +1,40 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+/**
+ * This enum describes what the {@link StallDetector} should do once it has
+ * detected that the event loop has stalled.
+ *
+ * @author Trent Houliston
+ */
+public enum StallAction
+{
+
+	/**
+	 * Only report the stall (log it and record it in JMX)
+	 */
+	LOG,
+	/**
+	 * Report the stall and close the channel of the connection which the event
+	 * loop was working on when it stalled. The channel is closed from the
+	 * watchdog thread, which unblocks a service waiting on that channel's I/O
+	 * but can't unblock one stuck in other code (such as a loop or a lock),
+	 * the rest of the connection is cleaned up once the event loop gets back.
+	 */
+	CLOSE_CONNECTION
+}
@@ -0,0 +1,378 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+import io.niowire.serversource.NioServerDefinition;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This class is a watchdog for the event loop of a {@link NioSocketServer}.
+ * The loop increments a heartbeat counter every iteration and records which
+ * {@link PipelineStage} it is in. If a single iteration takes longer than the
+ * configured threshold (for example a service is blocking in its send method
+ * or a serializer is stuck in a loop) then the stack of the loop thread is
+ * captured along with the server, connection and stage it was executing and it
+ * is reported through the log and JMX. A {@link StallAction} can then be taken
+ * to try and recover.
+ *
+ * @author Trent Houliston
+ */
+public class StallDetector implements Runnable, StallDetectorMBean
+{
+
+	//The logger for the detector
+	private static final Logger LOG = LoggerFactory.getLogger(StallDetector.class);
+	//The default threshold before we consider the loop stalled
+	public static final long DEFAULT_THRESHOLD = 5000;
+	//Used to give each detector a unique JMX name
+	private static final AtomicInteger COUNT = new AtomicInteger();
+	//The name of this detector
+	private final String name;
+	//The thread running the event loop we are watching
+	private final Thread loop;
+	//The heartbeat counter and the time the current iteration started
+	private volatile long heartbeat = 0;
+	private volatile long iterationStart = System.nanoTime();
+	//What the loop is doing right now
+	private volatile PipelineStage stage = PipelineStage.SELECT;
+	private volatile NioServerDefinition server = null;
+	private volatile NioConnection connection = null;
+	//Our configuration
+	private volatile long threshold = DEFAULT_THRESHOLD;
+	private volatile StallAction action = StallAction.LOG;
+	//Our statistics
+	private volatile long stalls = 0;
+	private volatile String lastStall = null;
+	//The last heartbeat we reported a stall for (so we only report it once)
+	private long reported = -1;
+	//The name we are registered with in JMX
+	private ObjectName objectName = null;
+
+	/**
+	 * Creates a new StallDetector which watches the passed event loop thread
+	 *
+	 * @param name the name of the server we are watching
+	 * @param loop the thread which runs the event loop
+	 */
+	public StallDetector(String name, Thread loop)
+	{
+		this.name = name + "-" + COUNT.incrementAndGet();
+		this.loop = loop;
+	}
+
+	/**
+	 * This is called by the event loop just before it blocks in the selector,
+	 * time spent in the selector is not counted towards a stall.
+	 */
+	public void idle()
+	{
+		stage = PipelineStage.SELECT;
+		server = null;
+		connection = null;
+	}
+
+	/**
+	 * This is called by the event loop at the start of every iteration once
+	 * the selector has returned. It increments the heartbeat and starts timing
+	 * the iteration.
+	 */
+	public void beat()
+	{
+		iterationStart = System.nanoTime();
+		heartbeat++;
+		stage = PipelineStage.IDLE;
+	}
+
+	/**
+	 * This is called by the event loop when it starts working on a new stage of
+	 * the pipeline.
+	 *
+	 * @param server     the server which is being worked on (or null if the
+	 *                      connection is known)
+	 * @param connection the connection being worked on (or null if there is no
+	 *                      connection yet)
+	 * @param stage      the stage of the pipeline being executed
+	 */
+	public void enter(NioServerDefinition server, NioConnection connection, PipelineStage stage)
+	{
+		this.server = server;
+		this.connection = connection;
+		this.stage = stage;
+	}
+
+	/**
+	 * This method checks if the event loop has stalled, if it has a report is
+	 * made and the configured {@link StallAction} is taken. Each stalled
+	 * iteration is only reported once.
+	 *
+	 * @return true if a new stall was detected, false otherwise
+	 */
+	public boolean check()
+	{
+		//Take a snapshot of the state of the loop
+		long beat = heartbeat;
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - iterationStart);
+		long limit = threshold;
+
+		//Waiting in the selector is not a stall, and we only report each iteration once
+		if (limit <= 0 || stage == PipelineStage.SELECT || beat == reported || elapsed < limit)
+		{
+			return false;
+		}
+		reported = beat;
+
+		//Work out what was running when we stalled
+		NioConnection con = connection;
+		NioServerDefinition def = server;
+		PipelineStage current = stage;
+		String uid = null;
+		String serverId = def != null ? def.getId() : null;
+		if (con != null)
+		{
+			//The connection may be in a broken state (that might be why we stalled)
+			try
+			{
+				uid = con.toString();
+				serverId = con.getContext().getServerId();
+				current = con.getStage() == PipelineStage.IDLE ? current : con.getStage();
+			}
+			catch (RuntimeException ex)
+			{
+			}
+		}
+
+		//Build our report including the stack of the loop thread
+		StringBuilder report = new StringBuilder();
+		report.append("Event loop ").append(name).append(" stalled for ").append(elapsed).append("ms");
+		report.append(" in stage ").append(current);
+		report.append(" (server=").append(serverId).append(", connection=").append(uid).append(")");
+		for (StackTraceElement e : loop.getStackTrace())
+		{
+			report.append("\n\tat ").append(e);
+		}
+
+		//Record and log our stall
+		stalls++;
+		lastStall = report.toString();
+		LOG.warn(lastStall);
+
+		//Try to recover
+		switch (action)
+		{
+			case CLOSE_CONNECTION:
+				if (con != null)
+				{
+					try
+					{
+						con.abort();
+					}
+					catch (IOException ex)
+					{
+						LOG.warn("Unable to close the stalled connection {}", uid);
+					}
+				}
+				break;
+			default:
+				break;
+		}
+
+		return true;
+	}
+
+	/**
+	 * The watchdog loop, it registers itself in JMX and checks the event loop
+	 * several times per threshold period until it is interrupted.
+	 */
+	@Override
+	public void run()
+	{
+		//Register ourselves here so we don't slow down the event loop starting
+		register();
+
+		while (!Thread.currentThread().isInterrupted())
+		{
+			try
+			{
+				//Check a few times per threshold so we catch stalls promptly
+				long limit = threshold;
+				Thread.sleep(limit > 0 ? Math.max(limit / 4, 10) : DEFAULT_THRESHOLD);
+				check();
+			}
+			catch (InterruptedException ex)
+			{
+				//We are being shut down
+				Thread.currentThread().interrupt();
+			}
+			catch (RuntimeException ex)
+			{
+				LOG.warn("There was an exception while checking for a stall", ex);
+			}
+		}
+
+		//We have been shut down so remove ourselves from JMX
+		unregister();
+	}
+
+	/**
+	 * Registers this detector with the platform MBean server
+	 */
+	public void register()
+	{
+		try
+		{
+			MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+			objectName = new ObjectName("io.niowire:type=StallDetector,name=" + ObjectName.quote(name));
+			mbs.registerMBean(this, objectName);
+		}
+		catch (JMException ex)
+		{
+			LOG.warn("Unable to register the stall detector with JMX", ex);
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Unregisters this detector from the platform MBean server
+	 */
+	public void unregister()
+	{
+		if (objectName != null)
+		{
+			try
+			{
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			}
+			catch (JMException ex)
+			{
+				LOG.warn("Unable to unregister the stall detector from JMX", ex);
+			}
+			objectName = null;
+		}
+	}
+
+	/**
+	 * Gets the name this detector is registered with in JMX
+	 *
+	 * @return the object name or null if it is not registered
+	 */
+	public ObjectName getObjectName()
+	{
+		return objectName;
+	}
+
+	/**
+	 * Gets the current heartbeat count of the loop
+	 *
+	 * @return the number of loop iterations so far
+	 */
+	public long getHeartbeat()
+	{
+		return heartbeat;
+	}
+
+	/**
+	 * Sets the action to take when a stall is detected
+	 *
+	 * @param action the action to take
+	 */
+	public void setStallAction(StallAction action)
+	{
+		this.action = action;
+	}
+
+	/**
+	 * Gets the action to take when a stall is detected
+	 *
+	 * @return the action to take
+	 */
+	public StallAction getStallAction()
+	{
+		return action;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getStallCount()
+	{
+		return stalls;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getLastStall()
+	{
+		return lastStall;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getCurrentStage()
+	{
+		return stage.name();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long getThresholdMillis()
+	{
+		return threshold;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setThresholdMillis(long threshold)
+	{
+		this.threshold = threshold;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getAction()
+	{
+		return action.name();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setAction(String action)
+	{
+		this.action = StallAction.valueOf(action.toUpperCase(Locale.ENGLISH));
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+/**
+ * The JMX management interface for the {@link StallDetector}
+ *
+ * @author Trent Houliston
+ */
+public interface StallDetectorMBean
+{
+
+	/**
+	 * Gets the number of stalls which have been detected
+	 *
+	 * @return the number of stalls detected since the server started
+	 */
+	public long getStallCount();
+
+	/**
+	 * Gets the report (including the stack trace) of the last stall which was
+	 * detected
+	 *
+	 * @return the last stall report or null if there has not been a stall
+	 */
+	public String getLastStall();
+
+	/**
+	 * Gets the stage of the pipeline that the event loop is currently in
+	 *
+	 * @return the name of the current pipeline stage
+	 */
+	public String getCurrentStage();
+
+	/**
+	 * Gets the number of milliseconds a single loop iteration may take before
+	 * it is considered stalled
+	 *
+	 * @return the threshold in milliseconds
+	 */
+	public long getThresholdMillis();
+
+	/**
+	 * Sets the number of milliseconds a single loop iteration may take before
+	 * it is considered stalled (0 or less disables the detector)
+	 *
+	 * @param threshold the threshold in milliseconds
+	 */
+	public void setThresholdMillis(long threshold);
+
+	/**
+	 * Gets the name of the {@link StallAction} taken when a stall is detected
+	 *
+	 * @return the name of the action
+	 */
+	public String getAction();
+
+	/**
+	 * Sets the {@link StallAction} to take when a stall is detected by name
+	 *
+	 * @param action the name of the action
+	 */
+	public void setAction(String action);
+}
@@ -0,0 +1,58 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+/**
+ * This clock reads the system clocks every time it is asked for the time. It
+ * is used where there is no event loop to keep a {@link CachedClock} up to
+ * date.
+ *
+ * @author Trent Houliston
+ */
+public final class SystemClock implements NioClock
+{
+
+	/**
+	 * The single instance of the system clock
+	 */
+	public static final SystemClock INSTANCE = new SystemClock();
+
+	/**
+	 * Private constructor as there is only one system clock
+	 */
+	private SystemClock()
+	{
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long currentTimeMillis()
+	{
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long nanoTime()
+	{
+		return System.nanoTime();
+	}
+}
@@ -21,6 +21,7 @@ import io.niowire.entities.NioObjectFactory;
 import io.niowire.inspection.NioInspector;
 import io.niowire.serializer.NioSerializer;
 import io.niowire.service.NioService;
+import io.niowire.service.NioServiceFactory;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
@@ -44,8 +45,12 @@ public class NioServerDefinition
 	protected NioObjectFactory<? extends NioSerializer> serializerFactory;
 	@SerializedName("inspector")
 	protected NioObjectFactory<? extends NioInspector> inspectorFactory;
+	@SerializedName("inspectors")
+	protected List<NioObjectFactory<? extends NioInspector>> inspectorFactories;
 	@SerializedName("services")
-	protected List<NioObjectFactory<? extends NioService>> serviceFactories;
+	protected List<NioServiceFactory<? extends NioService>> serviceFactories;
+	//Box the limit so it can be null (use the default)
+	protected Integer maxInFlight;
 
 	/**
 	 * Gets the ID (unique identifier) for this server
@@ -147,25 +152,95 @@ public class NioServerDefinition
 		this.inspectorFactory = inspectorFactory;
 	}
 
+	/**
+	 * Gets the list of inspector factories which are chained after the
+	 * inspector for this source
+	 *
+	 * @return the inspectorFactories (empty if there is no chain)
+	 */
+	public List<NioObjectFactory<? extends NioInspector>> getInspectorFactories()
+	{
+		//Make it unmodifiable
+		return inspectorFactories == null
+			   ? Collections.<NioObjectFactory<? extends NioInspector>>emptyList()
+			   : Collections.unmodifiableList(inspectorFactories);
+	}
+
+	/**
+	 * Sets the list of inspector factories which are chained after the
+	 * inspector for this source. Each packet is passed through the inspector
+	 * and then each of these in order.
+	 *
+	 * @param inspectorFactories the inspectorFactories to set
+	 */
+	public void setInspectorFactories(List<? extends NioObjectFactory<? extends NioInspector>> inspectorFactories)
+	{
+		//Wrap it so that nobody else has access to our shared state
+		this.inspectorFactories = new LinkedList<NioObjectFactory<? extends NioInspector>>(inspectorFactories);
+	}
+
 	/**
 	 * Gets a list of service factories for this source
 	 *
 	 * @return the serviceFactories
 	 */
 	public List<NioObjectFactory<? extends NioService>> getServiceFactories()
+	{
+		//Make it unmodifiable
+		return Collections.<NioObjectFactory<? extends NioService>>unmodifiableList(serviceFactories);
+	}
+
+	/**
+	 * Gets the list of service factories for this source along with the lane
+	 * each service is run in. Factories which were set without a lane run
+	 * their services inline.
+	 *
+	 * @return the serviceFactories with their lanes
+	 */
+	public List<NioServiceFactory<? extends NioService>> getLanedServiceFactories()
 	{
 		//Make it unmodifiable
 		return Collections.unmodifiableList(serviceFactories);
 	}
 
 	/**
-	 * Sets a list of service factories for this source
+	 * Sets a list of service factories for this source, use
+	 * {@link NioServiceFactory}s to run services in a lane other than inline
 	 *
 	 * @param serviceFactories the serviceFactories to set
 	 */
 	public void setServiceFactories(List<? extends NioObjectFactory<? extends NioService>> serviceFactories)
 	{
 		//Wrap it so that nobody else has access to our shared state
-		this.serviceFactories = new LinkedList<NioObjectFactory<? extends NioService>>(serviceFactories);
+		this.serviceFactories = new LinkedList<NioServiceFactory<? extends NioService>>();
+		for (NioObjectFactory<? extends NioService> factory : serviceFactories)
+		{
+			this.serviceFactories.add(NioServiceFactory.of(factory));
+		}
+	}
+
+	/**
+	 * Gets the maximum number of requests to asynchronous services which can
+	 * be awaiting a reply on each connection
+	 *
+	 * @return the maxInFlight
+	 */
+	public Integer getMaxInFlight()
+	{
+		return maxInFlight;
+	}
+
+	/**
+	 * Sets the maximum number of requests to asynchronous services which can
+	 * be awaiting a reply on each connection, once this is reached the
+	 * connection stops reading until replies have been written. It is only
+	 * checked before each read, so the packets of one read can take a
+	 * connection over it.
+	 *
+	 * @param maxInFlight the maxInFlight to set (or null for the default)
+	 */
+	public void setMaxInFlight(Integer maxInFlight)
+	{
+		this.maxInFlight = maxInFlight;
 	}
 }
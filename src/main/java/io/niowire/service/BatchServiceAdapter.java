@@ -0,0 +1,109 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.service;
+
+import io.niowire.data.NioChunk;
+import io.niowire.data.NioPacket;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This adapter allows a per packet {@link NioService} to be used where a
+ * {@link NioBatchService} is expected. Each packet of the batch is sent to the
+ * service individually in order. If the service is a
+ * {@link NioStreamingService} the chunks of streamed frames are sent to its
+ * start, chunk and end methods rather than to send.
+ *
+ * @author Trent Houliston
+ */
+public class BatchServiceAdapter implements NioBatchService
+{
+
+	//The service we are adapting (and the streaming view of it if it has one)
+	private final NioService service;
+	private final NioStreamingService streaming;
+
+	/**
+	 * Creates a new adapter for the passed service
+	 *
+	 * @param service the service to adapt
+	 */
+	public BatchServiceAdapter(NioService service)
+	{
+		this.service = service;
+		this.streaming = service instanceof NioStreamingService ? (NioStreamingService) service : null;
+	}
+
+	/**
+	 * Sends each of the packets in the batch to the service
+	 *
+	 * @param packets the packets to send
+	 */
+	@Override
+	public void send(List<NioPacket> packets)
+	{
+		for (NioPacket packet : packets)
+		{
+			send(packet);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void send(NioPacket packet)
+	{
+		//Send the chunks of streamed frames to a streaming service as a stream
+		if (streaming != null && packet.getData() instanceof NioChunk)
+		{
+			NioChunk chunk = (NioChunk) packet.getData();
+			if (chunk.isFirst())
+			{
+				streaming.start(packet);
+			}
+			streaming.chunk(packet.getRawBuffer());
+			if (chunk.isLast())
+			{
+				streaming.end();
+			}
+		}
+		else
+		{
+			service.send(packet);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		service.close();
+	}
+
+	/**
+	 * Gets the service that this adapter is wrapping
+	 *
+	 * @return the wrapped service
+	 */
+	public NioService getService()
+	{
+		return service;
+	}
+}
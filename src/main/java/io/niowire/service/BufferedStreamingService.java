@@ -0,0 +1,137 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.service;
+
+import io.niowire.data.NioPacket;
+import java.nio.ByteBuffer;
+import javax.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This is a base class for services which need whole frames but may be sent
+ * streamed ones. The chunks of a streamed frame are copied together and the
+ * whole frame is then sent to {@link #send(NioPacket)} as a packet with the
+ * bytes of the frame as its data. Frames which grow larger than the maximum
+ * frame size are dropped.
+ *
+ * @author Trent Houliston
+ */
+public abstract class BufferedStreamingService implements NioStreamingService
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(BufferedStreamingService.class);
+	/**
+	 * The largest frame we will put back together
+	 */
+	@Inject
+	protected int maxFrameSize = 1048576;
+	//The frame we are putting together and the packet which started it
+	private ByteBuffer frame = null;
+	private NioPacket first = null;
+	private boolean overflow = false;
+	private long dropped = 0;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void start(NioPacket packet)
+	{
+		first = packet;
+		overflow = false;
+		if (frame != null)
+		{
+			frame.clear();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void chunk(ByteBuffer data)
+	{
+		//If we have already given up on this frame ignore the rest of it
+		if (overflow)
+		{
+			return;
+		}
+
+		//Grow our frame (doubling) if it will not fit
+		int needed = (frame == null ? 0 : frame.position()) + data.remaining();
+		if (frame == null || frame.capacity() < needed)
+		{
+			//If it is too large drop the frame
+			if (needed > maxFrameSize)
+			{
+				LOG.warn("Dropping a streamed frame as it is larger than the maximum of {} bytes", maxFrameSize);
+				overflow = true;
+				dropped++;
+				return;
+			}
+
+			int size = frame == null ? Math.min(8192, maxFrameSize) : frame.capacity();
+			while (size < needed)
+			{
+				size = (int) Math.min(size * 2L, maxFrameSize);
+			}
+			ByteBuffer grown = ByteBuffer.allocate(size);
+			if (frame != null)
+			{
+				frame.flip();
+				grown.put(frame);
+			}
+			frame = grown;
+		}
+
+		frame.put(data);
+	}
+
+	/**
+	 * Sends the frame we have put together (if it was not too large)
+	 */
+	@Override
+	public void end()
+	{
+		if (!overflow && first != null)
+		{
+			//Copy out the whole frame
+			byte[] bytes = new byte[frame == null ? 0 : frame.position()];
+			if (frame != null)
+			{
+				frame.flip();
+				frame.get(bytes);
+				frame.clear();
+			}
+
+			send(new NioPacket(first.getSource(), bytes, first.getTimestamp()));
+		}
+		first = null;
+	}
+
+	/**
+	 * Gets the number of streamed frames which were dropped as they were too
+	 * large to put back together
+	 *
+	 * @return the number of dropped frames
+	 */
+	public long getDropped()
+	{
+		return dropped;
+	}
+}
@@ -0,0 +1,43 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.service;
+
+/**
+ * This enum describes which thread a service is run on (see
+ * {@link ServiceLane}).
+ *
+ * @author Trent Houliston
+ */
+public enum LaneType
+{
+
+	/**
+	 * The service is run directly on the selector thread (the default)
+	 */
+	INLINE,
+	/**
+	 * The service is run on the server's shared thread pool, packets for the
+	 * service are still delivered one batch at a time in order
+	 */
+	POOL,
+	/**
+	 * The service is run on its own thread, which is shared by every
+	 * connection (so packets from all connections are delivered one batch at a
+	 * time)
+	 */
+	DEDICATED
+}
@@ -0,0 +1,66 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.service;
+
+import io.niowire.data.NioPacket;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * The NioAsyncService interface is an optional extension of the
+ * {@link NioService} for services which need to wait on something else (such
+ * as an upstream server) before they can reply to a packet. Rather than
+ * blocking the selector thread, or writing to the context from another thread
+ * (which would lose the ordering of the replies), the service returns a
+ * CompletionStage which completes with its reply.
+ *
+ * The connection keeps the replies in the order their packets were received, so
+ * a reply which completes early is held until all of the replies before it
+ * have been written. This allows pipelined request/response over one socket.
+ * The number of replies which can be outstanding on a connection is limited by
+ * the maxInFlight of the server, once it is reached the connection stops
+ * reading from the socket until replies are written. This is a soft limit as it
+ * is checked before each read, every packet from a read is still sent so one
+ * read can take a connection over it by up to the number of packets in the
+ * read times the number of asynchronous services.
+ *
+ * @author Trent Houliston
+ */
+public interface NioAsyncService extends NioService
+{
+
+	/**
+	 * Sends a packet of data to this service for it to process
+	 * asynchronously. The returned stage may be completed on any thread.
+	 *
+	 * @param packet the packet to process
+	 *
+	 * @return a stage which completes with the packet to write back to the
+	 *            client, or with null if there is no reply
+	 */
+	public CompletionStage<NioPacket> sendAsync(NioPacket packet);
+
+	/**
+	 * Sends a packet to this service, ignoring its reply
+	 *
+	 * @param packet the packet to send
+	 */
+	@Override
+	public default void send(NioPacket packet)
+	{
+		sendAsync(packet);
+	}
+}
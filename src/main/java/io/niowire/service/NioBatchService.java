@@ -0,0 +1,47 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.service;
+
+import io.niowire.data.NioPacket;
+import java.util.List;
+
+/**
+ * The NioBatchService interface is an optional extension of the
+ * {@link NioService} for services which can process many packets at once (such
+ * as services which write to a database or a downstream queue). Rather than
+ * being sent each packet individually, it is sent every packet which came from
+ * a single read of the socket as one batch.
+ *
+ * Services which only implement {@link NioService} are still supported, they
+ * are wrapped in a {@link BatchServiceAdapter} which sends them each packet of
+ * the batch in turn.
+ *
+ * @author Trent Houliston
+ */
+public interface NioBatchService extends NioService
+{
+
+	/**
+	 * Sends a batch of packets to this service for it to process. The packets
+	 * are in the order they were received, and the list is never empty. The
+	 * list is only valid for the duration of this call, if the service needs
+	 * to keep the packets after it returns it must copy them.
+	 *
+	 * @param packets the packets to process
+	 */
+	public void send(List<NioPacket> packets);
+}
@@ -0,0 +1,236 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.service;
+
+import io.niowire.entities.NioObjectCreationException;
+import io.niowire.entities.NioObjectFactory;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is the factory for one service of a server definition. As well as
+ * the class and configuration of the service it holds the {@link ServiceLane}
+ * the service is run in.
+ *
+ * Services in a {@link LaneType#DEDICATED} lane are all run on the one thread
+ * owned by their factory (rather than a thread for each connection), each
+ * connection queues its packets onto that thread in order. The thread stops
+ * itself when it has been idle for a while so it does not need to be shut down.
+ *
+ * @param <T> the type of service that this factory returns
+ *
+ * @author Trent Houliston
+ */
+public class NioServiceFactory<T extends NioService> extends NioObjectFactory<T>
+{
+
+	//How long the dedicated thread waits for work before it stops
+	private static final long IDLE_SECONDS = 60;
+	//The lane to run the services in (null for inline)
+	private ServiceLane lane;
+	//The thread that services in a dedicated lane are run on (created when first used)
+	private transient ThreadPoolExecutor dedicated;
+
+	/**
+	 * This constructs an empty service factory, it is used by subclasses which
+	 * make their services some other way
+	 */
+	protected NioServiceFactory()
+	{
+	}
+
+	/**
+	 * This constructs a new service factory using the passed className
+	 *
+	 * @param className the className to set
+	 *
+	 * @throws ClassNotFoundException if the class was not found
+	 */
+	public NioServiceFactory(String className) throws ClassNotFoundException
+	{
+		super(className);
+	}
+
+	/**
+	 * This constructs a new service factory using the passed class and an
+	 * empty configuration
+	 *
+	 * @param clazz the class to create the factory for
+	 */
+	public NioServiceFactory(Class<T> clazz)
+	{
+		this(clazz, Collections.<String, Object>emptyMap(), null);
+	}
+
+	/**
+	 * This constructs a new service factory using the passed class,
+	 * configuration and lane
+	 *
+	 * @param clazz         the class of the service to create
+	 * @param configuration the configuration of the service to create
+	 * @param lane          the lane to run the service in (null for inline)
+	 */
+	public NioServiceFactory(Class<T> clazz, Map<String, ? extends Object> configuration, ServiceLane lane)
+	{
+		super(clazz, configuration);
+		this.lane = lane;
+	}
+
+	/**
+	 * Gets the execution lane that services from this factory should be run
+	 * in.
+	 *
+	 * @return the lane (or null if it should be run inline)
+	 */
+	public ServiceLane getLane()
+	{
+		return lane;
+	}
+
+	/**
+	 * Sets the execution lane that services from this factory should be run
+	 * in.
+	 *
+	 * @param lane the lane to set
+	 */
+	public void setLane(ServiceLane lane)
+	{
+		this.lane = lane;
+	}
+
+	/**
+	 * Gets the single thread which every service from this factory in a
+	 * dedicated lane is run on, creating it if it has not been used yet.
+	 *
+	 * @param name the name to give the thread
+	 *
+	 * @return the executor for the thread
+	 */
+	public synchronized Executor getDedicatedExecutor(final String name)
+	{
+		//We may have been made by gson without running our constructor
+		if (dedicated == null)
+		{
+			//One thread which is started when there is work and stops when it is idle
+			dedicated = new ThreadPoolExecutor(0, 1, IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+			{
+				@Override
+				public Thread newThread(Runnable r)
+				{
+					Thread t = new Thread(r, name);
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return dedicated;
+	}
+
+	/**
+	 * Gets a service factory for the passed factory. This is the factory itself
+	 * if it is already a service factory, otherwise it is one which makes its
+	 * services through it and runs them inline.
+	 *
+	 * @param <T>     the type of service the factory makes
+	 * @param factory the factory to get a service factory for
+	 *
+	 * @return the service factory
+	 */
+	public static <T extends NioService> NioServiceFactory<T> of(NioObjectFactory<T> factory)
+	{
+		if (factory instanceof NioServiceFactory)
+		{
+			return (NioServiceFactory<T>) factory;
+		}
+		return new Inline<T>(factory);
+	}
+
+	/**
+	 * A service factory which makes its services through a plain object
+	 * factory, they are run inline
+	 *
+	 * @param <T> the type of service that this factory returns
+	 */
+	private static final class Inline<T extends NioService> extends NioServiceFactory<T>
+	{
+
+		//The factory we make our services through
+		private final NioObjectFactory<T> factory;
+
+		/**
+		 * Creates a service factory which makes its services through the
+		 * passed factory
+		 *
+		 * @param factory the factory to make services with
+		 */
+		private Inline(NioObjectFactory<T> factory)
+		{
+			this.factory = factory;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public T create() throws NioObjectCreationException
+		{
+			return factory.create();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public T create(Map<String, ? extends Object> injections) throws NioObjectCreationException
+		{
+			return factory.create(injections);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void warm() throws NioObjectCreationException
+		{
+			factory.warm();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public ConcurrentMap<String, Object> getShared()
+		{
+			return factory.getShared();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean isInstance(Object obj)
+		{
+			return factory.isInstance(obj);
+		}
+	}
+}
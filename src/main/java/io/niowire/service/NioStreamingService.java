@@ -0,0 +1,59 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.service;
+
+import io.niowire.data.NioChunk;
+import io.niowire.data.NioPacket;
+import java.nio.ByteBuffer;
+
+/**
+ * The NioStreamingService interface is an optional extension of the
+ * {@link NioService} for services which can process a frame as it arrives,
+ * rather than needing it whole. When a serializer streams a frame which is too
+ * large to buffer (its packets have a {@link NioChunk} as their data) the
+ * service is told when the frame starts, given each chunk of it and told when
+ * it ends. All other packets are sent to it as normal.
+ *
+ * Services which need whole frames can extend {@link BufferedStreamingService}
+ * instead, which puts the chunks back together (up to a limit).
+ *
+ * @author Trent Houliston
+ */
+public interface NioStreamingService extends NioService
+{
+
+	/**
+	 * Tells the service that a streamed frame has started
+	 *
+	 * @param packet the packet of the first chunk of the frame
+	 */
+	public void start(NioPacket packet);
+
+	/**
+	 * Sends the next chunk of the current frame to the service. The buffer is
+	 * only valid for the duration of this call, if the service needs to keep
+	 * the bytes after it returns it must copy them.
+	 *
+	 * @param data a read only buffer holding the bytes of the chunk
+	 */
+	public void chunk(ByteBuffer data);
+
+	/**
+	 * Tells the service that the current frame has ended
+	 */
+	public void end();
+}
@@ -0,0 +1,39 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.service;
+
+/**
+ * This enum describes what happens when the queue of a {@link ServiceLane} is
+ * full.
+ *
+ * @author Trent Houliston
+ */
+public enum OverflowPolicy
+{
+
+	/**
+	 * Packets which do not fit in the queue are dropped (and counted)
+	 */
+	DROP,
+	/**
+	 * The connection stops reading from its socket until the service has
+	 * caught up (this slows the client down rather than losing data). The
+	 * queue size is a soft limit here, the packets of the read which fills
+	 * the queue are all queued so it can go over by up to one read's packets.
+	 */
+	BACKPRESSURE
+}
@@ -0,0 +1,131 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.service;
+
+/**
+ * This class describes the execution lane of a service. It is declared on each
+ * service factory of a server definition so that a slow service (such as one
+ * which writes to disk) can be moved off the selector thread and does not delay
+ * the other services on the same connection.
+ *
+ * Each non inline lane has its own bounded queue (measured in packets) and a
+ * policy for when that queue is full. Services which are not run inline must
+ * not write to the context directly (as the serializer is only used from the
+ * selector thread), they should use a {@link NioAsyncService} to reply
+ * instead. Asynchronous services are always called inline.
+ *
+ * @author Trent Houliston
+ */
+public class ServiceLane
+{
+
+	/**
+	 * The default size of a lane's queue
+	 */
+	public static final int DEFAULT_QUEUE_SIZE = 1024;
+	//Our lane configuration
+	private LaneType type = LaneType.INLINE;
+	private int queueSize = DEFAULT_QUEUE_SIZE;
+	private OverflowPolicy overflow = OverflowPolicy.BACKPRESSURE;
+
+	/**
+	 * Creates a new inline lane
+	 */
+	public ServiceLane()
+	{
+	}
+
+	/**
+	 * Creates a new lane with the passed configuration
+	 *
+	 * @param type      the thread the service is run on
+	 * @param queueSize the number of packets which can be queued
+	 * @param overflow  what to do when the queue is full
+	 */
+	public ServiceLane(LaneType type, int queueSize, OverflowPolicy overflow)
+	{
+		this.type = type;
+		this.queueSize = queueSize;
+		this.overflow = overflow;
+	}
+
+	/**
+	 * Gets the thread the service is run on
+	 *
+	 * @return the type
+	 */
+	public LaneType getType()
+	{
+		return type;
+	}
+
+	/**
+	 * Gets the number of packets which can be queued for the service
+	 *
+	 * @return the queueSize
+	 */
+	public int getQueueSize()
+	{
+		return queueSize;
+	}
+
+	/**
+	 * Gets what to do when the queue is full
+	 *
+	 * @return the overflow policy
+	 */
+	public OverflowPolicy getOverflow()
+	{
+		return overflow;
+	}
+
+	/**
+	 * Checks if this lane is the same as the passed lane
+	 *
+	 * @param obj the object to compare
+	 *
+	 * @return true if the lanes have the same configuration
+	 */
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (!(obj instanceof ServiceLane))
+		{
+			return false;
+		}
+		ServiceLane other = (ServiceLane) obj;
+		return type == other.type && queueSize == other.queueSize && overflow == other.overflow;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode()
+	{
+		return (type.hashCode() * 31 + queueSize) * 31 + overflow.hashCode();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString()
+	{
+		return type + "(" + queueSize + ", " + overflow + ")";
+	}
+}
@@ -0,0 +1,152 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.data;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link NioPacketPool}
+ *
+ * @author Trent Houliston
+ */
+public class NioPacketPoolTest
+{
+
+	/**
+	 * Tests that released packets are reused and hold their new values
+	 */
+	@Test(timeout = 1000)
+	public void testReuse()
+	{
+		NioPacketPool pool = new NioPacketPool(1, false);
+
+		//Get a packet and check its values
+		NioPacket packet = pool.acquire("SOURCE", "DATA", true, new byte[]
+		{
+			1
+		}, 1234L);
+		assertEquals("The source was wrong", "SOURCE", packet.getSource());
+		assertEquals("The data was wrong", "DATA", packet.getData());
+		assertTrue("The packet should be raw", packet.isRaw());
+		assertArrayEquals("The raw data was wrong", new byte[]
+		{
+			1
+		}, packet.getRawData());
+		assertEquals("The timestamp was wrong", 1234L, packet.getTimestamp());
+
+		//Releasing it should put it in the pool and clear it (releasing twice is ignored)
+		packet.release();
+		packet.release();
+		assertEquals("The packet should be in the pool", 1, pool.size());
+		assertNull("The released packet should not hold its data", packet.getData());
+
+		//The next packet should be the same object with new values
+		NioPacket next = pool.acquire("OTHER", "MORE", false, null, 5678L);
+		assertSame("The packet should have been reused", packet, next);
+		assertEquals("The pool should be empty", 0, pool.size());
+		assertEquals("The data was wrong", "MORE", next.getData());
+		assertFalse("The packet should not be raw", next.isRaw());
+
+		//A pool which is full drops extra packets
+		NioPacket extra = pool.acquire("EXTRA", "EXTRA", false, null, 0);
+		next.release();
+		extra.release();
+		assertEquals("The pool should only hold its capacity", 1, pool.size());
+	}
+
+	/**
+	 * Tests that copies of pooled packets are normal packets which are not
+	 * affected by the release
+	 */
+	@Test(timeout = 1000)
+	public void testCopy()
+	{
+		NioPacketPool pool = new NioPacketPool(1, false);
+		NioPacket packet = pool.acquire("SOURCE", "DATA", false, null, 1234L);
+
+		//Copy the packet
+		NioPacket copy = packet.copy();
+		assertNotSame("The copy should be a new packet", packet, copy);
+		assertEquals("The copy should be a normal packet", NioPacket.class, copy.getClass());
+		assertSame("A normal packet is its own copy", copy, copy.copy());
+
+		//Release and reuse the original
+		packet.release();
+		pool.acquire("OTHER", "MORE", false, null, 5678L);
+
+		//The copy should not have changed
+		assertEquals("The copy's source changed", "SOURCE", copy.getSource());
+		assertEquals("The copy's data changed", "DATA", copy.getData());
+		assertEquals("The copy's timestamp changed", 1234L, copy.getTimestamp());
+	}
+
+	/**
+	 * Tests that in debug mode using a packet after it is released throws an
+	 * exception and released packets are never reused
+	 */
+	@Test(timeout = 1000)
+	public void testDebug()
+	{
+		NioPacketPool pool = new NioPacketPool(1, true);
+		assertTrue("The pool should be in debug mode", pool.isDebug());
+		NioPacket packet = pool.acquire("SOURCE", "DATA", false, null, 1234L);
+		packet.release();
+
+		//The packet should not be reused
+		assertEquals("Debug pools should not reuse packets", 0, pool.size());
+		assertNotSame("Debug pools should not reuse packets", packet, pool.acquire("OTHER", "MORE", false, null, 0));
+
+		//Every use of the released packet should fail
+		try
+		{
+			packet.getData();
+			fail("Using a released packet should throw an exception");
+		}
+		catch (IllegalStateException ex)
+		{
+		}
+		try
+		{
+			packet.release();
+			fail("Releasing a packet twice should throw an exception");
+		}
+		catch (IllegalStateException ex)
+		{
+		}
+	}
+
+	/**
+	 * Tests that the raw data of a released packet can not be used even when
+	 * the pool is not in debug mode
+	 */
+	@Test(timeout = 1000, expected = IllegalStateException.class)
+	public void testRawAfterRelease()
+	{
+		NioPacketPool pool = new NioPacketPool(1, false);
+
+		//Release a packet holding a slice and then try to use its raw data
+		NioPacket packet = pool.acquire("SOURCE", "DATA", ByteBuffer.wrap(new byte[]
+		{
+			1
+		}).asReadOnlyBuffer(), 1234L);
+		packet.release();
+		packet.getRawData();
+	}
+}
@@ -18,6 +18,11 @@ package io.niowire.data;
 
 import java.lang.reflect.Field;
 import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -51,6 +56,156 @@ public class NioPacketTest
 		assertTrue("The timestamps were wrong (or too far off)", (creationTime - packet.getTimestamp()) <= 1);
 	}
 
+	/**
+	 * Tests that packets can be given their timestamp rather than reading the
+	 * system clock
+	 */
+	@Test(timeout = 1000)
+	public void testTimestamp()
+	{
+		//Create packets with a set timestamp
+		NioPacket packet = new NioPacket(SOURCE, DATA, 1234L);
+		NioPacket raw = new NioPacket(SOURCE, DATA, true, new byte[1], 5678L);
+
+		//Make sure the timestamps were used
+		assertEquals("The timestamp should be the entered timestamp", 1234L, packet.getTimestamp());
+		assertFalse("The packet should not be raw", packet.isRaw());
+		assertEquals("The timestamp should be the entered timestamp", 5678L, raw.getTimestamp());
+		assertTrue("The packet should be raw", raw.isRaw());
+	}
+
+	/**
+	 * Tests that packets can hold their raw data as a slice of a buffer, which
+	 * is only copied when it is needed as an array or the packet is copied
+	 */
+	@Test(timeout = 1000)
+	public void testRawBuffer()
+	{
+		//Build a packet from a read only slice
+		ByteBuffer received = ByteBuffer.wrap(new byte[]
+		{
+			1, 2, 3, 4
+		});
+		NioPacket packet = new NioPacket(SOURCE, DATA, received.asReadOnlyBuffer(), 1234L);
+		assertTrue("The packet should be raw", packet.isRaw());
+		assertTrue("The packet should have a raw buffer", packet.hasRawBuffer());
+
+		//The buffer should be a view of the received data
+		received.put(0, (byte) 5);
+		assertEquals("The raw buffer should not be a copy", 5, packet.getRawBuffer().get(0));
+		assertTrue("The raw buffer should be read only", packet.getRawBuffer().isReadOnly());
+
+		//A copy should hold its own array which is not changed by the received data
+		NioPacket copy = packet.copy();
+		received.put(1, (byte) 6);
+		assertFalse("The copy should not have a raw buffer", copy.hasRawBuffer());
+		assertArrayEquals("The copy should not change", new byte[]
+		{
+			5, 2, 3, 4
+		}, copy.getRawData());
+
+		//Packets with arrays can still be read as buffers
+		assertEquals("The array should be readable as a buffer", 4, copy.getRawBuffer().remaining());
+		assertSame("A packet without a raw buffer is its own copy", copy, copy.copy());
+	}
+
+	/**
+	 * Tests that a slice of the receive buffer can not be used once the packet
+	 * has been released after dispatch (as it may have been overwritten), but
+	 * raw data which was copied during dispatch can
+	 */
+	@Test(timeout = 1000)
+	public void testRawBufferAfterRelease()
+	{
+		//One packet has its raw data copied while it is dispatched
+		NioPacket copied = new NioPacket(SOURCE, DATA, ByteBuffer.wrap(new byte[]
+		{
+			1, 2
+		}).asReadOnlyBuffer(), 1234L);
+		copied.getRawData();
+		NioPacket packet = new NioPacket(SOURCE, DATA, ByteBuffer.wrap(new byte[]
+		{
+			3, 4
+		}).asReadOnlyBuffer(), 1234L);
+		copied.release();
+		packet.release();
+
+		//The copied data is still safe to use
+		assertArrayEquals("The copied raw data should still be usable", new byte[]
+		{
+			1, 2
+		}, copied.getRawData());
+
+		//But the slice should fail loudly
+		try
+		{
+			packet.getRawData();
+			fail("The raw data should not be usable after release");
+		}
+		catch (IllegalStateException ex)
+		{
+		}
+		try
+		{
+			packet.getRawBuffer();
+			fail("The raw buffer should not be usable after release");
+		}
+		catch (IllegalStateException ex)
+		{
+		}
+		try
+		{
+			packet.copy();
+			fail("The packet should not be copyable after release");
+		}
+		catch (IllegalStateException ex)
+		{
+		}
+
+		//Packets without slices are unaffected
+		NioPacket normal = new NioPacket(SOURCE, DATA);
+		normal.release();
+		assertSame("A normal packet should still be its own copy", normal, normal.copy());
+	}
+
+	/**
+	 * Tests that copying a packet holding a flyweight detaches it from the
+	 * buffer it is a view of
+	 */
+	@Test(timeout = 1000)
+	public void testCopyDetaches()
+	{
+		//Make a record view over a buffer
+		NioRecordSchema schema = new NioRecordSchema(Collections.singletonList(field("value", "int32")), null, ByteOrder.BIG_ENDIAN);
+		ByteBuffer received = ByteBuffer.allocate(4);
+		NioRecord record = new NioRecord(schema).wrap(received, 0);
+		received.putInt(0, 7);
+
+		//The copy should keep its value when the buffer is reused
+		NioPacket packet = new NioPacket(SOURCE, record);
+		NioPacket copy = packet.copy();
+		received.putInt(0, 8);
+		assertNotSame("Packets holding flyweights should be copied", packet, copy);
+		assertEquals("The copy should not change", 7, ((NioRecord) copy.getData()).getInt(0));
+		assertEquals("The original should still be a view", 8, record.getInt(0));
+	}
+
+	/**
+	 * Builds a field definition
+	 *
+	 * @param name the name of the field
+	 * @param type the type of the field
+	 *
+	 * @return the field definition
+	 */
+	private static Map<String, Object> field(String name, String type)
+	{
+		Map<String, Object> field = new HashMap<String, Object>();
+		field.put("name", name);
+		field.put("type", type);
+		return field;
+	}
+
 	/**
 	 * Tests the equals method compares objects correctly
 	 *
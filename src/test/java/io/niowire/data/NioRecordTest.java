@@ -0,0 +1,207 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.data;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link NioRecord} and {@link NioRecordSchema}
+ *
+ * @author Trent Houliston
+ */
+public class NioRecordTest
+{
+
+	/**
+	 * Builds a field definition
+	 *
+	 * @param name   the name of the field
+	 * @param type   the type of the field
+	 * @param offset the offset of the field (or null to follow the last)
+	 *
+	 * @return the field definition
+	 */
+	private static Map<String, Object> field(String name, String type, Number offset)
+	{
+		Map<String, Object> field = new HashMap<String, Object>();
+		field.put("name", name);
+		field.put("type", type);
+		if (offset != null)
+		{
+			field.put("offset", offset);
+		}
+		return field;
+	}
+
+	/**
+	 * Builds a schema with one field of each type
+	 *
+	 * @param order the byte order of the schema
+	 *
+	 * @return the schema
+	 */
+	private static NioRecordSchema schema(ByteOrder order)
+	{
+		List<Map<String, Object>> fields = new ArrayList<Map<String, Object>>();
+		for (NioFieldType type : NioFieldType.values())
+		{
+			fields.add(field(type.name().toLowerCase(), type.name().toLowerCase(), null));
+		}
+		return new NioRecordSchema(fields, null, order);
+	}
+
+	/**
+	 * Tests that fields are packed one after another unless they have an
+	 * offset, and that the record size must hold them
+	 */
+	@Test(timeout = 1000)
+	public void testSchema()
+	{
+		//Packed fields
+		NioRecordSchema schema = schema(ByteOrder.BIG_ENDIAN);
+		assertEquals("The record should hold every field", 1 + 1 + 2 + 2 + 4 + 4 + 8 + 4 + 8, schema.getSize());
+		assertEquals("The fields should be packed", 2, schema.getOffset(schema.indexOf("int16")));
+		assertEquals("Unknown fields should have no index", -1, schema.indexOf("missing"));
+
+		//Fields with offsets and padding on the end (offsets from json are doubles)
+		List<Map<String, Object>> fields = new ArrayList<Map<String, Object>>();
+		fields.add(field("a", "INT64", 8.0));
+		fields.add(field("b", "float32", null));
+		fields.add(field("c", "uint8", 0.0));
+		schema = new NioRecordSchema(fields, 32, ByteOrder.LITTLE_ENDIAN);
+		assertEquals("The field should be at its offset", 8, schema.getOffset(0));
+		assertEquals("The field should follow the last", 16, schema.getOffset(1));
+		assertEquals("The field should be at its offset", 0, schema.getOffset(2));
+		assertEquals("The record should be padded", 32, schema.getSize());
+
+		//Records too small for their fields are invalid
+		try
+		{
+			new NioRecordSchema(fields, 19, ByteOrder.BIG_ENDIAN);
+			fail("The record size should be too small");
+		}
+		catch (IllegalArgumentException ex)
+		{
+		}
+
+		//As are fields declared twice
+		fields.add(field("a", "int8", null));
+		try
+		{
+			new NioRecordSchema(fields, null, ByteOrder.BIG_ENDIAN);
+			fail("The field should be declared twice");
+		}
+		catch (IllegalArgumentException ex)
+		{
+		}
+	}
+
+	/**
+	 * Tests that every type of field can be written and read back in both byte
+	 * orders, and that the values are laid out as a ByteBuffer would write
+	 * them
+	 */
+	@Test(timeout = 1000)
+	public void testFields()
+	{
+		for (ByteOrder order : new ByteOrder[]
+		{
+			ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN
+		})
+		{
+			NioRecordSchema schema = schema(order);
+			NioRecord record = schema.newRecord();
+
+			//Write a value which is out of range for the signed types
+			record.setLong("int8", -1).setLong("uint8", 255).setLong("int16", -2).setLong("uint16", 65535);
+			record.setLong("int32", -3).setLong("uint32", 4294967295L).setLong("int64", Long.MIN_VALUE);
+			record.setDouble("float32", 1.5).setDouble("float64", Math.PI);
+
+			assertEquals("The value was wrong in " + order, -1, record.getLong("int8"));
+			assertEquals("The value was wrong in " + order, 255, record.getLong("uint8"));
+			assertEquals("The value was wrong in " + order, -2, record.getLong("int16"));
+			assertEquals("The value was wrong in " + order, 65535, record.getLong("uint16"));
+			assertEquals("The value was wrong in " + order, -3, record.getInt("int32"));
+			assertEquals("The value was wrong in " + order, 4294967295L, record.getLong("uint32"));
+			assertEquals("The value was wrong in " + order, Long.MIN_VALUE, record.getLong("int64"));
+			assertEquals("The value was wrong in " + order, 1.5, record.getDouble("float32"), 0);
+			assertEquals("The value was wrong in " + order, Math.PI, record.getDouble("float64"), 0);
+			assertEquals("Integer fields should be readable as doubles", 255.0, record.getDouble("uint8"), 0);
+			assertEquals("Floating point fields should be truncated", 3, record.getLong("float64"));
+
+			//The fields should be where a ByteBuffer would put them
+			ByteBuffer copy = ByteBuffer.allocate(schema.getSize()).order(order);
+			record.copyTo(copy);
+			assertEquals("The field was in the wrong place in " + order, Long.MIN_VALUE, copy.getLong(schema.getOffset(schema.indexOf("int64"))));
+			assertEquals("The field was in the wrong place in " + order, Math.PI, copy.getDouble(schema.getOffset(schema.indexOf("float64"))), 0);
+		}
+	}
+
+	/**
+	 * Tests that records are views of their buffer until they are detached
+	 */
+	@Test(timeout = 1000)
+	public void testWrap()
+	{
+		List<Map<String, Object>> fields = new ArrayList<Map<String, Object>>();
+		fields.add(field("id", "int32", null));
+		fields.add(field("price", "float64", null));
+		NioRecordSchema schema = new NioRecordSchema(fields, null, ByteOrder.BIG_ENDIAN);
+
+		//Write two records into a buffer and view the second
+		ByteBuffer buffer = ByteBuffer.allocate(schema.getSize() * 2);
+		buffer.putInt(1).putDouble(1.25).putInt(2).putDouble(2.5);
+		NioRecord record = new NioRecord(schema).wrap(buffer, schema.getSize());
+		assertEquals("The record should read its offset", 2, record.getInt(0));
+		assertEquals("The record should read its offset", 2.5, record.getDouble(1), 0);
+		assertEquals("The record should print its fields", "{id=2, price=2.5}", record.toString());
+
+		//A detached record should not see later changes
+		NioRecord detached = record.detach();
+		buffer.putInt(schema.getSize(), 3);
+		assertEquals("The view should see the change", 3, record.getInt("id"));
+		assertEquals("The detached record should not", 2, detached.getInt("id"));
+
+		//Buffers in the wrong order can't be wrapped
+		try
+		{
+			record.wrap(ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN), 0);
+			fail("The buffer should be in the wrong order");
+		}
+		catch (IllegalArgumentException ex)
+		{
+		}
+
+		//Unknown fields can't be read
+		try
+		{
+			record.getLong("missing");
+			fail("The field should not exist");
+		}
+		catch (IllegalArgumentException ex)
+		{
+		}
+	}
+}
@@ -17,6 +17,9 @@
 package io.niowire.entities;
 
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Inject;
 import javax.inject.Named;
 import org.junit.Test;
@@ -166,6 +169,63 @@ public class NioObjectFactoryTest
 		assertTrue("This object is identical apart from not being made by the factory, should be true", factory4.isInstance(obj8));
 	}
 
+	/**
+	 * Tests that everything made by a factory (including its warm methods) is
+	 * given the same shared objects, and that warming does not make an object.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testShared() throws Exception
+	{
+		HashMap<String, String> config = new HashMap<String, String>(1);
+		config.put("label", "TEST_LABEL");
+		NioObjectFactory<SharedClass> factory = new NioObjectFactory<SharedClass>(SharedClass.class, config);
+		NioObjectFactory<SharedClass> other = new NioObjectFactory<SharedClass>(SharedClass.class);
+
+		//Warm the factory then make some more objects
+		factory.warm();
+		assertEquals("The warm method should have been given the configured values", "TEST_LABEL", factory.getShared().get("warmed"));
+		assertNull("Warming should not make an object", factory.getShared().get("count"));
+		SharedClass obj1 = factory.create();
+		SharedClass obj2 = factory.create();
+		SharedClass obj3 = other.create();
+
+		//The first factory made two objects which all counted themselves in the same place
+		assertSame("Objects from the same factory should share", obj1.shared, obj2.shared);
+		assertSame("The factory should give out its shared map", factory.getShared(), obj1.shared);
+		assertEquals("Two objects should have been made by the first factory", 2, ((AtomicInteger) obj1.shared.get("count")).get());
+		assertNotSame("Objects from different factories should not share", obj1.shared, obj3.shared);
+		assertEquals("One object should have been made by the second factory", 1, ((AtomicInteger) obj3.shared.get("count")).get());
+		assertNull("The second factory was not warmed", obj3.shared.get("warmed"));
+	}
+
+	/**
+	 * Tests that warming a class without a warm method does nothing and that
+	 * warm methods which are not static are refused
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testWarm() throws Exception
+	{
+		//A class with no warm method should not be made
+		NioObjectFactory<TestClass> factory = new NioObjectFactory<TestClass>(TestClass.class);
+		factory.warm();
+		assertTrue("Nothing should have been shared", factory.getShared().isEmpty());
+
+		//Warm methods must be static
+		try
+		{
+			new NioObjectFactory<BadWarmClass>(BadWarmClass.class).warm();
+			fail("A warm method which is not static should not be run");
+		}
+		catch (NioObjectCreationException ex)
+		{
+			assertTrue(ex.getCause() instanceof UnsupportedOperationException);
+		}
+	}
+
 	/**
 	 * This is a test object which has annotations in it to facilitate the
 	 * injection tests.
@@ -218,4 +278,42 @@ public class NioObjectFactoryTest
 			this.subClassInit = this.notNamedValue;
 		}
 	}
+
+	/**
+	 * This is a test object which counts how many of it have been made in the
+	 * objects shared by its factory, and marks when its factory is warmed
+	 */
+	public static class SharedClass
+	{
+
+		@Inject
+		private Map<String, Object> shared;
+		@Inject
+		private String label;
+
+		@Warm
+		static void warm(Map<String, Object> values, ConcurrentMap<String, Object> shared)
+		{
+			shared.put("warmed", values.get("label"));
+		}
+
+		@Initialize
+		public void count()
+		{
+			shared.putIfAbsent("count", new AtomicInteger());
+			((AtomicInteger) shared.get("count")).incrementAndGet();
+		}
+	}
+
+	/**
+	 * This is a test object with a warm method which is not static
+	 */
+	public static class BadWarmClass
+	{
+
+		@Warm
+		void warm(Map<String, Object> values, ConcurrentMap<String, Object> shared)
+		{
+		}
+	}
 }
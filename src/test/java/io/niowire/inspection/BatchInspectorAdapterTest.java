@@ -0,0 +1,118 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.inspection;
+
+import io.niowire.data.NioPacket;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the {@link BatchInspectorAdapter}
+ *
+ * @author Trent Houliston
+ */
+public class BatchInspectorAdapterTest
+{
+
+	private static final NioPacket A = new NioPacket("Test", "A");
+	private static final NioPacket B = new NioPacket("Test", "B");
+	private static final NioPacket C = new NioPacket("Test", "C");
+	private static final NioPacket MODIFIED = new NioPacket("Test", "MODIFIED");
+
+	/**
+	 * Tests that when the inspector does not change any packets the original
+	 * list is returned
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testUnchanged() throws Exception
+	{
+		NioInspector inspector = mock(NioInspector.class);
+		when(inspector.inspect(any(NioPacket.class))).then(returnsFirstArg());
+
+		List<NioPacket> batch = Arrays.asList(A, B, C);
+		assertSame(batch, new BatchInspectorAdapter(inspector).inspect(batch));
+	}
+
+	/**
+	 * Tests that modified packets are replaced and filtered packets removed
+	 * while keeping the order of the batch
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testModifiedAndFiltered() throws Exception
+	{
+		NioInspector inspector = mock(NioInspector.class);
+		when(inspector.inspect(A)).thenReturn(A);
+		when(inspector.inspect(B)).thenReturn(MODIFIED);
+		when(inspector.inspect(C)).thenReturn(null);
+
+		assertEquals(Arrays.asList(A, MODIFIED), new BatchInspectorAdapter(inspector).inspect(Arrays.asList(A, B, C)));
+
+		//Check that filtering the first packet works too
+		when(inspector.inspect(A)).thenReturn(null);
+		when(inspector.inspect(B)).thenReturn(B);
+		when(inspector.inspect(C)).thenReturn(C);
+
+		assertEquals(Arrays.asList(B, C), new BatchInspectorAdapter(inspector).inspect(Arrays.asList(A, B, C)));
+	}
+
+	/**
+	 * Tests that an authentication failure of any packet fails the batch
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000, expected = NioAuthenticationException.class)
+	public void testAuthenticationFailure() throws Exception
+	{
+		NioInspector inspector = mock(NioInspector.class);
+		when(inspector.inspect(A)).thenReturn(A);
+		when(inspector.inspect(B)).thenThrow(new NioAuthenticationException());
+
+		new BatchInspectorAdapter(inspector).inspect(Arrays.asList(A, B, C));
+	}
+
+	/**
+	 * Tests that the other methods are passed through to the inspector
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testDelegation() throws Exception
+	{
+		NioInspector inspector = mock(NioInspector.class);
+		when(inspector.getUid()).thenReturn("UID");
+		when(inspector.timeout()).thenReturn(true);
+		when(inspector.inspect(A)).thenReturn(B);
+
+		BatchInspectorAdapter adapter = new BatchInspectorAdapter(inspector);
+		assertSame(inspector, adapter.getInspector());
+		assertEquals("UID", adapter.getUid());
+		assertTrue(adapter.timeout());
+		assertSame(B, adapter.inspect(A));
+		adapter.close();
+		verify(inspector).close();
+	}
+}
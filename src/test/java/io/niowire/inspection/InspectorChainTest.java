@@ -0,0 +1,167 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.inspection;
+
+import io.niowire.data.NioPacket;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the {@link InspectorChain}
+ *
+ * @author Trent Houliston
+ */
+public class InspectorChainTest
+{
+
+	private static final NioPacket A = new NioPacket("Test", "A");
+	private static final NioPacket B = new NioPacket("Test", "B");
+	private static final NioPacket REPLACED = new NioPacket("Test", "REPLACED");
+	private NioInspector first;
+	private NioInspector second;
+	private InspectorChain chain;
+
+	/**
+	 * Builds a chain of two mock inspectors which pass packets through
+	 *
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		first = mock(NioInspector.class);
+		second = mock(NioInspector.class);
+		when(first.inspect(any(NioPacket.class))).then(returnsFirstArg());
+		when(second.inspect(any(NioPacket.class))).then(returnsFirstArg());
+		chain = new InspectorChain(Arrays.asList(first, second));
+	}
+
+	/**
+	 * Tests that a replaced packet is passed on to the next stage
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testReplace() throws Exception
+	{
+		when(first.inspect(A)).thenReturn(REPLACED);
+
+		assertSame(REPLACED, chain.inspect(A));
+		verify(second).inspect(REPLACED);
+		verify(second, never()).inspect(A);
+
+		//The batch path replaces it too
+		assertEquals(Arrays.asList(REPLACED, B), chain.inspect(Arrays.asList(A, B)));
+	}
+
+	/**
+	 * Tests that a dropped packet skips the rest of the chain
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testDrop() throws Exception
+	{
+		when(first.inspect(A)).thenReturn(null);
+
+		assertNull(chain.inspect(A));
+		verify(second, never()).inspect(any(NioPacket.class));
+
+		//Dropping a whole batch also skips the rest of the chain
+		assertTrue(chain.inspect(Collections.singletonList(A)).isEmpty());
+		verify(second, never()).inspect(any(NioPacket.class));
+
+		//Dropping part of a batch passes the rest on
+		assertEquals(Arrays.asList(B), chain.inspect(Arrays.asList(A, B)));
+		verify(second).inspect(B);
+	}
+
+	/**
+	 * Tests that an authentication failure stops the chain
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testAuthenticationFailure() throws Exception
+	{
+		when(first.inspect(A)).thenThrow(new NioAuthenticationException());
+
+		try
+		{
+			chain.inspect(A);
+			fail("A NioAuthenticationException should have been thrown");
+		}
+		catch (NioAuthenticationException ex)
+		{
+			assertNotNull(ex);
+		}
+		verify(second, never()).inspect(any(NioPacket.class));
+	}
+
+	/**
+	 * Tests that the UID is the first UID from the stages and the chain times
+	 * out when any stage does
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testUidAndTimeout() throws Exception
+	{
+		//The first stage has no UID
+		when(second.getUid()).thenReturn("SECOND");
+		assertEquals("SECOND", chain.getUid());
+		when(first.getUid()).thenReturn("FIRST");
+		assertEquals("FIRST", chain.getUid());
+
+		//Only time out when a stage does
+		assertFalse(chain.timeout());
+		when(second.timeout()).thenReturn(true);
+		assertTrue(chain.timeout());
+	}
+
+	/**
+	 * Tests that every stage is closed even when one throws
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testClose() throws Exception
+	{
+		IOException failure = new IOException();
+		doThrow(failure).when(first).close();
+
+		try
+		{
+			chain.close();
+			fail("An IOException should have been thrown");
+		}
+		catch (IOException ex)
+		{
+			assertSame(failure, ex);
+		}
+		verify(second).close();
+		assertEquals(Arrays.asList(first, second), chain.getStages());
+	}
+}
@@ -0,0 +1,338 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.inspection;
+
+import io.niowire.data.NioPacket;
+import io.niowire.entities.NioObjectFactory;
+import io.niowire.server.NioConnection;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the {@link RateLimitInspector}
+ *
+ * @author Trent Houliston
+ */
+public class RateLimitInspectorTest
+{
+
+	/**
+	 * Builds a new RateLimitInspector with the passed configuration and
+	 * context
+	 *
+	 * @param context       the context to inject
+	 * @param configuration the configuration for the inspector
+	 *
+	 * @return the new inspector
+	 *
+	 * @throws Exception
+	 */
+	private static RateLimitInspector build(NioConnection.Context context, Map<String, Object> configuration) throws Exception
+	{
+		NioObjectFactory<RateLimitInspector> factory = new NioObjectFactory<RateLimitInspector>(RateLimitInspector.class, configuration);
+		return factory.create(Collections.singletonMap("context", context));
+	}
+
+	/**
+	 * Builds a mock context from the passed address
+	 *
+	 * @param address the remote address
+	 * @param port    the remote port
+	 *
+	 * @return the mock context
+	 */
+	private static NioConnection.Context context(String address, int port)
+	{
+		NioConnection.Context context = mock(NioConnection.Context.class);
+		when(context.getRemoteAddress()).thenReturn(new InetSocketAddress(address, port));
+		when(context.getServerId()).thenReturn("RateLimitInspectorTest");
+		return context;
+	}
+
+	/**
+	 * Test that we get our UID properly from the context
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testGetUid() throws Exception
+	{
+		//Build an unlimited inspector
+		RateLimitInspector inspect = build(context("171.205.239.171", 52719), new HashMap<String, Object>());
+
+		//Make sure that the inspector gets the address from the context
+		assertEquals("We did not get the expected UID", "ABCDEFABCDEF", inspect.getUid());
+		assertFalse("The rate limiter should never time out", inspect.timeout());
+	}
+
+	/**
+	 * Test that packets over the per connection limit are dropped
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testDropPackets() throws Exception
+	{
+		//Allow a burst of 5 packets
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put("packetsPerSecond", 5);
+		RateLimitInspector inspect = build(context("127.0.0.1", 1000), configuration);
+
+		//The first 5 packets should get through
+		NioPacket packet = new NioPacket("TEST", "TEST");
+		for (int i = 0; i < 5; i++)
+		{
+			assertSame("The packet should have been allowed", packet, inspect.inspect(packet));
+		}
+
+		//The next one should be dropped
+		assertNull("The packet should have been dropped", inspect.inspect(packet));
+		assertEquals("The packet should have been counted as dropped", 1, inspect.getDropped());
+	}
+
+	/**
+	 * Test that bytes over the limit are dropped using the bytes received from
+	 * the context
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testDropBytes() throws Exception
+	{
+		//Allow a burst of 100 bytes
+		NioConnection.Context context = context("127.0.0.1", 1000);
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put("bytesPerSecond", 100);
+		RateLimitInspector inspect = build(context, configuration);
+
+		//A read of 60 bytes should be allowed (inspecting packet by packet charges the read to its first packet)
+		NioPacket packet = new NioPacket("TEST", "TEST");
+		when(context.getBytesReceived()).thenReturn(60L);
+		assertSame("The packet should have been allowed", packet, inspect.inspect(packet));
+		assertSame("The packet should have been allowed", packet, inspect.inspect(packet));
+
+		//Another 60 bytes is over our limit
+		when(context.getBytesReceived()).thenReturn(120L);
+		assertNull("The packet should have been dropped", inspect.inspect(packet));
+	}
+
+	/**
+	 * Test that when a read is inspected as a batch each packet is charged its
+	 * own share of the read, so the packets which fit are allowed and the rest
+	 * are dropped
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testBatchBytes() throws Exception
+	{
+		//Allow a burst of 100 bytes
+		NioConnection.Context context = context("127.0.0.1", 1000);
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put("bytesPerSecond", 100);
+		RateLimitInspector inspect = build(context, configuration);
+
+		//A read of 300 bytes holding 6 packets (50 bytes each) is over our limit
+		List<NioPacket> packets = new ArrayList<NioPacket>();
+		for (int i = 0; i < 6; i++)
+		{
+			packets.add(new NioPacket("TEST", i));
+		}
+		when(context.getBytesReceived()).thenReturn(300L);
+
+		//Only the first two packets fit in the bucket
+		List<NioPacket> allowed = inspect.inspect(packets);
+		assertEquals("Only the packets which fit should be allowed", packets.subList(0, 2), allowed);
+		assertEquals("The other packets should have been dropped", 4, inspect.getDropped());
+
+		//The dropped packets were not charged, but the next read is still over the limit
+		when(context.getBytesReceived()).thenReturn(310L);
+		assertTrue("The bucket should be empty", inspect.inspect(Collections.singletonList(packets.get(0))).isEmpty());
+	}
+
+	/**
+	 * Test that when delaying a batch every packet is delivered and reading is
+	 * paused once for the whole read
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testBatchDelay() throws Exception
+	{
+		//Allow 100 bytes per second
+		NioConnection.Context context = context("127.0.0.1", 1000);
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put("bytesPerSecond", 100);
+		configuration.put("action", "DELAY");
+		RateLimitInspector inspect = build(context, configuration);
+
+		//A read of 300 bytes is delivered but we are 200 bytes (2 seconds) over
+		List<NioPacket> packets = Arrays.asList(new NioPacket("TEST", "A"), new NioPacket("TEST", "B"), new NioPacket("TEST", "C"));
+		when(context.getBytesReceived()).thenReturn(300L);
+		assertSame("Every packet should be delivered", packets, inspect.inspect(packets));
+
+		//We should pause once for about two seconds
+		ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+		verify(context).pauseReading(delay.capture());
+		assertTrue("We should have paused for about two seconds", delay.getValue() > 1900000000L && delay.getValue() <= 2000000000L);
+	}
+
+	/**
+	 * Test that the per address limits are shared between connections and
+	 * released when they close
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testSharedAddress() throws Exception
+	{
+		//Allow 4 packets from each address (and 3 per connection)
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put("packetsPerSecond", 3);
+		configuration.put("addressPacketsPerSecond", 4);
+		RateLimitInspector first = build(context("10.1.2.3", 1000), configuration);
+		RateLimitInspector second = build(context("10.1.2.3", 1001), configuration);
+		RateLimitInspector other = build(context("10.1.2.4", 1000), configuration);
+		int tracked = RateLimitInspector.getTrackedAddresses();
+
+		//The first connection uses three of the address's packets
+		NioPacket packet = new NioPacket("TEST", "TEST");
+		for (int i = 0; i < 3; i++)
+		{
+			assertSame("The packet should have been allowed", packet, first.inspect(packet));
+		}
+
+		//The second connection only gets the one which is left
+		assertSame("The packet should have been allowed", packet, second.inspect(packet));
+		assertNull("The address should be over its limit", second.inspect(packet));
+
+		//A different address is unaffected
+		assertSame("The packet should have been allowed", packet, other.inspect(packet));
+
+		//Closing every connection from the address removes its buckets
+		first.close();
+		second.close();
+		second.close();
+		assertEquals("The address should no longer be tracked", tracked - 1, RateLimitInspector.getTrackedAddresses());
+		other.close();
+		assertEquals("The address should no longer be tracked", tracked - 2, RateLimitInspector.getTrackedAddresses());
+	}
+
+	/**
+	 * Test that when a later bucket refuses a packet the tokens taken from the
+	 * earlier buckets are given back
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testRefund() throws Exception
+	{
+		//Allow 3 packets on the connection and 100 bytes from the address
+		NioConnection.Context context = context("10.2.3.4", 1000);
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put("packetsPerSecond", 3);
+		configuration.put("addressBytesPerSecond", 100);
+		RateLimitInspector inspect = build(context, configuration);
+
+		//A read of 200 bytes is refused by the address
+		NioPacket packet = new NioPacket("TEST", "TEST");
+		when(context.getBytesReceived()).thenReturn(200L);
+		assertNull("The address should be over its limit", inspect.inspect(packet));
+
+		//The packet token should have been given back so we still have all 3
+		for (int i = 0; i < 3; i++)
+		{
+			assertSame("The packet should have been allowed", packet, inspect.inspect(packet));
+		}
+		assertNull("The connection should be over its limit", inspect.inspect(packet));
+		inspect.close();
+	}
+
+	/**
+	 * Test that when disconnecting we throw an authentication exception
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000, expected = NioAuthenticationException.class)
+	public void testDisconnect() throws Exception
+	{
+		//Allow a single packet
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put("packetsPerSecond", 1);
+		configuration.put("action", "disconnect");
+		RateLimitInspector inspect = build(context("127.0.0.1", 1000), configuration);
+
+		//The second packet should close the connection
+		NioPacket packet = new NioPacket("TEST", "TEST");
+		assertSame("The packet should have been allowed", packet, inspect.inspect(packet));
+		inspect.inspect(packet);
+	}
+
+	/**
+	 * Test that when delaying we deliver the packets but pause reading
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testDelay() throws Exception
+	{
+		//Allow a single packet per second
+		NioConnection.Context context = context("127.0.0.1", 1000);
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put("packetsPerSecond", 1);
+		configuration.put("action", "DELAY");
+		RateLimitInspector inspect = build(context, configuration);
+
+		//The first packet should not pause
+		NioPacket packet = new NioPacket("TEST", "TEST");
+		assertSame("The packet should have been allowed", packet, inspect.inspect(packet));
+		verify(context, never()).pauseReading(anyLong());
+
+		//The second packet should be delivered but pause reading for about a second
+		assertSame("The packet should have been delivered", packet, inspect.inspect(packet));
+		ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+		verify(context).pauseReading(delay.capture());
+		assertTrue("We should have paused for about a second", delay.getValue() > 900000000L && delay.getValue() <= 1000000000L);
+	}
+
+	/**
+	 * Test that once closed the inspector throws closed exceptions
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000, expected = ClosedChannelException.class)
+	public void testClose() throws Exception
+	{
+		//Build an unlimited inspector and close it
+		RateLimitInspector inspect = build(context("127.0.0.1", 1000), new HashMap<String, Object>());
+		inspect.close();
+
+		//This should throw an exception
+		inspect.inspect(new NioPacket("TEST", "TEST"));
+	}
+}
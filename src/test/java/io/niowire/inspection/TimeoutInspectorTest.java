@@ -19,6 +19,7 @@ package io.niowire.inspection;
 import io.niowire.data.NioPacket;
 import io.niowire.entities.Injector;
 import io.niowire.entities.NioObjectFactory;
+import io.niowire.server.NioClock;
 import io.niowire.server.NioConnection;
 import io.niowire.testutilities.TestUtilities;
 import java.net.InetSocketAddress;
@@ -58,6 +59,10 @@ public class TimeoutInspectorTest
 
 		//Make sure that the inspector gets the address from the context and uses it appropropriatly
 		assertEquals("We did not get the expected UID", "ABCDEFABCDEF", inspect.getUid());
+
+		//Make sure the UID is cached rather than rebuilt from the address
+		assertSame("The UID should have been cached", inspect.getUid(), inspect.getUid());
+		verify(context, times(1)).getRemoteAddress();
 	}
 
 	/**
@@ -136,6 +141,39 @@ public class TimeoutInspectorTest
 		assertFalse(inspect.timeout());
 	}
 
+	/**
+	 * Test that the timeout is measured with the clock from the context
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testClock() throws Exception
+	{
+		//Mock a clock in the context
+		NioClock clock = mock(NioClock.class);
+		when(clock.currentTimeMillis()).thenReturn(5000L);
+		NioConnection.Context context = mock(NioConnection.Context.class);
+		when(context.getClock()).thenReturn(clock);
+
+		//Build our inspector with a 100ms timeout
+		TimeoutInspector inspect = new TimeoutInspector();
+		Injector<TimeoutInspector> injector = new Injector<TimeoutInspector>(TimeoutInspector.class, Collections.singletonMap("timeout", 100));
+		injector.inject(inspect, Collections.singletonMap("context", context));
+
+		//Move the clock forward but not past our timeout
+		when(clock.currentTimeMillis()).thenReturn(5100L);
+		assertFalse("We should not have timed out yet", inspect.timeout());
+
+		//A packet resets the timeout at the clock's time
+		inspect.inspect(null);
+		when(clock.currentTimeMillis()).thenReturn(5200L);
+		assertFalse("The packet should have reset our timeout", inspect.timeout());
+
+		//Move the clock past our timeout
+		when(clock.currentTimeMillis()).thenReturn(5201L);
+		assertTrue("We should have timed out", inspect.timeout());
+	}
+
 	/**
 	 * Test that when we close the Inspector, every operation throws a closed
 	 * channel exception, and that timeout will return true.
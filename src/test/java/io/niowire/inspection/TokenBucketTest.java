@@ -0,0 +1,108 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.inspection;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link TokenBucket}
+ *
+ * @author Trent Houliston
+ */
+public class TokenBucketTest
+{
+
+	/**
+	 * Test that the bucket allows its burst and then refuses until tokens are
+	 * earned
+	 */
+	@Test(timeout = 1000)
+	public void testTryTake()
+	{
+		//A bucket with 10 tokens per second which holds 5 tokens
+		TokenBucket bucket = new TokenBucket(10, 5);
+		long now = 1000000000L;
+
+		//We can take our burst but no more
+		for (int i = 0; i < 5; i++)
+		{
+			assertTrue("We should be able to take our burst", bucket.tryTake(1, now));
+		}
+		assertFalse("We should not be able to exceed our burst", bucket.tryTake(1, now));
+
+		//After 100ms we should have earned one more token
+		assertTrue("We should have earned a token", bucket.tryTake(1, now + 100000000L));
+		assertFalse("We should have only earned one token", bucket.tryTake(1, now + 100000000L));
+
+		//After a long time the bucket should only hold its burst
+		long later = now + 60000000000L;
+		assertTrue("We should be able to take our burst", bucket.tryTake(5, later));
+		assertFalse("The bucket should not hold more than its burst", bucket.tryTake(1, later));
+	}
+
+	/**
+	 * Test that refused requests do not take tokens, and refunds return them
+	 */
+	@Test(timeout = 1000)
+	public void testRefund()
+	{
+		//A bucket with 10 tokens per second which holds 5 tokens
+		TokenBucket bucket = new TokenBucket(10, 5);
+		long now = 1000000000L;
+
+		//A request larger than the bucket is refused without taking anything
+		assertFalse("We should not be able to take more than our burst", bucket.tryTake(6, now));
+		assertTrue("The refused request should not have taken tokens", bucket.tryTake(5, now));
+
+		//Refunding gives the tokens back
+		bucket.refund(2);
+		assertTrue("The refunded tokens should be available", bucket.tryTake(2, now));
+		assertFalse("Only the refunded tokens should be available", bucket.tryTake(1, now));
+	}
+
+	/**
+	 * Test that taking past the limit reports how long to wait
+	 */
+	@Test(timeout = 1000)
+	public void testTake()
+	{
+		//A bucket with 10 tokens per second which holds 5 tokens
+		TokenBucket bucket = new TokenBucket(10, 5);
+		long now = 1000000000L;
+
+		//Within the burst there is no delay
+		assertEquals("There should be no delay within the burst", 0, bucket.take(5, now));
+
+		//Two tokens over the burst should need 200ms to recover
+		assertEquals("We should wait for the tokens we are over", 200000000L, bucket.take(2, now));
+
+		//The debt should also be seen by the other methods
+		assertFalse("The bucket should be in debt", bucket.tryTake(1, now + 100000000L));
+		assertTrue("The bucket should have recovered", bucket.tryTake(1, now + 300000000L));
+	}
+
+	/**
+	 * Test that an invalid rate is rejected
+	 */
+	@Test(timeout = 1000, expected = IllegalArgumentException.class)
+	public void testInvalidRate()
+	{
+		new TokenBucket(0, 5);
+	}
+}
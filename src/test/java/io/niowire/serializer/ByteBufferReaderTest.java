@@ -0,0 +1,162 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link ByteBufferReader}
+ *
+ * @author Trent Houliston
+ */
+public class ByteBufferReaderTest
+{
+
+	/**
+	 * Tests that text is read the same as decoding it and removing its
+	 * carriage returns, for charsets read directly and through the decoder,
+	 * however small the reads are.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testRead() throws Exception
+	{
+		String text = "ascii\r\nthen ✓✓ and \r more ascii é\r";
+		String expected = text.replace("\r", "");
+
+		for (String name : new String[]
+		{
+			"UTF-8", "UTF-16LE"
+		})
+		{
+			Charset charset = Charset.forName(name);
+			ByteBufferReader reader = new ByteBufferReader(charset);
+
+			for (int size = 1; size < 8; size++)
+			{
+				//Read the text in reads of this size
+				reader.reset(ByteBuffer.wrap(text.getBytes(charset)));
+				StringBuilder result = new StringBuilder();
+				char[] chars = new char[size];
+				int read;
+				while ((read = reader.read(chars, 0, size)) >= 0)
+				{
+					assertTrue("A read should return something before the end", read > 0);
+					result.append(chars, 0, read);
+				}
+
+				assertEquals("The text was not read properly in " + name + " with reads of " + size, expected, result.toString());
+			}
+		}
+	}
+
+	/**
+	 * Tests that reads of one char can read characters which are a surrogate
+	 * pair (which the decoder can't write into a single char) rather than
+	 * reading nothing forever
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testSurrogatePair() throws Exception
+	{
+		String text = "[1\uD83D\uDE00\r\uD83D\uDE00]";
+		Charset charset = Charset.forName("UTF-8");
+		ByteBufferReader reader = new ByteBufferReader(charset);
+		reader.reset(ByteBuffer.wrap(text.getBytes(charset)));
+
+		//Read it one char at a time
+		StringBuilder result = new StringBuilder();
+		char[] chars = new char[3];
+		int read;
+		while ((read = reader.read(chars, 1, 1)) >= 0)
+		{
+			assertEquals("Each read should return one char", 1, read);
+			result.append(chars[1]);
+		}
+		assertEquals("[1\uD83D\uDE00\uD83D\uDE00]", result.toString());
+
+		//A JsonReader asks for what fits in its buffer, which leaves a read of one char here
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 1023; i++)
+		{
+			value.append('1');
+		}
+		value.append("\uD83D\uDE00");
+		reader.reset(ByteBuffer.wrap(("[" + value + "]").getBytes(charset)));
+		JsonReader json = new JsonReader(reader);
+		json.setLenient(true);
+		json.beginArray();
+		assertEquals(JsonToken.STRING, json.peek());
+		assertEquals(value.toString(), json.nextString());
+		json.endArray();
+	}
+
+	/**
+	 * Tests that invalid bytes are replaced and that a buffer of only carriage
+	 * returns reads as empty
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testInvalidAndEmpty() throws Exception
+	{
+		ByteBufferReader reader = new ByteBufferReader(Charset.forName("UTF-8"));
+
+		//Invalid bytes are replaced
+		reader.reset(ByteBuffer.wrap(new byte[]
+		{
+			'a', (byte) 0xFF, 'b'
+		}));
+		assertEquals("The invalid byte was not replaced", "a\uFFFDb", readAll(reader));
+
+		//Only carriage returns is the end straight away
+		reader.reset(ByteBuffer.wrap(new byte[]
+		{
+			'\r', '\r'
+		}));
+		assertEquals("The reader should be empty", -1, reader.read(new char[16], 0, 16));
+	}
+
+	/**
+	 * Reads everything from a reader
+	 *
+	 * @param reader the reader
+	 *
+	 * @return the characters read
+	 *
+	 * @throws Exception
+	 */
+	private static String readAll(ByteBufferReader reader) throws Exception
+	{
+		StringBuilder result = new StringBuilder();
+		char[] chars = new char[16];
+		int read;
+		while ((read = reader.read(chars, 0, chars.length)) >= 0)
+		{
+			result.append(chars, 0, read);
+		}
+		return result.toString();
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link ByteBufferWriter}
+ *
+ * @author Trent Houliston
+ */
+public class ByteBufferWriterTest
+{
+
+	/**
+	 * Tests that text is encoded exactly as {@link String#getBytes(Charset)}
+	 * does, including unpaired surrogates and surrogate pairs split between
+	 * writes.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 5000)
+	public void testEncoding() throws Exception
+	{
+		//Characters from each range we encode differently
+		char[] pool = new char[]
+		{
+			'a', '\n', '\u007F', '\u0080', 'é', '߿', 'ࠀ', '✓', '￿', '\uD83D', '\uDE00'
+		};
+		Random random = new Random(42);
+
+		for (String name : new String[]
+		{
+			"UTF-8", "US-ASCII"
+		})
+		{
+			Charset charset = Charset.forName(name);
+			ByteBufferWriter writer = new ByteBufferWriter(charset, 16);
+
+			for (int i = 0; i < 500; i++)
+			{
+				//Make a random string
+				char[] chars = new char[random.nextInt(40)];
+				for (int j = 0; j < chars.length; j++)
+				{
+					chars[j] = pool[random.nextInt(pool.length)];
+				}
+				String text = new String(chars);
+
+				//Write it in two parts so surrogate pairs may be split
+				int split = chars.length == 0 ? 0 : random.nextInt(chars.length);
+				writer.begin(random.nextBoolean());
+				writer.write(text, 0, split);
+				writer.write(chars, split, chars.length - split);
+				ByteBuffer result = writer.finish();
+
+				byte[] bytes = new byte[result.remaining()];
+				result.get(bytes);
+				assertArrayEquals("The text was not encoded the same as " + name, text.getBytes(charset), bytes);
+			}
+		}
+	}
+
+	/**
+	 * Tests that messages are written one after another in the same chunk
+	 * until it is reused, and that a message which does not fit is moved to a
+	 * new chunk without disturbing the earlier ones.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testChunks() throws Exception
+	{
+		ByteBufferWriter writer = new ByteBufferWriter(Charset.forName("UTF-8"), 8);
+
+		//Two messages fit in the first chunk
+		writer.begin(false);
+		writer.write("abc");
+		writer.writeBytes(new byte[]
+				{
+					'\n'
+				});
+		ByteBuffer first = writer.finish();
+		writer.begin(false);
+		writer.write("de");
+		ByteBuffer second = writer.finish();
+		assertTrue("Both messages should share a chunk", first.array() == second.array());
+
+		//This one does not fit so it must move
+		writer.begin(false);
+		writer.write("fghijklmnop");
+		ByteBuffer third = writer.finish();
+		assertFalse("The long message should be in a new chunk", first.array() == third.array());
+
+		//Starting over with reuse writes from the start of the new chunk
+		writer.begin(true);
+		writer.write("q");
+		ByteBuffer fourth = writer.finish();
+		assertTrue("The chunk should have been reused", third.array() == fourth.array());
+		assertEquals("The reused message should be at the start", 0, fourth.arrayOffset());
+
+		//The earlier messages should be untouched
+		assertEquals("abc\n", text(first));
+		assertEquals("de", text(second));
+		assertEquals("q", text(fourth));
+	}
+
+	/**
+	 * Reads the remaining bytes of a buffer as UTF-8
+	 *
+	 * @param buffer the buffer
+	 *
+	 * @return the text
+	 */
+	private static String text(ByteBuffer buffer)
+	{
+		return new String(Arrays.copyOfRange(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.arrayOffset() + buffer.limit()), Charset.forName("UTF-8"));
+	}
+}
@@ -0,0 +1,91 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link ByteScanner}
+ *
+ * @author Trent Houliston
+ */
+public class ByteScannerTest
+{
+
+	/**
+	 * Tests that a byte is found at every offset in both whole words and the
+	 * trailing bytes, for both byte orders and for heap and direct buffers.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testIndexOf() throws Exception
+	{
+		ByteBuffer[] buffers =
+		{
+			ByteBuffer.allocate(37).order(ByteOrder.BIG_ENDIAN),
+			ByteBuffer.allocate(37).order(ByteOrder.LITTLE_ENDIAN),
+			ByteBuffer.allocateDirect(37).order(ByteOrder.BIG_ENDIAN),
+			ByteBuffer.allocateDirect(37).order(ByteOrder.LITTLE_ENDIAN)
+		};
+
+		for (ByteBuffer buffer : buffers)
+		{
+			for (int i = 0; i < buffer.capacity() - 1; i++)
+			{
+				//Fill it with bytes which are close to our byte (to catch borrows between bytes)
+				for (int j = 0; j < buffer.capacity(); j++)
+				{
+					buffer.put(j, (byte) (j % 2 == 0 ? 0x0B : 0x8A));
+				}
+
+				//Put our byte in twice, we should always find the first one
+				buffer.put(i, (byte) 0x0A);
+				buffer.put(buffer.capacity() - 1, (byte) 0x0A);
+
+				assertEquals("The byte was not found at " + i + " in a " + buffer.order() + " buffer", i, ByteScanner.indexOf(buffer, (byte) 0x0A, 0, buffer.capacity()));
+				assertEquals("The search should not start before its start", buffer.capacity() - 1, ByteScanner.indexOf(buffer, (byte) 0x0A, i + 1, buffer.capacity()));
+				assertEquals("The search should not go past its end", -1, ByteScanner.indexOf(buffer, (byte) 0x0A, i + 1, buffer.capacity() - 1));
+			}
+		}
+	}
+
+	/**
+	 * Tests searching for bytes with their high bit set and for zero bytes
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testIndexOfExtremes() throws Exception
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(32);
+		for (int i = 0; i < buffer.capacity(); i++)
+		{
+			buffer.put(i, (byte) 0x01);
+		}
+		buffer.put(13, (byte) 0xFF);
+		buffer.put(21, (byte) 0x00);
+
+		assertEquals("A byte with its high bit set was not found", 13, ByteScanner.indexOf(buffer, (byte) 0xFF, 0, 32));
+		assertEquals("A zero byte was not found", 21, ByteScanner.indexOf(buffer, (byte) 0x00, 0, 32));
+		assertEquals("A byte that is not there should not be found", -1, ByteScanner.indexOf(buffer, (byte) 0x80, 0, 32));
+	}
+}
@@ -25,10 +25,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -310,6 +314,93 @@ public class DeflateSerializerTest
 		assertArrayEquals("The data which resulted from the decompression was wrong", uncompressed, bytesFromPackets(result));
 	}
 
+	/**
+	 * Tests that data which inflates to many times the work buffer is all
+	 * inflated in one call, even once the inflater has used up its input, and
+	 * that direct buffers can be inflated
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testHighlyCompressed() throws Exception
+	{
+		//Compress a large run of the same byte into a few bytes
+		byte[] original = new byte[20000];
+		Arrays.fill(original, (byte) 'a');
+		Deflater deflater = new Deflater(9, true);
+		deflater.setInput(original);
+		byte[] output = new byte[1024];
+		int length = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+		deflater.end();
+
+		//Inflate it from a direct buffer
+		ByteBuffer in = ByteBuffer.allocateDirect(length);
+		in.put(output, 0, length).flip();
+		List<NioPacket> packets = serializer.deserialize(in);
+		assertFalse("The buffer should be used up", in.hasRemaining());
+		assertArrayEquals("All of the data should have been inflated", original, bytesFromPackets(packets));
+	}
+
+	/**
+	 * Tests that the deflater's flush is read out completely when it is larger
+	 * than our buffer (as it is for data which can't be compressed)
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testSmallBuffer() throws Exception
+	{
+		//Make some data which can't be compressed
+		byte[] original = new byte[4096];
+		new Random(1234).nextBytes(original);
+		final ByteBuffer data = ByteBuffer.wrap(original);
+
+		//Have our internal serializer give it out
+		NioSerializer random = mock(NioSerializer.class);
+		when(random.read(any(ByteBuffer.class))).then(new Answer<Integer>()
+		{
+			@Override
+			public Integer answer(InvocationOnMock invocation) throws Throwable
+			{
+				return DelimitedSerializer.transferMax(data, (ByteBuffer) invocation.getArguments()[0]);
+			}
+		});
+		when(random.hasData()).then(new Answer<Boolean>()
+		{
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable
+			{
+				return data.hasRemaining();
+			}
+		});
+
+		//Build a serializer with a buffer smaller than its flush
+		HashMap<String, Object> config = new HashMap<String, Object>();
+		config.put("serializer", TestUtilities.mockNioObjectFactory(random));
+		config.put("bufferSize", 64);
+		serializer = new DeflateSerializer();
+		new Injector<DeflateSerializer>(DeflateSerializer.class, config).inject(serializer, Collections.singletonMap("context", context));
+
+		//Read everything out in small pieces
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteBuffer buff = ByteBuffer.allocate(50);
+		while (serializer.hasData())
+		{
+			buff.clear();
+			serializer.read(buff);
+			out.write(buff.array(), 0, buff.position());
+		}
+
+		//Inflate it with a separate inflater
+		Inflater inflater = new Inflater(true);
+		inflater.setInput(out.toByteArray());
+		byte[] result = new byte[original.length];
+		int length = inflater.inflate(result);
+		inflater.end();
+		assertEquals("All of the data should have been flushed", original.length, length);
+		assertArrayEquals("The data which resulted from the decompression was wrong", original, result);
+	}
+
 	/**
 	 * Tests that this class can be correctly created using Json
 	 *
@@ -16,11 +16,13 @@
  */
 package io.niowire.serializer;
 
+import io.niowire.data.NioChunk;
 import io.niowire.data.NioPacket;
 import io.niowire.testutilities.TestUtilities;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -136,6 +138,198 @@ public class DelimitedSerializerTest
 		assertArrayEquals("The third packet did not have the expected result", expected3, (byte[]) output2.get(1).getData());
 	}
 
+	/**
+	 * Tests that a multiple byte delimiter is found when its first byte appears
+	 * just before it, and when it is split between two reads.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testMultiByteDelimiter() throws Exception
+	{
+		//Create a serializer which delimits on \r\n
+		DelimitedSerializer serializer = new DelimitedSerializerImpl()
+		{
+			@Override
+			public byte[] getDelimiter()
+			{
+				return "\r\n".getBytes(Charset.defaultCharset());
+			}
+		};
+
+		//The first read has a delimiter after a lone \r and ends in half of a delimiter
+		List<NioPacket> output1 = serializer.deserialize(ByteBuffer.wrap("first line\r\r\nsecond line\r".getBytes("UTF-8")));
+
+		assertEquals("There should be 1 packet returned", 1, output1.size());
+		assertArrayEquals("The first packet did not have the expected result", "first line\r".getBytes("UTF-8"), (byte[]) output1.get(0).getData());
+
+		//The second read finishes the delimiter
+		List<NioPacket> output2 = serializer.deserialize(ByteBuffer.wrap("\nthird".getBytes("UTF-8")));
+
+		assertEquals("There should be 1 packet returned", 1, output2.size());
+		assertArrayEquals("The second packet did not have the expected result", "second line".getBytes("UTF-8"), (byte[]) output2.get(0).getData());
+	}
+
+	/**
+	 * Tests that the receive buffer grows to hold a frame which arrives over
+	 * many reads, and that input larger than the receive buffer is delimited.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testGrowingBuffer() throws Exception
+	{
+		//Create a serializer with a small buffer
+		DelimitedSerializerImpl serializer = new DelimitedSerializerImpl();
+		serializer.bufferSize = 16;
+
+		//Send a large frame in small pieces
+		byte[] frame = TestUtilities.randomCharFill(new byte[1000]);
+		for (int i = 0; i < frame.length; i += 10)
+		{
+			assertTrue("There should be no packets until the delimiter", serializer.deserialize(ByteBuffer.wrap(frame, i, 10)).isEmpty());
+		}
+
+		//Finish it with a delimiter and then send many frames in one large read
+		byte[] input = TestUtilities.randomCharFill(new byte[65536]);
+		input[0] = (byte) '\n';
+		for (int i = 100; i < input.length; i += 100)
+		{
+			input[i] = (byte) '\n';
+		}
+		List<NioPacket> output = serializer.deserialize(ByteBuffer.wrap(input));
+
+		//Check we got our large frame and all of the others
+		assertEquals("The wrong number of packets were returned", 656, output.size());
+		assertArrayEquals("The large packet did not have the expected result", frame, (byte[]) output.get(0).getData());
+		assertArrayEquals("The second packet did not have the expected result", Arrays.copyOfRange(input, 1, 100), (byte[]) output.get(1).getData());
+		assertEquals("Nothing should have been skipped", 0, serializer.getSkipped());
+	}
+
+	/**
+	 * Tests that frames larger than the maximum frame size are skipped and that
+	 * the frames after them are still delimited.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testOversizedFrame() throws Exception
+	{
+		//Create a serializer with a small maximum
+		DelimitedSerializerImpl serializer = new DelimitedSerializerImpl();
+		serializer.bufferSize = 8;
+		serializer.maxFrameSize = 32;
+
+		//Send a frame that is too large followed by one that is not
+		byte[] input = TestUtilities.randomCharFill(new byte[120]);
+		input[99] = (byte) '\n';
+		input[119] = (byte) '\n';
+
+		//Send it in two reads
+		List<NioPacket> output1 = serializer.deserialize(ByteBuffer.wrap(input, 0, 50));
+		List<NioPacket> output2 = serializer.deserialize(ByteBuffer.wrap(input, 50, 70));
+
+		//Only the second frame should have been returned
+		assertTrue("The oversized frame should not be returned", output1.isEmpty());
+		assertEquals("There should be 1 packet returned", 1, output2.size());
+		assertArrayEquals("The packet did not have the expected result", Arrays.copyOfRange(input, 100, 119), (byte[]) output2.get(0).getData());
+		assertEquals("One frame should have been skipped", 1, serializer.getSkipped());
+	}
+
+	/**
+	 * Tests that frames can be ended by any of several delimiters and that the
+	 * delimiter which ended each frame is reported.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testMultipleDelimiters() throws Exception
+	{
+		final List<Integer> ends = new ArrayList<Integer>();
+
+		//Create a serializer which delimits on \n, \r\n and \0 and records which ended each frame
+		DelimitedSerializer serializer = new DelimitedSerializerImpl()
+		{
+			@Override
+			public List<NioPacket> deserializeBlob(ByteBuffer blob) throws NioInvalidDataException
+			{
+				ends.add(getFrameDelimiter());
+				return super.deserializeBlob(blob);
+			}
+
+			@Override
+			protected byte[][] getDelimiters()
+			{
+				return new byte[][]
+				{
+					"\n".getBytes(Charset.defaultCharset()), "\r\n".getBytes(Charset.defaultCharset()), "\0".getBytes(Charset.defaultCharset())
+				};
+			}
+		};
+
+		//Deserialize frames with each delimiter, splitting the \r\n between reads
+		List<NioPacket> output = new ArrayList<NioPacket>(serializer.deserialize(ByteBuffer.wrap("one\ntwo\r".getBytes("UTF-8"))));
+		output.addAll(serializer.deserialize(ByteBuffer.wrap("\nthree\0four\r\r\n".getBytes("UTF-8"))));
+
+		//Check the frames and which delimiter ended each of them
+		assertEquals("There should be 4 packets returned", 4, output.size());
+		assertArrayEquals("The first packet did not have the expected result", "one".getBytes("UTF-8"), (byte[]) output.get(0).getData());
+		assertArrayEquals("The second packet did not have the expected result", "two".getBytes("UTF-8"), (byte[]) output.get(1).getData());
+		assertArrayEquals("The third packet did not have the expected result", "three".getBytes("UTF-8"), (byte[]) output.get(2).getData());
+		assertArrayEquals("The fourth packet did not have the expected result", "four\r".getBytes("UTF-8"), (byte[]) output.get(3).getData());
+		assertEquals("The wrong delimiters were reported", Arrays.asList(0, 1, 2, 1), ends);
+	}
+
+	/**
+	 * Tests that frames larger than the buffer are sent in chunks when the
+	 * serializer is streaming, and that smaller frames are sent as normal.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testStreaming() throws Exception
+	{
+		//Create a streaming serializer with a small buffer
+		DelimitedSerializerImpl serializer = new DelimitedSerializerImpl();
+		serializer.bufferSize = 16;
+		serializer.streaming = true;
+		serializer.rawSlices = true;
+
+		//Send a large frame followed by a small one, in two reads
+		byte[] input = TestUtilities.randomCharFill(new byte[57]);
+		input[50] = (byte) '\n';
+		input[56] = (byte) '\n';
+		List<NioPacket> output = new ArrayList<NioPacket>();
+		for (NioPacket packet : serializer.deserialize(ByteBuffer.wrap(input, 0, 30)))
+		{
+			//The chunks are only valid until the next read so we must copy them
+			assertTrue("The chunk should be a read only slice", packet.hasRawBuffer() && packet.getRawBuffer().isReadOnly());
+			output.add(packet.copy());
+		}
+		output.addAll(serializer.deserialize(ByteBuffer.wrap(input, 30, 27)));
+
+		//Put the chunks back together checking their details
+		ByteBuffer frame = ByteBuffer.allocate(50);
+		int i = 0;
+		while (output.get(i).getData() instanceof NioChunk)
+		{
+			NioChunk chunk = (NioChunk) output.get(i).getData();
+			assertEquals("The chunk had the wrong offset", frame.position(), chunk.getOffset());
+			assertEquals("Only the first chunk should be first", i == 0, chunk.isFirst());
+			frame.put(output.get(i).getRawBuffer());
+			i++;
+		}
+
+		//Check the frame was sent whole in more than one chunk, the last of which was marked
+		assertTrue("The frame should have been sent in several chunks", i > 1);
+		assertTrue("The last chunk should be marked", ((NioChunk) output.get(i - 1).getData()).isLast());
+		assertArrayEquals("The chunks did not make up the frame", Arrays.copyOfRange(input, 0, 50), frame.array());
+
+		//The small frame should be sent as normal
+		assertEquals("There should be one packet after the chunks", i + 1, output.size());
+		assertArrayEquals("The small packet did not have the expected result", Arrays.copyOfRange(input, 51, 56), (byte[]) output.get(i).getData());
+	}
+
 	/**
 	 * Tests that data entered by the serialize method is able to be read back
 	 *
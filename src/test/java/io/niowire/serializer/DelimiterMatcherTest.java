@@ -0,0 +1,128 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link DelimiterMatcher}
+ *
+ * @author Trent Houliston
+ */
+public class DelimiterMatcherTest
+{
+
+	private static final Charset UTF8 = Charset.forName("utf-8");
+
+	/**
+	 * Tests that delimiters which overlap a partial match of themselves are
+	 * still found.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testOverlappingDelimiters() throws Exception
+	{
+		//A double newline after a single one
+		DelimiterMatcher matcher = new DelimiterMatcher("\r\n\r\n".getBytes(UTF8));
+		ByteBuffer buffer = ByteBuffer.wrap("head\r\n\r\r\n\r\nbody".getBytes(UTF8));
+		assertEquals("The delimiter was not found after a partial match", 11, matcher.find(buffer, 0, buffer.limit()));
+		assertEquals("There should be no more delimiters", -1, matcher.find(buffer, 11, buffer.limit()));
+
+		//A repeated first byte
+		matcher = new DelimiterMatcher("aab".getBytes(UTF8));
+		buffer = ByteBuffer.wrap("xaaab".getBytes(UTF8));
+		assertEquals("The delimiter was not found after a partial match", 5, matcher.find(buffer, 0, buffer.limit()));
+	}
+
+	/**
+	 * Tests that a delimiter split between calls is found without searching
+	 * its first half again.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testResume() throws Exception
+	{
+		DelimiterMatcher matcher = new DelimiterMatcher("\r\n\r\n".getBytes(UTF8));
+		ByteBuffer buffer = ByteBuffer.wrap("head\r\n\r\nbody".getBytes(UTF8));
+
+		//Search up to half way through the delimiter and then carry on from there
+		assertEquals("The delimiter is not complete yet", -1, matcher.find(buffer, 0, 7));
+		assertEquals("The rest of the delimiter was not found", 8, matcher.find(buffer, 7, buffer.limit()));
+
+		//If we reset the partial match is forgotten
+		assertEquals("The delimiter is not complete yet", -1, matcher.find(buffer, 0, 7));
+		matcher.reset();
+		assertEquals("The partial match should have been forgotten", -1, matcher.find(buffer, 7, buffer.limit()));
+	}
+
+	/**
+	 * Tests that the delimiter which was found is reported, and that the
+	 * longest one is reported when several end on the same byte.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testMultipleDelimiters() throws Exception
+	{
+		DelimiterMatcher matcher = new DelimiterMatcher("\n".getBytes(UTF8), "\r\n".getBytes(UTF8), "\0".getBytes(UTF8));
+		ByteBuffer buffer = ByteBuffer.wrap("a\0b\r\nc\nd\r\r\n".getBytes(UTF8));
+
+		assertEquals("Nothing should be matched yet", -1, matcher.getMatched());
+		assertEquals("The first delimiter was not found", 2, matcher.find(buffer, 0, buffer.limit()));
+		assertEquals("The wrong delimiter was reported", 2, matcher.getMatched());
+		assertEquals("The second delimiter was not found", 5, matcher.find(buffer, 2, buffer.limit()));
+		assertEquals("The longest delimiter was not reported", 1, matcher.getMatched());
+		assertEquals("The wrong length was reported", 2, matcher.getMatchedLength());
+		assertEquals("The third delimiter was not found", 7, matcher.find(buffer, 5, buffer.limit()));
+		assertEquals("The wrong delimiter was reported", 0, matcher.getMatched());
+		assertEquals("The fourth delimiter was not found", 11, matcher.find(buffer, 7, buffer.limit()));
+		assertEquals("The wrong delimiter was reported", 1, matcher.getMatched());
+		assertEquals("There should be no more delimiters", -1, matcher.find(buffer, 11, buffer.limit()));
+	}
+
+	/**
+	 * Tests that empty delimiters are rejected
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testInvalidDelimiters() throws Exception
+	{
+		try
+		{
+			new DelimiterMatcher();
+			fail("Having no delimiters should throw an exception");
+		}
+		catch (IllegalArgumentException ex)
+		{
+		}
+		try
+		{
+			new DelimiterMatcher("\n".getBytes(UTF8), new byte[0]);
+			fail("Having an empty delimiter should throw an exception");
+		}
+		catch (IllegalArgumentException ex)
+		{
+		}
+	}
+}
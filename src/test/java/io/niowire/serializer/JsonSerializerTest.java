@@ -1,10 +1,18 @@
 package io.niowire.serializer;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import io.niowire.data.NioPacket;
 import io.niowire.entities.Injector;
 import io.niowire.entities.NioObjectFactory;
 import io.niowire.server.NioConnection;
 import io.niowire.testutilities.TestUtilities;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.*;
@@ -96,6 +104,27 @@ public class JsonSerializerTest
 		assertEquals("The JSON did not serialize into the expected result", expected, result);
 	}
 
+	/**
+	 * Tests that a packet which fails part way through being written does not
+	 * break the packets written after it
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testSerializeAfterFailure() throws Exception
+	{
+		//This fails after its object has been started
+		serializer.serialize(new NioPacket("TEST", new FailingMap()));
+		serializer.serialize(new NioPacket("TEST", Collections.singletonMap("a", 1)));
+		serializer.serialize(new NioPacket("TEST", Collections.singletonList("b")));
+
+		//Only the good packets should have been written
+		ByteBuffer read = ByteBuffer.allocate(100);
+		serializer.read(read);
+		read.flip();
+		assertEquals("The packets after the failure were not written properly", "{\"a\":1}\n[\"b\"]\n", Charset.forName(charset).decode(read).toString());
+	}
+
 	/**
 	 * Test serializing POJOs works as expected
 	 *
@@ -125,6 +154,52 @@ public class JsonSerializerTest
 		assertEquals("The JSON did not serialize into the expected result", expected, result);
 	}
 
+	/**
+	 * Tests that writing straight into bytes gives exactly what Gson gives,
+	 * for awkward characters and values, across several packets queued
+	 * together and after the queue has been read.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testSerializeMatchesGson() throws Exception
+	{
+		//Make some values which Gson writes in different ways
+		LinkedHashMap<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("html", "<a href='x'>&amp;</a>");
+		map.put("escapes", "quote\" back\\ tab\t control\u0001 line\u2028");
+		map.put("unicode", "é ✓ \uD83D\uDE00 lone \uD800 end");
+		map.put("null", null);
+		map.put("number", 1.5);
+		Object[] values = new Object[]
+		{
+			map, new JsonSerializerPojoTest(), "just a string", 42, null, new int[]
+			{
+				1, 2
+			}
+		};
+		Gson gson = new GsonBuilder().disableHtmlEscaping().serializeNulls().create();
+
+		for (int round = 0; round < 2; round++)
+		{
+			//Queue all of our values before reading any
+			StringBuilder expected = new StringBuilder();
+			for (Object value : values)
+			{
+				serializer.serialize(new NioPacket("TEST", value));
+				expected.append(gson.toJson(value)).append('\n');
+			}
+
+			ByteBuffer read = ByteBuffer.allocate(1000);
+			serializer.read(read);
+			read.flip();
+			byte[] bytes = new byte[read.remaining()];
+			read.get(bytes);
+
+			assertArrayEquals("The JSON was not the same as Gson writes", expected.toString().getBytes(charset), bytes);
+		}
+	}
+
 	/**
 	 * Test deserializing into POJOs works as expected
 	 *
@@ -305,6 +380,140 @@ public class JsonSerializerTest
 		assertEquals("The returned data was not what was expected", expected, packets.get(0).getData());
 	}
 
+	/**
+	 * Tests that lines which start as valid JSON but are not (or which have
+	 * something after their value) are ignored, and that the lines around them
+	 * are still parsed.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testMalformedJson() throws Exception
+	{
+		//Create some json which is broken part way through
+		String message = "{\"a\":1\n"
+						 + "[1,2]\n"
+						 + "{\"a\":}\n"
+						 + "{\"a\":1} {\"b\":2}\n"
+						 + "\n"
+						 + "{\"b\":\r\n";
+
+		//Deserialize it
+		List<NioPacket> packets = serializer.deserialize(ByteBuffer.wrap(message.getBytes(charset)));
+
+		//Only the array should have been returned
+		assertEquals("Only a single packet should have been returned", 1, packets.size());
+		assertEquals("The returned data was not what was expected", Arrays.asList(1.0, 2.0), packets.get(0).getData());
+	}
+
+	/**
+	 * Tests that long lines which mix ASCII, other characters and carriage
+	 * returns are parsed the same as their String would be.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testLongMixedLine() throws Exception
+	{
+		//Build a line that is longer than the parser's buffer with the non ASCII part of the way in
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 3000; i++)
+		{
+			value.append(i == 1500 ? '✓' : (char) ('a' + i % 26));
+		}
+		String message = "{\r\"key\":\r\"" + value + "\"}\r\n";
+
+		//Deserialize it
+		List<NioPacket> packets = serializer.deserialize(ByteBuffer.wrap(message.getBytes(charset)));
+
+		assertEquals("There should be 1 packet", 1, packets.size());
+		assertEquals("The value was not parsed properly", value.toString(), ((Map) packets.get(0).getData()).get("key"));
+	}
+
+	/**
+	 * Tests that serializers made by the same factory share one Gson, that
+	 * serializers from another factory do not and that configured type adapter
+	 * factories are used.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testSharedGson() throws Exception
+	{
+		HashMap<String, Object> config = new HashMap<String, Object>(2);
+		config.put("charset", charset);
+		config.put("typeAdapterFactories", Collections.singletonList(UpperCaseAdapterFactory.class.getName()));
+
+		//Make serializers from two factories with the same configuration
+		NioObjectFactory<JsonSerializer> factory = new NioObjectFactory<JsonSerializer>(JsonSerializer.class, config);
+		NioObjectFactory<JsonSerializer> other = new NioObjectFactory<JsonSerializer>(JsonSerializer.class, config);
+		factory.warm();
+		JsonSerializer first = factory.create();
+		JsonSerializer second = factory.create();
+		JsonSerializer third = other.create();
+
+		assertSame("Serializers from the same factory should share their Gson", first.g, second.g);
+		assertSame("The Gson should have been made when the factory was warmed", factory.getShared().values().iterator().next(), first.g);
+		assertNotSame("Serializers from different factories should not share their Gson", first.g, third.g);
+
+		//Our type adapter factory upper cases strings
+		second.serialize(new NioPacket("TEST", Collections.singletonMap("a", "hello")));
+		ByteBuffer read = ByteBuffer.allocate(100);
+		second.read(read);
+		read.flip();
+		assertEquals("The type adapter factory was not used", "{\"a\":\"HELLO\"}\n", Charset.forName(charset).decode(read).toString());
+	}
+
+	/**
+	 * A type adapter factory which writes strings in upper case
+	 */
+	public static class UpperCaseAdapterFactory implements TypeAdapterFactory
+	{
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type)
+		{
+			if (type.getRawType() != String.class)
+			{
+				return null;
+			}
+			return (TypeAdapter<T>) new TypeAdapter<String>()
+			{
+				@Override
+				public void write(JsonWriter out, String value) throws IOException
+				{
+					out.value(value == null ? null : value.toUpperCase(Locale.ENGLISH));
+				}
+
+				@Override
+				public String read(JsonReader in) throws IOException
+				{
+					return in.nextString();
+				}
+			};
+		}
+	}
+
+	/**
+	 * A map which fails when its entries are written
+	 */
+	public static class FailingMap extends LinkedHashMap<String, Object>
+	{
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet()
+		{
+			throw new IllegalStateException("Failing on purpose");
+		}
+	}
+
 	/**
 	 * Static class for testing the serializing of POJOs
 	 */
@@ -0,0 +1,413 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import io.niowire.data.NioPacket;
+import io.niowire.entities.Initialize;
+import io.niowire.entities.NioObjectFactory;
+import io.niowire.entities.Warm;
+import io.niowire.server.NioConnection.Context;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the {@link LengthPrefixedSerializer}
+ *
+ * @author Trent Houliston
+ */
+public class LengthPrefixedSerializerTest
+{
+
+	/**
+	 * Builds a new serializer with the passed configuration
+	 *
+	 * @param configuration the configuration
+	 *
+	 * @return the serializer
+	 *
+	 * @throws Exception
+	 */
+	private static LengthPrefixedSerializer build(Map<String, Object> configuration) throws Exception
+	{
+		//Mock a context
+		Context context = mock(Context.class);
+		when(context.getUid()).thenReturn("TEST");
+
+		NioObjectFactory<LengthPrefixedSerializer> factory = new NioObjectFactory<LengthPrefixedSerializer>(LengthPrefixedSerializer.class, configuration);
+		return factory.create(Collections.singletonMap("context", context));
+	}
+
+	/**
+	 * Builds a configuration with the passed prefix
+	 *
+	 * @param prefix the length prefix
+	 *
+	 * @return the configuration
+	 */
+	private static Map<String, Object> config(String prefix)
+	{
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put("prefix", prefix);
+		return configuration;
+	}
+
+	/**
+	 * Reads the remaining bytes of a buffer into an array
+	 *
+	 * @param buffer the buffer to read
+	 *
+	 * @return the bytes
+	 */
+	private static byte[] bytes(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.duplicate().get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Tests that each kind of length field can be written and read back
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testRoundTrip() throws Exception
+	{
+		byte[] body = new byte[300];
+		for (int i = 0; i < body.length; i++)
+		{
+			body[i] = (byte) i;
+		}
+
+		for (LengthPrefix prefix : LengthPrefix.values())
+		{
+			//UINT8 can't hold our large body
+			byte[] data = prefix == LengthPrefix.UINT8 ? new byte[]
+			{
+				1, 2, 3
+			} : body;
+
+			//Serialize a frame
+			LengthPrefixedSerializer serializer = build(config(prefix.name().toLowerCase()));
+			serializer.serialize(new NioPacket("TEST", data));
+			assertTrue("The serializer should have data for " + prefix, serializer.hasData());
+			ByteBuffer wire = ByteBuffer.allocate(1024);
+			serializer.read(wire);
+			wire.flip();
+			assertEquals("The frame was the wrong size for " + prefix, prefix.sizeOf(data.length) + data.length, wire.remaining());
+
+			//Read it back
+			List<NioPacket> packets = serializer.deserialize(wire);
+			assertEquals("There should be one frame for " + prefix, 1, packets.size());
+			assertTrue("The packet should be raw", packets.get(0).isRaw());
+			assertArrayEquals("The frame was wrong for " + prefix, data, packets.get(0).getRawData());
+			assertEquals("The packet should have the source", "TEST", packets.get(0).getSource());
+		}
+	}
+
+	/**
+	 * Tests the byte order and encoding of the length fields
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testLengthEncoding() throws Exception
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+
+		LengthPrefix.UINT16_BE.write(0x0102, buffer);
+		LengthPrefix.UINT16_LE.write(0x0102, buffer);
+		buffer.flip();
+		assertArrayEquals("The lengths were written in the wrong order", new byte[]
+		{
+			1, 2, 2, 1
+		}, bytes(buffer));
+
+		//300 as a varint is 0xAC 0x02
+		buffer.clear();
+		LengthPrefix.VARINT.write(300, buffer);
+		buffer.flip();
+		assertArrayEquals("The varint was wrong", new byte[]
+		{
+			(byte) 0xAC, 0x02
+		}, bytes(buffer));
+		assertEquals("The varint size was wrong", 2, LengthPrefix.VARINT.sizeOf(300));
+		assertEquals("The varint size was wrong", 1, LengthPrefix.VARINT.sizeOf(127));
+		assertEquals("The varint was read wrong", 300, LengthPrefix.VARINT.read(new byte[]
+		{
+			(byte) 0xAC, 0x02
+		}, 2));
+	}
+
+	/**
+	 * Tests that by default each frame is copied, so the packets do not change
+	 * when the receive buffer is reused
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testCopiesByDefault() throws Exception
+	{
+		LengthPrefixedSerializer serializer = build(config("UINT8"));
+
+		//Read a frame and then overwrite the receive buffer
+		ByteBuffer received = ByteBuffer.wrap(new byte[]
+		{
+			2, 10, 11
+		});
+		NioPacket packet = serializer.deserialize(received).get(0);
+		received.put(1, (byte) 99);
+
+		//The packet should hold its own copy
+		assertFalse("The frame should not be a slice", packet.hasRawBuffer());
+		assertArrayEquals("The frame should be a copy", new byte[]
+		{
+			10, 11
+		}, packet.getRawData());
+		assertArrayEquals("The data should be a view of the copy", new byte[]
+		{
+			10, 11
+		}, bytes((ByteBuffer) packet.getData()));
+	}
+
+	/**
+	 * Tests that when asked for slices, frames which arrive whole are slices
+	 * of the receive buffer rather than copies
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testZeroCopy() throws Exception
+	{
+		Map<String, Object> configuration = config("UINT8");
+		configuration.put("rawSlices", true);
+		LengthPrefixedSerializer serializer = build(configuration);
+
+		//Two frames in one read
+		ByteBuffer received = ByteBuffer.wrap(new byte[]
+		{
+			2, 10, 11, 1, 12
+		});
+		List<NioPacket> packets = serializer.deserialize(received);
+		assertEquals("There should be two frames", 2, packets.size());
+
+		//Changing the receive buffer should be seen through the packet
+		received.put(1, (byte) 99);
+		ByteBuffer slice = packets.get(0).getRawBuffer();
+		assertTrue("The slice should be read only", slice.isReadOnly());
+		assertArrayEquals("The frame should be a slice of the receive buffer", new byte[]
+		{
+			99, 11
+		}, bytes(slice));
+		assertArrayEquals("The second frame was wrong", new byte[]
+		{
+			12
+		}, bytes(packets.get(1).getRawBuffer()));
+	}
+
+	/**
+	 * Tests that frames and length fields which are split between reads are
+	 * assembled
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testSplitFrames() throws Exception
+	{
+		LengthPrefixedSerializer serializer = build(config("UINT32_LE"));
+
+		//Half of the length field
+		assertTrue("There should be no frames yet", serializer.deserialize(ByteBuffer.wrap(new byte[]
+		{
+			3, 0
+		})).isEmpty());
+
+		//The rest of the length field and part of the body
+		assertTrue("There should be no frames yet", serializer.deserialize(ByteBuffer.wrap(new byte[]
+		{
+			0, 0, 1, 2
+		})).isEmpty());
+
+		//The end of the body and the start of another frame (which is also split)
+		List<NioPacket> packets = serializer.deserialize(ByteBuffer.wrap(new byte[]
+		{
+			3, 1, 0, 0, 0
+		}));
+		assertEquals("There should be one frame", 1, packets.size());
+		byte[] first = packets.get(0).getRawData();
+		assertArrayEquals("The frame was wrong", new byte[]
+		{
+			1, 2, 3
+		}, first);
+
+		//Finish the second frame
+		packets = serializer.deserialize(ByteBuffer.wrap(new byte[]
+		{
+			4
+		}));
+		assertArrayEquals("The frame was wrong", new byte[]
+		{
+			4
+		}, packets.get(0).getRawData());
+	}
+
+	/**
+	 * Tests that oversized frames are skipped from their length field without
+	 * affecting the frames after them
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testOversizedFrame() throws Exception
+	{
+		Map<String, Object> configuration = config("UINT16_BE");
+		configuration.put("maxFrameSize", 4);
+		LengthPrefixedSerializer serializer = build(configuration);
+
+		//A frame of 6 bytes split over two reads followed by a valid frame
+		assertTrue("The large frame should be skipped", serializer.deserialize(ByteBuffer.wrap(new byte[]
+		{
+			0, 6, 1, 2, 3
+		})).isEmpty());
+		assertEquals("The frame should have been counted", 1, serializer.getSkipped());
+		List<NioPacket> packets = serializer.deserialize(ByteBuffer.wrap(new byte[]
+		{
+			4, 5, 6, 0, 1, 7
+		}));
+		assertEquals("There should be one frame", 1, packets.size());
+		assertArrayEquals("The frame after the skipped one was wrong", new byte[]
+		{
+			7
+		}, packets.get(0).getRawData());
+
+		//Frames which are too large are not sent
+		serializer.serialize(new NioPacket("TEST", new byte[5]));
+		assertFalse("The large frame should not have been sent", serializer.hasData());
+	}
+
+	/**
+	 * Tests that a codec is used to decode and encode the frame bodies
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testCodec() throws Exception
+	{
+		Map<String, Object> codec = new HashMap<String, Object>();
+		codec.put("class", StringFrameCodec.class.getName());
+		codec.put("configuration", Collections.singletonMap("charset", "utf-8"));
+		Map<String, Object> configuration = config("VARINT");
+		configuration.put("codec", codec);
+		LengthPrefixedSerializer serializer = build(configuration);
+
+		//Encode a string
+		serializer.serialize(new NioPacket("TEST", "Hello"));
+		ByteBuffer wire = ByteBuffer.allocate(100);
+		serializer.read(wire);
+		wire.flip();
+		assertEquals("The length was wrong", 5, wire.get(0));
+
+		//Decode it again
+		List<NioPacket> packets = serializer.deserialize(wire);
+		assertEquals("The frame was not decoded", "Hello", packets.get(0).getData());
+	}
+
+	/**
+	 * Tests that warming the serializer's factory warms its codec's factory
+	 * without making a serializer or a codec
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testWarm() throws Exception
+	{
+		Map<String, Object> configuration = config("VARINT");
+		configuration.put("codec", Collections.singletonMap("class", WarmCodec.class.getName()));
+		NioObjectFactory<LengthPrefixedSerializer> factory = new NioObjectFactory<LengthPrefixedSerializer>(LengthPrefixedSerializer.class, configuration);
+		WarmCodec.WARMED.set(0);
+		WarmCodec.MADE.set(0);
+
+		factory.warm();
+		assertEquals("The codec factory should have been warmed", 1, WarmCodec.WARMED.get());
+		assertEquals("No codec should have been made", 0, WarmCodec.MADE.get());
+
+		//The codecs made later use the factory that was warmed
+		LengthPrefixedSerializer serializer = factory.create(Collections.singletonMap("context", mock(Context.class)));
+		assertEquals("The codec should share what was built when warming", Boolean.TRUE, serializer.codecFactory.getShared().get("warmed"));
+		assertEquals("One codec should have been made", 1, WarmCodec.MADE.get());
+	}
+
+	/**
+	 * Tests that once closed the serializer throws closed exceptions
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000, expected = ClosedChannelException.class)
+	public void testClose() throws Exception
+	{
+		LengthPrefixedSerializer serializer = build(config("UINT8"));
+		assertTrue("The serializer should be open", serializer.isOpen());
+		serializer.close();
+		assertFalse("The serializer should be closed", serializer.isOpen());
+		serializer.deserialize(ByteBuffer.allocate(1));
+	}
+
+	/**
+	 * A codec which counts how often it is warmed and made
+	 */
+	public static class WarmCodec implements NioFrameCodec
+	{
+
+		private static final AtomicInteger WARMED = new AtomicInteger();
+		private static final AtomicInteger MADE = new AtomicInteger();
+
+		@Warm
+		static void warm(Map<String, Object> values, ConcurrentMap<String, Object> shared)
+		{
+			WARMED.incrementAndGet();
+			shared.put("warmed", Boolean.TRUE);
+		}
+
+		@Initialize
+		public void made()
+		{
+			MADE.incrementAndGet();
+		}
+
+		@Override
+		public Object decode(ByteBuffer frame)
+		{
+			return frame;
+		}
+
+		@Override
+		public ByteBuffer encode(Object data)
+		{
+			return (ByteBuffer) data;
+		}
+	}
+}
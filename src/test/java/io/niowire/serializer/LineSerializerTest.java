@@ -17,6 +17,7 @@
 package io.niowire.serializer;
 
 import io.niowire.data.NioPacket;
+import io.niowire.data.NioPacketPool;
 import io.niowire.entities.Injector;
 import io.niowire.entities.NioObjectFactory;
 import io.niowire.server.NioConnection;
@@ -170,6 +171,50 @@ public class LineSerializerTest
 		}
 	}
 
+	/**
+	 * Tests that a pooled serializer takes its packets from the connection's
+	 * pool and reuses them once they are released
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testPooledDeserialize() throws Exception
+	{
+		//Mock a context with a packet pool
+		NioPacketPool pool = new NioPacketPool(4, false);
+		Context context = mock(NioConnection.Context.class);
+		when(context.getUid()).thenReturn("TEST");
+		when(context.getPacketPool()).thenReturn(pool);
+
+		//Build a pooled serializer
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put("charset", "utf-8");
+		configuration.put("pooled", true);
+		LineSerializer serializer = new LineSerializer();
+		Injector<LineSerializer> injector = new Injector<LineSerializer>(LineSerializer.class, configuration);
+		injector.inject(serializer, Collections.singletonMap("context", context));
+
+		//Deserialize two lines
+		List<NioPacket> packets = serializer.deserialize(ByteBuffer.wrap("Hello\nWorld\n".getBytes("utf-8")));
+		assertEquals("There should be 2 packets returned", 2, packets.size());
+		assertEquals("The wrong data was returned", "Hello", packets.get(0).getData());
+		assertEquals("The wrong data was returned", "World", packets.get(1).getData());
+		assertEquals("The wrong source was returned", "TEST", packets.get(1).getSource());
+
+		//Keep a copy and release the packets
+		NioPacket first = packets.get(0);
+		NioPacket copy = first.copy();
+		first.release();
+		packets.get(1).release();
+		assertEquals("The released packets should be in the pool", 2, pool.size());
+
+		//The next packet should reuse a released one while our copy is untouched
+		packets = serializer.deserialize(ByteBuffer.wrap("Again\n".getBytes("utf-8")));
+		assertEquals("The wrong data was returned", "Again", packets.get(0).getData());
+		assertEquals("A packet should have been reused", 1, pool.size());
+		assertEquals("The copy should not have changed", "Hello", copy.getData());
+	}
+
 	/**
 	 * Tests that the program can handle input with \r\n or just \n (note that
 	 * at present it does not handle just \r)
@@ -216,6 +261,107 @@ public class LineSerializerTest
 		}
 	}
 
+	/**
+	 * Tests that extra line endings can be configured, and that the raw data of
+	 * each line includes the line ending which ended it.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testExtraDelimiters() throws Exception
+	{
+		//Using UTF-8
+		String charset = "utf-8";
+
+		//Set up some test data, lines can be ended by \n, \r\n or \0
+		String message = "First\0Second\r\nThird\nFourth\0";
+
+		//Mock a context
+		Context context = mock(NioConnection.Context.class);
+		when(context.getUid()).thenReturn("TEST");
+
+		//Build our serializer
+		LineSerializer serializer = new LineSerializer();
+
+		//Push through a configuration
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put("charset", charset);
+		configuration.put("raw", true);
+		configuration.put("rawSlices", true);
+		configuration.put("delimiters", Arrays.asList("\0"));
+		Injector<LineSerializer> injector = new Injector<LineSerializer>(LineSerializer.class, configuration);
+		injector.inject(serializer, Collections.singletonMap("context", context));
+
+		//Deserialize it in two halves (splitting the \r\n)
+		byte[] bytes = message.getBytes(charset);
+		List<NioPacket> packets = new ArrayList<NioPacket>(serializer.deserialize(ByteBuffer.wrap(bytes, 0, 13)));
+		packets.addAll(serializer.deserialize(ByteBuffer.wrap(bytes, 13, bytes.length - 13)));
+
+		//Check we got each line with its own ending
+		String[] expected =
+		{
+			"First", "Second", "Third", "Fourth"
+		};
+		String[] endings =
+		{
+			"First\0", "Second\r\n", "Third\n", "Fourth\0"
+		};
+		assertEquals("There should be 4 packets returned", 4, packets.size());
+		for (int i = 0; i < packets.size(); i++)
+		{
+			assertEquals("The wrong data was returned for packet " + i, expected[i], packets.get(i).getData());
+			assertArrayEquals("The wrong raw data was returned for packet " + i, endings[i].getBytes(charset), packets.get(i).getRawData());
+		}
+	}
+
+	/**
+	 * Tests that lines decoded directly (UTF-8 and US-ASCII) and through the
+	 * decoder (UTF-16) are the same as decoding the whole line with the
+	 * charset and then removing its carriage returns, including lines with
+	 * invalid bytes and carriage returns in the middle of them.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 5000)
+	public void testDecodingMatchesCharset() throws Exception
+	{
+		Random random = new Random(42);
+
+		for (String charset : Arrays.asList("UTF-8", "US-ASCII", "UTF-16BE"))
+		{
+			//Build our serializer
+			Context context = mock(NioConnection.Context.class);
+			when(context.getUid()).thenReturn("TEST");
+			LineSerializer serializer = new LineSerializer();
+			Injector<LineSerializer> injector = new Injector<LineSerializer>(LineSerializer.class, Collections.singletonMap("charset", charset));
+			injector.inject(serializer, Collections.singletonMap("context", context));
+			CharsetDecoder decoder = Charset.forName(charset).newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+			byte[] newline = "\n".getBytes(charset);
+
+			for (int i = 0; i < 500; i++)
+			{
+				//Make a line of mostly ASCII with some carriage returns and high bytes (and no newlines)
+				byte[] line = new byte[random.nextInt(40)];
+				for (int j = 0; j < line.length; j++)
+				{
+					int type = random.nextInt(10);
+					line[j] = (byte) (type == 0 ? '\r' : type == 1 ? 0x80 + random.nextInt(128) : 'a' + random.nextInt(26));
+				}
+
+				//Our expected result is the old way of decoding
+				String expected = decoder.decode(ByteBuffer.wrap(line)).toString().replaceAll("\r", "");
+
+				//Deserialize the line followed by a newline
+				ByteBuffer data = ByteBuffer.allocate(line.length + newline.length);
+				data.put(line).put(newline).flip();
+				List<NioPacket> packets = serializer.deserialize(data);
+
+				assertEquals("There should be one packet for " + Arrays.toString(line) + " in " + charset, 1, packets.size());
+				assertEquals("The line was decoded differently for " + Arrays.toString(line) + " in " + charset, expected, packets.get(0).getData());
+			}
+		}
+	}
+
 	/**
 	 * Tests that several character sets work with the system
 	 *
@@ -491,6 +637,87 @@ public class LineSerializerTest
 		assertArrayEquals("The returned data was not the expected result", expected, result);
 	}
 
+	/**
+	 * Tests that by default the raw data of a line is the line without its
+	 * carriage returns followed by a newline (whichever delimiter ended it),
+	 * rather than the bytes exactly as they were received
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testRawNormalised() throws Exception
+	{
+		//Mock a context
+		Context context = mock(NioConnection.Context.class);
+		when(context.getUid()).thenReturn("TEST");
+
+		//Build a raw serializer which also accepts \0
+		HashMap<String, Object> config = new HashMap<String, Object>(3);
+		config.put("charset", "utf-8");
+		config.put("raw", true);
+		config.put("delimiters", Arrays.asList("\0"));
+		LineSerializer serializer = new LineSerializer();
+		Injector<LineSerializer> injector = new Injector<LineSerializer>(LineSerializer.class, config);
+		injector.inject(serializer, Collections.singletonMap("context", context));
+
+		//Each line's raw data should be normalised and be its own copy
+		List<NioPacket> packets = serializer.deserialize(ByteBuffer.wrap("He\rllo\r\nWorld\0".getBytes("utf-8")));
+		assertEquals("There should be 2 packets returned", 2, packets.size());
+		assertEquals("The wrong data was returned", "Hello", packets.get(0).getData());
+		assertArrayEquals("The raw data should be normalised", "Hello\n".getBytes("utf-8"), packets.get(0).getRawData());
+		assertArrayEquals("The raw data should be normalised", "World\n".getBytes("utf-8"), packets.get(1).getRawData());
+		assertFalse("The raw data should not be a slice", packets.get(0).hasRawBuffer());
+	}
+
+	/**
+	 * Tests that raw packets carry a read only slice of the receive buffer
+	 * which is sent straight back through without being copied, and that a
+	 * slice which is still waiting to be sent survives the next read
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testRawPassthrough() throws Exception
+	{
+		//Mock a context
+		Context context = mock(NioConnection.Context.class);
+		when(context.getUid()).thenReturn("TEST");
+
+		//Build a raw serializer which gives out slices
+		HashMap<String, Object> config = new HashMap<String, Object>(3);
+		config.put("charset", "utf-8");
+		config.put("raw", true);
+		config.put("rawSlices", true);
+		LineSerializer serializer = new LineSerializer();
+		Injector<LineSerializer> injector = new Injector<LineSerializer>(LineSerializer.class, config);
+		injector.inject(serializer, Collections.singletonMap("context", context));
+
+		//Deserialize a line with a carriage return (raw data is passed through exactly)
+		List<NioPacket> packets = serializer.deserialize(ByteBuffer.wrap("Hello\r\n".getBytes("utf-8")));
+		NioPacket packet = packets.get(0);
+		assertEquals("The wrong data was returned", "Hello", packet.getData());
+		assertTrue("The raw data should be a slice of the receive buffer", packet.hasRawBuffer());
+		assertTrue("The raw data should be read only", packet.getRawBuffer().isReadOnly());
+		assertEquals("The raw data should hold the line and delimiter", 7, packet.getRawBuffer().remaining());
+
+		//Send it back and keep a copy of the packet
+		serializer.serialize(packet);
+		NioPacket copy = packet.copy();
+		assertFalse("The copy should not be a slice", copy.hasRawBuffer());
+
+		//Read another line (which reuses the receive buffer) before our slice is sent
+		serializer.deserialize(ByteBuffer.wrap("Overwritten\n".getBytes("utf-8")));
+
+		//Our echoed line should not have been overwritten
+		ByteBuffer buffer = ByteBuffer.allocate(100);
+		serializer.read(buffer);
+		buffer.flip();
+		byte[] result = new byte[buffer.remaining()];
+		buffer.get(result);
+		assertEquals("The echoed data was not correct", "Hello\r\n", new String(result, "utf-8"));
+		assertArrayEquals("The copy was not correct", "Hello\r\n".getBytes("utf-8"), copy.getRawData());
+	}
+
 	/**
 	 * Tests that if the serializer is not setup as a raw serializer, it ignores
 	 * raw data
@@ -0,0 +1,387 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import io.niowire.data.NioPacket;
+import io.niowire.entities.NioObjectFactory;
+import io.niowire.server.NioConnection.Context;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the {@link MessagePackCodec}
+ *
+ * @author Trent Houliston
+ */
+public class MessagePackCodecTest
+{
+
+	/**
+	 * Builds a new codec with the passed configuration
+	 *
+	 * @param configuration the configuration
+	 *
+	 * @return the codec
+	 *
+	 * @throws Exception
+	 */
+	private static MessagePackCodec build(Map<String, Object> configuration) throws Exception
+	{
+		return new NioObjectFactory<MessagePackCodec>(MessagePackCodec.class, configuration).create();
+	}
+
+	/**
+	 * Makes a byte array from ints (so we don't need casts)
+	 *
+	 * @param values the values of the bytes
+	 *
+	 * @return the bytes
+	 */
+	private static byte[] bytes(int... values)
+	{
+		byte[] result = new byte[values.length];
+		for (int i = 0; i < values.length; i++)
+		{
+			result[i] = (byte) values[i];
+		}
+		return result;
+	}
+
+	/**
+	 * Reads the remaining bytes of a buffer into an array
+	 *
+	 * @param buffer the buffer to read
+	 *
+	 * @return the bytes
+	 */
+	private static byte[] read(ByteBuffer buffer)
+	{
+		byte[] result = new byte[buffer.remaining()];
+		buffer.duplicate().get(result);
+		return result;
+	}
+
+	/**
+	 * Tests that values are encoded in their smallest MessagePack form
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testEncode() throws Exception
+	{
+		MessagePackCodec codec = build(Collections.<String, Object>emptyMap());
+
+		assertArrayEquals(bytes(0x81, 0xA1, 'a', 0x01), read(codec.encode(Collections.singletonMap("a", 1))));
+		assertArrayEquals(bytes(0x96, 0x01, 0xFF, 0xCD, 0x01, 0x2C, 0xD0, 0x80, 0xC3, 0xC0),
+							read(codec.encode(Arrays.asList(1, -1, 300, -128, true, null))));
+		assertArrayEquals(bytes(0xCB, 0x3F, 0xF8, 0, 0, 0, 0, 0, 0), read(codec.encode(1.5)));
+		assertArrayEquals(bytes(0xCA, 0x3F, 0xC0, 0, 0), read(codec.encode(1.5f)));
+		assertArrayEquals(bytes(0xCF, 0, 0, 0, 1, 0, 0, 0, 0), read(codec.encode(4294967296L)));
+		assertArrayEquals(bytes(0xD3, 0xFF, 0xFF, 0xFF, 0xFE, 0xFF, 0xFF, 0xFF, 0xFF), read(codec.encode(-4294967297L)));
+		assertArrayEquals(bytes(0xA2, 0xC3, 0xA9), read(codec.encode("é")));
+		assertArrayEquals(bytes(0x92, 0x01, 0x02), read(codec.encode(new int[]
+		{
+			1, 2
+		})));
+
+		//A long string uses the 8 bit length form
+		char[] chars = new char[40];
+		Arrays.fill(chars, 'x');
+		byte[] encoded = read(codec.encode(new String(chars)));
+		assertEquals("A 40 byte string should use str8", 0xD9, encoded[0] & 0xFF);
+		assertEquals("A 40 byte string should have its length", 40, encoded[1]);
+		assertEquals("A 40 byte string should be 42 bytes", 42, encoded.length);
+	}
+
+	/**
+	 * Tests that objects written through Gson are the same as the maps and
+	 * lists they would be written as, including when they need the larger
+	 * size headers.
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testEncodePojo() throws Exception
+	{
+		MessagePackCodec codec = build(Collections.<String, Object>emptyMap());
+
+		//Make a pojo and the map it should be written as
+		Pojo pojo = new Pojo();
+		for (int i = 0; i < 20; i++)
+		{
+			pojo.values.add(i * 100);
+		}
+		for (int i = 0; i < 3; i++)
+		{
+			pojo.nested.put("key" + i, Collections.singletonMap("inner", i));
+		}
+		Map<String, Object> expected = new LinkedHashMap<String, Object>();
+		expected.put("name", pojo.name);
+		expected.put("count", pojo.count);
+		expected.put("ratio", pojo.ratio);
+		expected.put("missing", null);
+		expected.put("values", pojo.values);
+		expected.put("nested", pojo.nested);
+		expected.put("big", pojo.big);
+
+		assertArrayEquals("The pojo was not written as its map would be", read(codec.encode(expected)), read(codec.encode(pojo)));
+
+		//And inside a map
+		assertArrayEquals("The nested pojo was not written as its map would be",
+						  read(codec.encode(Collections.singletonMap("pojo", expected))),
+						  read(codec.encode(Collections.singletonMap("pojo", pojo))));
+	}
+
+	/**
+	 * Tests that each MessagePack type is decoded into the shapes that JSON
+	 * would give
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testDecode() throws Exception
+	{
+		MessagePackCodec codec = build(Collections.<String, Object>emptyMap());
+
+		assertEquals(5.0, codec.decode(ByteBuffer.wrap(bytes(0x05))));
+		assertEquals(-5.0, codec.decode(ByteBuffer.wrap(bytes(0xFB))));
+		assertEquals(200.0, codec.decode(ByteBuffer.wrap(bytes(0xCC, 0xC8))));
+		assertEquals(65535.0, codec.decode(ByteBuffer.wrap(bytes(0xCD, 0xFF, 0xFF))));
+		assertEquals(4294967295.0, codec.decode(ByteBuffer.wrap(bytes(0xCE, 0xFF, 0xFF, 0xFF, 0xFF))));
+		assertEquals(18446744073709551615.0, codec.decode(ByteBuffer.wrap(bytes(0xCF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF))));
+		assertEquals(-128.0, codec.decode(ByteBuffer.wrap(bytes(0xD0, 0x80))));
+		assertEquals(-32768.0, codec.decode(ByteBuffer.wrap(bytes(0xD1, 0x80, 0x00))));
+		assertEquals(-1.0, codec.decode(ByteBuffer.wrap(bytes(0xD2, 0xFF, 0xFF, 0xFF, 0xFF))));
+		assertEquals(-1.0, codec.decode(ByteBuffer.wrap(bytes(0xD3, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF))));
+		assertEquals(1.5, codec.decode(ByteBuffer.wrap(bytes(0xCA, 0x3F, 0xC0, 0, 0))));
+		assertEquals("ab", codec.decode(ByteBuffer.wrap(bytes(0xD9, 0x02, 'a', 'b'))));
+		assertEquals("ab", codec.decode(ByteBuffer.wrap(bytes(0xDA, 0x00, 0x02, 'a', 'b'))));
+		assertArrayEquals(bytes('a', 'b'), (byte[]) codec.decode(ByteBuffer.wrap(bytes(0xC4, 0x02, 'a', 'b'))));
+		assertEquals(Boolean.FALSE, codec.decode(ByteBuffer.wrap(bytes(0xC2))));
+		assertNull(codec.decode(ByteBuffer.wrap(bytes(0xC0))));
+		assertEquals(Arrays.asList(1.0, 2.0), codec.decode(ByteBuffer.wrap(bytes(0xDC, 0x00, 0x02, 0x01, 0x02))));
+		assertEquals(Collections.singletonMap("1", true), codec.decode(ByteBuffer.wrap(bytes(0xDE, 0x00, 0x01, 0x01, 0xC3))));
+
+		//A read only buffer can't have its array read directly
+		assertEquals("é", codec.decode(ByteBuffer.wrap(bytes(0xA2, 0xC3, 0xA9)).asReadOnlyBuffer()));
+	}
+
+	/**
+	 * Tests that binary values which are not valid UTF-8 are decoded as byte
+	 * arrays and are encoded back as the same binary values
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testBinary() throws Exception
+	{
+		MessagePackCodec codec = build(Collections.<String, Object>emptyMap());
+
+		//Bytes which are not UTF-8 in each size of binary
+		byte[] invalid = bytes(0xFF, 0xFE, 0x00, 0xC3, 0x28);
+		byte[] medium = new byte[300];
+		byte[] large = new byte[70000];
+		new Random(42).nextBytes(medium);
+		new Random(43).nextBytes(large);
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("small", invalid);
+		map.put("medium", medium);
+		map.put("large", large);
+
+		//They should be written as bin 8, bin 16 and bin 32
+		byte[] encoded = read(codec.encode(invalid));
+		assertArrayEquals(bytes(0xC4, 0x05, 0xFF, 0xFE, 0x00, 0xC3, 0x28), encoded);
+		assertEquals("300 bytes should use bin16", 0xC5, read(codec.encode(medium))[0] & 0xFF);
+		assertEquals("70000 bytes should use bin32", 0xC6, read(codec.encode(large))[0] & 0xFF);
+
+		//And come back as the same bytes
+		Map<?, ?> result = (Map<?, ?>) codec.decode(codec.encode(map));
+		assertArrayEquals(invalid, (byte[]) result.get("small"));
+		assertArrayEquals(medium, (byte[]) result.get("medium"));
+		assertArrayEquals(large, (byte[]) result.get("large"));
+
+		//Binary should also bind to a byte[] in a pojo and round trip
+		MessagePackCodec binding = build(Collections.<String, Object>singletonMap("pojoClass", BinaryPojo.class.getName()));
+		BinaryPojo pojo = (BinaryPojo) binding.decode(ByteBuffer.wrap(bytes(0x81, 0xA4, 'd', 'a', 't', 'a', 0xC4, 0x05, 0xFF, 0xFE, 0x00, 0xC3, 0x28)));
+		assertArrayEquals(invalid, pojo.data);
+		assertArrayEquals(bytes(0x82, 0xA4, 'd', 'a', 't', 'a', 0xC4, 0x05, 0xFF, 0xFE, 0x00, 0xC3, 0x28, 0xA2, 'i', 'd', 0xC0), read(binding.encode(pojo)));
+	}
+
+	/**
+	 * Tests that uint64 values of 2^63 and above are rounded to doubles in
+	 * maps and lists but kept exactly when bound to a pojo
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testUnsignedLong() throws Exception
+	{
+		byte[] frame = bytes(0x81, 0xA2, 'i', 'd', 0xCF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF);
+
+		//As a map the value is a (rounded) double, as every number is
+		MessagePackCodec codec = build(Collections.<String, Object>emptyMap());
+		assertEquals(18446744073709551615.0, ((Map<?, ?>) codec.decode(ByteBuffer.wrap(frame))).get("id"));
+
+		//Bound to a BigInteger it is exact and is written back the same
+		MessagePackCodec binding = build(Collections.<String, Object>singletonMap("pojoClass", BinaryPojo.class.getName()));
+		BinaryPojo pojo = (BinaryPojo) binding.decode(ByteBuffer.wrap(frame));
+		assertEquals(new BigInteger("18446744073709551615"), pojo.id);
+		pojo.data = null;
+		assertArrayEquals(bytes(0x82, 0xA4, 'd', 'a', 't', 'a', 0xC0, 0xA2, 'i', 'd', 0xCF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF), read(binding.encode(pojo)));
+	}
+
+	/**
+	 * Tests that what we encode decodes to what the JsonSerializer gives for
+	 * the same data
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testMatchesJson() throws Exception
+	{
+		MessagePackCodec codec = build(Collections.<String, Object>emptyMap());
+
+		//Get the shapes from the JsonSerializer
+		String json = "{\"a\":\"hello ✓ 😀\",\"b\":1,\"c\":-2.5,\"d\":true,\"e\":null,\"f\":[1,\"x\",{\"g\":[]}],\"h\":{}}\n";
+		Context context = mock(Context.class);
+		JsonSerializer serializer = new NioObjectFactory<JsonSerializer>(JsonSerializer.class, Collections.singletonMap("charset", "utf-8")).create(Collections.singletonMap("context", context));
+		Object expected = serializer.deserialize(ByteBuffer.wrap(json.getBytes("utf-8"))).get(0).getData();
+
+		Object result = codec.decode(codec.encode(expected));
+		assertEquals("MessagePack should decode to the same shapes as JSON", expected, result);
+		assertTrue("Objects should be LinkedHashMaps", result instanceof LinkedHashMap);
+		assertTrue("Arrays should be ArrayLists", ((Map<?, ?>) result).get("f") instanceof ArrayList);
+	}
+
+	/**
+	 * Tests that values are bound to the pojoClass when one is configured
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testDecodePojo() throws Exception
+	{
+		MessagePackCodec codec = build(Collections.<String, Object>singletonMap("pojoClass", Pojo.class.getName()));
+
+		Pojo pojo = new Pojo();
+		pojo.name = "other";
+		pojo.count = 7;
+		pojo.values.add(3);
+		pojo.nested.put("x", Collections.singletonMap("inner", 1));
+
+		Pojo result = (Pojo) codec.decode(codec.encode(pojo));
+		assertEquals("other", result.name);
+		assertEquals(7, result.count);
+		assertEquals(Arrays.asList(3), result.values);
+		assertEquals("Whole numbers should be bound exactly", 9007199254740993L, result.big);
+		assertEquals(1.0, ((Map<?, ?>) result.nested.get("x")).get("inner"));
+	}
+
+	/**
+	 * Tests that invalid values are rejected
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testInvalid() throws Exception
+	{
+		MessagePackCodec codec = build(Collections.<String, Object>emptyMap());
+
+		byte[] deep = new byte[1000];
+		Arrays.fill(deep, (byte) 0x91);
+
+		for (byte[] invalid : new byte[][]
+		{
+			//Empty, cut short, trailing bytes, an extension type, a map with an array key and too deep
+			bytes(), bytes(0xA3, 'a', 'b'), bytes(0x92, 0x01), bytes(0x01, 0x02), bytes(0xD4, 0x01, 0x02),
+			bytes(0x81, 0x90, 0x01), bytes(0xDB, 0xFF, 0xFF, 0xFF, 0xFF), deep
+		})
+		{
+			try
+			{
+				codec.decode(ByteBuffer.wrap(invalid));
+				fail("The value " + Arrays.toString(invalid) + " should have been invalid");
+			}
+			catch (NioInvalidDataException ex)
+			{
+				//Expected
+			}
+		}
+	}
+
+	/**
+	 * Tests that the codec works with the LengthPrefixedSerializer, and that
+	 * codecs from the same factory share their Gson
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testSerializer() throws Exception
+	{
+		Context context = mock(Context.class);
+		when(context.getUid()).thenReturn("TEST");
+
+		Map<String, Object> codec = new HashMap<String, Object>();
+		codec.put("class", MessagePackCodec.class.getName());
+		NioObjectFactory<LengthPrefixedSerializer> factory = new NioObjectFactory<LengthPrefixedSerializer>(LengthPrefixedSerializer.class, Collections.<String, Object>singletonMap("codec", codec));
+		LengthPrefixedSerializer serializer = factory.create(Collections.singletonMap("context", context));
+
+		//Send a value and read its frame back in
+		Map<String, Object> data = new LinkedHashMap<String, Object>();
+		data.put("a", 1.0);
+		data.put("b", Arrays.asList("x", null));
+		serializer.serialize(new NioPacket("TEST", data));
+		ByteBuffer out = ByteBuffer.allocate(100);
+		serializer.read(out);
+		out.flip();
+		assertEquals("The frame should hold its length then its body", 4 + 18, out.remaining());
+
+		List<NioPacket> packets = serializer.deserialize(out);
+		assertEquals("There should be one packet", 1, packets.size());
+		assertEquals("The value should have come back", data, packets.get(0).getData());
+	}
+
+	/**
+	 * A pojo for testing binding
+	 */
+	public static class Pojo
+	{
+
+		public String name = "test";
+		public int count = 3;
+		public double ratio = 0.5;
+		public String missing = null;
+		public List<Integer> values = new ArrayList<Integer>();
+		public Map<String, Object> nested = new LinkedHashMap<String, Object>();
+		public long big = 9007199254740993L;
+	}
+
+	/**
+	 * A pojo for testing binary and unsigned values
+	 */
+	public static class BinaryPojo
+	{
+
+		public byte[] data = null;
+		public BigInteger id = null;
+	}
+}
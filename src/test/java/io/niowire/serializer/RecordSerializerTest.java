@@ -0,0 +1,246 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.serializer;
+
+import io.niowire.data.NioPacket;
+import io.niowire.data.NioRecord;
+import io.niowire.entities.NioObjectFactory;
+import io.niowire.server.NioConnection.Context;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the {@link RecordSerializer}
+ *
+ * @author Trent Houliston
+ */
+public class RecordSerializerTest
+{
+
+	/**
+	 * Builds a new serializer for records of an int32 id and a float64 price
+	 *
+	 * @param order  the byte order of the records
+	 * @param pooled if the serializer should be pooled
+	 *
+	 * @return the serializer
+	 *
+	 * @throws Exception
+	 */
+	private static RecordSerializer build(String order, boolean pooled) throws Exception
+	{
+		//Mock a context
+		Context context = mock(Context.class);
+		when(context.getUid()).thenReturn("TEST");
+
+		//Our fields as they would be read from json
+		List<Map<String, Object>> fields = new ArrayList<Map<String, Object>>();
+		Map<String, Object> id = new HashMap<String, Object>();
+		id.put("name", "id");
+		id.put("type", "INT32");
+		fields.add(id);
+		Map<String, Object> price = new HashMap<String, Object>();
+		price.put("name", "price");
+		price.put("type", "FLOAT64");
+		price.put("offset", 8.0);
+		fields.add(price);
+
+		Map<String, Object> configuration = new HashMap<String, Object>();
+		configuration.put("fields", fields);
+		configuration.put("byteOrder", order);
+		configuration.put("pooled", pooled);
+
+		NioObjectFactory<RecordSerializer> factory = new NioObjectFactory<RecordSerializer>(RecordSerializer.class, configuration);
+		return factory.create(Collections.singletonMap("context", context));
+	}
+
+	/**
+	 * Writes records into a buffer
+	 *
+	 * @param order the byte order to write in
+	 * @param ids   the ids of the records (the price of each is half its id)
+	 *
+	 * @return the buffer ready to be read
+	 */
+	private static ByteBuffer records(ByteOrder order, int... ids)
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(ids.length * 16).order(order);
+		for (int id : ids)
+		{
+			buffer.putInt(id).putInt(0).putDouble(id / 2.0);
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Tests that records are read straight out of the buffer, including
+	 * records which are split between reads
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testDeserialize() throws Exception
+	{
+		RecordSerializer serializer = build("little_endian", false);
+		assertEquals("The record should be 16 bytes", 16, serializer.getSchema().getSize());
+
+		//Read two whole records and half of a third
+		ByteBuffer wire = records(ByteOrder.LITTLE_ENDIAN, 1, 2, 3);
+		ByteBuffer first = ByteBuffer.allocate(40).order(ByteOrder.BIG_ENDIAN);
+		first.put(wire.array(), 0, 40).flip();
+		List<NioPacket> packets = serializer.deserialize(first);
+		assertEquals("There should be two records", 2, packets.size());
+		assertFalse("The buffer should be used up", first.hasRemaining());
+		NioRecord record = (NioRecord) packets.get(1).getData();
+		assertEquals("The record was wrong", 2, record.getInt("id"));
+		assertEquals("The record was wrong", 1.0, record.getDouble("price"), 0);
+		assertEquals("The packet should have our uid", "TEST", packets.get(1).getSource());
+
+		//The third record should be finished from the next read, along with a fourth and the start of a fifth
+		ByteBuffer rest = records(ByteOrder.LITTLE_ENDIAN, 3, 4, 5);
+		ByteBuffer second = ByteBuffer.allocate(40);
+		second.put(rest.array(), 8, 8).put(rest.array(), 16, 16).put(rest.array(), 32, 4).flip();
+		packets = serializer.deserialize(second);
+		assertEquals("There should be two records", 2, packets.size());
+		assertEquals("The split record was wrong", 3, ((NioRecord) packets.get(0).getData()).getInt("id"));
+		assertEquals("The split record was wrong", 1.5, ((NioRecord) packets.get(0).getData()).getDouble("price"), 0);
+		assertEquals("The record was wrong", 4, ((NioRecord) packets.get(1).getData()).getInt("id"));
+
+		//Records can't be changed through the receive buffer
+		try
+		{
+			((NioRecord) packets.get(1).getData()).setLong("id", 6);
+			fail("The record should be read only");
+		}
+		catch (ReadOnlyBufferException ex)
+		{
+		}
+
+		//Finish the fifth
+		ByteBuffer third = ByteBuffer.wrap(rest.array(), 36, 12);
+		packets = serializer.deserialize(third);
+		assertEquals("There should be one record", 1, packets.size());
+		assertEquals("The split record was wrong", 5, ((NioRecord) packets.get(0).getData()).getInt("id"));
+	}
+
+	/**
+	 * Tests that pooled serializers reuse their list, packets and flyweights
+	 * between reads
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testPooled() throws Exception
+	{
+		RecordSerializer serializer = build("BIG_ENDIAN", true);
+
+		//Read some records
+		ByteBuffer receive = ByteBuffer.allocate(64);
+		receive.put(records(ByteOrder.BIG_ENDIAN, 1, 2)).flip();
+		List<NioPacket> packets = serializer.deserialize(receive);
+		assertEquals("There should be two records", 2, packets.size());
+		Object flyweight = packets.get(1).getData();
+		assertEquals("The record was wrong", 2, ((NioRecord) flyweight).getInt(0));
+
+		//Keep a copy and release the packets as the connection would
+		NioPacket kept = packets.get(1).copy();
+		for (NioPacket packet : packets)
+		{
+			packet.release();
+		}
+
+		//Read more into the same buffer
+		receive.clear();
+		receive.put(records(ByteOrder.BIG_ENDIAN, 3, 4)).flip();
+		List<NioPacket> next = serializer.deserialize(receive);
+		assertSame("The list should be reused", packets, next);
+		assertSame("The flyweight should be reused", flyweight, next.get(1).getData());
+		assertEquals("The record was wrong", 4, ((NioRecord) next.get(1).getData()).getInt(0));
+		assertEquals("The copy should not change", 2, ((NioRecord) kept.getData()).getInt(0));
+	}
+
+	/**
+	 * Tests that records and maps of fields can be written
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testSerialize() throws Exception
+	{
+		RecordSerializer serializer = build("BIG_ENDIAN", false);
+
+		//Write a record and a map
+		NioRecord record = serializer.getSchema().newRecord().setLong("id", 7).setDouble("price", 3.5);
+		serializer.serialize(new NioPacket("TEST", record));
+		Map<String, Object> map = new HashMap<String, Object>();
+		map.put("id", 8.0);
+		map.put("price", 4);
+		map.put("other", "ignored");
+		serializer.serialize(new NioPacket("TEST", map));
+
+		//Invalid data should be ignored
+		serializer.serialize(new NioPacket("TEST", "invalid"));
+		assertTrue("The serializer should have data", serializer.hasData());
+
+		//Read it out in two parts, rebuffering some of the first
+		ByteBuffer wire = ByteBuffer.allocate(20);
+		assertEquals("The buffer should be filled", 20, serializer.read(wire));
+		wire.flip();
+		wire.position(12);
+		serializer.rebuffer(wire);
+		ByteBuffer out = ByteBuffer.allocate(64);
+		assertEquals("The rest should be read", 20, serializer.read(out));
+		assertFalse("The serializer should be empty", serializer.hasData());
+
+		//Read them back in
+		ByteBuffer whole = ByteBuffer.allocate(32);
+		wire.position(0).limit(12);
+		whole.put(wire);
+		out.flip();
+		whole.put(out).flip();
+		List<NioPacket> packets = build("BIG_ENDIAN", false).deserialize(whole);
+		assertEquals("There should be two records", 2, packets.size());
+		assertEquals("The record was wrong", "{id=7, price=3.5}", packets.get(0).getData().toString());
+		assertEquals("The map was wrong", "{id=8, price=4.0}", packets.get(1).getData().toString());
+	}
+
+	/**
+	 * Tests that the serializer can't be used once it is closed
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000, expected = ClosedChannelException.class)
+	public void testClosed() throws Exception
+	{
+		RecordSerializer serializer = build("BIG_ENDIAN", false);
+		serializer.close();
+		assertFalse("The serializer should be closed", serializer.isOpen());
+		serializer.deserialize(ByteBuffer.allocate(16));
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link CachedClock}
+ *
+ * @author Trent Houliston
+ */
+public class CachedClockTest
+{
+
+	/**
+	 * Tests that the clock only changes when it is ticked
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testTick() throws Exception
+	{
+		CachedClock clock = new CachedClock();
+		long millis = clock.currentTimeMillis();
+		long nanos = clock.nanoTime();
+
+		//Wait long enough for the system clocks to move
+		Thread.sleep(5);
+
+		//The cached times should not have changed
+		assertEquals("The cached time should not change until ticked", millis, clock.currentTimeMillis());
+		assertEquals("The cached time should not change until ticked", nanos, clock.nanoTime());
+
+		//Once ticked they should have moved forward
+		clock.tick();
+		assertTrue("The time should have moved forward", clock.currentTimeMillis() > millis);
+		assertTrue("The time should have moved forward", clock.nanoTime() - nanos >= 5000000L);
+	}
+
+	/**
+	 * Tests that a precise clock reads the nanosecond time every call
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testPrecise() throws Exception
+	{
+		CachedClock clock = new CachedClock();
+		assertFalse("Clocks should not be precise by default", clock.isPrecise());
+		clock.setPrecise(true);
+		assertTrue("The clock should now be precise", clock.isPrecise());
+
+		//The nano time should move without a tick
+		long nanos = clock.nanoTime();
+		Thread.sleep(5);
+		assertTrue("The precise time should have moved forward", clock.nanoTime() - nanos >= 5000000L);
+	}
+}
@@ -0,0 +1,268 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+import io.niowire.data.NioPacket;
+import io.niowire.service.EchoService;
+import io.niowire.service.LaneType;
+import io.niowire.service.NioService;
+import io.niowire.service.NioServiceFactory;
+import io.niowire.service.OverflowPolicy;
+import io.niowire.service.ServiceLane;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static io.niowire.testutilities.TestUtilities.*;
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the {@link LaneDispatcher}
+ *
+ * @author Trent Houliston
+ */
+public class LaneDispatcherTest
+{
+
+	private static final NioPacket A = new NioPacket("Test", "A");
+	private static final NioPacket B = new NioPacket("Test", "B");
+	private static final NioPacket C = new NioPacket("Test", "C");
+	private NioService service;
+	private Runnable resume;
+	private LinkedList<Runnable> tasks;
+	private Executor executor;
+
+	/**
+	 * Creates a mock service and an executor which holds its tasks until we
+	 * run them
+	 */
+	@Before
+	public void setUp()
+	{
+		service = mock(NioService.class);
+		resume = mock(Runnable.class);
+		tasks = new LinkedList<Runnable>();
+		executor = new Executor()
+		{
+			@Override
+			public void execute(Runnable command)
+			{
+				tasks.add(command);
+			}
+		};
+	}
+
+	/**
+	 * Runs all the tasks which have been given to our executor
+	 */
+	private void runTasks()
+	{
+		while (!tasks.isEmpty())
+		{
+			tasks.poll().run();
+		}
+	}
+
+	/**
+	 * Tests that packets are delivered in order on the executor, and that the
+	 * dispatcher is only scheduled once while it has work
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testOrderedDelivery() throws Exception
+	{
+		LaneDispatcher lane = new LaneDispatcher(service, new ServiceLane(LaneType.POOL, 10, OverflowPolicy.DROP), executor, resume);
+
+		lane.send(Arrays.asList(A, B));
+		lane.send(C);
+		assertEquals(1, tasks.size());
+		verifyZeroInteractions(service);
+
+		runTasks();
+		InOrder order = inOrder(service);
+		order.verify(service).send(A);
+		order.verify(service).send(B);
+		order.verify(service).send(C);
+	}
+
+	/**
+	 * Tests that a drop lane drops the packets which do not fit
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testDrop() throws Exception
+	{
+		LaneDispatcher lane = new LaneDispatcher(service, new ServiceLane(LaneType.POOL, 2, OverflowPolicy.DROP), executor, resume);
+
+		lane.send(Arrays.asList(A, B, C));
+		assertEquals(1, lane.getDropped());
+		assertFalse(lane.isBlocking());
+
+		runTasks();
+		verify(service).send(A);
+		verify(service).send(B);
+		verify(service, never()).send(C);
+		verifyZeroInteractions(resume);
+	}
+
+	/**
+	 * Tests that a backpressure lane keeps every packet (even past its soft
+	 * queue size), reports that it is blocking when full and resumes once it
+	 * has room
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testBackpressure() throws Exception
+	{
+		LaneDispatcher lane = new LaneDispatcher(service, new ServiceLane(LaneType.POOL, 2, OverflowPolicy.BACKPRESSURE), executor, resume);
+
+		lane.send(Arrays.asList(A, B, C));
+		assertEquals(0, lane.getDropped());
+		assertTrue(lane.isBlocking());
+
+		runTasks();
+		assertFalse(lane.isBlocking());
+		verify(resume).run();
+		verify(service).send(A);
+		verify(service).send(B);
+		verify(service).send(C);
+	}
+
+	/**
+	 * Tests that shutting down delivers the queued packets before closing the
+	 * service and that later packets are ignored
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testShutdown() throws Exception
+	{
+		LaneDispatcher lane = new LaneDispatcher(service, new ServiceLane(LaneType.POOL, 10, OverflowPolicy.BACKPRESSURE), executor, resume);
+
+		lane.send(A);
+		lane.shutdown(true);
+		lane.send(B);
+		runTasks();
+
+		InOrder order = inOrder(service);
+		order.verify(service).send(A);
+		order.verify(service).close();
+		verify(service, never()).send(B);
+
+		//Shutting down without closing leaves the service open
+		NioService other = mock(NioService.class);
+		lane = new LaneDispatcher(other, new ServiceLane(LaneType.POOL, 10, OverflowPolicy.BACKPRESSURE), executor, resume);
+		lane.shutdown(false);
+		runTasks();
+		verify(other, never()).close();
+	}
+
+	/**
+	 * Tests that dedicated lanes for the same service factory on different
+	 * connections share one thread, and that each keeps its own order
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 5000)
+	public void testDedicated() throws Exception
+	{
+		//Record the thread and packet of every delivery
+		final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+		final List<Object> delivered = Collections.synchronizedList(new ArrayList<Object>());
+		Answer<Void> record = new Answer<Void>()
+		{
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable
+			{
+				threads.add(Thread.currentThread().getName());
+				delivered.add(((NioPacket) invocation.getArguments()[0]).getData());
+				return null;
+			}
+		};
+		NioService other = mock(NioService.class);
+		doAnswer(record).when(service).send(any(NioPacket.class));
+		doAnswer(record).when(other).send(any(NioPacket.class));
+
+		//Two connections using the same factory get the same thread
+		NioServiceFactory<EchoService> factory = new NioServiceFactory<EchoService>(EchoService.class);
+		Executor dedicated = factory.getDedicatedExecutor("ServiceLane-Test");
+		assertSame("The factory should only have one thread", dedicated, factory.getDedicatedExecutor("ServiceLane-Other"));
+		ServiceLane config = new ServiceLane(LaneType.DEDICATED, 10, OverflowPolicy.BACKPRESSURE);
+		LaneDispatcher first = new LaneDispatcher(service, config, dedicated, resume);
+		LaneDispatcher second = new LaneDispatcher(other, config, dedicated, resume);
+
+		first.send(Arrays.asList(A, B));
+		second.send(C);
+		first.send(C);
+		first.shutdown(true);
+		second.shutdown(true);
+
+		//Everything should be delivered on the one dedicated thread
+		verify(service, timeout(4000)).close();
+		verify(other, timeout(4000)).close();
+		assertTrue(tasks.isEmpty());
+		assertEquals(4, threads.size());
+		for (String thread : threads)
+		{
+			assertEquals("ServiceLane-Test", thread);
+		}
+
+		//Each connection's packets should still be in order
+		InOrder order = inOrder(service);
+		order.verify(service).send(A);
+		order.verify(service).send(B);
+		order.verify(service).send(C);
+	}
+
+	/**
+	 * Tests that a dispatcher with a lot queued gives its executor back after
+	 * delivering some batches so other connections get a turn
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testFairness() throws Exception
+	{
+		LaneDispatcher lane = new LaneDispatcher(service, new ServiceLane(LaneType.POOL, 1000, OverflowPolicy.BACKPRESSURE), executor, resume);
+		for (int i = 0; i < LaneDispatcher.BATCHES_PER_RUN + 1; i++)
+		{
+			lane.send(A);
+		}
+
+		//The first run should stop after its share and schedule itself again
+		tasks.poll().run();
+		verify(service, times(LaneDispatcher.BATCHES_PER_RUN)).send(any(NioPacket.class));
+		assertEquals("The dispatcher should have scheduled itself again", 1, tasks.size());
+
+		//The next run delivers the rest
+		runTasks();
+		verify(service, times(LaneDispatcher.BATCHES_PER_RUN + 1)).send(any(NioPacket.class));
+	}
+}
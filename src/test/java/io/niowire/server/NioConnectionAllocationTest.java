@@ -0,0 +1,344 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+import com.google.gson.Gson;
+import io.niowire.entities.NioObjectFactory;
+import io.niowire.serializer.MessagePackCodec;
+import io.niowire.serializer.NioSerializer;
+import io.niowire.server.NioSocketServer.ActiveServer;
+import io.niowire.serversource.NioServerDefinition;
+import io.niowire.service.EchoService;
+import io.niowire.service.NioService;
+import io.niowire.service.NioServiceFactory;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.zip.Deflater;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static io.niowire.testutilities.TestUtilities.*;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+/**
+ * These tests drive steady state traffic through a real {@link NioConnection}
+ * (deserialize, inspect, echo back through the serializer and read out) and
+ * measure how many bytes are allocated per packet. If a serializer allocates
+ * more than its budget (from NioConnectionAllocationTest.json) the test fails,
+ * these budgets are part of the performance contract of Niowire so any change
+ * which raises them must be deliberate.
+ *
+ * @author Trent Houliston
+ */
+public class NioConnectionAllocationTest
+{
+
+	//A line of input which is roughly the size of a typical sensor reading
+	private static final String LINE = "SENSOR-0001,1357000000000,23.5,OK,abcdefghijklmnopqrstuvwxyz";
+	//A JSON object of roughly the same size
+	private static final String JSON = "{\"sensor\":\"SENSOR-0001\",\"time\":1357000000000,\"value\":23.5,\"ok\":true}";
+	//Our budgets and the loopback connection we build our connection on
+	private Budgets budgets;
+	private ServerSocketChannel server;
+	private SocketChannel client;
+	private Selector selector;
+	private com.sun.management.ThreadMXBean threads;
+
+	/**
+	 * Loads our budgets and opens a loopback connection so that our
+	 * NioConnection has a real selection key (mocks record every call and
+	 * would dominate the allocations)
+	 *
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		//We can only run on JVMs which can measure thread allocations
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		//Read our budgets
+		String json = new Scanner(getClass().getResourceAsStream(getClass().getSimpleName() + ".json")).useDelimiter("\\Z").next();
+		budgets = new Gson().fromJson(json, Budgets.class);
+
+		//Open a loopback connection
+		server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+		client = SocketChannel.open(server.socket().getLocalSocketAddress());
+		client.configureBlocking(false);
+		selector = Selector.open();
+	}
+
+	/**
+	 * Closes our loopback connection
+	 *
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		if (selector != null)
+		{
+			selector.close();
+			client.close();
+			server.close();
+		}
+	}
+
+	/**
+	 * Tests that the LineSerializer stays within its allocation budget
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 60000)
+	public void testLineSerializer() throws Exception
+	{
+		assertWithinBudget("LineSerializer", repeat((LINE + "\n").getBytes("utf-8")));
+	}
+
+	/**
+	 * Tests that the LineSerializer using pooled packets stays within its
+	 * allocation budget
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 60000)
+	public void testPooledLineSerializer() throws Exception
+	{
+		assertWithinBudget("PooledLineSerializer", repeat((LINE + "\n").getBytes("utf-8")));
+	}
+
+	/**
+	 * Tests that the JsonSerializer stays within its allocation budget
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 60000)
+	public void testJsonSerializer() throws Exception
+	{
+		assertWithinBudget("JsonSerializer", repeat((JSON + "\n").getBytes("utf-8")));
+	}
+
+	/**
+	 * Tests that the SplitSerializer (JSON in, lines out) stays within its
+	 * allocation budget
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 60000)
+	public void testSplitSerializer() throws Exception
+	{
+		assertWithinBudget("SplitSerializer", repeat((JSON + "\n").getBytes("utf-8")));
+	}
+
+	/**
+	 * Tests that the DeflateSerializer (wrapping a LineSerializer) stays within
+	 * its allocation budget
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 60000)
+	public void testDeflateSerializer() throws Exception
+	{
+		//Compress each line as its own flushed block of a single deflate stream
+		Deflater deflater = new Deflater(6, true);
+		byte[] line = (LINE + "\n").getBytes("utf-8");
+		byte[] out = new byte[1024];
+		ByteBuffer[] input = new ByteBuffer[budgets.warmup + budgets.packets];
+		for (int i = 0; i < input.length; i++)
+		{
+			deflater.setInput(line);
+			int length = deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+			input[i] = ByteBuffer.wrap(Arrays.copyOf(out, length));
+		}
+		deflater.end();
+
+		assertWithinBudget("DeflateSerializer", input);
+	}
+
+	/**
+	 * Tests that the LengthPrefixedSerializer with a MessagePackCodec stays
+	 * within its allocation budget
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 60000)
+	public void testMessagePackSerializer() throws Exception
+	{
+		//Encode the same reading as our JSON
+		Map<String, Object> reading = new LinkedHashMap<String, Object>();
+		reading.put("sensor", "SENSOR-0001");
+		reading.put("time", 1357000000000L);
+		reading.put("value", 23.5);
+		reading.put("ok", true);
+		ByteBuffer body = new NioObjectFactory<MessagePackCodec>(MessagePackCodec.class).create().encode(reading);
+
+		//Frame it with a 32 bit length
+		ByteBuffer frame = ByteBuffer.allocate(4 + body.remaining());
+		frame.putInt(body.remaining());
+		frame.put(body);
+
+		assertWithinBudget("MessagePackSerializer", repeat(frame.array()));
+	}
+
+	/**
+	 * Tests that the pooled RecordSerializer stays within its allocation
+	 * budget
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 60000)
+	public void testRecordSerializer() throws Exception
+	{
+		//Write the same reading as our JSON as a record
+		ByteBuffer record = ByteBuffer.allocate(21);
+		record.putInt(1).putLong(1357000000000L).putDouble(23.5).put((byte) 1);
+
+		assertWithinBudget("RecordSerializer", repeat(record.array()));
+	}
+
+	/**
+	 * Builds an input array which uses the same buffer for every packet
+	 *
+	 * @param packet the bytes of a single packet
+	 *
+	 * @return the input for each packet
+	 */
+	private ByteBuffer[] repeat(byte[] packet)
+	{
+		ByteBuffer[] input = new ByteBuffer[budgets.warmup + budgets.packets];
+		Arrays.fill(input, ByteBuffer.wrap(packet));
+		return input;
+	}
+
+	/**
+	 * Builds a connection using the named serializer and an EchoService,
+	 * drives the input through it and checks the bytes allocated per packet
+	 * against the budget
+	 *
+	 * @param name  the name of the budget
+	 * @param input the input for each packet (warmup followed by measured)
+	 *
+	 * @throws Exception
+	 */
+	@SuppressWarnings("unchecked")
+	private void assertWithinBudget(String name, ByteBuffer[] input) throws Exception
+	{
+		Budget budget = budgets.budgets.get(name);
+		assertNotNull("There was no budget for " + name, budget);
+
+		//Build our server definition
+		NioServerDefinition def = new NioServerDefinition();
+		def.setId(DEFAULT_SERVER_ID);
+		def.setName(DEFAULT_SERVER_NAME);
+		def.setPort(DEFAULT_SERVER_PORT);
+		def.setSerializerFactory(new NioObjectFactory<NioSerializer>((String) budget.serializer.get("class"), (Map<String, ?>) budget.serializer.get("configuration")));
+		def.setServiceFactories(Collections.<NioServiceFactory<? extends NioService>>singletonList(new NioServiceFactory<EchoService>(EchoService.class)));
+
+		//Build our connection
+		SelectionKey key = client.register(selector, SelectionKey.OP_READ);
+		NioConnection connection = new NioConnection(key, new ActiveServer(def));
+		ByteBuffer output = ByteBuffer.allocate(65536);
+
+		//Warm up so that we measure the steady state (after JIT compilation)
+		drive(connection, input, 0, budgets.warmup, output);
+
+		//Measure the allocations for our packets
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		drive(connection, input, budgets.warmup, input.length, output);
+		long after = threads.getThreadAllocatedBytes(thread);
+
+		connection.close();
+
+		//Check we were within our budget
+		long perPacket = (after - before) / budgets.packets;
+		assertTrue(name + " allocated " + perPacket + " bytes per packet which is over its budget of " + budget.bytesPerPacket,
+				   perPacket <= budget.bytesPerPacket);
+	}
+
+	/**
+	 * Writes each of the input buffers to the connection and reads all of the
+	 * echoed output back out
+	 *
+	 * @param connection the connection to drive
+	 * @param input      the input buffers
+	 * @param from       the first input buffer to write
+	 * @param to         the input buffer to stop at
+	 * @param output     the buffer to read the output into
+	 *
+	 * @throws Exception
+	 */
+	private void drive(NioConnection connection, ByteBuffer[] input, int from, int to, ByteBuffer output) throws Exception
+	{
+		for (int i = from; i < to; i++)
+		{
+			//Write our packet in
+			input[i].rewind();
+			connection.write(input[i]);
+
+			//Read everything that was echoed back
+			do
+			{
+				output.clear();
+			}
+			while (connection.read(output) > 0);
+
+			//Apply the interest changes as the server's loop would, otherwise some
+			//selectors (such as JDK 8's epoll) queue every change until the next select
+			//(our key stays in the selected set so selecting it again adds nothing)
+			selector.selectNow();
+		}
+	}
+
+	/**
+	 * This holds the configuration from our json file
+	 */
+	private static class Budgets
+	{
+
+		private int warmup;
+		private int packets;
+		private Map<String, Budget> budgets;
+	}
+
+	/**
+	 * This holds the budget for a single serializer
+	 */
+	private static class Budget
+	{
+
+		private long bytesPerPacket;
+		private Map<String, Object> serializer;
+	}
+}
@@ -17,29 +17,44 @@
 package io.niowire.server;
 
 import io.niowire.data.NioPacket;
+import io.niowire.data.NioPacketPool;
 import io.niowire.entities.NioObjectFactory;
 import io.niowire.inspection.NioAuthenticationException;
+import io.niowire.inspection.NioBatchInspector;
 import io.niowire.inspection.NioInspector;
 import io.niowire.serializer.NioSerializer;
 import io.niowire.server.NioConnection.Context;
 import io.niowire.server.NioSocketServer.ActiveServer;
 import io.niowire.serversource.NioServerDefinition;
+import io.niowire.service.LaneType;
+import io.niowire.service.NioAsyncService;
+import io.niowire.service.NioBatchService;
 import io.niowire.service.NioService;
+import io.niowire.service.NioServiceFactory;
+import io.niowire.service.OverflowPolicy;
+import io.niowire.service.ServiceLane;
 import java.lang.reflect.Field;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import static io.niowire.testutilities.TestUtilities.*;
 import static org.junit.Assert.*;
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.*;
 
@@ -77,7 +92,7 @@ public class NioConnectionTest
 		//Create some mock factories
 		NioObjectFactory<NioSerializer> serializeFactory = mockNioObjectFactory(serialize);
 		NioObjectFactory<NioInspector> inspectFactory = mockNioObjectFactory(inspect);
-		NioObjectFactory<NioService> serviceFactory = mockNioObjectFactory(service);
+		NioServiceFactory<NioService> serviceFactory = mockNioServiceFactory(service);
 
 		//Create our server definition with all of the passed values
 		def = new NioServerDefinition();
@@ -165,6 +180,334 @@ public class NioConnectionTest
 		order.verify(service).send(MODIFIED_PACKET);
 	}
 
+	/**
+	 * Tests that when the inspector filters every packet of a read then the
+	 * services are not sent anything
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testWriteFiltered() throws Exception
+	{
+		//Stub our methods so the inspector filters everything
+		when(serialize.deserialize(any(ByteBuffer.class))).thenReturn(Arrays.asList(BASIC_PACKET, MODIFIED_PACKET));
+		when(inspect.inspect(any(NioPacket.class))).thenReturn(null);
+
+		connection.write(ByteBuffer.allocate(0));
+
+		//Verify that both were inspected but nothing reached the service
+		verify(inspect).inspect(BASIC_PACKET);
+		verify(inspect).inspect(MODIFIED_PACKET);
+		verify(service, never()).send(any(NioPacket.class));
+	}
+
+	/**
+	 * Tests that batch inspectors and services are given every packet from a
+	 * single read as one batch
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	@SuppressWarnings("unchecked")
+	public void testWriteBatch() throws Exception
+	{
+		//Build a connection with a batch inspector and a batch service
+		NioBatchInspector batchInspect = mock(NioBatchInspector.class);
+		NioBatchService batchService = mock(NioBatchService.class);
+		def.setInspectorFactory(mockNioObjectFactory(batchInspect));
+		def.setServiceFactories(Arrays.asList(mockNioServiceFactory(batchService), mockNioServiceFactory(service)));
+		connection = new NioConnection(key, new ActiveServer(def));
+
+		//Stub our methods so we get data flow
+		List<NioPacket> in = Arrays.asList(BASIC_PACKET, FAIL_AUTH_PACKET);
+		List<NioPacket> out = Arrays.asList(MODIFIED_PACKET, BASIC_PACKET);
+		when(serialize.deserialize(any(ByteBuffer.class))).thenReturn(in);
+		when(batchInspect.inspect(in)).thenReturn(out);
+
+		connection.write(ByteBuffer.allocate(0));
+
+		//The batch service gets one batch and the per packet service gets each packet
+		verify(batchInspect).inspect(in);
+		verify(batchInspect, never()).inspect(any(NioPacket.class));
+		verify(batchService).send(out);
+		verify(batchService, never()).send(any(NioPacket.class));
+		InOrder order = inOrder(service);
+		order.verify(service).send(MODIFIED_PACKET);
+		order.verify(service).send(BASIC_PACKET);
+	}
+
+	/**
+	 * Tests that pooled packets are released after every service has seen
+	 * them, including packets which were dropped by the inspector
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testWriteReleasesPackets() throws Exception
+	{
+		//Take two packets from the connection's pool
+		NioPacketPool pool = connection.getContext().getPacketPool();
+		assertSame("The connection should keep its pool", pool, connection.getContext().getPacketPool());
+		NioPacket kept = pool.acquire("TEST", "KEPT", false, null, 0);
+		NioPacket dropped = pool.acquire("TEST", "DROPPED", false, null, 0);
+		when(serialize.deserialize(any(ByteBuffer.class))).thenReturn(Arrays.asList(kept, dropped));
+		when(inspect.inspect(kept)).thenReturn(kept);
+		when(inspect.inspect(dropped)).thenReturn(null);
+
+		//Check the service sees the packet before it is released
+		doAnswer(new Answer<Void>()
+		{
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable
+			{
+				assertEquals("The packet was released before the service saw it", "KEPT", ((NioPacket) invocation.getArguments()[0]).getData());
+				return null;
+			}
+		}).when(service).send(kept);
+
+		connection.write(ByteBuffer.allocate(0));
+
+		//Both packets should now be back in the pool
+		verify(service).send(kept);
+		assertEquals("The packets should have been released", 2, pool.size());
+	}
+
+	/**
+	 * Tests that replies from asynchronous services which complete out of
+	 * order are serialized in the order of their requests
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testAsyncReplyOrder() throws Exception
+	{
+		//Build a connection with an asynchronous service
+		NioAsyncService async = mock(NioAsyncService.class);
+		def.setServiceFactories(Collections.singletonList(mockNioServiceFactory(async)));
+		connection = new NioConnection(key, new ActiveServer(def));
+		when(key.isValid()).thenReturn(true);
+		when(key.selector()).thenReturn(mock(Selector.class));
+
+		//Each packet gets its own future
+		CompletableFuture<NioPacket> first = new CompletableFuture<NioPacket>();
+		CompletableFuture<NioPacket> second = new CompletableFuture<NioPacket>();
+		when(serialize.deserialize(any(ByteBuffer.class))).thenReturn(Arrays.asList(BASIC_PACKET, MODIFIED_PACKET));
+		when(inspect.inspect(any(NioPacket.class))).then(returnsFirstArg());
+		when(async.sendAsync(BASIC_PACKET)).thenReturn(first);
+		when(async.sendAsync(MODIFIED_PACKET)).thenReturn(second);
+
+		connection.write(ByteBuffer.allocate(0));
+
+		//Complete the second request first, it should be held back
+		second.complete(MODIFIED_PACKET);
+		connection.read(ByteBuffer.allocate(10));
+		verify(serialize, never()).serialize(any(NioPacket.class));
+
+		//Complete the first request from another thread, both should now be written in order
+		when(key.interestOps()).thenReturn(SelectionKey.OP_READ);
+		Thread t = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				first.complete(BASIC_PACKET);
+			}
+		});
+		t.start();
+		t.join();
+		verify(key).interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+
+		connection.read(ByteBuffer.allocate(10));
+		InOrder order = inOrder(serialize);
+		order.verify(serialize).serialize(BASIC_PACKET);
+		order.verify(serialize).serialize(MODIFIED_PACKET);
+	}
+
+	/**
+	 * Tests that with several asynchronous services the replies are written
+	 * in the order of the requests, rather than grouped by service
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testAsyncReplyOrderServices() throws Exception
+	{
+		//Build a connection with two asynchronous services
+		NioAsyncService a = mock(NioAsyncService.class);
+		NioAsyncService b = mock(NioAsyncService.class);
+		List<NioServiceFactory<? extends NioService>> factories = new ArrayList<NioServiceFactory<? extends NioService>>();
+		factories.add(mockNioServiceFactory(a));
+		factories.add(mockNioServiceFactory(b));
+		def.setServiceFactories(factories);
+		connection = new NioConnection(key, new ActiveServer(def));
+		when(key.isValid()).thenReturn(true);
+		when(key.selector()).thenReturn(mock(Selector.class));
+
+		//Each service replies to each packet straight away
+		NioPacket a1 = new NioPacket("A", 1);
+		NioPacket a2 = new NioPacket("A", 2);
+		NioPacket b1 = new NioPacket("B", 1);
+		NioPacket b2 = new NioPacket("B", 2);
+		when(serialize.deserialize(any(ByteBuffer.class))).thenReturn(Arrays.asList(BASIC_PACKET, MODIFIED_PACKET));
+		when(inspect.inspect(any(NioPacket.class))).then(returnsFirstArg());
+		when(a.sendAsync(BASIC_PACKET)).thenReturn(CompletableFuture.completedFuture(a1));
+		when(a.sendAsync(MODIFIED_PACKET)).thenReturn(CompletableFuture.completedFuture(a2));
+		when(b.sendAsync(BASIC_PACKET)).thenReturn(CompletableFuture.completedFuture(b1));
+		when(b.sendAsync(MODIFIED_PACKET)).thenReturn(CompletableFuture.completedFuture(b2));
+
+		connection.write(ByteBuffer.allocate(0));
+		connection.read(ByteBuffer.allocate(10));
+
+		//The replies to the first packet should come before those to the second
+		InOrder order = inOrder(serialize);
+		order.verify(serialize).serialize(a1);
+		order.verify(serialize).serialize(b1);
+		order.verify(serialize).serialize(a2);
+		order.verify(serialize).serialize(b2);
+	}
+
+	/**
+	 * Tests that the connection stops reading when it has too many requests in
+	 * flight and resumes once their replies have been written
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testAsyncMaxInFlight() throws Exception
+	{
+		//Build a connection with an asynchronous service which only allows one request in flight
+		NioAsyncService async = mock(NioAsyncService.class);
+		def.setServiceFactories(Collections.singletonList(mockNioServiceFactory(async)));
+		def.setMaxInFlight(1);
+		connection = new NioConnection(key, new ActiveServer(def));
+		when(key.isValid()).thenReturn(true);
+		when(key.selector()).thenReturn(mock(Selector.class));
+
+		CompletableFuture<NioPacket> reply = new CompletableFuture<NioPacket>();
+		when(serialize.deserialize(any(ByteBuffer.class))).thenReturn(Collections.singletonList(BASIC_PACKET));
+		when(inspect.inspect(any(NioPacket.class))).then(returnsFirstArg());
+		when(async.sendAsync(BASIC_PACKET)).thenReturn(reply);
+
+		//Writing our request should stop us reading
+		connection.write(ByteBuffer.allocate(0));
+		verify(key).interestOps(0);
+
+		//Once the reply is written we should read again
+		reply.complete(null);
+		connection.read(ByteBuffer.allocate(10));
+		verify(key).interestOps(SelectionKey.OP_READ);
+	}
+
+	/**
+	 * Tests that a service in a pool lane is sent its packets off the calling
+	 * thread, and is closed once they have been delivered
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 5000)
+	public void testServiceLane() throws Exception
+	{
+		//Put our service in a pool lane
+		@SuppressWarnings("unchecked")
+		NioServiceFactory<NioService> factory = (NioServiceFactory<NioService>) def.getServiceFactories().get(0);
+		when(factory.getLane()).thenReturn(new ServiceLane(LaneType.POOL, 10, OverflowPolicy.BACKPRESSURE));
+		connection = new NioConnection(key, new ActiveServer(def));
+		when(key.channel()).thenReturn(SocketChannel.open());
+
+		//Record which thread the service is run on
+		final Thread caller = Thread.currentThread();
+		final AtomicBoolean offThread = new AtomicBoolean();
+		doAnswer(new Answer<Void>()
+		{
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable
+			{
+				offThread.set(Thread.currentThread() != caller);
+				return null;
+			}
+		}).when(service).send(any(NioPacket.class));
+
+		when(serialize.deserialize(any(ByteBuffer.class))).thenReturn(Collections.singletonList(BASIC_PACKET));
+		when(inspect.inspect(any(NioPacket.class))).then(returnsFirstArg());
+
+		connection.write(ByteBuffer.allocate(0));
+		connection.close();
+
+		//The packet should be delivered before the service is closed
+		verify(service, timeout(4000)).close();
+		InOrder order = inOrder(service);
+		order.verify(service).send(BASIC_PACKET);
+		order.verify(service).close();
+		assertTrue(offThread.get());
+	}
+
+	/**
+	 * Tests that when the server has a chain of inspectors the connection
+	 * builds the chain once and passes packets through each stage
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testInspectorChain() throws Exception
+	{
+		//Chain a second inspector after our first
+		NioInspector chained = mock(NioInspector.class);
+		NioObjectFactory<NioInspector> chainedFactory = mockNioObjectFactory(chained);
+		def.setInspectorFactories(Collections.singletonList(chainedFactory));
+		connection = new NioConnection(key, new ActiveServer(def));
+
+		when(serialize.deserialize(any(ByteBuffer.class))).thenReturn(Collections.singletonList(BASIC_PACKET));
+		when(inspect.inspect(BASIC_PACKET)).thenReturn(MODIFIED_PACKET);
+		when(chained.inspect(MODIFIED_PACKET)).thenReturn(MODIFIED_PACKET);
+		when(chained.getUid()).thenReturn("CHAINED");
+
+		connection.write(ByteBuffer.allocate(0));
+		connection.write(ByteBuffer.allocate(0));
+
+		//Each stage ran in order and the service got the result
+		InOrder order = inOrder(inspect, chained, service);
+		order.verify(inspect).inspect(BASIC_PACKET);
+		order.verify(chained).inspect(MODIFIED_PACKET);
+		order.verify(service).send(MODIFIED_PACKET);
+
+		//The first stage has no UID so the chained one is used
+		assertEquals("CHAINED", connection.getContext().getUid());
+
+		//Updating with the same definition keeps the chain
+		connection.updateServerDefinition();
+		verify(chainedFactory, times(1)).create(anyMapOf(String.class, Object.class));
+	}
+
+	/**
+	 * Tests that the context counts the bytes received and can pause reading
+	 * until the timeout check after the pause is over
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testPauseReading() throws Exception
+	{
+		Context context = connection.getContext();
+
+		//Write some data and check it was counted
+		connection.write(ByteBuffer.allocate(10));
+		connection.write(ByteBuffer.allocate(5));
+		assertEquals("The bytes received were not counted", 15, context.getBytesReceived());
+
+		//Pausing should stop us reading
+		context.pauseReading(50000000L);
+		verify(key).interestOps(0);
+
+		//A timeout check during the pause should not resume reading
+		connection.timeout();
+		verify(key, never()).interestOps(SelectionKey.OP_READ);
+
+		//Once the pause is over the timeout check should resume reading
+		Thread.sleep(60);
+		connection.timeout();
+		verify(key).interestOps(SelectionKey.OP_READ);
+	}
+
 	/**
 	 * Test that when the read method is run, the data is collected from the
 	 * serializer
@@ -411,6 +754,11 @@ public class NioConnectionTest
 
 		//Get the Remote Address
 		context.getRemoteAddress();
+
+		//Each connection should have its own id which does not change
+		long id = context.getConnectionId();
+		assertEquals("The connection id should not change", id, context.getConnectionId());
+		assertNotEquals("Each connection should have a different id", id, new NioConnection(key, new ActiveServer(def)).getContext().getConnectionId());
 	}
 
 	/**
@@ -464,13 +812,13 @@ public class NioConnectionTest
 
 		//Mock our service factories
 		@SuppressWarnings("unchecked")
-		NioObjectFactory<NioService>[] serviceFactories = (NioObjectFactory<NioService>[]) new NioObjectFactory<?>[6];
-		serviceFactories[0] = mockNioObjectFactory(services[0]);
-		serviceFactories[1] = mockNioObjectFactory(services[1]);
-		serviceFactories[2] = mockNioObjectFactory(services[2]);
-		serviceFactories[3] = mockNioObjectFactory(services[3]);
-		serviceFactories[4] = mockNioObjectFactory(services[4]);
-		serviceFactories[5] = mockNioObjectFactory(services[5]);
+		NioServiceFactory<NioService>[] serviceFactories = (NioServiceFactory<NioService>[]) new NioServiceFactory<?>[6];
+		serviceFactories[0] = mockNioServiceFactory(services[0]);
+		serviceFactories[1] = mockNioServiceFactory(services[1]);
+		serviceFactories[2] = mockNioServiceFactory(services[2]);
+		serviceFactories[3] = mockNioServiceFactory(services[3]);
+		serviceFactories[4] = mockNioServiceFactory(services[4]);
+		serviceFactories[5] = mockNioServiceFactory(services[5]);
 
 		//Get the fields we will be looking at
 		Field si = connection.getClass().getDeclaredField("serializer");
@@ -509,7 +857,7 @@ public class NioConnectionTest
 		 */
 		verify(serializerFactories[0]).create(anyMapOf(String.class, Object.class));
 		verify(inspectorFactories[0]).create(anyMapOf(String.class, Object.class));
-		for (NioObjectFactory<NioService> s : serviceFactories)
+		for (NioServiceFactory<NioService> s : serviceFactories)
 		{
 			verify(s).create(anyMapOf(String.class, Object.class));
 		}
@@ -559,7 +907,7 @@ public class NioConnectionTest
 		//Update our definition
 		def.setSerializerFactory(serializerFactories[1]);
 		def.setInspectorFactory(inspectorFactories[2]);
-		def.setServiceFactories(Arrays.asList((NioObjectFactory<NioService>[]) new NioObjectFactory<?>[]
+		def.setServiceFactories(Arrays.asList((NioServiceFactory<NioService>[]) new NioServiceFactory<?>[]
 				{
 					serviceFactories[0], serviceFactories[1], serviceFactories[2]
 				}));
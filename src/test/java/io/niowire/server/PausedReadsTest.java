@@ -0,0 +1,179 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+import io.niowire.inspection.NioInspector;
+import io.niowire.serializer.NioSerializer;
+import io.niowire.server.NioSocketServer.ActiveServer;
+import io.niowire.serversource.NioServerDefinition;
+import io.niowire.service.NioService;
+import io.niowire.service.NioServiceFactory;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static io.niowire.testutilities.TestUtilities.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link PausedReads}
+ *
+ * @author Trent Houliston
+ */
+public class PausedReadsTest
+{
+
+	private Selector selector;
+	private PausedReads paused;
+	private NioClock clock;
+	private ActiveServer server;
+
+	/**
+	 * Builds a new schedule on a real selector
+	 *
+	 * @throws Exception
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		selector = Selector.open();
+		paused = new PausedReads(selector);
+
+		//Our connections use a clock we control
+		clock = mock(NioClock.class);
+		NioServerDefinition def = new NioServerDefinition();
+		def.setInspectorFactory(mockNioObjectFactory(mock(NioInspector.class)));
+		def.setSerializerFactory(mockNioObjectFactory(mock(NioSerializer.class)));
+		def.setServiceFactories(Collections.<NioServiceFactory<? extends NioService>>emptyList());
+		server = new ActiveServer(def);
+		server.setClock(clock);
+	}
+
+	/**
+	 * Builds a connection to our server on the passed key
+	 *
+	 * @param key the key of the connection
+	 *
+	 * @return the connection
+	 *
+	 * @throws Exception
+	 */
+	private NioConnection connection(SelectionKey key) throws Exception
+	{
+		return new NioConnection(key, server);
+	}
+
+	/**
+	 * Closes our selector
+	 *
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception
+	{
+		selector.close();
+	}
+
+	/**
+	 * Test that the select timeout is bounded by the earliest pause and that
+	 * adding an earlier pause wakes up the selector
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testSelectTimeout() throws Exception
+	{
+		//With nothing paused we select for as long as we would have
+		assertEquals(1000, paused.getSelectTimeout(0, 1000));
+
+		//A pause ending in 50.5ms is rounded up to 51ms
+		NioConnection connection = connection(mock(SelectionKey.class));
+		paused.add(connection, 50500000L);
+		assertEquals(51, paused.getSelectTimeout(0, 1000));
+		assertEquals(1000, paused.getSelectTimeout(-5000000000L, 1000));
+
+		//Adding the earliest pause should have woken the selector (so select returns straight away)
+		long start = System.nanoTime();
+		assertEquals(0, selector.select(500));
+		assertTrue("The selector should have been woken up", System.nanoTime() - start < 400000000L);
+
+		//A later pause does not wake it
+		paused.add(connection, 90000000L);
+		start = System.nanoTime();
+		selector.select(100);
+		assertTrue("The selector should not have been woken up", System.nanoTime() - start >= 90000000L);
+
+		//Once a pause has ended we should not block at all
+		assertEquals(0, paused.getSelectTimeout(60000000L, 1000));
+	}
+
+	/**
+	 * Test that connections are resumed in order once their pause has ended,
+	 * that a connection which paused again stays paused and that closed
+	 * connections are ignored
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testResume() throws Exception
+	{
+		SelectionKey firstKey = mock(SelectionKey.class);
+		SelectionKey secondKey = mock(SelectionKey.class);
+		NioConnection first = connection(firstKey);
+		NioConnection second = connection(secondKey);
+		SelectionKey closedKey = mock(SelectionKey.class);
+		SocketChannel channel = SocketChannel.open();
+		when(closedKey.channel()).thenReturn(channel);
+		NioConnection closed = connection(closedKey);
+
+		//Pause the connections (the second pauses twice)
+		when(clock.nanoTime()).thenReturn(0L);
+		first.getContext().pauseReading(100);
+		second.getContext().pauseReading(100);
+		second.getContext().pauseReading(200);
+		closed.getContext().pauseReading(100);
+		paused.add(second, 100);
+		paused.add(first, 100);
+		paused.add(second, 200);
+		paused.add(closed, 100);
+		closed.close();
+
+		//Nothing has ended yet
+		when(clock.nanoTime()).thenReturn(50L);
+		paused.resume(50);
+		verify(firstKey, never()).interestOps(SelectionKey.OP_READ);
+		assertEquals(4, paused.size());
+
+		//The first pauses end, but the second connection paused again
+		when(clock.nanoTime()).thenReturn(100L);
+		paused.resume(100);
+		verify(firstKey).interestOps(SelectionKey.OP_READ);
+		verify(secondKey, never()).interestOps(SelectionKey.OP_READ);
+		assertEquals(1, paused.size());
+
+		//Then the second pause ends
+		when(clock.nanoTime()).thenReturn(250L);
+		paused.resume(250);
+		verify(secondKey).interestOps(SelectionKey.OP_READ);
+		assertEquals(0, paused.size());
+	}
+}
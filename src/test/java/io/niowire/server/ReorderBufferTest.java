@@ -0,0 +1,94 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+import io.niowire.data.NioPacket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link ReorderBuffer}
+ *
+ * @author Trent Houliston
+ */
+public class ReorderBufferTest
+{
+
+	/**
+	 * Tests that replies which complete out of order are released in the order
+	 * their slots were reserved
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testReorder() throws Exception
+	{
+		ReorderBuffer buffer = new ReorderBuffer();
+		List<NioPacket> out = new ArrayList<NioPacket>();
+
+		NioPacket a = new NioPacket("Test", "A");
+		NioPacket c = new NioPacket("Test", "C");
+
+		ReorderBuffer.Slot slotA = buffer.reserve();
+		ReorderBuffer.Slot slotB = buffer.reserve();
+		ReorderBuffer.Slot slotC = buffer.reserve();
+		assertEquals(3, buffer.size());
+		assertFalse(buffer.isReady());
+
+		//Complete the last one first, nothing should be ready
+		assertFalse(buffer.complete(slotC, c));
+		assertFalse(buffer.isReady());
+		assertEquals(0, buffer.drainTo(out));
+		assertTrue(out.isEmpty());
+
+		//Complete the first one, it should be released but not the third
+		assertTrue(buffer.complete(slotA, a));
+		assertTrue(buffer.isReady());
+		assertEquals(1, buffer.drainTo(out));
+		assertEquals(Arrays.asList(a), out);
+		assertEquals(2, buffer.size());
+
+		//Complete the middle one without a reply, it and the third are released
+		assertTrue(buffer.complete(slotB, null));
+		assertEquals(2, buffer.drainTo(out));
+		assertEquals(Arrays.asList(a, c), out);
+		assertEquals(0, buffer.size());
+		assertFalse(buffer.isReady());
+	}
+
+	/**
+	 * Tests that clearing the buffer discards the slots and that late
+	 * completions are ignored
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testClear() throws Exception
+	{
+		ReorderBuffer buffer = new ReorderBuffer();
+		ReorderBuffer.Slot slot = buffer.reserve();
+		buffer.clear();
+
+		assertEquals(0, buffer.size());
+		assertFalse(buffer.complete(slot, new NioPacket("Test", "A")));
+		assertFalse(buffer.isReady());
+	}
+}
@@ -0,0 +1,265 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.server;
+
+import io.niowire.entities.NioObjectFactory;
+import io.niowire.inspection.NioInspector;
+import io.niowire.serializer.NioSerializer;
+import io.niowire.server.NioSocketServer.ActiveServer;
+import io.niowire.serversource.NioServerDefinition;
+import io.niowire.service.NioService;
+import io.niowire.service.NioServiceFactory;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import org.junit.Test;
+
+import static io.niowire.testutilities.TestUtilities.*;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the {@link StallDetector}
+ *
+ * @author Trent Houliston
+ */
+public class StallDetectorTest
+{
+
+	/**
+	 * Tests that a loop iteration which takes longer than the threshold is
+	 * reported once, along with the stack and stage of the loop thread
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 2000)
+	public void testStallDetected() throws Exception
+	{
+		//Make a thread which blocks (our stalled event loop)
+		Thread loop = new Thread(new Sleeper(), "StalledLoop");
+		loop.setDaemon(true);
+		loop.start();
+
+		//Watch it with a short threshold
+		StallDetector detector = new StallDetector("Test", loop);
+		detector.setThresholdMillis(50);
+
+		//Start an iteration in the service stage
+		detector.beat();
+		detector.enter(null, null, PipelineStage.SERVICE);
+
+		//We should not have stalled yet
+		assertFalse("The loop should not have stalled yet", detector.check());
+
+		//Wait past our threshold
+		Thread.sleep(100);
+
+		//We should now detect the stall
+		assertTrue("The stall should have been detected", detector.check());
+		assertEquals("There should be one stall", 1, detector.getStallCount());
+		assertTrue("The stage should be reported", detector.getLastStall().contains("SERVICE"));
+		assertTrue("The stack of the loop thread should be reported", detector.getLastStall().contains("Sleeper"));
+
+		//The same iteration should only be reported once
+		assertFalse("The stall should only be reported once", detector.check());
+		assertEquals("There should still be one stall", 1, detector.getStallCount());
+
+		loop.interrupt();
+	}
+
+	/**
+	 * Tests that waiting in the selector is never treated as a stall
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 2000)
+	public void testSelectIsNotStall() throws Exception
+	{
+		//Watch our own thread
+		StallDetector detector = new StallDetector("Test", Thread.currentThread());
+		detector.setThresholdMillis(10);
+
+		//Go and wait in the "selector"
+		detector.beat();
+		detector.idle();
+		Thread.sleep(50);
+
+		//This should not be a stall
+		assertFalse("Waiting in the selector is not a stall", detector.check());
+		assertEquals("There should be no stalls", 0, detector.getStallCount());
+		assertEquals("We should be in the select stage", "SELECT", detector.getCurrentStage());
+	}
+
+	/**
+	 * Tests that a loop which stalls while doing channel I/O is only reported,
+	 * the detector must never interrupt it as that would close the channel
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 2000)
+	public void testChannelIoNotInterrupted() throws Exception
+	{
+		//The interrupt action is no longer available
+		StallDetector detector = new StallDetector("Test", Thread.currentThread());
+		try
+		{
+			detector.setAction("interrupt");
+			fail("The interrupt action should not exist");
+		}
+		catch (IllegalArgumentException ex)
+		{
+		}
+
+		//Connect a pair of sockets
+		ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress("localhost", 0));
+		final SocketChannel client = SocketChannel.open(server.socket().getLocalSocketAddress());
+		SocketChannel accepted = server.accept();
+
+		try
+		{
+			//Make a loop which blocks reading from the channel
+			final ByteBuffer received = ByteBuffer.allocate(1);
+			Thread loop = new Thread(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						client.read(received);
+					}
+					catch (IOException ex)
+					{
+					}
+				}
+			}, "StalledLoop");
+			loop.setDaemon(true);
+			loop.start();
+
+			//Watch it with a short threshold and let it stall in the read
+			detector = new StallDetector("Test", loop);
+			detector.setThresholdMillis(20);
+			detector.beat();
+			detector.enter(null, null, PipelineStage.DESERIALIZE);
+			Thread.sleep(50);
+			assertTrue("The stall should have been detected", detector.check());
+			assertFalse("The stall should be reported once", detector.check());
+
+			//The read should still finish normally on an open channel
+			accepted.write(ByteBuffer.wrap(new byte[]
+			{
+				1
+			}));
+			loop.join();
+			assertTrue("The channel should not have been closed", client.isOpen());
+			assertEquals("The read should have completed", 1, received.position());
+		}
+		finally
+		{
+			client.close();
+			accepted.close();
+			server.close();
+		}
+	}
+
+	/**
+	 * Tests that the close connection action closes the channel of the
+	 * connection that was being worked on and that its details are reported
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 2000)
+	public void testCloseConnectionAction() throws Exception
+	{
+		//Build a connection with mock components
+		SelectionKey key = mock(SelectionKey.class);
+		SocketChannel channel = SocketChannel.open();
+		when(key.channel()).thenReturn(channel);
+		NioInspector inspect = mock(NioInspector.class);
+		when(inspect.getUid()).thenReturn("STALLED_UID");
+
+		NioServerDefinition def = new NioServerDefinition();
+		def.setId("STALLED_SERVER");
+		def.setInspectorFactory(mockNioObjectFactory(inspect));
+		def.setSerializerFactory(mockNioObjectFactory(mock(NioSerializer.class)));
+		def.setServiceFactories(Collections.<NioServiceFactory<? extends NioService>>emptyList());
+		NioConnection connection = new NioConnection(key, new ActiveServer(def));
+
+		//Watch our own thread
+		StallDetector detector = new StallDetector("Test", Thread.currentThread());
+		detector.setThresholdMillis(10);
+		detector.setStallAction(StallAction.CLOSE_CONNECTION);
+
+		//Stall while reading for the connection
+		detector.beat();
+		detector.enter(null, connection, PipelineStage.READ);
+		Thread.sleep(30);
+		assertTrue("The stall should have been detected", detector.check());
+
+		//Check our report and that the connection was aborted
+		assertTrue(detector.getLastStall().contains("STALLED_UID"));
+		assertTrue(detector.getLastStall().contains("STALLED_SERVER"));
+		assertFalse("The channel should have been closed", channel.isOpen());
+	}
+
+	/**
+	 * Tests that the detector can be registered and read through JMX
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 2000)
+	public void testJmx() throws Exception
+	{
+		StallDetector detector = new StallDetector("Test", Thread.currentThread());
+		detector.setThresholdMillis(1234);
+		detector.register();
+
+		//Read our attributes through JMX
+		assertNotNull(detector.getObjectName());
+		assertEquals(1234L, ManagementFactory.getPlatformMBeanServer().getAttribute(detector.getObjectName(), "ThresholdMillis"));
+		assertEquals(0L, ManagementFactory.getPlatformMBeanServer().getAttribute(detector.getObjectName(), "StallCount"));
+
+		//Unregister ourselves
+		detector.unregister();
+		assertNull(detector.getObjectName());
+	}
+
+	/**
+	 * A runnable which sleeps until it is interrupted
+	 */
+	private static class Sleeper implements Runnable
+	{
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				Thread.sleep(60000);
+			}
+			catch (InterruptedException ex)
+			{
+			}
+		}
+	}
+}
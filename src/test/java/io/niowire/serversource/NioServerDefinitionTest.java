@@ -23,7 +23,13 @@ import io.niowire.inspection.TimeoutInspector;
 import io.niowire.serializer.JsonSerializer;
 import io.niowire.serializer.NioSerializer;
 import io.niowire.service.EchoService;
+import io.niowire.service.LaneType;
 import io.niowire.service.NioService;
+import io.niowire.service.NioServiceFactory;
+import io.niowire.service.OverflowPolicy;
+import io.niowire.service.ServiceLane;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
 import org.junit.Test;
@@ -70,10 +76,50 @@ public class NioServerDefinitionTest
 		NioInspector inspector = inspectorFactory.create();
 		assertEquals(TimeoutInspector.class, inspector.getClass());
 
+		//Test our inspector chain
+		List<NioObjectFactory<? extends NioInspector>> inspectorFactories = def.getInspectorFactories();
+		assertEquals(1, inspectorFactories.size());
+		assertEquals(TimeoutInspector.class, inspectorFactories.get(0).create().getClass());
+
 		//Test our service factories (should only be the echo service)
 		List<NioObjectFactory<? extends NioService>> serviceFactories = def.getServiceFactories();
 		assertEquals(1, serviceFactories.size());
 		NioService service = serviceFactories.get(0).create();
 		assertEquals(EchoService.class, service.getClass());
+
+		//Test that the service's lane was read
+		ServiceLane lane = def.getLanedServiceFactories().get(0).getLane();
+		assertEquals(LaneType.DEDICATED, lane.getType());
+		assertEquals(32, lane.getQueueSize());
+		assertEquals(OverflowPolicy.DROP, lane.getOverflow());
+	}
+
+	/**
+	 * Tests that plain object factories can be set as services, and that they
+	 * are run inline through a service factory which makes their services
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testPlainServiceFactories() throws Exception
+	{
+		NioObjectFactory<EchoService> plain = new NioObjectFactory<EchoService>(EchoService.class);
+		NioServiceFactory<EchoService> laned = new NioServiceFactory<EchoService>(EchoService.class, Collections.<String, Object>emptyMap(), new ServiceLane(LaneType.POOL, 10, OverflowPolicy.DROP));
+
+		NioServerDefinition def = new NioServerDefinition();
+		def.setServiceFactories(Arrays.<NioObjectFactory<? extends NioService>>asList(plain, laned));
+
+		//The plain factory is run inline and makes its services through the factory
+		List<NioServiceFactory<? extends NioService>> factories = def.getLanedServiceFactories();
+		assertNull("A plain factory should be run inline", factories.get(0).getLane());
+		NioService service = factories.get(0).create();
+		assertEquals(EchoService.class, service.getClass());
+		assertTrue("The plain factory should recognise its service", plain.isInstance(service));
+		assertTrue(factories.get(0).isInstance(service));
+		assertSame("Both should share the plain factory's objects", plain.getShared(), factories.get(0).getShared());
+
+		//Service factories are kept as they are
+		assertSame(laned, factories.get(1));
+		assertSame(laned, def.getServiceFactories().get(1));
 	}
 }
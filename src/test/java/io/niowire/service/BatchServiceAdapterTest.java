@@ -0,0 +1,108 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.service;
+
+import io.niowire.data.NioChunk;
+import io.niowire.data.NioPacket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for the {@link BatchServiceAdapter}
+ *
+ * @author Trent Houliston
+ */
+public class BatchServiceAdapterTest
+{
+
+	/**
+	 * Tests that each packet of a batch is sent to the wrapped service in order
+	 * and that the other methods are delegated
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testAdapter() throws Exception
+	{
+		NioService service = mock(NioService.class);
+		BatchServiceAdapter adapter = new BatchServiceAdapter(service);
+		assertSame(service, adapter.getService());
+
+		//Send a batch through
+		NioPacket a = new NioPacket("Test", "A");
+		NioPacket b = new NioPacket("Test", "B");
+		NioPacket c = new NioPacket("Test", "C");
+		adapter.send(Arrays.asList(a, b, c));
+
+		//Check they were sent in order
+		InOrder order = inOrder(service);
+		order.verify(service).send(a);
+		order.verify(service).send(b);
+		order.verify(service).send(c);
+
+		//Check single packets and close are passed through
+		adapter.send(a);
+		verify(service, times(2)).send(a);
+		adapter.close();
+		verify(service).close();
+	}
+
+	/**
+	 * Tests that the chunks of streamed frames are sent to a streaming service
+	 * as a stream and that other packets are sent as normal
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testStreaming() throws Exception
+	{
+		NioStreamingService service = mock(NioStreamingService.class);
+		BatchServiceAdapter adapter = new BatchServiceAdapter(service);
+
+		//Send a frame in two chunks followed by a normal packet
+		NioPacket first = new NioPacket("Test", new NioChunk(0, true, false), ByteBuffer.wrap(new byte[]
+		{
+			1, 2
+		}), 0);
+		NioPacket last = new NioPacket("Test", new NioChunk(2, false, true), ByteBuffer.wrap(new byte[]
+		{
+			3
+		}), 0);
+		NioPacket normal = new NioPacket("Test", "A");
+		adapter.send(Arrays.asList(first, last, normal));
+
+		//Check the stream was started, given its chunks and ended before the normal packet
+		InOrder order = inOrder(service);
+		order.verify(service).start(first);
+		order.verify(service).chunk(ByteBuffer.wrap(new byte[]
+		{
+			1, 2
+		}));
+		order.verify(service).chunk(ByteBuffer.wrap(new byte[]
+		{
+			3
+		}));
+		order.verify(service).end();
+		order.verify(service).send(normal);
+		verify(service, never()).send(first);
+	}
+}
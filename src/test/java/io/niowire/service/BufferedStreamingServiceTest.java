@@ -0,0 +1,132 @@
+/**
+ * This file is part of Niowire.
+ *
+ * Niowire is free software: you can redistribute it and/or modify it under the
+ * terms of the Lesser GNU General Public License as published by the Free
+ * Software Foundation, either version 3 of the License, or (at your option) any
+ * later version.
+ *
+ * Niowire is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the Lesser GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the Lesser GNU General Public License
+ * along with Niowire. If not, see <http://www.gnu.org/licenses/>.
+ */
+package io.niowire.service;
+
+import io.niowire.data.NioChunk;
+import io.niowire.data.NioPacket;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the {@link BufferedStreamingService}
+ *
+ * @author Trent Houliston
+ */
+public class BufferedStreamingServiceTest
+{
+
+	/**
+	 * Tests that the chunks of a streamed frame are put back together and sent
+	 * as one packet
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testBuffering() throws Exception
+	{
+		CollectingService service = new CollectingService();
+		BatchServiceAdapter adapter = new BatchServiceAdapter(service);
+
+		//Send a large frame in many chunks (so our buffer has to grow)
+		byte[] frame = new byte[20000];
+		for (int i = 0; i < frame.length; i++)
+		{
+			frame[i] = (byte) i;
+		}
+		for (int i = 0; i < frame.length; i += 1000)
+		{
+			adapter.send(chunk(frame, i, 1000));
+		}
+
+		//Check we got the whole frame with the details of its first chunk
+		assertEquals("There should be 1 packet sent", 1, service.packets.size());
+		assertEquals("The packet had the wrong source", "Test", service.packets.get(0).getSource());
+		assertEquals("The packet had the wrong timestamp", 1234, service.packets.get(0).getTimestamp());
+		assertArrayEquals("The frame was not put back together", frame, (byte[]) service.packets.get(0).getData());
+
+		//Normal packets should still be sent as they are
+		NioPacket normal = new NioPacket("Test", "A");
+		adapter.send(normal);
+		assertSame("The normal packet was not sent", normal, service.packets.get(1));
+	}
+
+	/**
+	 * Tests that frames which are too large are dropped and that the next
+	 * frame is still put back together
+	 *
+	 * @throws Exception
+	 */
+	@Test(timeout = 1000)
+	public void testOversizedFrame() throws Exception
+	{
+		CollectingService service = new CollectingService();
+		service.maxFrameSize = 100;
+		BatchServiceAdapter adapter = new BatchServiceAdapter(service);
+
+		//Send a frame which is too large and then one that is not
+		byte[] frame = new byte[150];
+		adapter.send(Arrays.asList(chunk(frame, 0, 60), chunk(frame, 60, 60), chunk(frame, 120, 30)));
+		adapter.send(Arrays.asList(chunk(frame, 0, 60), chunk(frame, 120, 30)));
+
+		//Only the second should have been sent
+		assertEquals("There should be 1 packet sent", 1, service.packets.size());
+		assertEquals("The wrong frame was sent", 90, ((byte[]) service.packets.get(0).getData()).length);
+		assertEquals("One frame should have been dropped", 1, service.getDropped());
+	}
+
+	/**
+	 * Makes a chunk packet for part of a frame
+	 *
+	 * @param frame  the frame
+	 * @param offset the offset of the chunk (0 for the first chunk)
+	 * @param length the length of the chunk (up to the end of the frame for
+	 *               the last chunk)
+	 *
+	 * @return the chunk packet
+	 */
+	private static NioPacket chunk(byte[] frame, int offset, int length)
+	{
+		NioChunk chunk = new NioChunk(offset, offset == 0, offset + length == frame.length);
+		return new NioPacket("Test", chunk, ByteBuffer.wrap(frame, offset, length).slice().asReadOnlyBuffer(), 1234);
+	}
+
+	/**
+	 * A buffered service which collects the packets it is sent
+	 */
+	private static class CollectingService extends BufferedStreamingService
+	{
+
+		private final List<NioPacket> packets = new ArrayList<NioPacket>();
+
+		@Override
+		public void send(NioPacket packet)
+		{
+			packets.add(packet);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+		}
+	}
+}
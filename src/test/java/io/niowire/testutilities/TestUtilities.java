@@ -21,6 +21,8 @@ import io.niowire.data.NioPacket;
 import io.niowire.entities.NioObjectCreationException;
 import io.niowire.entities.NioObjectFactory;
 import io.niowire.server.NioConnection;
+import io.niowire.service.NioService;
+import io.niowire.service.NioServiceFactory;
 import java.io.File;
 import java.lang.reflect.Constructor;
 import java.util.Collections;
@@ -97,6 +99,34 @@ public class TestUtilities
 		return f;
 	}
 
+	/**
+	 * This method creates a service factory which simply returns the passed
+	 * service (run inline). And when checking for ownership checks it is the
+	 * same object that was passed in.
+	 *
+	 * @param <T>     the type of the service this factory is for
+	 * @param service the service we are passing
+	 *
+	 * @return a mock of a factory which will "create" this service
+	 *
+	 * @throws Exception
+	 */
+	public static <T extends NioService> NioServiceFactory<T> mockNioServiceFactory(T service) throws Exception
+	{
+		@SuppressWarnings("unchecked")
+		NioServiceFactory<T> f = mock(NioServiceFactory.class);
+
+		//When we mock return the passed service
+		when(f.create()).then(new CreateInstanceAnswer<T>(service));
+		when(f.create(anyMapOf(String.class, Object.class))).then(new CreateInstanceAnswer<T>(service));
+
+		//When we check for isInstance check its the right service
+		when(f.isInstance(Mockito.<T>anyObject())).then(new IsInstanceAnswer<T>(service));
+
+		//Return our mock
+		return f;
+	}
+
 	/**
 	 * Run the noargs constructor of this class (regardless of access level).
 	 * Used to run utility class constructors (for code coverage)